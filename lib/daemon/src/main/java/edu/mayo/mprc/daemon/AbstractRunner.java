@@ -6,11 +6,16 @@ import edu.mayo.mprc.config.Checkable;
 import edu.mayo.mprc.config.Installable;
 import edu.mayo.mprc.config.Lifecycle;
 import edu.mayo.mprc.daemon.files.FileTokenHolder;
+import edu.mayo.mprc.daemon.monitor.ServiceMetrics;
+import edu.mayo.mprc.daemon.monitor.ServiceMetricsMBean;
+import edu.mayo.mprc.daemon.monitor.ServiceMetricsSnapshot;
 import org.apache.log4j.Logger;
 import org.apache.log4j.NDC;
 
-import java.io.File;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -57,6 +62,9 @@ public abstract class AbstractRunner implements Checkable, Installable, Lifecycl
 
 	private final AtomicInteger requestCount = new AtomicInteger(0);
 
+	private final ServiceMetrics metrics = new ServiceMetrics();
+	private ObjectName metricsBeanName;
+
 	protected AbstractRunner() {
 	}
 
@@ -82,6 +90,7 @@ public abstract class AbstractRunner implements Checkable, Installable, Lifecycl
 						.build());
 		receiver = new SynchronousRequestReceiver();
 		executorService.execute(receiver);
+		registerMetricsBean();
 
 		setOperational(true);
 	}
@@ -94,6 +103,44 @@ public abstract class AbstractRunner implements Checkable, Installable, Lifecycl
 		if (executorService != null) {
 			executorService.shutdown();
 		}
+		unregisterMetricsBean();
+	}
+
+	private void registerMetricsBean() {
+		try {
+			metricsBeanName = new ObjectName("edu.mayo.mprc.swift:type=Service,name=" + ObjectName.quote(getDaemonConnection().getConnectionName()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(new MetricsBean(), ServiceMetricsMBean.class), metricsBeanName);
+		} catch (final Exception e) {
+			// SWALLOWED: the metrics are still available through ping
+			LOGGER.warn("Could not register JMX bean for " + toString(), e);
+			metricsBeanName = null;
+		}
+	}
+
+	private void unregisterMetricsBean() {
+		if (metricsBeanName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsBeanName);
+			} catch (final Exception e) {
+				// SWALLOWED: we are shutting down anyway
+				LOGGER.warn("Could not unregister JMX bean " + metricsBeanName, e);
+			}
+			metricsBeanName = null;
+		}
+	}
+
+	/**
+	 * @return Current request statistics of this runner's service.
+	 */
+	public ServiceMetricsSnapshot getMetrics() {
+		return metrics.getSnapshot(getDaemonConnection().getConnectionName(), getCacheStatistics());
+	}
+
+	/**
+	 * @return Statistics of the cache this runner runs, null if it does not run a cache.
+	 */
+	protected CacheStatistics getCacheStatistics() {
+		return null;
 	}
 
 	public void awaitTermination() {
@@ -118,6 +165,7 @@ public abstract class AbstractRunner implements Checkable, Installable, Lifecycl
 		try {
 			NDC.push(request.getWorkPacket().getTaskId().toString());
 			requestCount.incrementAndGet();
+			metrics.requestQueued(request);
 
 			sendResponse(request, new DaemonProgressMessage(DaemonProgress.RequestEnqueued), false);
 			processRequest(request);
@@ -134,6 +182,7 @@ public abstract class AbstractRunner implements Checkable, Installable, Lifecycl
 	protected void sendResponse(final DaemonRequest request, final Serializable response, final boolean isLast) {
 		try {
 			if (isLast) {
+				metrics.requestFinished(request, !(response instanceof Throwable));
 				requestCount.decrementAndGet();
 
 				synchronized (requestCount) {
@@ -143,6 +192,9 @@ public abstract class AbstractRunner implements Checkable, Installable, Lifecycl
 
 			if (response instanceof DaemonProgressMessage) {
 				final DaemonProgressMessage daemonProgressMessage = (DaemonProgressMessage) response;
+				if (daemonProgressMessage.getProgress() == DaemonProgress.RequestProcessingStarted) {
+					metrics.requestStarted(request);
+				}
 				//If response if a FileTokenHolder, set FileTokenFactory and force regenerating FileTokens.
 				if (daemonProgressMessage.getProgressData() instanceof FileTokenHolder) {
 					((FileTokenHolder) daemonProgressMessage.getProgressData()).translateOnSender(getDaemonConnection().getFileTokenFactory());
@@ -192,6 +244,69 @@ public abstract class AbstractRunner implements Checkable, Installable, Lifecycl
 		}
 	}
 
+	private final class MetricsBean implements ServiceMetricsMBean {
+		@Override
+		public int getQueued() {
+			return getMetrics().getQueued();
+		}
+
+		@Override
+		public int getRunning() {
+			return getMetrics().getRunning();
+		}
+
+		@Override
+		public long getSucceeded() {
+			return getMetrics().getSucceeded();
+		}
+
+		@Override
+		public long getFailed() {
+			return getMetrics().getFailed();
+		}
+
+		@Override
+		public double getThroughputPerHour() {
+			return getMetrics().getThroughputPerHour();
+		}
+
+		@Override
+		public long getQueueWaitMedian() {
+			return getMetrics().getQueueWait().getPercentile(50);
+		}
+
+		@Override
+		public long getQueueWait95thPercentile() {
+			return getMetrics().getQueueWait().getPercentile(95);
+		}
+
+		@Override
+		public long getQueueWaitMax() {
+			return getMetrics().getQueueWait().getMax();
+		}
+
+		@Override
+		public long getProcessingMedian() {
+			return getMetrics().getProcessing().getPercentile(50);
+		}
+
+		@Override
+		public long getProcessing95thPercentile() {
+			return getMetrics().getProcessing().getPercentile(95);
+		}
+
+		@Override
+		public long getProcessingMax() {
+			return getMetrics().getProcessing().getMax();
+		}
+
+		@Override
+		public double getCacheHitRatio() {
+			final CacheStatistics cacheStatistics = getCacheStatistics();
+			return cacheStatistics == null ? 0.0 : cacheStatistics.getHitRatio();
+		}
+	}
+
 	public Daemon getDaemon() {
 		return daemon;
 	}
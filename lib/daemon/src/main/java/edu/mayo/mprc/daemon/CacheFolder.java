@@ -2,6 +2,7 @@ package edu.mayo.mprc.daemon;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.StringUtilities;
@@ -11,6 +12,10 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.text.MessageFormat;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
@@ -23,6 +28,9 @@ import java.util.regex.Pattern;
  * </ul>
  * Warning - always use {@link #makeWorkFolder} and {@link #insert} in tandem. The work folder is created in such
  * way for {@code insert} to work properly. They do not work independently.
+ * <p/>
+ * The entries are tracked by a {@link CacheIndex}, loaded from the cache folder on first use. When the total size
+ * of the entries exceeds {@link #getMaxCacheSize()}, the least recently used entries get deleted on a background thread.
  *
  * @author Roman Zenka
  */
@@ -39,6 +47,27 @@ public final class CacheFolder {
 
 	public static final int MAX_CACHE_FOLDERS = 1000 * 10;
 
+	/**
+	 * Entries used more recently than this are never evicted - they might be just being copied to their destination.
+	 */
+	public static final long DEFAULT_MIN_EVICTION_AGE = 60L * 60L * 1000L;
+
+	private final CacheIndex index = new CacheIndex();
+	private boolean indexLoaded;
+
+	/**
+	 * Maximum total size of the entries in bytes, 0 for unlimited.
+	 */
+	private long maxCacheSize;
+	private long minEvictionAge = DEFAULT_MIN_EVICTION_AGE;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	private ExecutorService evictionService;
+	private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
 	public CacheFolder() {
 	}
 
@@ -50,6 +79,28 @@ public final class CacheFolder {
 		this.cacheFolder = cacheFolder;
 	}
 
+	/**
+	 * @return Maximum total size of the cached entries in bytes, 0 for unlimited.
+	 */
+	public long getMaxCacheSize() {
+		return maxCacheSize;
+	}
+
+	public void setMaxCacheSize(final long maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * @param minEvictionAge Entries used more recently than this many milliseconds ago are never evicted.
+	 */
+	void setMinEvictionAge(final long minEvictionAge) {
+		this.minEvictionAge = minEvictionAge;
+	}
+
+	public CacheStatistics getStatistics() {
+		return new CacheStatistics(hits.get(), misses.get(), evictions.get(), index.getEntryCount(), index.getSize(), maxCacheSize);
+	}
+
 	/**
 	 * @return Error message if something is wrong with the folder, null otherwise.
 	 */
@@ -98,57 +149,174 @@ public final class CacheFolder {
 	/**
 	 * For a given work packet, find if there is a cache folder that has data for this packet.
 	 * <p/>
-	 * While doing so, delete all matching, yet stale cache entries encountered. If packet is from scratch,
-	 * delete all entries, including the non-stale ones.
+	 * If the matching entry is stale or incomplete, delete it. If packet is from scratch,
+	 * delete the entry even if it is not stale.
 	 *
 	 * @param cachableWorkPacket Work packet to find folder with data for.
 	 * @return The folder containing all the cached work data stored for the work package or {@code null}
 	 * if no such folder exists.
 	 */
 	public File lookup(final CachableWorkPacket cachableWorkPacket) {
-		// Now we check the cache.
-		// There can be multiple files of the same name in the same cache bucket.
-		// We pick the one which has a corresponding file that matches our params
-		// We go through all subfolders of the output folder
+		loadIndex();
 		final String taskDescription = cachableWorkPacket.getStringDescriptionOfTask();
-		final File targetCacheFolder = getTargetFolder(taskDescription);
-		if (!targetCacheFolder.exists()) {
+		final CacheIndex.Entry entry = index.get(CacheIndex.key(taskDescription));
+		// Recording the hit first protects the entry from being evicted while we check it
+		if (entry == null || !index.hit(entry, System.currentTimeMillis())) {
+			misses.incrementAndGet();
 			return null;
 		}
-		if (!targetCacheFolder.isDirectory()) {
-			throw new MprcException(MessageFormat.format("Malformed cache. The file {0} is not a directory.", targetCacheFolder.getAbsolutePath()));
-		}
-		final File[] files = targetCacheFolder.listFiles();
+		final File subFolder = entry.getFolder();
 		final List<String> outputFiles = cachableWorkPacket.getOutputFiles();
-		for (final File subFolder : files) {
-			final File taskDescriptionFile = new File(subFolder, TASK_DESCRIPTION_FILE_NAME);
-			if (allFilesExist(subFolder, outputFiles) && taskDescriptionFile.exists()) {
-				// We found an output file with matching file name and a params file!
-				// Check the params file
-				String cachedTaskDescription = null;
+		if (!allFilesExist(subFolder, outputFiles)) {
+			LOGGER.info("Cache deleting incomplete entry: " + subFolder.getAbsolutePath());
+			deleteEntry(entry);
+			misses.incrementAndGet();
+			return null;
+		}
+		if (cachableWorkPacket.isFromScratch() || cachableWorkPacket.cacheIsStale(subFolder, outputFiles)) {
+			// The output is older than the source.
+			LOGGER.info("Cache deleting stale entry " +
+					(cachableWorkPacket.isFromScratch() ? "(user requested rerun from scratch)" : "(input is of newer date than the output)") + ": " + subFolder.getAbsolutePath());
+			deleteEntry(entry);
+			misses.incrementAndGet();
+			return null;
+		}
+		saveEntry(entry);
+		hits.incrementAndGet();
+		return subFolder;
+	}
+
+	/**
+	 * Load the index from the cache folder, unless already loaded.
+	 */
+	private synchronized void loadIndex() {
+		if (indexLoaded) {
+			return;
+		}
+		indexLoaded = true;
+		final File[] buckets = cacheFolder.listFiles(new CacheFolderFilter());
+		if (buckets == null) {
+			return;
+		}
+		LOGGER.info("Loading cache index from " + cacheFolder.getAbsolutePath());
+		for (final File bucket : buckets) {
+			loadEntries(bucket);
+		}
+		LOGGER.info("Loaded cache index from " + cacheFolder.getAbsolutePath() + ": " + getStatistics());
+		scheduleEviction();
+	}
+
+	/**
+	 * Recursively find all complete entries within given folder and add them to the index.
+	 * Folders without the task description file are either work in progress or broken, they are skipped.
+	 */
+	private void loadEntries(final File folder) {
+		if (new File(folder, TASK_DESCRIPTION_FILE_NAME).isFile()) {
+			loadEntry(folder);
+			return;
+		}
+		final File[] files = folder.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (final File file : files) {
+			if (file.isDirectory()) {
+				loadEntries(file);
+			}
+		}
+	}
+
+	private void loadEntry(final File folder) {
+		CacheIndex.Entry entry = CacheIndex.load(folder);
+		if (entry == null) {
+			// Entry created before the index existed, or with a broken entry file
+			final File taskDescriptionFile = new File(folder, TASK_DESCRIPTION_FILE_NAME);
+			final String taskDescription;
+			try {
+				taskDescription = Files.toString(taskDescriptionFile, Charsets.UTF_8);
+			} catch (final Exception t) {
+				LOGGER.error("Cache cannot read request file " + taskDescriptionFile.getAbsolutePath(), t);
+				return;
+			}
+			entry = new CacheIndex.Entry(CacheIndex.key(taskDescription), folder, FileUtilities.sizeOfDirectory(folder), taskDescriptionFile.lastModified(), 0);
+			saveEntry(entry);
+		}
+		final CacheIndex.Entry previous = index.put(entry);
+		if (previous != null) {
+			// Same task cached twice - keep the more recent entry
+			final CacheIndex.Entry older;
+			if (previous.getFolder().lastModified() > entry.getFolder().lastModified()) {
+				index.put(previous);
+				older = entry;
+			} else {
+				older = previous;
+			}
+			LOGGER.info("Cache deleting duplicate entry: " + older.getFolder().getAbsolutePath());
+			FileUtilities.deleteNow(older.getFolder());
+		}
+	}
+
+	private void saveEntry(final CacheIndex.Entry entry) {
+		try {
+			index.save(entry);
+		} catch (final Exception t) {
+			// SWALLOWED: the entry file is recreated on the next start
+			LOGGER.warn("Cache could not save entry information for " + entry.getFolder().getAbsolutePath(), t);
+		}
+	}
+
+	private void deleteEntry(final CacheIndex.Entry entry) {
+		index.remove(entry);
+		FileUtilities.deleteNow(entry.getFolder());
+	}
+
+	/**
+	 * If the cache is over its size limit, start evicting entries in the background.
+	 */
+	private void scheduleEviction() {
+		if (maxCacheSize <= 0 || index.getSize() <= maxCacheSize || !evictionScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		getEvictionService().submit(new Runnable() {
+			@Override
+			public void run() {
+				evictionScheduled.set(false);
 				try {
-					cachedTaskDescription = Files.toString(taskDescriptionFile, Charsets.UTF_8);
+					evict();
 				} catch (final Exception t) {
-					LOGGER.error("Cache cannot read request file " + taskDescriptionFile.getAbsolutePath(), t);
-					continue;
-				}
-				if (taskDescription.equals(cachedTaskDescription)) {
-					// We found a match. Shall we use it? We must not want to process from scratch, and we must not
-					// have stale cache entry.
-					if (!cachableWorkPacket.isFromScratch() && !cachableWorkPacket.cacheIsStale(subFolder, outputFiles)) {
-						return subFolder;
-					} else {
-						// The output is older than the source.
-						// Wipe the cache for the file, continue searching.
-						LOGGER.info("Cache deleting stale entry " +
-								(cachableWorkPacket.isFromScratch() ? "(user requested rerun from scratch)" : "(input is of newer date than the output)") + ": " + subFolder.getAbsolutePath());
-						FileUtilities.deleteNow(subFolder);
-					}
+					LOGGER.error("Cache eviction failed in " + cacheFolder.getAbsolutePath(), t);
 				}
 			}
+		});
+	}
+
+	private synchronized ExecutorService getEvictionService() {
+		if (evictionService == null) {
+			evictionService = Executors.newSingleThreadExecutor(
+					new ThreadFactoryBuilder()
+							.setNameFormat("cache-eviction-%d")
+							.setDaemon(true)
+							.build());
+		}
+		return evictionService;
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache fits {@link #getMaxCacheSize()}.
+	 */
+	void evict() {
+		if (maxCacheSize <= 0) {
+			return;
+		}
+		final List<CacheIndex.Entry> evicted = index.evict(maxCacheSize, System.currentTimeMillis() - minEvictionAge);
+		for (final CacheIndex.Entry entry : evicted) {
+			LOGGER.info("Cache evicting entry of " + entry.getSize() + " bytes: " + entry.getFolder().getAbsolutePath());
+			FileUtilities.deleteNow(entry.getFolder());
+			evictions.incrementAndGet();
+		}
+		if (index.getSize() > maxCacheSize) {
+			LOGGER.warn("Cache " + cacheFolder.getAbsolutePath() + " is over its size limit, all remaining entries were used recently: " + getStatistics());
 		}
-		// No match
-		return null;
 	}
 
 	/**
@@ -240,6 +408,17 @@ public final class CacheFolder {
 		FileUtilities.rename(tempTaskDescriptionFile,
 				new File(wipFolder, TASK_DESCRIPTION_FILE_NAME));
 
+		loadIndex();
+		final CacheIndex.Entry entry = new CacheIndex.Entry(CacheIndex.key(workPacket.getStringDescriptionOfTask()),
+				wipFolder, FileUtilities.sizeOfDirectory(wipFolder), System.currentTimeMillis(), 0);
+		saveEntry(entry);
+		final CacheIndex.Entry previous = index.put(entry);
+		if (previous != null && !previous.getFolder().equals(wipFolder)) {
+			LOGGER.info("Cache deleting replaced entry: " + previous.getFolder().getAbsolutePath());
+			FileUtilities.deleteNow(previous.getFolder());
+		}
+		scheduleEviction();
+
 		return wipFolder;
 	}
 
@@ -251,6 +430,7 @@ public final class CacheFolder {
 		for (final File file : files) {
 			FileUtilities.deleteNow(file);
 		}
+		index.clear();
 	}
 
 	private static class CacheFolderFilter implements FilenameFilter {
@@ -0,0 +1,227 @@
+package edu.mayo.mprc.daemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.StringUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of {@link CacheFolder} entries.
+ * <p/>
+ * The entries are keyed by SHA-1 of the task description, so looking up a task neither lists folders, nor reads
+ * the task description files. Each entry folder contains a small {@link #ENTRY_FILE_NAME} file with the key,
+ * the total size of the entry, the time of the last hit and the amount of hits. The index is rebuilt from these files
+ * when the cache starts.
+ * <p/>
+ * The index also keeps track of the total size of the cache and picks entries to evict when the cache grows too large.
+ * All methods are thread-safe.
+ *
+ * @author Roman Zenka
+ */
+final class CacheIndex {
+	/**
+	 * Per-entry file that persists the index.
+	 */
+	static final String ENTRY_FILE_NAME = "_cache_entry";
+
+	/**
+	 * Entries used less recently are evicted first. When two entries were last used at the same time,
+	 * the one with fewer hits goes first.
+	 */
+	private static final Comparator<Entry> EVICTION_ORDER = new Comparator<Entry>() {
+		@Override
+		public int compare(final Entry o1, final Entry o2) {
+			if (o1.lastHit != o2.lastHit) {
+				return o1.lastHit < o2.lastHit ? -1 : 1;
+			}
+			return o1.hits < o2.hits ? -1 : (o1.hits == o2.hits ? 0 : 1);
+		}
+	};
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private long size;
+
+	/**
+	 * @return SHA-1 of the task description, as a hex string.
+	 */
+	static String key(final String taskDescription) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			return StringUtilities.toHex(digest.digest(taskDescription.getBytes(Charsets.UTF_8)), "");
+		} catch (NoSuchAlgorithmException e) {
+			throw new MprcException("SHA-1 is not supported", e);
+		}
+	}
+
+	public synchronized Entry get(final String key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Add an entry to the index.
+	 *
+	 * @return The entry previously stored under the same key, null if there was none.
+	 */
+	public synchronized Entry put(final Entry entry) {
+		final Entry previous = entries.put(entry.getKey(), entry);
+		if (previous != null) {
+			size -= previous.getSize();
+		}
+		size += entry.getSize();
+		return previous;
+	}
+
+	/**
+	 * Remove given entry from the index.
+	 *
+	 * @return False if the entry was no longer indexed.
+	 */
+	public synchronized boolean remove(final Entry entry) {
+		if (entries.get(entry.getKey()) != entry) {
+			return false;
+		}
+		entries.remove(entry.getKey());
+		size -= entry.getSize();
+		return true;
+	}
+
+	/**
+	 * Record a cache hit.
+	 *
+	 * @return False if the entry was evicted in the meantime.
+	 */
+	public synchronized boolean hit(final Entry entry, final long time) {
+		if (entries.get(entry.getKey()) != entry) {
+			return false;
+		}
+		entry.lastHit = Math.max(entry.lastHit, time);
+		entry.hits++;
+		return true;
+	}
+
+	/**
+	 * Remove entries from the index until the total size fits given budget. Only entries last used before
+	 * given time are removed, the others might still be in use.
+	 *
+	 * @param maxSize       The size budget.
+	 * @param lastHitBefore Only entries last used before this time can be removed.
+	 * @return The removed entries. The caller is responsible for deleting them.
+	 */
+	public synchronized List<Entry> evict(final long maxSize, final long lastHitBefore) {
+		if (size <= maxSize) {
+			return Collections.emptyList();
+		}
+		final List<Entry> candidates = new ArrayList<Entry>(entries.size());
+		for (final Entry entry : entries.values()) {
+			if (entry.lastHit < lastHitBefore) {
+				candidates.add(entry);
+			}
+		}
+		Collections.sort(candidates, EVICTION_ORDER);
+		final List<Entry> evicted = new ArrayList<Entry>();
+		for (final Entry entry : candidates) {
+			if (size <= maxSize) {
+				break;
+			}
+			remove(entry);
+			evicted.add(entry);
+		}
+		return evicted;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * @return Total size of all entries in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Write the entry file, so the entry survives restart.
+	 */
+	public void save(final Entry entry) {
+		final String line;
+		synchronized (this) {
+			line = entry.getKey() + '\t' + entry.getSize() + '\t' + entry.lastHit + '\t' + entry.hits + '\n';
+		}
+		FileUtilities.writeStringToFile(new File(entry.getFolder(), ENTRY_FILE_NAME), line, true);
+	}
+
+	/**
+	 * Load an entry stored in given folder.
+	 *
+	 * @return The entry, null if the folder has no valid entry file.
+	 */
+	public static Entry load(final File folder) {
+		final File entryFile = new File(folder, ENTRY_FILE_NAME);
+		if (!entryFile.isFile()) {
+			return null;
+		}
+		try {
+			final String[] parts = Files.toString(entryFile, Charsets.UTF_8).trim().split("\t");
+			if (parts.length != 4) {
+				return null;
+			}
+			return new Entry(parts[0], folder, Long.parseLong(parts[1]), Long.parseLong(parts[2]), Integer.parseInt(parts[3]));
+		} catch (IOException ignore) {
+			// SWALLOWED: the entry file gets recreated
+			return null;
+		} catch (NumberFormatException ignore) {
+			// SWALLOWED: the entry file gets recreated
+			return null;
+		}
+	}
+
+	/**
+	 * A single cached task.
+	 */
+	static final class Entry {
+		private final String key;
+		private final File folder;
+		private final long size;
+		// Guarded by the index
+		private long lastHit;
+		private int hits;
+
+		Entry(final String key, final File folder, final long size, final long lastHit, final int hits) {
+			this.key = key;
+			this.folder = folder;
+			this.size = size;
+			this.lastHit = lastHit;
+			this.hits = hits;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public File getFolder() {
+			return folder;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package edu.mayo.mprc.daemon;
+
+import edu.mayo.mprc.utilities.progress.ProgressInfo;
+
+import java.io.File;
+
+/**
+ * Sent by {@link WorkCache} when a cached result file gets published to the location the caller requested.
+ * Tells how the file got there, so it is possible to tell a near-instant link from a full copy.
+ *
+ * @author Roman Zenka
+ */
+public final class CachePublishInfo implements ProgressInfo {
+	private static final long serialVersionUID = 20131023L;
+
+	/**
+	 * How was the cached file published.
+	 */
+	public enum Mode {
+		/**
+		 * Copy-on-write clone, the file shares the disk blocks with the cache until modified.
+		 */
+		REFLINK,
+		/**
+		 * Hard link, the file is the very same file as the cached one.
+		 */
+		HARD_LINK,
+		/**
+		 * Full copy of the file contents.
+		 */
+		COPY
+	}
+
+	private Mode mode;
+	private File file;
+	private long size;
+
+	public CachePublishInfo() {
+	}
+
+	public CachePublishInfo(final Mode mode, final File file, final long size) {
+		this.mode = mode;
+		this.file = file;
+		this.size = size;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return The published file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return Size of the published file in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "Published " + file.getAbsolutePath() + " (" + size + " bytes) using " + mode;
+	}
+}
@@ -0,0 +1,147 @@
+package edu.mayo.mprc.daemon;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.ProcessCaller;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Publishes files from the {@link CacheFolder} to the locations the callers asked for, without copying the data
+ * when possible.
+ * <p/>
+ * The methods are tried in following order:
+ * <ol>
+ * <li>reflink - a copy-on-write clone ({@code cp --reflink=always}), supported only by some filesystems</li>
+ * <li>hard link - works whenever the cache and the target are on the same filesystem</li>
+ * <li>copy - streamed using {@link FileChannel#transferTo}</li>
+ * </ol>
+ * Whether the source and target share a filesystem is not detected upfront, we simply try to link and fall back
+ * on failure. Once reflinking fails, it is not attempted again.
+ * <p/>
+ * A hard-linked file is the very same file as the cached one. The cached outputs are never modified in place,
+ * and the target is always deleted before publishing, so republishing a file cannot truncate the cache.
+ *
+ * @author Roman Zenka
+ */
+final class CachePublisher {
+	private static final Logger LOGGER = Logger.getLogger(CachePublisher.class);
+
+	private volatile boolean reflinkEnabled;
+	private volatile boolean hardLinkEnabled;
+
+	CachePublisher() {
+		this(!FileUtilities.isWindowsPlatform(), !FileUtilities.isWindowsPlatform());
+	}
+
+	/**
+	 * For testing - lets the test disable the linking methods.
+	 */
+	CachePublisher(final boolean reflinkEnabled, final boolean hardLinkEnabled) {
+		this.reflinkEnabled = reflinkEnabled;
+		this.hardLinkEnabled = hardLinkEnabled;
+	}
+
+	/**
+	 * Publish a cached file.
+	 *
+	 * @param from The file in the cache.
+	 * @param to   Where the caller wants the file. Overwritten if it exists.
+	 * @return Information about how the file got published.
+	 */
+	public CachePublishInfo publish(final File from, final File to) {
+		final String errorPrefix = "publishing '" + from.getAbsolutePath() + "' to '" + to.getAbsolutePath() + "' failed: ";
+		if (!from.isFile()) {
+			throw new MprcException(errorPrefix + "the cached file does not exist.");
+		}
+		if (from.getAbsoluteFile().equals(to.getAbsoluteFile())) {
+			throw new MprcException(errorPrefix + "cannot publish file over itself.");
+		}
+		FileUtilities.ensureFolderExists(to.getParentFile());
+		FileUtilities.quietDelete(to);
+		if (to.exists()) {
+			throw new MprcException(errorPrefix + "the target file could not be deleted.");
+		}
+
+		final CachePublishInfo.Mode mode;
+		if (reflinkEnabled && reflink(from, to)) {
+			mode = CachePublishInfo.Mode.REFLINK;
+		} else if (hardLinkEnabled && hardLink(from, to)) {
+			mode = CachePublishInfo.Mode.HARD_LINK;
+		} else {
+			copy(from, to, errorPrefix);
+			mode = CachePublishInfo.Mode.COPY;
+		}
+		LOGGER.debug("Published " + from.getAbsolutePath() + " to " + to.getAbsolutePath() + " using " + mode);
+		return new CachePublishInfo(mode, to, to.length());
+	}
+
+	private boolean reflink(final File from, final File to) {
+		final ProcessBuilder builder = new ProcessBuilder()
+				.directory(to.getParentFile())
+				.command(Arrays.asList("cp", "--reflink=always", "--preserve=timestamps", from.getAbsolutePath(), to.getAbsolutePath()));
+		final ProcessCaller caller = new ProcessCaller(builder);
+		caller.setLogToConsole(false);
+		try {
+			caller.run();
+			if (caller.getExitValue() == 0 && isComplete(from, to)) {
+				return true;
+			}
+			LOGGER.debug("Reflinks are not supported, will not be used any more: " + caller.getErrorLog());
+		} catch (MprcException e) {
+			// SWALLOWED: we fall back to other methods
+			LOGGER.debug("Reflinks are not supported, will not be used any more: " + MprcException.getDetailedMessage(e));
+		}
+		reflinkEnabled = false;
+		FileUtilities.quietDelete(to);
+		return false;
+	}
+
+	private static boolean hardLink(final File from, final File to) {
+		try {
+			FileUtilities.createLink(from, to, false);
+			if (isComplete(from, to)) {
+				return true;
+			}
+		} catch (Exception e) {
+			// SWALLOWED: most likely the target is on a different filesystem, we copy instead
+			LOGGER.debug("Could not hard link " + to.getAbsolutePath() + ": " + MprcException.getDetailedMessage(e));
+		}
+		FileUtilities.quietDelete(to);
+		return false;
+	}
+
+	private static void copy(final File from, final File to, final String errorPrefix) {
+		FileInputStream input = null;
+		FileOutputStream output = null;
+		try {
+			input = new FileInputStream(from);
+			output = new FileOutputStream(to);
+			final FileChannel source = input.getChannel();
+			final FileChannel target = output.getChannel();
+			final long size = source.size();
+			long position = 0;
+			while (position < size) {
+				position += source.transferTo(position, size - position, target);
+			}
+		} catch (IOException e) {
+			FileUtilities.closeQuietly(output);
+			FileUtilities.quietDelete(to);
+			throw new MprcException(errorPrefix + "I/O exception", e);
+		} finally {
+			FileUtilities.closeQuietly(input);
+			FileUtilities.closeQuietly(output);
+		}
+		to.setLastModified(from.lastModified());
+	}
+
+	private static boolean isComplete(final File from, final File to) {
+		return to.isFile() && to.length() == from.length();
+	}
+}
@@ -0,0 +1,87 @@
+package edu.mayo.mprc.daemon;
+
+import java.io.Serializable;
+
+/**
+ * Snapshot of {@link CacheFolder} usage statistics.
+ *
+ * @author Roman Zenka
+ */
+public final class CacheStatistics implements Serializable {
+	private static final long serialVersionUID = 20131022L;
+
+	private static final long MEGABYTE = 1024L * 1024L;
+
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final int entries;
+	private final long size;
+	private final long maxSize;
+
+	public CacheStatistics(final long hits, final long misses, final long evictions, final int entries, final long size, final long maxSize) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.entries = entries;
+		this.size = size;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return How many lookups found a usable entry.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return How many lookups found nothing (or a stale entry).
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return How many entries were deleted to keep the cache within its size limit.
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	public int getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return Total size of the cached entries in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return Size limit of the cache in bytes, 0 if unlimited.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return Ratio of hits to all lookups, 0 if there were no lookups.
+	 */
+	public double getHitRatio() {
+		final long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "hits: " + hits + ", misses: " + misses
+				+ String.format(" (%.1f%% hit ratio)", getHitRatio() * 100.0)
+				+ ", entries: " + entries
+				+ ", size: " + size / MEGABYTE + "MB"
+				+ (maxSize > 0 ? " of " + maxSize / MEGABYTE + "MB" : "")
+				+ ", evictions: " + evictions;
+	}
+}
@@ -5,7 +5,9 @@ import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.config.*;
 import edu.mayo.mprc.config.ui.FactoryDescriptor;
 import edu.mayo.mprc.config.ui.ServiceUiFactory;
+import edu.mayo.mprc.daemon.monitor.DaemonMetrics;
 import edu.mayo.mprc.daemon.monitor.PingDaemonWorker;
+import edu.mayo.mprc.daemon.monitor.ServiceMetricsSnapshot;
 import edu.mayo.mprc.messaging.ResponseDispatcher;
 import edu.mayo.mprc.messaging.ServiceFactory;
 import edu.mayo.mprc.utilities.FileUtilities;
@@ -19,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * A daemon - collection of multiple runners that provide services.
@@ -150,6 +153,25 @@ public final class Daemon implements Checkable, Installable {
 		}
 	}
 
+	/**
+	 * @return Request statistics of all the services, plus the queue depths of the message broker if we run one.
+	 */
+	public DaemonMetrics getMetrics() {
+		final List<ServiceMetricsSnapshot> services = new ArrayList<ServiceMetricsSnapshot>(runners.size());
+		for (final AbstractRunner runner : runners) {
+			if (runner.isEnabled()) {
+				services.add(runner.getMetrics());
+			}
+		}
+		final Map<String, Long> queueDepths = new TreeMap<String, Long>();
+		for (final Object resource : resources) {
+			if (resource instanceof MessageBroker) {
+				queueDepths.putAll(((MessageBroker) resource).getQueueDepths());
+			}
+		}
+		return new DaemonMetrics(getName(), services, queueDepths);
+	}
+
 	public int getNumRunners() {
 		return runners.size();
 	}
@@ -5,6 +5,7 @@ import edu.mayo.mprc.config.*;
 import edu.mayo.mprc.config.ui.FactoryDescriptor;
 import edu.mayo.mprc.config.ui.ServiceUiFactory;
 import edu.mayo.mprc.daemon.exception.DaemonException;
+import edu.mayo.mprc.daemon.monitor.PingDaemonWorker;
 import edu.mayo.mprc.daemon.monitor.PingWorkPacket;
 import edu.mayo.mprc.daemon.worker.Worker;
 import edu.mayo.mprc.daemon.worker.WorkerFactory;
@@ -36,6 +37,10 @@ public final class SimpleRunner extends AbstractRunner {
 	 */
 	private ResourceConfig config;
 	private DependencyResolver dependencies;
+	/**
+	 * Set when our factory produces a cache, so we can report its statistics.
+	 */
+	private volatile WorkCache cache;
 
 	public SimpleRunner() {
 	}
@@ -51,12 +56,23 @@ public final class SimpleRunner extends AbstractRunner {
 		try {
 			worker = getFactory().create(config, dependencies);
 		} catch (final Exception e) {
-			request.sendResponse(e, true);
+			sendResponse(request, e, true);
 			return;
 		}
+		if (worker instanceof WorkCache) {
+			cache = (WorkCache) worker;
+		} else if (worker instanceof PingDaemonWorker) {
+			((PingDaemonWorker) worker).setDaemon(getDaemon());
+		}
 		executorService.execute(new RequestProcessor(worker, request));
 	}
 
+	@Override
+	protected CacheStatistics getCacheStatistics() {
+		final WorkCache workCache = cache;
+		return workCache == null ? null : workCache.getStatistics();
+	}
+
 	@Override
 	public String check() {
 		LOGGER.info("Checking worker for " + factory.getUserName());
@@ -37,6 +37,7 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 	private DaemonConnection daemon;
 	private final Map<String, CacheProgressReporter> workInProgress = new HashMap<String, CacheProgressReporter>(10);
 	private final CacheFolder cacheFolder = new CacheFolder();
+	private final CachePublisher publisher = new CachePublisher();
 
 	public WorkCache() {
 	}
@@ -49,6 +50,24 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 		this.cacheFolder.setCacheFolder(cacheFolder);
 	}
 
+	/**
+	 * @return Maximum total size of the cached results in bytes, 0 for unlimited.
+	 */
+	public final long getMaxCacheSize() {
+		return cacheFolder.getMaxCacheSize();
+	}
+
+	public final void setMaxCacheSize(final long maxCacheSize) {
+		cacheFolder.setMaxCacheSize(maxCacheSize);
+	}
+
+	/**
+	 * @return Cache hit/miss counts and the cache size.
+	 */
+	public final CacheStatistics getStatistics() {
+		return cacheFolder.getStatistics();
+	}
+
 	public final DaemonConnection getDaemon() {
 		return daemon;
 	}
@@ -129,6 +148,10 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 		// Find existing cache subfolder with data matching the work packet.
 		final File existingEntry = cacheFolder.lookup(lookupPacket);
 
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(String.format("Cache statistics for %s: %s", getDaemon().getConnectionName(), getStatistics()));
+		}
+
 		if (existingEntry != null) {
 			LOGGER.info(String.format("Found existing entry in cache: %s", existingEntry.getAbsolutePath()));
 			reportCachedValues(progressReporter, originalPacket, lookupPacket, existingEntry);
@@ -171,7 +194,20 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 
 		final ProgressListener listener = new MyProgressListener(lookupPacket, originalPacket, wipFolder, newReporter);
 		LOGGER.info(String.format(String.format("Cache submitting work to %s", getDaemon().getConnectionName())));
-		daemon.sendWork(modifiedWorkPacket, listener);
+		sendWork(modifiedWorkPacket, listener);
+	}
+
+	/**
+	 * Send the work to the service being cached. The listener has to be notified once all the output files
+	 * of the work packet are in place.
+	 * <p/>
+	 * Caches can override this to split the work into multiple smaller requests.
+	 *
+	 * @param workPacket Work packet with outputs going to the work-in-progress folder.
+	 * @param listener   Listener to notify about the progress.
+	 */
+	protected void sendWork(final WorkPacket workPacket, final ProgressListener listener) {
+		daemon.sendWork(workPacket, listener);
 	}
 
 	/**
@@ -188,7 +224,7 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 		LOGGER.info("Using cached values from: " + cacheFolder.getAbsolutePath());
 		progressReporter.reportStart(MonitorUtilities.getHostInformation());
 		originalPacket.reportCachedResult(progressReporter, cacheFolder, cachedFiles);
-		publishResultFiles(cacheFolder, cachedFiles, originalPacket);
+		publishResultFiles(cacheFolder, cachedFiles, originalPacket, progressReporter);
 		progressReporter.reportSuccess();
 	}
 
@@ -203,9 +239,10 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 
 	/**
 	 * Checks whether the work packet requested publishing the intermediate files.
-	 * If so, copy the intermediate files to the originally requested target.
+	 * If so, link or copy the intermediate files to the originally requested target and report how each file
+	 * got published.
 	 */
-	private void publishResultFiles(final File cacheFolder, final List<String> cacheOutputFiles, final CachableWorkPacket originalWorkPacket) {
+	private void publishResultFiles(final File cacheFolder, final List<String> cacheOutputFiles, final CachableWorkPacket originalWorkPacket, final ProgressReporter reporter) {
 		final List<String> originalOutputs = originalWorkPacket.getOutputFiles();
 
 		if (originalWorkPacket.isPublishResultFiles()) {
@@ -214,7 +251,7 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 			for (int i = 0; i < originalOutputs.size(); i++) {
 				final File fromFile = new File(cacheFolder, cacheOutputFiles.get(i));
 				final File toFile = new File(targetFolder, originalOutputs.get(i));
-				FileUtilities.copyFile(fromFile, toFile, true);
+				reporter.reportProgress(publisher.publish(fromFile, toFile));
 			}
 		}
 	}
@@ -280,7 +317,7 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 
 						// Now we only need to notify the requestor that the output file was produced elsewhere
 						workPacket.reportCachedResult(reporter, target, outputFiles);
-						publishResultFiles(target, outputFiles, originalPacket);
+						publishResultFiles(target, outputFiles, originalPacket, reporter);
 					} catch (final Exception t) {
 						reporter.reportFailure(t);
 						return;
@@ -319,6 +356,7 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 	 * @param <S> Configuration the cache takes to set itself up.
 	 */
 	public abstract static class Factory<S extends CacheConfig> extends WorkerFactoryBase<S> {
+		private static final long MEGABYTE = 1024L * 1024L;
 		private WorkCache cache;
 
 		@Override
@@ -326,6 +364,7 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 			if (cache == null) {
 				cache = createCache(config, dependencies);
 				cache.setCacheFolder(new File(config.getCacheFolder()).getAbsoluteFile());
+				cache.setMaxCacheSize(config.getMaxCacheSize() * MEGABYTE);
 				cache.setDaemon((DaemonConnection) dependencies.createSingleton(config.getService()));
 			}
 			return cache;
@@ -340,8 +379,10 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 	public static class CacheConfig implements ResourceConfig {
 		public static final String CACHE_FOLDER = "cacheFolder";
 		public static final String SERVICE = "service";
+		public static final String MAX_CACHE_SIZE = "maxCacheSize";
 		private String cacheFolder;
 		private ServiceConfig service;
+		private int maxCacheSize;
 
 		public void setService(final ServiceConfig service) {
 			this.service = service;
@@ -359,16 +400,29 @@ public abstract class WorkCache<T extends WorkPacket> implements NoLoggingWorker
 			return service;
 		}
 
+		/**
+		 * @return Maximum size of the cache in megabytes, 0 for unlimited.
+		 */
+		public int getMaxCacheSize() {
+			return maxCacheSize;
+		}
+
+		public void setMaxCacheSize(final int maxCacheSize) {
+			this.maxCacheSize = maxCacheSize;
+		}
+
 		@Override
 		public void save(final ConfigWriter writer) {
 			writer.put(CACHE_FOLDER, getCacheFolder(), "Where to cache files");
 			writer.put(SERVICE, writer.save(getService()), "Service being cached");
+			writer.put(MAX_CACHE_SIZE, getMaxCacheSize(), 0, "Maximum cache size in megabytes, least recently used entries are deleted when exceeded. 0 for unlimited");
 		}
 
 		@Override
 		public void load(final ConfigReader reader) {
 			cacheFolder = reader.get(CACHE_FOLDER);
 			service = (ServiceConfig) reader.getObject(SERVICE);
+			maxCacheSize = reader.getInteger(MAX_CACHE_SIZE, 0);
 		}
 
 		@Override
@@ -0,0 +1,41 @@
+package edu.mayo.mprc.daemon.monitor;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Metrics of all services of a daemon, plus the message queue depths if the daemon runs the message broker.
+ * Sent as a part of the {@link PingResponse}.
+ *
+ * @author Roman Zenka
+ */
+public final class DaemonMetrics implements Serializable {
+	private static final long serialVersionUID = -2290712856364139707L;
+
+	private final String daemonName;
+	private final List<ServiceMetricsSnapshot> services;
+	private final Map<String, Long> queueDepths;
+
+	public DaemonMetrics(final String daemonName, final List<ServiceMetricsSnapshot> services, final Map<String, Long> queueDepths) {
+		this.daemonName = daemonName;
+		this.services = services;
+		this.queueDepths = queueDepths;
+	}
+
+	public String getDaemonName() {
+		return daemonName;
+	}
+
+	public List<ServiceMetricsSnapshot> getServices() {
+		return Collections.unmodifiableList(services);
+	}
+
+	/**
+	 * @return Queue name to number of messages waiting in the queue. Empty if the daemon does not run an embedded broker.
+	 */
+	public Map<String, Long> getQueueDepths() {
+		return Collections.unmodifiableMap(queueDepths);
+	}
+}
@@ -16,11 +16,20 @@ public final class DaemonStatus implements Serializable {
 	private long lastResponse;
 	private String message;
 	private boolean ok;
+	private DaemonMetrics metrics;
 
 	public DaemonStatus() {
 		this(new Date(), "", true);
 	}
 
+	/**
+	 * Daemon is ok and reports its metrics.
+	 */
+	public DaemonStatus(final DaemonMetrics metrics) {
+		this();
+		this.metrics = metrics;
+	}
+
 	public DaemonStatus(final String message) {
 		this(new Date(), message, false);
 	}
@@ -55,6 +64,13 @@ public final class DaemonStatus implements Serializable {
 		return ok;
 	}
 
+	/**
+	 * @return Metrics of the daemon services, null if the daemon did not report any.
+	 */
+	public DaemonMetrics getMetrics() {
+		return metrics;
+	}
+
 	public boolean isRecentlyOk() {
 		return ok && !isTooOld(MONITOR_PERIOD_SECONDS);
 	}
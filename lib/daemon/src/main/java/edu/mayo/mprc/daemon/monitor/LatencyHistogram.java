@@ -0,0 +1,142 @@
+package edu.mayo.mprc.daemon.monitor;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in milliseconds, in the style of HdrHistogram.
+ * <p/>
+ * Each power of two is split into {@link #SUB_BUCKETS} equal buckets, so any value is known with
+ * at most 1/16 relative error, while the whole range (up to decades) takes only a few hundred counters.
+ * Recording is lock-free and can be done from any thread.
+ *
+ * @author Roman Zenka
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/**
+	 * Longer durations are recorded as this one (~35 years).
+	 */
+	private static final long MAX_VALUE = (1L << 40) - 1;
+	private static final int BUCKETS = getBucket(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram() {
+	}
+
+	/**
+	 * @param millis Duration to record. Negative values are recorded as 0.
+	 */
+	public void record(final long millis) {
+		final long value = Math.min(Math.max(millis, 0L), MAX_VALUE);
+		counts.incrementAndGet(getBucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		while (true) {
+			final long currentMax = max.get();
+			if (value <= currentMax || max.compareAndSet(currentMax, value)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return Copy of the current state. The copy is not exactly atomic, values recorded while copying
+	 *         may or may not be included.
+	 */
+	public Snapshot getSnapshot() {
+		int used = BUCKETS;
+		while (used > 0 && counts.get(used - 1) == 0) {
+			used--;
+		}
+		final long[] copy = new long[used];
+		long total = 0;
+		for (int i = 0; i < used; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		return new Snapshot(copy, total, sum.get(), max.get());
+	}
+
+	static int getBucket(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return The highest value that falls into given bucket.
+	 */
+	static long getBucketMax(final int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long subBucket = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	/**
+	 * Immutable copy of a histogram, small enough to be sent along with a ping response.
+	 */
+	public static final class Snapshot implements Serializable {
+		private static final long serialVersionUID = -4617734025195478823L;
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(final long[] counts, final long count, final long sum, final long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0.0 : (double) sum / count;
+		}
+
+		/**
+		 * @param percentile Percentile to obtain, 0-100.
+		 * @return Value below which given percentage of recorded durations fall, 0 if nothing was recorded.
+		 */
+		public long getPercentile(final double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					return Math.min(getBucketMax(i), max);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return "count: " + count + ", median: " + getPercentile(50) + "ms, 95%: " + getPercentile(95) + "ms, max: " + max + "ms";
+		}
+	}
+}
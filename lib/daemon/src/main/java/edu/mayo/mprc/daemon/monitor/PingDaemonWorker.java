@@ -6,6 +6,7 @@ import edu.mayo.mprc.config.ResourceConfig;
 import edu.mayo.mprc.config.ui.ResourceConfigBase;
 import edu.mayo.mprc.config.ui.ServiceUiFactory;
 import edu.mayo.mprc.config.ui.UiBuilder;
+import edu.mayo.mprc.daemon.Daemon;
 import edu.mayo.mprc.daemon.exception.DaemonException;
 import edu.mayo.mprc.daemon.worker.*;
 import edu.mayo.mprc.utilities.progress.UserProgressReporter;
@@ -23,12 +24,21 @@ public final class PingDaemonWorker extends WorkerBase implements NoLoggingWorke
 	public static final String NAME = "Ping Responder";
 	public static final String DESC = "Responds to pings with status information. Automatically set for each daemon.";
 
+	private Daemon daemon;
+
 	@Override
 	public void process(final WorkPacket workPacket, final File tempWorkFolder, final UserProgressReporter reporter) {
 		if (!(workPacket instanceof PingWorkPacket)) {
 			throw new DaemonException("Unknown input format: " + workPacket.getClass().getName() + " expected string");
 		}
-		reporter.reportProgress(new PingResponse());
+		reporter.reportProgress(daemon == null ? new PingResponse() : new PingResponse(daemon.getMetrics()));
+	}
+
+	/**
+	 * @param daemon The daemon whose metrics we report with each ping.
+	 */
+	public void setDaemon(final Daemon daemon) {
+		this.daemon = daemon;
 	}
 
 	public String toString() {
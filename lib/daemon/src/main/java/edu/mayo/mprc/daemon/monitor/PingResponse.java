@@ -8,7 +8,15 @@ import edu.mayo.mprc.utilities.progress.ProgressInfo;
 public final class PingResponse implements ProgressInfo {
 	private static final long serialVersionUID = -538020049361746255L;
 
-	private DaemonStatus status = new DaemonStatus();
+	private DaemonStatus status;
+
+	public PingResponse() {
+		status = new DaemonStatus();
+	}
+
+	public PingResponse(final DaemonMetrics metrics) {
+		status = new DaemonStatus(metrics);
+	}
 
 	public DaemonStatus getStatus() {
 		return status;
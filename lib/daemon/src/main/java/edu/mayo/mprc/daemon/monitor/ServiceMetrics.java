@@ -0,0 +1,101 @@
+package edu.mayo.mprc.daemon.monitor;
+
+import edu.mayo.mprc.daemon.CacheStatistics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live request statistics of a single service.
+ * <p/>
+ * The runner reports each request when it is queued, started and finished. We count the requests in each state
+ * and record how long they waited before starting and how long they took to process.
+ * All methods are thread safe.
+ *
+ * @author Roman Zenka
+ */
+public final class ServiceMetrics {
+	private final long created = System.currentTimeMillis();
+
+	/**
+	 * Requests that did not finish yet. Value is [queued time, started time] in nanoseconds, started is 0 until the request starts.
+	 */
+	private final ConcurrentMap<Object, long[]> pending = new ConcurrentHashMap<Object, long[]>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicLong succeeded = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final LatencyHistogram queueWait = new LatencyHistogram();
+	private final LatencyHistogram processing = new LatencyHistogram();
+
+	public ServiceMetrics() {
+	}
+
+	public void requestQueued(final Object request) {
+		if (pending.putIfAbsent(request, new long[]{System.nanoTime(), 0L}) == null) {
+			queued.incrementAndGet();
+		}
+	}
+
+	/**
+	 * A request started being processed. Repeated calls for the same request are ignored.
+	 */
+	public void requestStarted(final Object request) {
+		final long[] times = pending.get(request);
+		if (times == null) {
+			return;
+		}
+		synchronized (times) {
+			if (times[1] != 0L) {
+				return;
+			}
+			times[1] = System.nanoTime();
+			queueWait.record(toMillis(times[1] - times[0]));
+		}
+		queued.decrementAndGet();
+		running.incrementAndGet();
+	}
+
+	/**
+	 * @param success False if the request failed.
+	 */
+	public void requestFinished(final Object request, final boolean success) {
+		final long[] times = pending.remove(request);
+		if (times == null) {
+			return;
+		}
+		final long now = System.nanoTime();
+		synchronized (times) {
+			if (times[1] == 0L) {
+				// Failed before it even started
+				queueWait.record(toMillis(now - times[0]));
+				queued.decrementAndGet();
+			} else {
+				processing.record(toMillis(now - times[1]));
+				running.decrementAndGet();
+			}
+		}
+		if (success) {
+			succeeded.incrementAndGet();
+		} else {
+			failed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @param name            Name of the service.
+	 * @param cacheStatistics Statistics of the cache in front of the service, null if the service is not a cache.
+	 */
+	public ServiceMetricsSnapshot getSnapshot(final String name, final CacheStatistics cacheStatistics) {
+		return new ServiceMetricsSnapshot(name, created, queued.get(), running.get(), succeeded.get(), failed.get(),
+				queueWait.getSnapshot(), processing.getSnapshot(), cacheStatistics);
+	}
+
+	private static long toMillis(final long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+}
@@ -0,0 +1,35 @@
+package edu.mayo.mprc.daemon.monitor;
+
+/**
+ * JMX view of {@link ServiceMetrics}. Durations are in milliseconds.
+ *
+ * @author Roman Zenka
+ */
+public interface ServiceMetricsMBean {
+	int getQueued();
+
+	int getRunning();
+
+	long getSucceeded();
+
+	long getFailed();
+
+	double getThroughputPerHour();
+
+	long getQueueWaitMedian();
+
+	long getQueueWait95thPercentile();
+
+	long getQueueWaitMax();
+
+	long getProcessingMedian();
+
+	long getProcessing95thPercentile();
+
+	long getProcessingMax();
+
+	/**
+	 * @return Cache hit ratio (0-1), 0 if the service is not a cache.
+	 */
+	double getCacheHitRatio();
+}
@@ -0,0 +1,117 @@
+package edu.mayo.mprc.daemon.monitor;
+
+import edu.mayo.mprc.daemon.CacheStatistics;
+
+import java.io.Serializable;
+
+/**
+ * Request statistics of a single service at a point in time. See {@link ServiceMetrics}.
+ *
+ * @author Roman Zenka
+ */
+public final class ServiceMetricsSnapshot implements Serializable {
+	private static final long serialVersionUID = 3381027365204468531L;
+	private static final double MILLIS_IN_HOUR = 60.0 * 60.0 * 1000.0;
+
+	private final String name;
+	private final long since;
+	private final long taken;
+	private final int queued;
+	private final int running;
+	private final long succeeded;
+	private final long failed;
+	private final LatencyHistogram.Snapshot queueWait;
+	private final LatencyHistogram.Snapshot processing;
+	private final CacheStatistics cacheStatistics;
+
+	public ServiceMetricsSnapshot(final String name, final long since, final int queued, final int running,
+	                              final long succeeded, final long failed,
+	                              final LatencyHistogram.Snapshot queueWait, final LatencyHistogram.Snapshot processing,
+	                              final CacheStatistics cacheStatistics) {
+		this.name = name;
+		this.since = since;
+		taken = System.currentTimeMillis();
+		this.queued = queued;
+		this.running = running;
+		this.succeeded = succeeded;
+		this.failed = failed;
+		this.queueWait = queueWait;
+		this.processing = processing;
+		this.cacheStatistics = cacheStatistics;
+	}
+
+	/**
+	 * @return Name of the service.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return When did we start collecting the statistics (ms since epoch).
+	 */
+	public long getSince() {
+		return since;
+	}
+
+	/**
+	 * @return Requests received, but not started yet.
+	 */
+	public int getQueued() {
+		return queued;
+	}
+
+	/**
+	 * @return Requests being processed right now.
+	 */
+	public int getRunning() {
+		return running;
+	}
+
+	public long getSucceeded() {
+		return succeeded;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * @return How long the requests waited before they started, in milliseconds.
+	 */
+	public LatencyHistogram.Snapshot getQueueWait() {
+		return queueWait;
+	}
+
+	/**
+	 * @return How long the requests took to process, in milliseconds.
+	 */
+	public LatencyHistogram.Snapshot getProcessing() {
+		return processing;
+	}
+
+	/**
+	 * @return Statistics of the cache, null if the service is not a cache.
+	 */
+	public CacheStatistics getCacheStatistics() {
+		return cacheStatistics;
+	}
+
+	/**
+	 * @return Finished requests per hour, averaged since the statistics started.
+	 */
+	public double getThroughputPerHour() {
+		final long elapsed = taken - since;
+		return elapsed <= 0 ? 0.0 : (succeeded + failed) * MILLIS_IN_HOUR / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return name + " - queued: " + queued + ", running: " + running
+				+ ", succeeded: " + succeeded + ", failed: " + failed
+				+ String.format(" (%.1f/hour)", getThroughputPerHour())
+				+ ", queue wait: " + queueWait
+				+ ", processing: " + processing
+				+ (cacheStatistics != null ? ", cache: " + cacheStatistics : "");
+	}
+}
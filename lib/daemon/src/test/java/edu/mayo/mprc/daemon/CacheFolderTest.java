@@ -0,0 +1,158 @@
+package edu.mayo.mprc.daemon;
+
+import com.google.common.collect.Lists;
+import edu.mayo.mprc.daemon.worker.WorkPacket;
+import edu.mayo.mprc.daemon.worker.WorkPacketBase;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.progress.ProgressReporter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * @author Roman Zenka
+ */
+public final class CacheFolderTest {
+	private static final String OUTPUT_FILE = "output.txt";
+
+	private File folder;
+
+	@BeforeMethod
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldPersistIndex() {
+		final CacheFolder cache = createCache();
+		Assert.assertNull(cache.lookup(new TestPacket("task1")));
+		final File entry = store(cache, "task1", 100);
+		Assert.assertEquals(cache.lookup(new TestPacket("task1")), entry);
+		Assert.assertNull(cache.lookup(new TestPacket("task2")));
+
+		final CacheStatistics statistics = cache.getStatistics();
+		Assert.assertEquals(statistics.getHits(), 1);
+		Assert.assertEquals(statistics.getMisses(), 2);
+		Assert.assertEquals(statistics.getEntries(), 1);
+		Assert.assertTrue(statistics.getSize() >= 100, "The size must include the output file");
+
+		final CacheFolder reopened = createCache();
+		Assert.assertEquals(reopened.lookup(new TestPacket("task1")), entry, "The entry must survive restart");
+		Assert.assertEquals(reopened.getStatistics().getSize(), statistics.getSize());
+	}
+
+	@Test
+	public void shouldIndexEntriesWithoutEntryFile() {
+		final File entry = store(createCache(), "task1", 100);
+		FileUtilities.quietDelete(new File(entry, CacheIndex.ENTRY_FILE_NAME));
+
+		final CacheFolder reopened = createCache();
+		Assert.assertEquals(reopened.lookup(new TestPacket("task1")), entry);
+		Assert.assertTrue(new File(entry, CacheIndex.ENTRY_FILE_NAME).exists(), "The entry file must be recreated");
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsed() throws InterruptedException {
+		final CacheFolder cache = createCache();
+		cache.setMinEvictionAge(0);
+		final File entry1 = store(cache, "task1", 1000);
+		Thread.sleep(10);
+		final File entry2 = store(cache, "task2", 1000);
+		Thread.sleep(10);
+		final File entry3 = store(cache, "task3", 1000);
+		Thread.sleep(10);
+		Assert.assertEquals(cache.lookup(new TestPacket("task1")), entry1);
+
+		cache.setMaxCacheSize(cache.getStatistics().getSize() - 1);
+		cache.evict();
+
+		Assert.assertFalse(entry2.exists(), "Least recently used entry must be evicted");
+		Assert.assertTrue(entry1.exists());
+		Assert.assertTrue(entry3.exists());
+		Assert.assertNull(cache.lookup(new TestPacket("task2")));
+		Assert.assertEquals(cache.getStatistics().getEvictions(), 1);
+		Assert.assertEquals(cache.getStatistics().getEntries(), 2);
+	}
+
+	@Test
+	public void shouldNotEvictRecentlyUsed() {
+		final CacheFolder cache = createCache();
+		final File entry = store(cache, "task1", 1000);
+		cache.setMaxCacheSize(1);
+		cache.evict();
+		Assert.assertTrue(entry.exists());
+		Assert.assertEquals(cache.getStatistics().getEvictions(), 0);
+	}
+
+	private CacheFolder createCache() {
+		final CacheFolder cache = new CacheFolder();
+		cache.setCacheFolder(folder);
+		cache.install();
+		return cache;
+	}
+
+	private static File store(final CacheFolder cache, final String task, final int size) {
+		final TestPacket packet = new TestPacket(task);
+		final File workFolder = cache.makeWorkFolder(packet);
+		final StringBuilder output = new StringBuilder(size);
+		for (int i = 0; i < size; i++) {
+			output.append('x');
+		}
+		FileUtilities.writeStringToFile(new File(workFolder, OUTPUT_FILE), output.toString(), true);
+		return cache.insert(packet, workFolder);
+	}
+
+	private static final class TestPacket extends WorkPacketBase implements CachableWorkPacket {
+		private static final long serialVersionUID = 3409651372931874613L;
+
+		private final String task;
+
+		private TestPacket(final String task) {
+			super(false);
+			this.task = task;
+		}
+
+		@Override
+		public boolean isPublishResultFiles() {
+			return false;
+		}
+
+		@Override
+		public File getOutputFile() {
+			return null;
+		}
+
+		@Override
+		public String getStringDescriptionOfTask() {
+			return task;
+		}
+
+		@Override
+		public WorkPacket translateToCachePacket(final File cacheFolder) {
+			return this;
+		}
+
+		@Override
+		public List<String> getOutputFiles() {
+			return Lists.newArrayList(OUTPUT_FILE);
+		}
+
+		@Override
+		public boolean cacheIsStale(final File subFolder, final List<String> outputFiles) {
+			return false;
+		}
+
+		@Override
+		public void reportCachedResult(final ProgressReporter reporter, final File targetFolder, final List<String> outputFiles) {
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package edu.mayo.mprc.daemon;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author Roman Zenka
+ */
+public final class CachePublisherTest {
+	private static final String CONTENTS = "cached result\n";
+
+	private File folder;
+	private File cached;
+
+	@BeforeMethod
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+		cached = new File(folder, "cache/result.txt");
+		FileUtilities.ensureFolderExists(cached.getParentFile());
+		FileUtilities.writeStringToFile(cached, CONTENTS, true);
+		cached.setLastModified(1000000000000L);
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldCopy() throws IOException {
+		final File target = new File(folder, "target/result.txt");
+		final CachePublishInfo info = new CachePublisher(false, false).publish(cached, target);
+
+		Assert.assertEquals(info.getMode(), CachePublishInfo.Mode.COPY);
+		Assert.assertEquals(info.getSize(), CONTENTS.length());
+		Assert.assertEquals(Files.toString(target, Charsets.UTF_8), CONTENTS);
+		Assert.assertEquals(target.lastModified(), cached.lastModified());
+	}
+
+	@Test
+	public void shouldRepublishWithoutDamagingCache() throws IOException {
+		final File target = new File(folder, "target/result.txt");
+		final CachePublisher publisher = new CachePublisher();
+		publisher.publish(cached, target);
+		final CachePublishInfo info = publisher.publish(cached, target);
+
+		Assert.assertNotNull(info.getMode());
+		Assert.assertEquals(Files.toString(target, Charsets.UTF_8), CONTENTS);
+		Assert.assertEquals(Files.toString(cached, Charsets.UTF_8), CONTENTS, "The cached file must stay intact");
+	}
+}
@@ -0,0 +1,75 @@
+package edu.mayo.mprc.daemon.monitor;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * @author Roman Zenka
+ */
+public final class ServiceMetricsTest {
+
+	@Test
+	public void shouldBucketValues() {
+		for (long value = 0; value < 100000; value++) {
+			final int bucket = LatencyHistogram.getBucket(value);
+			Assert.assertTrue(value <= LatencyHistogram.getBucketMax(bucket), "Value " + value + " is above its bucket");
+			if (bucket > 0) {
+				Assert.assertTrue(value > LatencyHistogram.getBucketMax(bucket - 1), "Value " + value + " belongs to previous bucket");
+			}
+		}
+	}
+
+	@Test
+	public void shouldReportPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		Assert.assertEquals(histogram.getSnapshot().getPercentile(50), 0);
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		final LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+		Assert.assertEquals(snapshot.getCount(), 1000);
+		Assert.assertEquals(snapshot.getMax(), 1000);
+		Assert.assertEquals(snapshot.getMean(), 500.5, 1e-9);
+		assertWithin(snapshot.getPercentile(50), 500);
+		assertWithin(snapshot.getPercentile(95), 950);
+		Assert.assertEquals(snapshot.getPercentile(100), 1000);
+	}
+
+	@Test
+	public void shouldCountRequests() {
+		final ServiceMetrics metrics = new ServiceMetrics();
+		final Object first = new Object();
+		final Object second = new Object();
+		final Object third = new Object();
+		metrics.requestQueued(first);
+		metrics.requestQueued(second);
+		metrics.requestQueued(third);
+		metrics.requestStarted(first);
+		metrics.requestStarted(first);
+		metrics.requestStarted(second);
+
+		ServiceMetricsSnapshot snapshot = metrics.getSnapshot("test", null);
+		Assert.assertEquals(snapshot.getQueued(), 1);
+		Assert.assertEquals(snapshot.getRunning(), 2);
+		Assert.assertEquals(snapshot.getQueueWait().getCount(), 2);
+
+		metrics.requestFinished(first, true);
+		metrics.requestFinished(second, false);
+		metrics.requestFinished(third, false);
+		metrics.requestFinished(third, false);
+
+		snapshot = metrics.getSnapshot("test", null);
+		Assert.assertEquals(snapshot.getName(), "test");
+		Assert.assertEquals(snapshot.getQueued(), 0);
+		Assert.assertEquals(snapshot.getRunning(), 0);
+		Assert.assertEquals(snapshot.getSucceeded(), 1);
+		Assert.assertEquals(snapshot.getFailed(), 2);
+		Assert.assertEquals(snapshot.getQueueWait().getCount(), 3);
+		Assert.assertEquals(snapshot.getProcessing().getCount(), 2);
+		Assert.assertNull(snapshot.getCacheStatistics());
+	}
+
+	private static void assertWithin(final long actual, final long expected) {
+		Assert.assertTrue(Math.abs(actual - expected) <= expected / 16, "Expected about " + expected + ", got " + actual);
+	}
+}
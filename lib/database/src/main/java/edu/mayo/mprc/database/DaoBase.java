@@ -238,6 +238,8 @@ public abstract class DaoBase implements Dao, SessionProvider {
 	 * Adds a hashed object, making sure we do not store the same bag twice.
 	 * An additional field is used for storing a hash key for the collection. This is used to optimize the equality checking.
 	 * A bad does not care about item ordering. It supports item entered more than once.
+	 * <p/>
+	 * The bags already seen are remembered in {@link HashedCollectionCache}.
 	 *
 	 * @param bag The set to update.
 	 */
@@ -246,21 +248,32 @@ public abstract class DaoBase implements Dao, SessionProvider {
 
 		bag.calculateHash();
 
+		final HashedCollectionCache cache = HashedCollectionCache.forSession(session);
+		final Integer cachedId = cache.get(session, bag);
+		if (cachedId != null) {
+			bag.setId(cachedId);
+			return (T) session.load(bag.getClass(), cachedId);
+		}
+
 		final T existing = (T) getMatchingCollection(bag, "hash", bag.getClass().getName(), bag.getHash());
 
 		if (existing != null) {
 			// Item equals the saved object, bring forth the additional parameters that do not participate in equality.
 			bag.setId(existing.getId());
+			cache.put(session, bag);
 			return existing;
 		}
 
 		session.save(bag);
+		cache.put(session, bag);
 		return bag;
 	}
 
 	/**
 	 * Adds a hashed object, making sure we do not store the same bag twice.
 	 * An additional field is used for storing a hash key for the collection. This is used to optimize the equality checking.
+	 * <p/>
+	 * The sets already seen are remembered in {@link HashedCollectionCache}.
 	 *
 	 * @param set The set to update.
 	 */
@@ -269,18 +282,39 @@ public abstract class DaoBase implements Dao, SessionProvider {
 
 		set.calculateHash();
 
+		final HashedCollectionCache cache = HashedCollectionCache.forSession(session);
+		final Integer cachedId = cache.get(session, set);
+		if (cachedId != null) {
+			set.setId(cachedId);
+			return (T) session.load(set.getClass(), cachedId);
+		}
+
 		final T existing = (T) getMatchingCollection(set, "hash", set.getClass().getName(), set.getHash());
 
 		if (existing != null) {
 			// Item equals the saved object, bring forth the additional parameters that do not participate in equality.
 			set.setId(existing.getId());
+			cache.put(session, set);
 			return existing;
 		}
 
 		session.save(set);
+		cache.put(session, set);
 		return set;
 	}
 
+	/**
+	 * Delete a hashed collection from the database. Use this instead of deleting the collection directly,
+	 * so the collection is no longer returned from the {@link HashedCollectionCache}.
+	 *
+	 * @param collection Collection to delete.
+	 */
+	protected final <T extends PersistableBase & HashedCollection<?>> void deleteHashedCollection(final T collection) {
+		final Session session = getSession();
+		HashedCollectionCache.forSession(session).invalidate(collection.getClass(), collection.getHash());
+		session.delete(collection);
+	}
+
 	/**
 	 * Save any kind of set into the database, making sure we do not save the same set twice.
 	 *
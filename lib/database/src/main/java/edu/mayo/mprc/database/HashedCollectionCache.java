@@ -0,0 +1,247 @@
+package edu.mayo.mprc.database;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers ids of {@link HashedCollection}s that are stored in the database, so the same collection
+ * does not have to be looked up by a query again.
+ * <p/>
+ * The collections are keyed by their class and hash. Each entry also keeps the sorted ids of the collection members,
+ * so a hit is verified without touching the database. Hash collisions simply miss.
+ * <p/>
+ * The collections stored within a transaction become visible to other threads only once the transaction commits,
+ * so a rollback never leaves ids of rows that do not exist in the cache.
+ * <p/>
+ * There is one cache per session factory, holding at most {@link #MAX_ENTRIES} least recently used collections.
+ *
+ * @author Roman Zenka
+ */
+public final class HashedCollectionCache {
+	/**
+	 * How many collections to remember.
+	 */
+	public static final int MAX_ENTRIES = 100000;
+
+	private static final Map<SessionFactory, HashedCollectionCache> CACHES = new WeakHashMap<SessionFactory, HashedCollectionCache>();
+
+	/**
+	 * Committed entries in least recently used order. Guarded by this.
+	 */
+	private final Map<Key, Entry> entries;
+
+	/**
+	 * Entries stored within the current thread's transaction.
+	 */
+	private final ThreadLocal<Pending> pending = new ThreadLocal<Pending>();
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+
+	HashedCollectionCache(final int maxEntries) {
+		entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 20141020;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Key, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param session Session to get the cache for.
+	 * @return The cache shared by all sessions of the same factory.
+	 */
+	public static HashedCollectionCache forSession(final Session session) {
+		final SessionFactory sessionFactory = session.getSessionFactory();
+		synchronized (CACHES) {
+			HashedCollectionCache cache = CACHES.get(sessionFactory);
+			if (cache == null) {
+				cache = new HashedCollectionCache(MAX_ENTRIES);
+				CACHES.put(sessionFactory, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * @param session    Current session.
+	 * @param collection Collection to look up. Its hash has to be calculated already.
+	 * @return Id of identical collection stored in the database, null if not known.
+	 */
+	public Integer get(final Session session, final HashedCollection<? extends PersistableBase> collection) {
+		final Key key = new Key(collection.getClass(), collection.getHash());
+		final int[] members = getMemberIds(collection);
+
+		Entry entry = null;
+		final Pending current = getPending(session, false);
+		if (current != null) {
+			entry = current.entries.get(key);
+		}
+		if (entry == null || !entry.matches(members)) {
+			synchronized (this) {
+				entry = entries.get(key);
+			}
+		}
+		if (entry != null && entry.matches(members)) {
+			hits.incrementAndGet();
+			return entry.id;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Remember a collection that is stored in the database.
+	 *
+	 * @param session    Current session. The collection becomes visible to others when its transaction commits.
+	 * @param collection Saved collection. Its hash has to be calculated already.
+	 */
+	public <T extends PersistableBase & HashedCollection<? extends PersistableBase>> void put(final Session session, final T collection) {
+		if (collection.getId() == null) {
+			return;
+		}
+		final Pending current = getPending(session, true);
+		if (current != null) {
+			current.entries.put(new Key(collection.getClass(), collection.getHash()),
+					new Entry(collection.getId(), getMemberIds(collection)));
+		}
+	}
+
+	/**
+	 * Forget a collection, for instance because it got deleted.
+	 */
+	public void invalidate(final Class<?> clazz, final long hash) {
+		final Key key = new Key(clazz, hash);
+		final Pending current = pending.get();
+		if (current != null) {
+			current.entries.remove(key);
+		}
+		synchronized (this) {
+			entries.remove(key);
+		}
+	}
+
+	/**
+	 * @return How many lookups found the collection.
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return How many lookups had to go to the database.
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private Pending getPending(final Session session, final boolean create) {
+		final Transaction transaction = session.getTransaction();
+		Pending current = pending.get();
+		if (current != null && current.transaction == transaction) {
+			return current;
+		}
+		if (!create || !transaction.isActive()) {
+			return null;
+		}
+		current = new Pending(transaction);
+		transaction.registerSynchronization(current);
+		pending.set(current);
+		return current;
+	}
+
+	private void publish(final Map<Key, Entry> committed) {
+		synchronized (this) {
+			entries.putAll(committed);
+		}
+	}
+
+	private static int[] getMemberIds(final HashedCollection<? extends PersistableBase> collection) {
+		final int[] ids = new int[collection.size()];
+		int i = 0;
+		for (final PersistableBase member : collection) {
+			ids[i++] = member.getId();
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * Collections stored within a single transaction.
+	 */
+	private final class Pending implements Synchronization {
+		private final Transaction transaction;
+		private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+
+		private Pending(final Transaction transaction) {
+			this.transaction = transaction;
+		}
+
+		@Override
+		public void beforeCompletion() {
+		}
+
+		@Override
+		public void afterCompletion(final int status) {
+			if (status == Status.STATUS_COMMITTED) {
+				publish(entries);
+			}
+			if (pending.get() == this) {
+				pending.remove();
+			}
+		}
+	}
+
+	private static final class Key {
+		private final Class<?> clazz;
+		private final long hash;
+
+		private Key(final Class<?> clazz, final long hash) {
+			this.clazz = clazz;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) o;
+			return hash == key.hash && clazz.equals(key.clazz);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * clazz.hashCode() + (int) (hash ^ (hash >>> 32));
+		}
+	}
+
+	private static final class Entry {
+		private final int id;
+		private final int[] members;
+
+		private Entry(final int id, final int[] members) {
+			this.id = id;
+			this.members = members;
+		}
+
+		boolean matches(final int[] memberIds) {
+			return Arrays.equals(members, memberIds);
+		}
+	}
+}
@@ -1,15 +1,21 @@
 package edu.mayo.mprc.database.bulk;
 
 import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.database.HashedCollectionCache;
 import edu.mayo.mprc.database.PersistableBase;
 import edu.mayo.mprc.database.PersistableHashedSetBase;
 import edu.mayo.mprc.database.SessionProvider;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
+import org.hibernate.Session;
 
 import java.text.MessageFormat;
+import java.util.Collection;
 
 /**
+ * Bulk loads hashed sets. The sets found in {@link HashedCollectionCache} get their ids right away,
+ * only the rest goes through the temporary tables.
+ *
  * @author Roman Zenka
  */
 public abstract class BulkHashedSetLoader<T extends PersistableHashedSetBase<? extends PersistableBase>> extends BulkLoader<T> {
@@ -34,6 +40,27 @@ public abstract class BulkHashedSetLoader<T extends PersistableHashedSetBase<? e
 
 	public abstract String getMemberTableValue();
 
+	@Override
+	public void addObjects(final Collection<? extends T> values) {
+		final Session session = getSession();
+		final HashedCollectionCache cache = HashedCollectionCache.forSession(session);
+		for (final T value : values) {
+			if (value.getId() == null) {
+				value.calculateHash();
+				final Integer cachedId = cache.get(session, value);
+				if (cachedId != null) {
+					value.setId(cachedId);
+				}
+			}
+		}
+
+		super.addObjects(values);
+
+		for (final T value : values) {
+			cache.put(session, value);
+		}
+	}
+
 	@Override
 	public String getEqualityString() {
 		return MessageFormat.format("" +
@@ -1,6 +1,7 @@
 package edu.mayo.mprc.database.bulk;
 
 import edu.mayo.mprc.database.DaoTest;
+import edu.mayo.mprc.database.HashedCollectionCache;
 import edu.mayo.mprc.database.TestList;
 import edu.mayo.mprc.database.TestSetMember;
 import org.testng.Assert;
@@ -67,4 +68,42 @@ public final class BulkLoadSetTest extends DaoTest {
 
 		dao.commit();
 	}
+
+	@Test
+	public void shouldReuseCommittedSets() {
+		dao.begin();
+		final List<TestSetMember> members = new ArrayList<TestSetMember>(3);
+		for (int i = 0; i < 3; i++) {
+			members.add(dao.save(new TestSetMember("member #" + i), true));
+		}
+		dao.commit();
+
+		// Rolled back sets must not be reused
+		dao.begin();
+		final HashedCollectionCache cache = HashedCollectionCache.forSession(dao.getSession());
+		final long initialHits = cache.getHitCount();
+		new TestSetLoader(dao, dao).addObjects(Arrays.asList(makeList(members)));
+		dao.rollback();
+
+		dao.begin();
+		final TestList first = makeList(members);
+		new TestSetLoader(dao, dao).addObjects(Arrays.asList(first));
+		dao.commit();
+		Assert.assertEquals(cache.getHitCount(), initialHits, "The rolled back set must not be in the cache");
+
+		dao.begin();
+		final TestList second = makeList(members);
+		new TestSetLoader(dao, dao).addObjects(Arrays.asList(second));
+		dao.commit();
+		Assert.assertEquals(cache.getHitCount(), initialHits + 1, "The committed set is in the cache");
+		Assert.assertEquals(second.getId(), first.getId());
+	}
+
+	private static TestList makeList(final List<TestSetMember> members) {
+		final TestList list = new TestList();
+		for (final TestSetMember member : members) {
+			list.add(member);
+		}
+		return list;
+	}
 }
@@ -72,6 +72,11 @@ public final class CurationExecutor implements Runnable {
 	private File localTempFolder;
 	private File fastaArchiveFolder;
 
+	/**
+	 * how many threads process the fused {@link SequenceCurationStep}s
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
 
 	/**
 	 * Creates a new CurationExecutor given the curator you want to execute.  We also initialize the Status object that
@@ -151,7 +156,9 @@ public final class CurationExecutor implements Runnable {
 
 		//for each step in the curation
 		final CurationStep lastStep = steps.get(steps.size() - 1);
-		for (final CurationStep step : steps) {
+		int stepIndex = 0;
+		while (stepIndex < steps.size()) {
+			final CurationStep step = steps.get(stepIndex);
 			//if we have been interupted then exit.  This is pretty course grained interuption
 			//but it would take a lot more work to make it finer grained.
 			if (status.isInterrupted()) {
@@ -159,6 +166,17 @@ public final class CurationExecutor implements Runnable {
 				break;
 			}
 
+			// Steps processing sequences one at a time are run together, in parallel
+			final List<SequenceCurationStep> fusedSteps = getFusableSteps(steps, stepIndex);
+			if (!fusedSteps.isEmpty()) {
+				stepIndex += fusedSteps.size();
+				if (performFusedSteps(fusedSteps, stepIndex == steps.size())) {
+					return true;
+				}
+				continue;
+			}
+			stepIndex++;
+
 			//increment the step counter
 			status.incrementStep();
 
@@ -261,6 +279,115 @@ public final class CurationExecutor implements Runnable {
 		return false;
 	}
 
+	/**
+	 * @return Consecutive {@link SequenceCurationStep}s starting at given index that can be run in a single pass.
+	 *         Empty if the step at given index cannot be fused.
+	 */
+	private List<SequenceCurationStep> getFusableSteps(final List<CurationStep> steps, final int start) {
+		final List<SequenceCurationStep> result = new ArrayList<SequenceCurationStep>();
+		// The very first step has no input database to process
+		if (outStream == null) {
+			return result;
+		}
+		for (int i = start; i < steps.size() && result.size() < FusedCurationPass.MAX_STEPS; i++) {
+			final CurationStep step = steps.get(i);
+			// Steps failing the validation are run on their own, so they report the failure the usual way
+			if (!(step instanceof SequenceCurationStep) || !step.preValidate(curationDao).isOK()) {
+				break;
+			}
+			result.add((SequenceCurationStep) step);
+		}
+		return result;
+	}
+
+	/**
+	 * Run given steps in a single pass over the output of the previous step.
+	 *
+	 * @param fusedSteps Steps to run.
+	 * @param includesLastStep True if the last of the steps is the last step of the curation.
+	 * @return true if there was an error
+	 */
+	private boolean performFusedSteps(final List<SequenceCurationStep> fusedSteps, final boolean includesLastStep) {
+		final int firstStepNumber = status.getCurrentStepNumber() + 1;
+		for (int i = 0; i < fusedSteps.size(); i++) {
+			status.incrementStep();
+			status.addMessage("Step " + status.getCurrentStepNumber() + " has begun");
+		}
+
+		final StepValidation[] validations = new StepValidation[fusedSteps.size()];
+		for (int i = 0; i < validations.length; i++) {
+			validations[i] = new StepValidation();
+		}
+		final StepValidation lastValidation = validations[validations.length - 1];
+
+		final File inFile = outStream.getFile();
+		inStream = null;
+		final File newOutFile = new File(tempDirectory.getPath(), String.valueOf(status.getCurrentStepNumber()));
+		int[] counts = null;
+		try {
+			final FASTAOutputStream fastaOutputStream = new FASTAOutputStream(newOutFile);
+			fastaOutputStream.setCleanupHeaders(includesLastStep);
+			outStream = fastaOutputStream;
+			counts = new FusedCurationPass(fusedSteps, this, threads, FusedCurationPass.DEFAULT_CHUNK_SIZE, tempDirectory)
+					.run(inFile, outStream, status);
+		} catch (final IOException e) {
+			LOGGER.error(e);
+			validations[0].addMessageAndException("Error setting up the next output file " + newOutFile, e);
+		} catch (final FusedCurationPass.StepFailedException e) {
+			LOGGER.error(e);
+			validations[e.getStep()].addMessageAndException(e.getMessage(), e);
+		} catch (final Exception e) {
+			LOGGER.error(e);
+			lastValidation.addMessageAndException(e.getMessage(), e);
+		} finally {
+			outStream.close();
+		}
+
+		if (includesLastStep && counts != null) {
+			final String message = FASTAInputStream.isFASTAFileValid(outStream.getFile(), false);
+			if (message != null) {
+				lastValidation.addMessage(message);
+			}
+		}
+
+		for (int i = 0; i < fusedSteps.size(); i++) {
+			final StepValidation postValidation = validations[i];
+			if (postValidation.isOK()) {
+				// The steps before the failed one did not complete either, but there is nothing to report for them
+				if (counts == null) {
+					continue;
+				}
+				postValidation.setCompletionCount(counts[i]);
+				fusedSteps.get(i).setLastRunCompletionCount(counts[i]);
+				status.addCompletedStepValidation(postValidation);
+				status.addMessage("Step " + (firstStepNumber + i) + " completed with " +
+						postValidation.getCompletionCount() + " sequences");
+			} else {
+				for (final String msg : postValidation.getMessages()) {
+					status.addMessage("Step failed: " + msg);
+				}
+				status.addFailedStepValidation(postValidation);
+				status.setToDone(); //break out of the step loop
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return How many threads run the steps that process sequences one at a time.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads How many threads run the steps that process sequences one at a time.
+	 */
+	public void setThreads(final int threads) {
+		this.threads = threads;
+	}
+
 	/**
 	 * gets the status object of this curation.  You might want to get it before you run execute because it will allow
 	 * you to get feedback as far as progress is concerned.  This feature will require some concurrency but it shouldn't
@@ -0,0 +1,320 @@
+package edu.mayo.mprc.dbcurator.model;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.fasta.DBOutputStream;
+import edu.mayo.mprc.fasta.FASTAInputStream;
+import edu.mayo.mprc.fasta.FASTAOutputStream;
+import edu.mayo.mprc.fasta.IndexedFasta;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs consecutive {@link SequenceCurationStep}s in a single pass over a FASTA file.
+ * <p/>
+ * The input is split at sequence boundaries into chunks of {@link #DEFAULT_CHUNK_SIZE} sequences
+ * (using {@link IndexedFasta}, so the workers decode their chunks themselves). Each chunk is pushed through all
+ * the steps on a thread pool and the results are written in the chunk order, so the output does not depend
+ * on the amount of threads.
+ * <p/>
+ * A step can add sequences after the entire database (decoys in append mode). To keep the ordering, each
+ * step splits the sequences into twice as many "sections" as its input had - a sequence from section {@code s}
+ * goes either to section {@code s} or after the database, to section {@code s + inputSections}.
+ * Section 0 is written straight to the output, the other sections are spilled into temporary files
+ * and appended to the output at the end.
+ * <p/>
+ * Between the steps, the sequences are normalized the same way writing and reading of an intermediate FASTA file
+ * would do it, so the result is identical to running the steps one by one.
+ *
+ * @author Roman Zenka
+ */
+final class FusedCurationPass {
+	private static final Logger LOGGER = Logger.getLogger(FusedCurationPass.class);
+
+	static final int DEFAULT_CHUNK_SIZE = 2000;
+
+	/**
+	 * The amount of output sections doubles with each step. More steps than this are run in multiple passes.
+	 */
+	static final int MAX_STEPS = 16;
+
+	private final List<SequenceCurationStep> steps;
+	private final CurationExecutor executor;
+	private final int threads;
+	private final int chunkSize;
+	private final File tempFolder;
+
+	/**
+	 * @param steps      Steps to run, at most {@link #MAX_STEPS}.
+	 * @param executor   The executor the steps run for.
+	 * @param threads    How many threads to process the chunks with.
+	 * @param chunkSize  How many sequences go into one chunk.
+	 * @param tempFolder Folder for the index of the input file and the spilled sections.
+	 */
+	FusedCurationPass(final List<SequenceCurationStep> steps, final CurationExecutor executor, final int threads, final int chunkSize, final File tempFolder) {
+		if (steps.isEmpty() || steps.size() > MAX_STEPS) {
+			throw new MprcException("Can fuse 1 to " + MAX_STEPS + " curation steps, got " + steps.size());
+		}
+		this.steps = steps;
+		this.executor = executor;
+		this.threads = Math.max(1, threads);
+		this.chunkSize = Math.max(1, chunkSize);
+		this.tempFolder = tempFolder;
+	}
+
+	/**
+	 * Run the steps.
+	 *
+	 * @param input  Input FASTA file.
+	 * @param output Output for the results.
+	 * @param status Progress of the pass is reported here.
+	 * @return The amount of sequences each of the steps produced.
+	 * @throws StepFailedException When a step fails.
+	 */
+	public int[] run(final File input, final DBOutputStream output, final CurationStatus status) {
+		final File indexFile = new File(tempFolder, input.getName() + ".idx");
+		final IndexedFasta fasta = new IndexedFasta(input, indexFile);
+		final ExecutorService pool = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder()
+						.setNameFormat("curation-%d")
+						.setDaemon(true)
+						.build());
+		final Map<Integer, FASTAOutputStream> spills = new TreeMap<Integer, FASTAOutputStream>();
+		try {
+			final int[] counts = new int[steps.size()];
+			final int total = fasta.getSequenceCount();
+			LOGGER.debug("Running " + steps.size() + " curation steps on " + total + " sequences using " + threads + " threads");
+			final LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+			int nextChunkStart = 0;
+			int done = 0;
+			while (nextChunkStart < total || !pending.isEmpty()) {
+				// Keep all the threads busy, while limiting the amount of results held in memory
+				while (pending.size() < threads * 2 && nextChunkStart < total) {
+					final int end = (int) Math.min(total, (long) nextChunkStart + chunkSize);
+					pending.add(pool.submit(new ChunkTask(fasta, nextChunkStart, end)));
+					nextChunkStart = end;
+				}
+				final Chunk chunk = getChunk(pending.removeFirst());
+				for (int i = 0; i < counts.length; i++) {
+					counts[i] += chunk.counts[i];
+				}
+				writeChunk(chunk, output, spills);
+				done += chunk.size;
+				status.setCurrentStepProgress(100f * done / total);
+			}
+			appendSpills(output, spills);
+			return counts;
+		} catch (IOException e) {
+			throw new StepFailedException(steps.size() - 1, "Error in performing database IO", e);
+		} finally {
+			pool.shutdownNow();
+			for (final FASTAOutputStream spill : spills.values()) {
+				spill.close();
+				FileUtilities.quietDelete(spill.getFile());
+			}
+			fasta.close();
+			FileUtilities.quietDelete(indexFile);
+		}
+	}
+
+	private static Chunk getChunk(final Future<Chunk> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while curating the database", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof StepFailedException) {
+				throw (StepFailedException) e.getCause();
+			}
+			throw new MprcException("Curation of a database chunk failed", e.getCause());
+		}
+	}
+
+	private void writeChunk(final Chunk chunk, final DBOutputStream output, final Map<Integer, FASTAOutputStream> spills) throws IOException {
+		for (final Map.Entry<Integer, List<String>> entry : chunk.sections.entrySet()) {
+			final DBOutputStream target;
+			if (entry.getKey() == 0) {
+				target = output;
+			} else {
+				FASTAOutputStream spill = spills.get(entry.getKey());
+				if (spill == null) {
+					spill = new FASTAOutputStream(File.createTempFile("section" + entry.getKey() + "_", ".fasta", tempFolder));
+					// Headers cleaned before spilling stay the same when the output cleans them again
+					if (output instanceof FASTAOutputStream) {
+						spill.setCleanupHeaders(((FASTAOutputStream) output).isCleanupHeaders());
+					}
+					spills.put(entry.getKey(), spill);
+				}
+				target = spill;
+			}
+			final List<String> sequences = entry.getValue();
+			for (int i = 0; i < sequences.size(); i += 2) {
+				target.appendSequence(sequences.get(i), sequences.get(i + 1));
+			}
+		}
+	}
+
+	/**
+	 * Append the spilled sections to the output, in the section order.
+	 */
+	private static void appendSpills(final DBOutputStream output, final Map<Integer, FASTAOutputStream> spills) throws IOException {
+		for (final FASTAOutputStream spill : spills.values()) {
+			spill.close();
+			final FASTAInputStream spilled = new FASTAInputStream(spill.getFile());
+			try {
+				spilled.beforeFirst();
+				output.appendRemaining(spilled);
+			} finally {
+				spilled.close();
+			}
+		}
+	}
+
+	/**
+	 * Make the header look like it was written into a FASTA file and read back.
+	 */
+	static String normalizeHeader(final String header) {
+		return header.startsWith(">") ? header : ">" + header;
+	}
+
+	/**
+	 * Results of a single chunk - header and sequence pairs for each non-empty section.
+	 */
+	private static final class Chunk {
+		private final int size;
+		private final int[] counts;
+		private final TreeMap<Integer, List<String>> sections = new TreeMap<Integer, List<String>>();
+
+		private Chunk(final int size, final int steps) {
+			this.size = size;
+			counts = new int[steps];
+		}
+
+		void add(final int section, final String header, final String sequence) {
+			List<String> list = sections.get(section);
+			if (list == null) {
+				list = new ArrayList<String>();
+				sections.put(section, list);
+			}
+			list.add(header);
+			list.add(sequence);
+		}
+	}
+
+	private final class ChunkTask implements Callable<Chunk> {
+		private final IndexedFasta fasta;
+		private final int start;
+		private final int end;
+
+		private ChunkTask(final IndexedFasta fasta, final int start, final int end) {
+			this.fasta = fasta;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public Chunk call() {
+			final Chunk chunk = new Chunk(end - start, steps.size());
+			// Output of step i goes to stage i+1, the last stage collects the results
+			final Stage[] stages = new Stage[steps.size() + 1];
+			stages[steps.size()] = new Stage(steps.size(), null, chunk, null);
+			for (int i = steps.size() - 1; i >= 0; i--) {
+				stages[i] = new Stage(i, steps.get(i).createProcessor(executor), chunk, stages[i + 1]);
+			}
+			for (int ordinal = start; ordinal < end; ordinal++) {
+				stages[0].accept(0, fasta.getHeader(ordinal), fasta.getSequence(ordinal));
+			}
+			return chunk;
+		}
+	}
+
+	/**
+	 * Feeds sequences to one step and passes its output on to the next stage.
+	 */
+	private static final class Stage implements SequenceOutput {
+		private final int step;
+		private final SequenceProcessor processor;
+		private final Chunk chunk;
+		private final Stage next;
+		/**
+		 * Section of the sequence currently being processed.
+		 */
+		private int section;
+
+		private Stage(final int step, final SequenceProcessor processor, final Chunk chunk, final Stage next) {
+			this.step = step;
+			this.processor = processor;
+			this.chunk = chunk;
+			this.next = next;
+		}
+
+		void accept(final int section, final String header, final String sequence) {
+			if (processor == null) {
+				chunk.add(section, header, sequence);
+				return;
+			}
+			this.section = section;
+			try {
+				processor.process(header, sequence, this);
+			} catch (StepFailedException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new StepFailedException(step, "Error processing sequence " + header, e);
+			}
+		}
+
+		@Override
+		public void add(final String header, final String sequence) {
+			emit(section, header, sequence);
+		}
+
+		@Override
+		public void addAfterDatabase(final String header, final String sequence) {
+			emit(section + (1 << step), header, sequence);
+		}
+
+		private void emit(final int outputSection, final String header, final String sequence) {
+			chunk.counts[step]++;
+			if (next.processor == null) {
+				// The output stream does the final cleanup
+				next.accept(outputSection, header, sequence);
+			} else {
+				next.accept(outputSection, normalizeHeader(header), FASTAOutputStream.cleanupProteinSequence(sequence));
+			}
+		}
+	}
+
+	/**
+	 * One of the fused steps failed.
+	 */
+	static final class StepFailedException extends MprcException {
+		private static final long serialVersionUID = 20131022L;
+		private final int step;
+
+		StepFailedException(final int step, final String message, final Throwable cause) {
+			super(message, cause);
+			this.step = step;
+		}
+
+		/**
+		 * @return Index of the failed step within the pass.
+		 */
+		public int getStep() {
+			return step;
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package edu.mayo.mprc.dbcurator.model;
+
+/**
+ * A curation step that processes each sequence of the database on its own, without looking at the other sequences.
+ * <p/>
+ * {@link CurationExecutor} does not call {@link #performStep} for consecutive steps of this kind. Instead, it fuses
+ * them into a single pass over the database, processing chunks of the database in parallel. The resulting
+ * database is identical to the one produced by running the steps one by one.
+ *
+ * @author Roman Zenka
+ */
+public interface SequenceCurationStep extends CurationStep {
+	/**
+	 * Create a processor that performs this step on individual sequences. The step was already successfully
+	 * pre-validated at this point.
+	 * <p/>
+	 * Each chunk of the database gets its own processor, so the processor does not have to be thread-safe.
+	 * The processors for different chunks run concurrently though, so they must not modify the step itself.
+	 *
+	 * @param exe The executor running the step.
+	 * @return Processor for one chunk of the database.
+	 */
+	SequenceProcessor createProcessor(CurationExecutor exe);
+}
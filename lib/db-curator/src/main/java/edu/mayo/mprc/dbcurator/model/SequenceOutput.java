@@ -0,0 +1,19 @@
+package edu.mayo.mprc.dbcurator.model;
+
+/**
+ * Collects sequences produced by a {@link SequenceProcessor}.
+ *
+ * @author Roman Zenka
+ */
+public interface SequenceOutput {
+	/**
+	 * Output a sequence at the position of the one being processed.
+	 */
+	void add(String header, String sequence);
+
+	/**
+	 * Output a sequence after the entire database. Such sequences keep the order of the sequences that produced them,
+	 * e.g. decoys appended to the database are in the same order as the original sequences.
+	 */
+	void addAfterDatabase(String header, String sequence);
+}
@@ -0,0 +1,17 @@
+package edu.mayo.mprc.dbcurator.model;
+
+/**
+ * Performs a {@link SequenceCurationStep} on a single sequence.
+ *
+ * @author Roman Zenka
+ */
+public interface SequenceProcessor {
+	/**
+	 * Process a sequence, sending the results to the output. Sending nothing removes the sequence from the database.
+	 *
+	 * @param header   Header of the sequence, including the leading {@code >}.
+	 * @param sequence The sequence itself.
+	 * @param output   Where the resulting sequences go.
+	 */
+	void process(String header, String sequence, SequenceOutput output);
+}
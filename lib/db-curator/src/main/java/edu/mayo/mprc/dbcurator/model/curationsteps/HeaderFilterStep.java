@@ -21,7 +21,7 @@ import java.util.Locale;
  * @author Eric J. Winter Date: Apr 9, 2007 Time: 9:30:27 AM
  */
 
-public class HeaderFilterStep implements CurationStep {
+public class HeaderFilterStep implements SequenceCurationStep {
 	private static final long serialVersionUID = 20071220L;
 
 	/**
@@ -104,6 +104,19 @@ public class HeaderFilterStep implements CurationStep {
 		return runValidation;
 	}
 
+	@Override
+	public SequenceProcessor createProcessor(final CurationExecutor exe) {
+		final TextFilter filter = getAppropriateTextFilter();
+		return new SequenceProcessor() {
+			@Override
+			public void process(final String header, final String sequence, final SequenceOutput output) {
+				if (filter.matches(header)) {
+					output.add(header, sequence);
+				}
+			}
+		};
+	}
+
 	/**
 	 * Call this method if you want to see if the step is ready to be run and if any issues have been predicted.  NOTE:
 	 * succesfull prevalidation can not guarentee<sp> successful processing.
@@ -18,7 +18,7 @@ import java.util.regex.PatternSyntaxException;
  *
  * @author Eric Winter
  */
-public class HeaderTransformStep implements CurationStep {
+public class HeaderTransformStep implements SequenceCurationStep {
 	private static final long serialVersionUID = 20071220L;
 
 	private static final Logger LOGGER = Logger.getLogger(HeaderTransformStep.class);
@@ -101,6 +101,20 @@ public class HeaderTransformStep implements CurationStep {
 		return lastRunValidation;
 	}
 
+	/**
+	 * The pattern was compiled by {@link #preValidate}, {@link #transformString} only reads it from now on.
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SequenceProcessor createProcessor(final CurationExecutor exe) {
+		return new SequenceProcessor() {
+			@Override
+			public void process(final String header, final String sequence, final SequenceOutput output) {
+				output.add(transformString(header), sequence);
+			}
+		};
+	}
+
 	/**
 	 * takes a string and transforms it based on the set matchPattern and subsitutionPattern
 	 *
@@ -19,7 +19,7 @@ import java.util.regex.Pattern;
  *
  * @author Eric J. Winter Date: Apr 10, 2007 Time: 12:03:54 PM
  */
-public class MakeDecoyStep implements CurationStep {
+public class MakeDecoyStep implements SequenceCurationStep {
 	private static final long serialVersionUID = 20071220L;
 
 	/**
@@ -85,15 +85,23 @@ public class MakeDecoyStep implements CurationStep {
 	 */
 	private StringManipulator getManipulator() {
 		if (manipulator == null) {
-			if (manipulatorType == REVERSAL_MANIPULATOR) {
-				manipulator = new ReversalStringManipulator();
-			} else if (manipulatorType == SCRAMBLE_MANIPULATOR) {
-				manipulator = new ScrambleStringManipulator();
-			}
+			manipulator = createManipulator();
 		}
 		return manipulator;
 	}
 
+	/**
+	 * @return New StringManipulator for the set manipulatorType, null if the type is not valid.
+	 */
+	private StringManipulator createManipulator() {
+		if (manipulatorType == REVERSAL_MANIPULATOR) {
+			return new ReversalStringManipulator();
+		} else if (manipulatorType == SCRAMBLE_MANIPULATOR) {
+			return new ScrambleStringManipulator();
+		}
+		return null;
+	}
+
 	/**
 	 * @return the enumerated type of manipulator that we are set to use (see this classes *_MANIPULATOR enumerations)
 	 */
@@ -190,6 +198,29 @@ public class MakeDecoyStep implements CurationStep {
 
 	}
 
+	/**
+	 * Each processor gets its own manipulator, so the scrambling threads do not share a random number generator.
+	 * {@inheritDoc}
+	 */
+	@Override
+	public SequenceProcessor createProcessor(final CurationExecutor exe) {
+		final StringManipulator decoyManipulator = createManipulator();
+		final String decoyRegex = exe.getCuration().getDecoyRegex();
+		return new SequenceProcessor() {
+			@Override
+			public void process(final String header, final String sequence, final SequenceOutput output) {
+				final String decoyHeader = modifyHeader(header, decoyRegex);
+				final String decoySequence = decoyManipulator.manipulateString(sequence);
+				if (overwriteMode) {
+					output.add(decoyHeader, decoySequence);
+				} else {
+					output.add(header, sequence);
+					output.addAfterDatabase(decoyHeader, decoySequence);
+				}
+			}
+		};
+	}
+
 	/**
 	 * modify the header so that a description of the modification precedes the original header
 	 *
@@ -0,0 +1,101 @@
+package edu.mayo.mprc.dbcurator.model;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.dbcurator.model.curationsteps.HeaderFilterStep;
+import edu.mayo.mprc.dbcurator.model.curationsteps.HeaderTransformStep;
+import edu.mayo.mprc.dbcurator.model.curationsteps.MakeDecoyStep;
+import edu.mayo.mprc.dbcurator.model.curationsteps.TextMode;
+import edu.mayo.mprc.fasta.FASTAOutputStream;
+import edu.mayo.mprc.fasta.filter.MatchMode;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Roman Zenka
+ */
+public final class FusedCurationPassTest {
+	private static final String FASTA = ">A_HUMAN first\n" +
+			"mkv\n" +
+			">B_MOUSE second\n" +
+			"ACD\n" +
+			">C_HUMAN third\n" +
+			"WY\n" +
+			"K*\n" +
+			">D_HUMAN\n";
+
+	private File folder;
+	private File input;
+	private CurationExecutor executor;
+
+	@BeforeMethod
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+		input = new File(folder, "input.fasta");
+		FileUtilities.writeStringToFile(input, FASTA, true);
+		final Curation curation = new Curation();
+		curation.setDecoyRegex("Reversed_");
+		executor = new CurationExecutor(curation, false, null, folder, folder, folder);
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldFilterDecoyAndTransform() throws IOException {
+		final List<SequenceCurationStep> steps = Arrays.<SequenceCurationStep>asList(
+				new HeaderFilterStep(MatchMode.ANY, TextMode.SIMPLE, "HUMAN", null),
+				new MakeDecoyStep(false, MakeDecoyStep.REVERSAL_MANIPULATOR, null),
+				new HeaderTransformStep("Shorten species", "_HUMAN", "_HS", null));
+
+		final File output = new File(folder, "output.fasta");
+		final int[] counts = run(steps, 3, 1, output);
+
+		Assert.assertEquals(counts, new int[]{3, 6, 6});
+		Assert.assertEquals(Files.toString(output, Charsets.US_ASCII), ">A_HS first\n" +
+				"MKV\n" +
+				">C_HS third\n" +
+				"WYK\n" +
+				">D_HS\n" +
+				">Reversed_A_HS (Reversed) first\n" +
+				"VKM\n" +
+				">Reversed_C_HS (Reversed) third\n" +
+				"KYW\n" +
+				">Reversed_D_HS\n");
+	}
+
+	@Test
+	public void shouldNotDependOnThreadsAndChunks() throws IOException {
+		final List<SequenceCurationStep> steps = Arrays.<SequenceCurationStep>asList(
+				new MakeDecoyStep(false, MakeDecoyStep.REVERSAL_MANIPULATOR, null),
+				new MakeDecoyStep(false, MakeDecoyStep.REVERSAL_MANIPULATOR, null));
+
+		final File sequential = new File(folder, "sequential.fasta");
+		final File parallel = new File(folder, "parallel.fasta");
+		Assert.assertEquals(run(steps, 1, FusedCurationPass.DEFAULT_CHUNK_SIZE, sequential), new int[]{8, 16});
+		Assert.assertEquals(run(steps, 4, 1, parallel), new int[]{8, 16});
+		Assert.assertEquals(Files.toString(parallel, Charsets.US_ASCII), Files.toString(sequential, Charsets.US_ASCII));
+	}
+
+	private int[] run(final List<SequenceCurationStep> steps, final int threads, final int chunkSize, final File output) throws IOException {
+		for (final SequenceCurationStep step : steps) {
+			Assert.assertTrue(step.preValidate(null).isOK());
+		}
+		final FASTAOutputStream out = new FASTAOutputStream(output);
+		try {
+			return new FusedCurationPass(steps, executor, threads, chunkSize, folder).run(input, out, executor.getStatusObject());
+		} finally {
+			out.close();
+		}
+	}
+}
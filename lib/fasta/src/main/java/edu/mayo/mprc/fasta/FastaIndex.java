@@ -0,0 +1,324 @@
+package edu.mayo.mprc.fasta;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Persistent index of a FASTA file, stored in a side file and memory mapped when used.
+ * <p/>
+ * The index file consists of:
+ * <ul>
+ * <li>a header - magic number, version, length and last modification time of the indexed FASTA file
+ * (to detect stale indices) and the amount of sequences</li>
+ * <li>one (offset, length) entry per sequence, in the FASTA file order</li>
+ * <li>a lookup table of (32 bit accession hash, sequence ordinal) keys, sorted by the hash</li>
+ * </ul>
+ * As the hashes are uniformly distributed, the position of a hash in the lookup table can be estimated
+ * directly from its value, so a lookup typically touches only a couple of table entries.
+ * Hash collisions are resolved by comparing the accession stored in the FASTA file itself.
+ *
+ * @author Roman Zenka
+ */
+final class FastaIndex implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(FastaIndex.class);
+
+	private static final int MAGIC = 0x46415849;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8;
+	private static final int ENTRY_SIZE = 8 + 4;
+	private static final int KEY_SIZE = 8;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final MappedFile index;
+	private final int count;
+	private final long keysStart;
+
+	private FastaIndex(final MappedFile index, final int count) {
+		this.index = index;
+		this.count = count;
+		keysStart = HEADER_SIZE + (long) count * ENTRY_SIZE;
+	}
+
+	/**
+	 * Open the index for given FASTA file. If the index does not exist or is out of date, it gets (re)built.
+	 */
+	public static FastaIndex open(final File fastaFile, final File indexFile) {
+		final FastaIndex existing = openExisting(fastaFile, indexFile);
+		if (existing != null) {
+			return existing;
+		}
+		build(fastaFile, indexFile);
+		final FastaIndex built = openExisting(fastaFile, indexFile);
+		if (built == null) {
+			throw new MprcException("The index [" + indexFile.getAbsolutePath() + "] of FASTA file [" + fastaFile.getAbsolutePath() + "] could not be built");
+		}
+		return built;
+	}
+
+	/**
+	 * @return Index, null if it does not exist or does not match the FASTA file.
+	 */
+	private static FastaIndex openExisting(final File fastaFile, final File indexFile) {
+		if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE) {
+			return null;
+		}
+		final MappedFile mapped = new MappedFile(indexFile);
+		if (mapped.getInt(0) != MAGIC
+				|| mapped.getInt(4) != VERSION
+				|| mapped.getLong(8) != fastaFile.length()
+				|| mapped.getLong(16) != fastaFile.lastModified()) {
+			LOGGER.info("The index [" + indexFile.getAbsolutePath() + "] is out of date");
+			mapped.close();
+			return null;
+		}
+		final long count = mapped.getLong(24);
+		if (mapped.length() != HEADER_SIZE + count * (ENTRY_SIZE + KEY_SIZE)) {
+			LOGGER.info("The index [" + indexFile.getAbsolutePath() + "] is truncated");
+			mapped.close();
+			return null;
+		}
+		return new FastaIndex(mapped, (int) count);
+	}
+
+	/**
+	 * Scan the FASTA file and write its index. The index is written into a temporary file first and then renamed,
+	 * so other processes never see a partially written index.
+	 * <p/>
+	 * A sequence starts at every line beginning with {@code >}. The first sequence starts at the beginning of the file,
+	 * the same way {@link FASTAInputStream} treats the first line as a header no matter what.
+	 */
+	static void build(final File fastaFile, final File indexFile) {
+		LOGGER.info("Indexing FASTA file [" + fastaFile.getAbsolutePath() + "]");
+		final long fastaLength = fastaFile.length();
+		final long lastModified = fastaFile.lastModified();
+		final File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+		InputStream input = null;
+		DataOutputStream output = null;
+		try {
+			input = new FileInputStream(fastaFile);
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE));
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(fastaLength);
+			output.writeLong(lastModified);
+			output.writeLong(0L);
+
+			long[] keys = new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(16, fastaLength / FASTAInputStream.AVERAGE_FASTA_RECORD))];
+			int sequences = 0;
+
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			long position = 0;
+			long sequenceStart = 0;
+			boolean lineStart = true;
+			// Hashing the accession - from the second character of the header line up to the first space or end of line
+			boolean inAccession = false;
+			long hash = FNV_OFFSET_BASIS;
+
+			while (true) {
+				final int read = input.read(buffer);
+				if (read < 0) {
+					break;
+				}
+				for (int i = 0; i < read; i++, position++) {
+					final byte b = buffer[i];
+					if (lineStart && (b == '>' || position == 0)) {
+						if (position > 0) {
+							writeEntry(output, fastaFile, sequenceStart, position);
+							keys = addKey(keys, sequences, hash);
+							sequences++;
+						}
+						sequenceStart = position;
+						hash = FNV_OFFSET_BASIS;
+						inAccession = true;
+					} else if (inAccession) {
+						if (b == ' ' || b == '\n' || b == '\r') {
+							inAccession = false;
+						} else {
+							hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+						}
+					}
+					lineStart = b == '\n' || b == '\r';
+				}
+			}
+			if (position > 0) {
+				writeEntry(output, fastaFile, sequenceStart, position);
+				keys = addKey(keys, sequences, hash);
+				sequences++;
+			}
+
+			Arrays.sort(keys, 0, sequences);
+			for (int i = 0; i < sequences; i++) {
+				output.writeLong(keys[i]);
+			}
+			output.close();
+			output = null;
+
+			writeSequenceCount(tempFile, sequences);
+			if (indexFile.exists()) {
+				FileUtilities.quietDelete(indexFile);
+			}
+			FileUtilities.rename(tempFile, indexFile);
+			LOGGER.info("Indexed " + sequences + " sequences of FASTA file [" + fastaFile.getAbsolutePath() + "]");
+		} catch (IOException e) {
+			throw new MprcException("Could not index FASTA file [" + fastaFile.getAbsolutePath() + "]", e);
+		} finally {
+			FileUtilities.closeQuietly(input);
+			FileUtilities.closeQuietly(output);
+			if (tempFile.exists()) {
+				FileUtilities.quietDelete(tempFile);
+			}
+		}
+	}
+
+	private static void writeEntry(final DataOutputStream output, final File fastaFile, final long start, final long end) throws IOException {
+		if (end - start > Integer.MAX_VALUE) {
+			throw new MprcException("The sequence at offset " + start + " of [" + fastaFile.getAbsolutePath() + "] is too long to be indexed");
+		}
+		output.writeLong(start);
+		output.writeInt((int) (end - start));
+	}
+
+	private static long[] addKey(final long[] keys, final int ordinal, final long hash) {
+		long[] result = keys;
+		if (ordinal == result.length) {
+			result = Arrays.copyOf(result, (int) Math.min(Integer.MAX_VALUE - 8, result.length * 2L));
+		}
+		result[ordinal] = key(hash32(hash), ordinal);
+		return result;
+	}
+
+	private static void writeSequenceCount(final File indexFile, final int sequences) throws IOException {
+		final RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+		try {
+			file.seek(24);
+			file.writeLong(sequences);
+		} finally {
+			FileUtilities.closeQuietly(file);
+		}
+	}
+
+	/**
+	 * The lookup table key - hash in the upper 32 bits, ordinal in the lower ones. The sign bit is flipped
+	 * so the signed ordering of the keys matches the unsigned ordering of the hashes.
+	 */
+	private static long key(final int hash, final int ordinal) {
+		return (((long) hash << 32) | (ordinal & 0xffffffffL)) ^ Long.MIN_VALUE;
+	}
+
+	private static int hash32(final long hash) {
+		return (int) (hash >>> 32);
+	}
+
+	static int accessionHash(final byte[] accession) {
+		long hash = FNV_OFFSET_BASIS;
+		for (final byte b : accession) {
+			hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+		}
+		return hash32(hash);
+	}
+
+	public int getSequenceCount() {
+		return count;
+	}
+
+	/**
+	 * @return Offset of the sequence header in the FASTA file.
+	 */
+	public long getOffset(final int ordinal) {
+		return index.getLong(HEADER_SIZE + (long) ordinal * ENTRY_SIZE);
+	}
+
+	/**
+	 * @return Length of the sequence record (header and all the sequence lines) in bytes.
+	 */
+	public int getLength(final int ordinal) {
+		return index.getInt(HEADER_SIZE + (long) ordinal * ENTRY_SIZE + 8);
+	}
+
+	/**
+	 * Find ordinals of sequences whose accession has the same hash as given one, in the FASTA file order.
+	 *
+	 * @return Position of the first candidate in the lookup table, use {@link #getCandidate} to iterate.
+	 */
+	public int findFirstCandidate(final int hash) {
+		if (count == 0) {
+			return 0;
+		}
+		final long target = key(hash, 0);
+		// Invariant: keys before lo are smaller than target, keys from hi on are at least target
+		int lo = 0;
+		int hi = count;
+		final int guess = (int) (((hash & 0xffffffffL) * count) >>> 32);
+		long step = 1;
+		if (getKey(guess) < target) {
+			lo = guess + 1;
+			while (guess + step < count) {
+				final int probe = (int) (guess + step);
+				if (getKey(probe) >= target) {
+					hi = probe;
+					break;
+				}
+				lo = probe + 1;
+				step <<= 1;
+			}
+		} else {
+			hi = guess;
+			while (guess - step >= 0) {
+				final int probe = (int) (guess - step);
+				if (getKey(probe) < target) {
+					lo = probe + 1;
+					break;
+				}
+				hi = probe;
+				step <<= 1;
+			}
+		}
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (getKey(mid) < target) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return Ordinal of a sequence at given lookup table position if its accession has the given hash, -1 otherwise.
+	 */
+	public int getCandidate(final int position, final int hash) {
+		if (position >= count) {
+			return -1;
+		}
+		final long key = getKey(position) ^ Long.MIN_VALUE;
+		if ((int) (key >>> 32) != hash) {
+			return -1;
+		}
+		return (int) key;
+	}
+
+	private long getKey(final int position) {
+		return index.getLong(keysStart + (long) position * KEY_SIZE);
+	}
+
+	@Override
+	public void close() {
+		index.close();
+	}
+}
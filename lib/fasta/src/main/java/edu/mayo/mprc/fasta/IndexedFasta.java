@@ -0,0 +1,289 @@
+package edu.mayo.mprc.fasta;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.GZipUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Random access to a FASTA file by accession number.
+ * <p/>
+ * The file is memory mapped and accompanied by a persistent {@link FastaIndex} stored next to it
+ * (see {@link #getDefaultIndexFile(File)}). The index is built on first use and rebuilt whenever the FASTA
+ * file changes. Only the requested sequence is ever decoded, so looking up a protein in a 20GB database
+ * does not require a scan of the whole file.
+ * <p/>
+ * The class also implements {@link DBInputStream}, so it can replace {@link FASTAInputStream} for sequential reading.
+ * The headers and sequences are exactly the same as the ones {@link FASTAInputStream} produces.
+ * <p/>
+ * The lookup methods ({@link #getSequence(String)}, {@link #getHeader(String)} and their by-ordinal versions) are thread-safe,
+ * the {@link DBInputStream} cursor is not.
+ * Gzipped files cannot be indexed, they have to be uncompressed first.
+ *
+ * @author Roman Zenka
+ */
+public final class IndexedFasta implements DBInputStream {
+	private static final String INDEX_EXTENSION = ".idx";
+	private static final String ISO_8859_1 = "ISO-8859-1";
+
+	private final File fastaFile;
+	private final MappedFile fasta;
+	private final FastaIndex index;
+
+	private int current = -1;
+	private String currentHeader;
+	private String currentSequence;
+
+	/**
+	 * Open given FASTA file with the index stored in {@link #getDefaultIndexFile(File)}.
+	 */
+	public IndexedFasta(final File fastaFile) {
+		this(fastaFile, getDefaultIndexFile(fastaFile));
+	}
+
+	/**
+	 * @param fastaFile FASTA file to read.
+	 * @param indexFile Where to keep the index. Created if it does not exist or is out of date.
+	 */
+	public IndexedFasta(final File fastaFile, final File indexFile) {
+		this.fastaFile = fastaFile;
+		try {
+			if (GZipUtilities.isGZipped(fastaFile)) {
+				throw new MprcException("The FASTA file [" + fastaFile.getAbsolutePath() + "] is gzipped. Indexed access requires an uncompressed file.");
+			}
+		} catch (IOException e) {
+			throw new MprcException("Cannot open FASTA file [" + fastaFile.getAbsolutePath() + "]", e);
+		}
+		index = FastaIndex.open(fastaFile, indexFile);
+		fasta = new MappedFile(fastaFile);
+	}
+
+	public static File getDefaultIndexFile(final File fastaFile) {
+		return new File(fastaFile.getParentFile(), fastaFile.getName() + INDEX_EXTENSION);
+	}
+
+	public int getSequenceCount() {
+		return index.getSequenceCount();
+	}
+
+	/**
+	 * @return Header of the sequence with given accession number (including the leading {@code >}), null if there is none.
+	 */
+	public String getHeader(final String accession) {
+		final int ordinal = findOrdinal(accession);
+		return ordinal < 0 ? null : readHeader(record(ordinal));
+	}
+
+	/**
+	 * @return Sequence with given accession number, null if there is none.
+	 */
+	public String getSequence(final String accession) {
+		final int ordinal = findOrdinal(accession);
+		if (ordinal < 0) {
+			return null;
+		}
+		final ByteBuffer record = record(ordinal);
+		skipLine(record);
+		return readSequence(record);
+	}
+
+	/**
+	 * @param ordinal Index of the sequence in the file, starting from 0.
+	 * @return Header of the sequence (including the leading {@code >}).
+	 */
+	public String getHeader(final int ordinal) {
+		return readHeader(record(ordinal));
+	}
+
+	/**
+	 * @param ordinal Index of the sequence in the file, starting from 0.
+	 * @return The sequence.
+	 */
+	public String getSequence(final int ordinal) {
+		final ByteBuffer record = record(ordinal);
+		skipLine(record);
+		return readSequence(record);
+	}
+
+	/**
+	 * Move the {@link DBInputStream} cursor to the sequence with given accession number.
+	 *
+	 * @return False if there is no such sequence. The cursor does not move in that case.
+	 */
+	public boolean gotoAccession(final String accession) {
+		final int ordinal = findOrdinal(accession);
+		if (ordinal < 0) {
+			return false;
+		}
+		gotoOrdinal(ordinal);
+		return true;
+	}
+
+	/**
+	 * @return Ordinal number of the first sequence with given accession, -1 if there is none.
+	 */
+	private int findOrdinal(final String accession) {
+		final byte[] accessionBytes;
+		try {
+			accessionBytes = accession.getBytes(ISO_8859_1);
+		} catch (UnsupportedEncodingException e) {
+			throw new MprcException(e);
+		}
+		final int hash = FastaIndex.accessionHash(accessionBytes);
+		int position = index.findFirstCandidate(hash);
+		while (true) {
+			final int ordinal = index.getCandidate(position, hash);
+			if (ordinal < 0) {
+				return -1;
+			}
+			if (accessionMatches(ordinal, accessionBytes)) {
+				return ordinal;
+			}
+			position++;
+		}
+	}
+
+	private boolean accessionMatches(final int ordinal, final byte[] accession) {
+		final long offset = index.getOffset(ordinal);
+		final int length = index.getLength(ordinal);
+		// The accession starts after the first character of the header
+		if (length < accession.length + 1) {
+			return false;
+		}
+		for (int i = 0; i < accession.length; i++) {
+			if (fasta.get(offset + 1 + i) != accession[i]) {
+				return false;
+			}
+		}
+		if (length == accession.length + 1) {
+			return true;
+		}
+		final byte next = fasta.get(offset + 1 + accession.length);
+		return next == ' ' || next == '\n' || next == '\r';
+	}
+
+	private ByteBuffer record(final int ordinal) {
+		return fasta.slice(index.getOffset(ordinal), index.getLength(ordinal));
+	}
+
+	private void gotoOrdinal(final int ordinal) {
+		current = ordinal;
+		final ByteBuffer record = record(ordinal);
+		currentHeader = readHeader(record);
+		currentSequence = readSequence(record);
+	}
+
+	/**
+	 * Read the header line, leaving the buffer positioned at the next line.
+	 */
+	private static String readHeader(final ByteBuffer record) {
+		final int start = record.position();
+		final int end = skipLine(record);
+		final char[] header = new char[end - start];
+		for (int i = 0; i < header.length; i++) {
+			header[i] = (char) (record.get(start + i) & 0xff);
+		}
+		return new String(header);
+	}
+
+	/**
+	 * Move past the end of the current line.
+	 *
+	 * @return Position where the line ended (excluding the line terminator).
+	 */
+	private static int skipLine(final ByteBuffer record) {
+		while (record.hasRemaining()) {
+			final byte b = record.get();
+			if (b == '\n') {
+				return record.position() - 1;
+			}
+			if (b == '\r') {
+				final int end = record.position() - 1;
+				if (record.hasRemaining() && record.get(record.position()) == '\n') {
+					record.get();
+				}
+				return end;
+			}
+		}
+		return record.position();
+	}
+
+	/**
+	 * Read the sequence lines the same way {@link FASTAInputStream} does - each line is trimmed and upper-cased,
+	 * the sequence ends with the first empty line and a trailing {@code *} is dropped.
+	 */
+	private static String readSequence(final ByteBuffer record) {
+		final StringBuilder sequence = new StringBuilder(record.remaining());
+		while (record.hasRemaining()) {
+			final int start = record.position();
+			final int end = skipLine(record);
+			if (end == start) {
+				break;
+			}
+			int trimmedStart = start;
+			int trimmedEnd = end;
+			while (trimmedStart < trimmedEnd && (record.get(trimmedStart) & 0xff) <= ' ') {
+				trimmedStart++;
+			}
+			while (trimmedStart < trimmedEnd && (record.get(trimmedEnd - 1) & 0xff) <= ' ') {
+				trimmedEnd--;
+			}
+			for (int i = trimmedStart; i < trimmedEnd; i++) {
+				final char c = (char) (record.get(i) & 0xff);
+				if (c >= 'a' && c <= 'z') {
+					sequence.append((char) (c - 'a' + 'A'));
+				} else if (c < 0x80) {
+					sequence.append(c);
+				} else {
+					sequence.append(String.valueOf(c).toUpperCase(Locale.US));
+				}
+			}
+		}
+		if (sequence.length() > 0 && sequence.charAt(sequence.length() - 1) == '*') {
+			sequence.setLength(sequence.length() - 1);
+		}
+		return sequence.toString();
+	}
+
+	@Override
+	public void beforeFirst() {
+		current = -1;
+		currentHeader = null;
+		currentSequence = null;
+	}
+
+	@Override
+	public boolean gotoNextSequence() {
+		if (current + 1 >= index.getSequenceCount()) {
+			return false;
+		}
+		gotoOrdinal(current + 1);
+		return true;
+	}
+
+	@Override
+	public String getHeader() {
+		return currentHeader;
+	}
+
+	@Override
+	public String getSequence() {
+		return currentSequence;
+	}
+
+	@Override
+	public void close() {
+		FileUtilities.closeQuietly(index);
+		FileUtilities.closeQuietly(fasta);
+	}
+
+	@Override
+	public String getCurrentLineInfo() {
+		return "(sequence #" + (current + 1) + " of " + fastaFile.getAbsolutePath() + ")";
+	}
+}
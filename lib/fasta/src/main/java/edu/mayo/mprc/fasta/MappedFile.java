@@ -0,0 +1,115 @@
+package edu.mayo.mprc.fasta;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A read-only memory mapping of a file of any size.
+ * <p/>
+ * A single {@link MappedByteBuffer} cannot exceed 2GB, so the file is mapped in 1GB segments, mapped lazily
+ * on first access. Neighbouring segments overlap by {@link #OVERLAP} bytes, so any read shorter
+ * than that is served from a single segment without copying.
+ * <p/>
+ * All the reads use absolute positions, so one instance can be shared by multiple threads.
+ *
+ * @author Roman Zenka
+ */
+final class MappedFile implements Closeable {
+	static final long SEGMENT_SIZE = 1L << 30;
+	static final int OVERLAP = 1 << 20;
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final long length;
+	private final AtomicReferenceArray<MappedByteBuffer> segments;
+
+	MappedFile(final File file) {
+		this.file = file;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+			channel = randomAccessFile.getChannel();
+			length = channel.size();
+		} catch (IOException e) {
+			throw new MprcException("Could not open file [" + file.getAbsolutePath() + "]", e);
+		}
+		segments = new AtomicReferenceArray<MappedByteBuffer>((int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE));
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public byte get(final long position) {
+		return getSegment(position).get((int) (position % SEGMENT_SIZE));
+	}
+
+	public int getInt(final long position) {
+		return getSegment(position).getInt((int) (position % SEGMENT_SIZE));
+	}
+
+	public long getLong(final long position) {
+		return getSegment(position).getLong((int) (position % SEGMENT_SIZE));
+	}
+
+	/**
+	 * @return Buffer with given part of the file. Shares memory with the mapping when possible, otherwise the data
+	 *         are read into a new buffer.
+	 */
+	public ByteBuffer slice(final long position, final int sliceLength) {
+		final MappedByteBuffer segment = getSegment(position);
+		final int start = (int) (position % SEGMENT_SIZE);
+		if (start + sliceLength <= segment.capacity()) {
+			final ByteBuffer duplicate = segment.duplicate();
+			duplicate.position(start);
+			duplicate.limit(start + sliceLength);
+			return duplicate.slice();
+		}
+		final ByteBuffer result = ByteBuffer.allocate(sliceLength);
+		try {
+			while (result.hasRemaining()) {
+				if (channel.read(result, position + result.position()) < 0) {
+					throw new MprcException("Unexpected end of file [" + file.getAbsolutePath() + "] at " + (position + result.position()));
+				}
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not read " + sliceLength + " bytes at " + position + " from [" + file.getAbsolutePath() + "]", e);
+		}
+		result.flip();
+		return result;
+	}
+
+	private MappedByteBuffer getSegment(final long position) {
+		final int index = (int) (position / SEGMENT_SIZE);
+		final MappedByteBuffer segment = segments.get(index);
+		if (segment != null) {
+			return segment;
+		}
+		final long start = index * SEGMENT_SIZE;
+		try {
+			// Two threads might map the same segment at once, only one of the mappings is kept
+			segments.compareAndSet(index, null, channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, SEGMENT_SIZE + OVERLAP)));
+		} catch (IOException e) {
+			throw new MprcException("Could not map [" + file.getAbsolutePath() + "] at " + start, e);
+		}
+		return segments.get(index);
+	}
+
+	/**
+	 * Closes the file. The mapped memory is released once the buffers get garbage collected.
+	 */
+	@Override
+	public void close() {
+		FileUtilities.closeQuietly(channel);
+		FileUtilities.closeQuietly(randomAccessFile);
+	}
+}
@@ -0,0 +1,107 @@
+package edu.mayo.mprc.fasta;
+
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+/**
+ * @author Roman Zenka
+ */
+public final class IndexedFastaTest {
+	private static final String FASTA = ">P1 first protein\n" +
+			"mkllv\n" +
+			"  AAGG  \n" +
+			">P2|DUP second, windows line endings\r\n" +
+			"ACDEF\r\n" +
+			"GHIK*\r\n" +
+			">P3\n" +
+			"WWW\n" +
+			"\n" +
+			"ignored after an empty line\n" +
+			">P1 duplicate accession\n" +
+			"YYY\n" +
+			">P4 no newline at the end\n" +
+			"QQQ";
+
+	private File folder;
+	private File fastaFile;
+
+	@BeforeClass
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+		fastaFile = new File(folder, "test.fasta");
+		FileUtilities.writeStringToFile(fastaFile, FASTA, true);
+	}
+
+	@AfterClass
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldMatchSequentialReader() {
+		final IndexedFasta indexed = new IndexedFasta(fastaFile);
+		final FASTAInputStream sequential = new FASTAInputStream(fastaFile);
+		try {
+			Assert.assertEquals(indexed.getSequenceCount(), 5);
+			indexed.beforeFirst();
+			sequential.beforeFirst();
+			while (sequential.gotoNextSequence()) {
+				Assert.assertTrue(indexed.gotoNextSequence());
+				Assert.assertEquals(indexed.getHeader(), sequential.getHeader());
+				Assert.assertEquals(indexed.getSequence(), sequential.getSequence());
+			}
+			Assert.assertFalse(indexed.gotoNextSequence());
+		} finally {
+			indexed.close();
+			sequential.close();
+		}
+	}
+
+	@Test
+	public void shouldLookUpByAccession() {
+		final IndexedFasta indexed = new IndexedFasta(fastaFile);
+		try {
+			Assert.assertEquals(indexed.getSequence("P1"), "MKLLVAAGG", "First of the duplicate accessions wins");
+			Assert.assertEquals(indexed.getHeader("P2|DUP"), ">P2|DUP second, windows line endings");
+			Assert.assertEquals(indexed.getSequence("P2|DUP"), "ACDEFGHIK");
+			Assert.assertEquals(indexed.getSequence("P3"), "WWW");
+			Assert.assertEquals(indexed.getSequence("P4"), "QQQ");
+			Assert.assertNull(indexed.getSequence("P2"), "Accession prefix must not match");
+			Assert.assertNull(indexed.getSequence("P5"));
+
+			Assert.assertTrue(indexed.gotoAccession("P3"));
+			Assert.assertEquals(indexed.getHeader(), ">P3");
+			Assert.assertTrue(indexed.gotoNextSequence());
+			Assert.assertEquals(indexed.getSequence(), "YYY");
+		} finally {
+			indexed.close();
+		}
+	}
+
+	@Test
+	public void shouldRebuildStaleIndex() {
+		final File otherFasta = new File(folder, "other.fasta");
+		FileUtilities.writeStringToFile(otherFasta, ">A\nAAA\n", true);
+		IndexedFasta indexed = new IndexedFasta(otherFasta);
+		try {
+			Assert.assertTrue(IndexedFasta.getDefaultIndexFile(otherFasta).exists());
+			Assert.assertEquals(indexed.getSequenceCount(), 1);
+		} finally {
+			indexed.close();
+		}
+
+		FileUtilities.writeStringToFile(otherFasta, ">A\nAAA\n>B\nBBB\n", true);
+		indexed = new IndexedFasta(otherFasta);
+		try {
+			Assert.assertEquals(indexed.getSequenceCount(), 2);
+			Assert.assertEquals(indexed.getSequence("B"), "BBB");
+		} finally {
+			indexed.close();
+		}
+	}
+}
@@ -6,12 +6,16 @@ import edu.mayo.mprc.config.ui.*;
 import edu.mayo.mprc.utilities.exceptions.ExceptionUtilities;
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.log4j.Logger;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.JMSException;
 import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * This module runs an embedded message broker at given URL.
@@ -34,6 +38,7 @@ public final class MessageBroker implements Lifecycle {
 	private static final String USE_JMX = "useJmx";
 	public static final String BROKER_URL = "brokerUrl";
 	private static final String EMBEDDED_BROKER_URL = "embeddedBrokerUrl";
+	private static final String BATCHED_TRANSPORT = "batchedTransport";
 
 	public MessageBroker() {
 		embedded = true;
@@ -119,6 +124,28 @@ public final class MessageBroker implements Lifecycle {
 		}
 	}
 
+	/**
+	 * @return Queue name to the number of messages waiting in the queue. Only the embedded broker can tell,
+	 *         for an external broker the map is empty.
+	 */
+	public Map<String, Long> getQueueDepths() {
+		final Map<String, Long> depths = new TreeMap<String, Long>();
+		if (broker == null || !broker.isStarted()) {
+			return depths;
+		}
+		try {
+			for (final Map.Entry<ActiveMQDestination, Destination> entry : broker.getRegionBroker().getDestinationMap().entrySet()) {
+				if (entry.getKey().isQueue()) {
+					depths.put(entry.getKey().getPhysicalName(), entry.getValue().getDestinationStatistics().getMessages().getCount());
+				}
+			}
+		} catch (Exception e) {
+			// SWALLOWED: the queue depths are informative only
+			LOGGER.warn("Could not obtain queue depths from the message broker", e);
+		}
+		return depths;
+	}
+
 	/**
 	 * A factory capable of creating the resource
 	 */
@@ -169,6 +196,7 @@ public final class MessageBroker implements Lifecycle {
 		private String embeddedBrokerUrl;
 		private String embedded;
 		private String useJmx;
+		private String batchedTransport;
 
 		public Config() {
 		}
@@ -189,6 +217,7 @@ public final class MessageBroker implements Lifecycle {
 			writer.put(EMBEDDED, getEmbedded(), "Should we run the embedded broker?");
 			writer.put(EMBEDDED_BROKER_URL, getEmbeddedBrokerUrl(), "ActiveMQ configuration URL defining how to start the embedded broker up (if embedded)");
 			writer.put(USE_JMX, getUseJmx(), "Enable JMX on the broker");
+			writer.put(BATCHED_TRANSPORT, getBatchedTransport(), "Batch and compress the messages sent through the broker");
 		}
 
 		@Override
@@ -197,6 +226,7 @@ public final class MessageBroker implements Lifecycle {
 			embeddedBrokerUrl = reader.get(EMBEDDED_BROKER_URL);
 			embedded = reader.get(EMBEDDED);
 			useJmx = reader.get(USE_JMX);
+			batchedTransport = reader.get(BATCHED_TRANSPORT);
 		}
 
 		@Override
@@ -240,6 +270,18 @@ public final class MessageBroker implements Lifecycle {
 			return getEmbedded() != null && getEmbedded().equalsIgnoreCase("true");
 		}
 
+		public String getBatchedTransport() {
+			return batchedTransport;
+		}
+
+		public void setBatchedTransport(final String batchedTransport) {
+			this.batchedTransport = batchedTransport;
+		}
+
+		public boolean isBatchedTransport() {
+			return getBatchedTransport() != null && getBatchedTransport().equalsIgnoreCase("true");
+		}
+
 		public String validate() {
 			Connection connection = null;
 			try {
@@ -325,7 +367,13 @@ public final class MessageBroker implements Lifecycle {
 									+ "failover configuration options while this URI will not.").defaultValue("tcp://" + daemon.getHostName() + ":" + DEFAULT_PORT)
 					.defaultValue("tcp://" + daemon.getHostName() + ":" + DEFAULT_PORT)
 
-					.property(USE_JMX, "Enable the use of JMX", "").boolValue().defaultValue("false");
+					.property(USE_JMX, "Enable the use of JMX", "").boolValue().defaultValue("false")
+
+					.property(BATCHED_TRANSPORT, "Batch messages",
+							"When checked, the progress messages for a task are collected for a short while and sent together, requests sent at the same time travel in a single message, and large messages are compressed."
+									+ " This lowers the load of the broker during large searches."
+									+ " <p>All Swift daemons using the broker must run the same version of Swift for this to work.</p>")
+					.boolValue().defaultValue("false");
 		}
 
 		public static String getDefaultBrokerUrl(final DaemonConfig daemon) {
@@ -0,0 +1,263 @@
+package edu.mayo.mprc.messaging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import org.apache.log4j.Logger;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches messages sent by {@link SimpleQueueService} when the batched transport is enabled.
+ * <ul>
+ * <li>Requests sent while the previous batch is being sent are combined into one message per priority.
+ * This adds no delay - a lone request is sent right away.</li>
+ * <li>Responses that are not last are held for {@link #COALESCE_WINDOW_MILLIS} and sent together
+ * with all the other responses to the same request that arrived in the meantime.
+ * The last response is sent immediately, along with everything that is pending for its request.</li>
+ * </ul>
+ * No message is ever dropped and the responses to a request keep their order.
+ * <p/>
+ * All the sending happens on a single thread, that also owns the JMS session used for sending.
+ *
+ * @author Roman Zenka
+ */
+final class BatchedTransport {
+	private static final Logger LOGGER = Logger.getLogger(BatchedTransport.class);
+
+	/**
+	 * How long to wait for more responses to a request before sending them.
+	 */
+	static final long COALESCE_WINDOW_MILLIS = 100;
+
+	/**
+	 * Maximum amount of requests or responses in a single message.
+	 */
+	static final int MAX_BATCH_SIZE = 500;
+
+	private static final int STOP_TIMEOUT_SECONDS = 10;
+
+	/**
+	 * Does the actual sending.
+	 */
+	interface Sender {
+		/**
+		 * Send a batch of requests.
+		 *
+		 * @param priority Priority of all the requests.
+		 * @param requests Correlation ID and request data for each request, interleaved.
+		 */
+		void sendRequests(int priority, List<Serializable> requests) throws JMSException;
+
+		/**
+		 * Send a batch of responses to a single request.
+		 */
+		void sendResponses(String correlationId, Destination replyTo, List<Serializable> responses, boolean isLast) throws JMSException;
+
+		/**
+		 * Notify the sender of a request that the request could not be sent.
+		 */
+		void requestFailed(String correlationId, ResponseListener listener, MprcException exception);
+
+		/**
+		 * Called on the sending thread before it terminates, to release the resources it holds.
+		 */
+		void release();
+	}
+
+	private final Sender sender;
+	private final ScheduledExecutorService executor;
+
+	private final List<PendingRequest> pendingRequests = new ArrayList<PendingRequest>();
+	private boolean requestFlushScheduled;
+	private final Map<String, PendingResponses> pendingResponses = new HashMap<String, PendingResponses>();
+
+	BatchedTransport(final Sender sender, final String name) {
+		this.sender = sender;
+		executor = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder()
+						.setNameFormat("jms-" + name + "-%d")
+						.setDaemon(true)
+						.build());
+	}
+
+	public void sendRequest(final Serializable request, final int priority, final String correlationId, final ResponseListener listener) {
+		synchronized (this) {
+			pendingRequests.add(new PendingRequest(request, priority, correlationId, listener));
+			if (requestFlushScheduled) {
+				return;
+			}
+			requestFlushScheduled = true;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				flushRequests();
+			}
+		});
+	}
+
+	public void sendResponse(final Serializable response, final String correlationId, final Destination replyTo, final boolean isLast) {
+		final PendingResponses responses;
+		final boolean created;
+		synchronized (this) {
+			PendingResponses existing = pendingResponses.get(correlationId);
+			created = existing == null;
+			if (created) {
+				existing = new PendingResponses(correlationId, replyTo);
+				pendingResponses.put(correlationId, existing);
+			}
+			existing.responses.add(response);
+			existing.last = isLast;
+			responses = existing;
+		}
+		final Runnable flush = new Runnable() {
+			@Override
+			public void run() {
+				flushResponses(responses);
+			}
+		};
+		if (isLast) {
+			executor.execute(flush);
+		} else if (created) {
+			executor.schedule(flush, COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Send everything that is pending and stop the sending thread.
+	 */
+	public void stop() {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				flushRequests();
+				final List<PendingResponses> responses;
+				synchronized (BatchedTransport.this) {
+					responses = new ArrayList<PendingResponses>(pendingResponses.values());
+				}
+				for (final PendingResponses pending : responses) {
+					flushResponses(pending);
+				}
+				sender.release();
+			}
+		});
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				LOGGER.warn("Pending messages were not sent within " + STOP_TIMEOUT_SECONDS + " seconds");
+			}
+		} catch (InterruptedException ignore) {
+			// SWALLOWED: we are stopping anyway
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdownNow();
+	}
+
+	private void flushRequests() {
+		final List<PendingRequest> requests;
+		synchronized (this) {
+			requests = new ArrayList<PendingRequest>(pendingRequests);
+			pendingRequests.clear();
+			requestFlushScheduled = false;
+		}
+		if (requests.isEmpty()) {
+			return;
+		}
+
+		final Map<Integer, List<PendingRequest>> byPriority = new LinkedHashMap<Integer, List<PendingRequest>>();
+		for (final PendingRequest request : requests) {
+			List<PendingRequest> list = byPriority.get(request.priority);
+			if (list == null) {
+				list = new ArrayList<PendingRequest>();
+				byPriority.put(request.priority, list);
+			}
+			list.add(request);
+		}
+
+		for (final Map.Entry<Integer, List<PendingRequest>> entry : byPriority.entrySet()) {
+			final List<PendingRequest> list = entry.getValue();
+			for (int start = 0; start < list.size(); start += MAX_BATCH_SIZE) {
+				final List<PendingRequest> batch = list.subList(start, Math.min(list.size(), start + MAX_BATCH_SIZE));
+				final List<Serializable> data = new ArrayList<Serializable>(batch.size() * 2);
+				for (final PendingRequest request : batch) {
+					data.add(request.correlationId);
+					data.add(request.request);
+				}
+				try {
+					sender.sendRequests(entry.getKey(), data);
+				} catch (Exception e) {
+					// SWALLOWED: the senders get notified
+					final MprcException exception = new MprcException("Could not send message", e);
+					for (final PendingRequest request : batch) {
+						sender.requestFailed(request.correlationId, request.listener, exception);
+					}
+				}
+			}
+		}
+	}
+
+	private void flushResponses(final PendingResponses pending) {
+		final List<Serializable> responses;
+		final boolean last;
+		synchronized (this) {
+			if (pending.sent) {
+				return;
+			}
+			pending.sent = true;
+			if (pendingResponses.get(pending.correlationId) == pending) {
+				pendingResponses.remove(pending.correlationId);
+			}
+			responses = pending.responses;
+			last = pending.last;
+		}
+		try {
+			for (int start = 0; start < responses.size(); start += MAX_BATCH_SIZE) {
+				final int end = Math.min(responses.size(), start + MAX_BATCH_SIZE);
+				sender.sendResponses(pending.correlationId, pending.replyTo, responses.subList(start, end), last && end == responses.size());
+			}
+		} catch (Exception e) {
+			// SWALLOWED: there is nobody to report this to
+			LOGGER.error("Could not send responses for request " + pending.correlationId, e);
+		}
+	}
+
+	private static final class PendingRequest {
+		private final Serializable request;
+		private final int priority;
+		private final String correlationId;
+		private final ResponseListener listener;
+
+		private PendingRequest(final Serializable request, final int priority, final String correlationId, final ResponseListener listener) {
+			this.request = request;
+			this.priority = priority;
+			this.correlationId = correlationId;
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * Responses to a single request waiting to be sent. Guarded by the transport.
+	 */
+	private static final class PendingResponses {
+		private final String correlationId;
+		private final Destination replyTo;
+		private final List<Serializable> responses = new ArrayList<Serializable>();
+		private boolean last;
+		private boolean sent;
+
+		private PendingResponses(final String correlationId, final Destination replyTo) {
+			this.correlationId = correlationId;
+			this.replyTo = replyTo;
+		}
+	}
+}
@@ -2,16 +2,29 @@ package edu.mayo.mprc.messaging;
 
 import edu.mayo.mprc.MprcException;
 
+import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.Message;
 import javax.jms.ObjectMessage;
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Request received from JMS. Knows how to deliver response. Internal implementation of generic {@link edu.mayo.mprc.messaging.Request}.
+ * <p/>
+ * With the batched transport, several requests arrive in a single message. Such message is acknowledged
+ * once all its requests are processed.
  */
 class JmsRequest implements Request {
-	private ObjectMessage objectMessage;
-	private SimpleQueueService receivedFrom;
+	private final Message message;
+	private final Serializable messageData;
+	private final String correlationId;
+	private final Destination replyTo;
+	private final SimpleQueueService receivedFrom;
+	/**
+	 * How many requests from the same message are not processed yet.
+	 */
+	private final AtomicInteger unprocessed;
 
 	/**
 	 * Id that lets us correlate the response with a particular request.
@@ -21,12 +34,22 @@ class JmsRequest implements Request {
 	/**
 	 * {@link edu.mayo.mprc.messaging.Request} implementation. Knows where to send the response to (combination of {@link javax.jms.Destination} and coordination ID).
 	 *
-	 * @param objectMessage Message object for this request.
+	 * @param message       Message this request arrived in.
+	 * @param messageData   The request itself. Null for an object message, the data is obtained from the message when needed.
+	 * @param correlationId Correlation ID for the responses, null if no response was requested.
+	 * @param replyTo       Where to send the responses.
+	 * @param unprocessed   Counts unprocessed requests of the message, shared by all requests from the message.
+	 * @param receivedFrom  Service that received the message.
 	 */
-	JmsRequest(final ObjectMessage objectMessage, final SimpleQueueService receivedFrom) {
+	JmsRequest(final Message message, final Serializable messageData, final String correlationId, final Destination replyTo,
+	           final AtomicInteger unprocessed, final SimpleQueueService receivedFrom) {
+		this.message = message;
+		this.messageData = messageData;
+		this.correlationId = correlationId;
+		this.replyTo = replyTo;
+		this.unprocessed = unprocessed;
 		this.receivedFrom = receivedFrom;
 		lastResponseSent = false;
-		this.objectMessage = objectMessage;
 	}
 
 	/**
@@ -34,8 +57,11 @@ class JmsRequest implements Request {
 	 */
 	@Override
 	public void processed() {
+		if (unprocessed.decrementAndGet() > 0) {
+			return;
+		}
 		try {
-			objectMessage.acknowledge();
+			message.acknowledge();
 		} catch (JMSException e) {
 			throw new MprcException("Error acknowledging JMS request message.", e);
 		}
@@ -43,8 +69,11 @@ class JmsRequest implements Request {
 
 	@Override
 	public Serializable getMessageData() {
+		if (messageData != null || !(message instanceof ObjectMessage)) {
+			return messageData;
+		}
 		try {
-			return objectMessage.getObject();
+			return ((ObjectMessage) message).getObject();
 		} catch (JMSException e) {
 			throw new MprcException("Error occurred while getting the data object from message.", e);
 		}
@@ -54,6 +83,6 @@ class JmsRequest implements Request {
 	public void sendResponse(final Serializable response, final boolean isLast) {
 		assert !lastResponseSent : "Last response was already sent.";
 		lastResponseSent = isLast;
-		receivedFrom.sendResponse(response, objectMessage, isLast);
+		receivedFrom.sendResponse(response, correlationId, replyTo, isLast);
 	}
 }
@@ -0,0 +1,124 @@
+package edu.mayo.mprc.messaging;
+
+import edu.mayo.mprc.MprcException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes a batch of objects into a single message body for the batched transport.
+ * <p/>
+ * All objects of a batch go through a single object stream, so the class descriptions
+ * (which make up most of a small serialized work packet or progress message) are written only once per batch.
+ * Bodies larger than {@link #COMPRESSION_THRESHOLD} are deflated.
+ * <p/>
+ * The body starts with a single byte telling whether the rest is compressed.
+ *
+ * @author Roman Zenka
+ */
+final class MessageCodec {
+	/**
+	 * Bodies larger than this many bytes get compressed.
+	 */
+	static final int COMPRESSION_THRESHOLD = 8 * 1024;
+
+	private static final byte PLAIN = 0;
+	private static final byte DEFLATED = 1;
+
+	private MessageCodec() {
+	}
+
+	/**
+	 * @param objects Objects to encode. Can contain nulls.
+	 * @return The encoded message body.
+	 */
+	public static byte[] encode(final List<? extends Serializable> objects) {
+		try {
+			final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+			final ObjectOutputStream output = new ObjectOutputStream(serialized);
+			output.writeInt(objects.size());
+			for (final Serializable object : objects) {
+				output.writeObject(object);
+			}
+			output.close();
+
+			final ByteArrayOutputStream body = new ByteArrayOutputStream(Math.min(serialized.size(), COMPRESSION_THRESHOLD) + 1);
+			if (serialized.size() > COMPRESSION_THRESHOLD) {
+				body.write(DEFLATED);
+				final DeflaterOutputStream deflated = new DeflaterOutputStream(body, new Deflater(Deflater.BEST_SPEED));
+				serialized.writeTo(deflated);
+				deflated.close();
+			} else {
+				body.write(PLAIN);
+				serialized.writeTo(body);
+			}
+			return body.toByteArray();
+		} catch (IOException e) {
+			throw new MprcException("Could not encode message batch", e);
+		}
+	}
+
+	/**
+	 * @param body Message body created by {@link #encode}.
+	 * @return The decoded objects.
+	 */
+	public static List<Serializable> decode(final byte[] body) {
+		if (body.length == 0 || (body[0] != PLAIN && body[0] != DEFLATED)) {
+			throw new MprcException("Unknown message batch format");
+		}
+		try {
+			InputStream stream = new ByteArrayInputStream(body, 1, body.length - 1);
+			if (body[0] == DEFLATED) {
+				stream = new InflaterInputStream(stream);
+			}
+			final ObjectInputStream input = new ContextClassLoaderObjectInputStream(stream);
+			try {
+				final int count = input.readInt();
+				final List<Serializable> objects = new ArrayList<Serializable>(count);
+				for (int i = 0; i < count; i++) {
+					objects.add((Serializable) input.readObject());
+				}
+				return objects;
+			} finally {
+				input.close();
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not decode message batch", e);
+		} catch (ClassNotFoundException e) {
+			throw new MprcException("Could not decode message batch", e);
+		}
+	}
+
+	/**
+	 * Resolves the classes the same way ActiveMQ does for object messages - using the context class loader first.
+	 */
+	private static final class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+		ContextClassLoaderObjectInputStream(final InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			if (loader != null) {
+				try {
+					return Class.forName(desc.getName(), false, loader);
+				} catch (ClassNotFoundException ignore) {
+					// SWALLOWED: fall back to the default resolution
+				}
+			}
+			return super.resolveClass(desc);
+		}
+	}
+}
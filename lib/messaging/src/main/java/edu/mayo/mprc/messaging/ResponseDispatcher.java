@@ -9,6 +9,7 @@ import javax.jms.*;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -92,6 +93,15 @@ public final class ResponseDispatcher implements Lifecycle {
 		return correlationId;
 	}
 
+	/**
+	 * Stop delivering responses for given correlation ID.
+	 *
+	 * @param correlationId ID returned by {@link #registerMessageListener}.
+	 */
+	public void unregisterMessageListener(final String correlationId) {
+		responseMap.remove(correlationId);
+	}
+
 	public void close() {
 	}
 
@@ -158,11 +168,14 @@ public final class ResponseDispatcher implements Lifecycle {
 			boolean isLast = true;
 			ResponseListener listener = null;
 			try {
-				final ObjectMessage objectMessage = (ObjectMessage) message;
-				final Serializable messageData = objectMessage.getObject();
-				final String listenerId = objectMessage.getJMSCorrelationID();
+				final String listenerId = message.getJMSCorrelationID();
 				listener = responseMap.get(listenerId);
-				isLast = objectMessage.getBooleanProperty(LAST_RESPONSE);
+				isLast = message.getBooleanProperty(LAST_RESPONSE);
+				if (SimpleQueueService.isBatch(message)) {
+					processBatch((BytesMessage) message, listenerId, listener, isLast);
+					return;
+				}
+				final Serializable messageData = ((ObjectMessage) message).getObject();
 				if (listener == null) {
 					LOGGER.error("No registered listener for response with ID " + listenerId + " [" + messageData + "]");
 				} else {
@@ -186,6 +199,23 @@ public final class ResponseDispatcher implements Lifecycle {
 			}
 		}
 
+		/**
+		 * Deliver coalesced responses one by one. Only the very last of them can be marked as last.
+		 */
+		private void processBatch(final BytesMessage message, final String listenerId, final ResponseListener listener, final boolean isLast) throws JMSException {
+			final List<Serializable> responses = MessageCodec.decode(SimpleQueueService.getBody(message));
+			if (listener == null) {
+				LOGGER.error("No registered listener for " + responses.size() + " responses with ID " + listenerId);
+				return;
+			}
+			if (isLast) {
+				responseMap.remove(listenerId);
+			}
+			for (int i = 0; i < responses.size(); i++) {
+				listener.responseReceived(responses.get(i), isLast && i == responses.size() - 1);
+			}
+		}
+
 		private void acknowledgeMessage(final Message message) {
 			if (message == null) {
 				return;
@@ -26,6 +26,10 @@ public final class ServiceFactoryImpl implements ServiceFactory {
 	private ActiveMQConnectionPool connectionPool;
 	private Connection connection;
 	private RunningApplicationContext context;
+	/**
+	 * Null means "take the setting from the message broker configuration".
+	 */
+	private Boolean batchedTransport;
 
 	public ServiceFactoryImpl() {
 	}
@@ -48,7 +52,7 @@ public final class ServiceFactoryImpl implements ServiceFactory {
 			throw new MprcException("queue name must not be empty");
 		}
 
-		return new SimpleQueueService(this, responseDispatcher, queueName);
+		return new SimpleQueueService(this, responseDispatcher, queueName, isBatchedTransport());
 	}
 
 	static UserInfo extractJmsUserinfo(final URI serviceURI) {
@@ -91,6 +95,25 @@ public final class ServiceFactoryImpl implements ServiceFactory {
 		this.brokerUri = brokerUri;
 	}
 
+	/**
+	 * @return True if the services should batch and compress their messages. See {@link BatchedTransport}.
+	 */
+	public boolean isBatchedTransport() {
+		synchronized (this) {
+			if (batchedTransport == null && context != null) {
+				final MessageBroker.Config config = context.getSingletonConfig(MessageBroker.Config.class);
+				batchedTransport = config != null && config.isBatchedTransport();
+			}
+			return Boolean.TRUE.equals(batchedTransport);
+		}
+	}
+
+	public void setBatchedTransport(final boolean batchedTransport) {
+		synchronized (this) {
+			this.batchedTransport = batchedTransport;
+		}
+	}
+
 	@Override
 	public SerializedRequest serializeRequest(final Serializable message, final ResponseDispatcher responseDispatcher, final ResponseListener listener) {
 		return new SerializedRequest(responseDispatcher.getResponseQueueName(), message, responseDispatcher.registerMessageListener(listener));
@@ -5,6 +5,9 @@ import org.apache.log4j.Logger;
 
 import javax.jms.*;
 import java.io.Serializable;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A JMS queue that allows request-response communication.
@@ -12,11 +15,20 @@ import java.io.Serializable;
  * http://activemq.apache.org/how-should-i-implement-request-response-with-jms.html
  * <p/>
  * Multithreaded access is resolved using threadlocal variables.
+ * <p/>
+ * With the batched transport enabled, the requests and responses are sent through {@link BatchedTransport}
+ * as byte messages encoded by {@link MessageCodec}. A message like that can carry multiple requests or responses.
+ * Both plain object messages and the batches are always understood when receiving.
  */
 final class SimpleQueueService implements Service {
 	private static final Logger LOGGER = Logger.getLogger(SimpleQueueService.class);
     private static final String EXCLUSIVE_CONSUMER = "consumer.exclusive=true";
 
+	/**
+	 * Byte messages with this property set to true carry a batch encoded by {@link MessageCodec}.
+	 */
+	static final String BATCH = "is_batch";
+
     private final ServiceFactory serviceFactory;
 
 	/**
@@ -47,17 +59,27 @@ final class SimpleQueueService implements Service {
 
 	private final ResponseDispatcher responseDispatcher;
 
+	private final boolean batched;
+	private BatchedTransport batchedTransport;
+
+	/**
+	 * Requests received in a batch, waiting to be returned by {@link #receiveRequest}.
+	 */
+	private final LinkedList<JmsRequest> receivedRequests = new LinkedList<JmsRequest>();
+
 	/**
 	 * Establishes a link of given name on a given broker.
 	 * Each link consists of two JMS queues - one for sending requests, one (wrapped in ResponseDispatcher) for receiving responses.
 	 *
 	 * @param serviceFactory Service factory
 	 * @param name           Name of the queue.
+	 * @param batched        Use the batched transport.
 	 */
-	SimpleQueueService(final ServiceFactory serviceFactory, final ResponseDispatcher responseDispatcher, final String name) {
+	SimpleQueueService(final ServiceFactory serviceFactory, final ResponseDispatcher responseDispatcher, final String name, final boolean batched) {
 		this.serviceFactory = serviceFactory;
 		this.responseDispatcher = responseDispatcher;
 		queueName = name;
+		this.batched = batched;
 	}
 
 	@Override
@@ -67,6 +89,13 @@ final class SimpleQueueService implements Service {
 
 	@Override
 	public void sendRequest(final Serializable request, final int priority, final ResponseListener listener) {
+		final BatchedTransport transport = getBatchedTransport();
+		if (transport != null) {
+			final int extraPriority = request instanceof PrioritizedData ? ((PrioritizedData) request).getPriority() : 0;
+			final String correlationId = null == listener ? null : responseDispatcher.registerMessageListener(listener);
+			transport.sendRequest(request, priority + extraPriority, correlationId, listener);
+			return;
+		}
 		try {
 			final ObjectMessage objectMessage = sendingSession().createObjectMessage(request);
 
@@ -104,27 +133,59 @@ final class SimpleQueueService implements Service {
 	 * @param message Message to wrap
 	 * @return Wrapped message
 	 */
-	private JmsRequest wrapReceivedMessage(final Message message) {
-		return new JmsRequest((ObjectMessage) message, this);
+	private JmsRequest wrapReceivedMessage(final Message message) throws JMSException {
+		if (!isBatch(message)) {
+			return new JmsRequest(message, null, message.getJMSCorrelationID(), message.getJMSReplyTo(), new AtomicInteger(1), this);
+		}
+		final List<Serializable> data = MessageCodec.decode(getBody((BytesMessage) message));
+		final AtomicInteger unprocessed = new AtomicInteger(data.size() / 2);
+		JmsRequest first = null;
+		synchronized (receivedRequests) {
+			for (int i = 0; i < data.size(); i += 2) {
+				final JmsRequest request = new JmsRequest(message, data.get(i + 1), (String) data.get(i), message.getJMSReplyTo(), unprocessed, this);
+				if (first == null) {
+					first = request;
+				} else {
+					receivedRequests.add(request);
+				}
+			}
+		}
+		return first;
+	}
+
+	static boolean isBatch(final Message message) throws JMSException {
+		return message instanceof BytesMessage && message.getBooleanProperty(BATCH);
+	}
+
+	static byte[] getBody(final BytesMessage message) throws JMSException {
+		final byte[] body = new byte[(int) message.getBodyLength()];
+		message.readBytes(body);
+		return body;
 	}
 
 	/**
 	 * To be used by JmsRequest for sending responses.
 	 *
-	 * @param response        User response.
-	 * @param originalMessage Message this was response to.
-	 * @param isLast          True if the message is the last one.
+	 * @param response      User response.
+	 * @param correlationId Correlation ID of the request this is response to. Null if no response was requested.
+	 * @param replyTo       Where to send the response.
+	 * @param isLast        True if the message is the last one.
 	 */
-	void sendResponse(final Serializable response, final ObjectMessage originalMessage, final boolean isLast) {
+	void sendResponse(final Serializable response, final String correlationId, final Destination replyTo, final boolean isLast) {
+		if (correlationId == null) {
+			// No response was requested
+			return;
+		}
+		final BatchedTransport transport = getBatchedTransport();
+		if (transport != null) {
+			transport.sendResponse(response, correlationId, replyTo, isLast);
+			return;
+		}
 		try {
-			if (originalMessage.getJMSCorrelationID() != null) {
-				// Response was requested
-				final ObjectMessage responseMessage = receivingSession().createObjectMessage(response);
-				responseMessage.setBooleanProperty(ResponseDispatcher.LAST_RESPONSE, isLast);
-				responseMessage.setJMSCorrelationID(originalMessage.getJMSCorrelationID());
-				messageProducer().send(originalMessage.getJMSReplyTo(), responseMessage);
-			}
-
+			final ObjectMessage responseMessage = receivingSession().createObjectMessage(response);
+			responseMessage.setBooleanProperty(ResponseDispatcher.LAST_RESPONSE, isLast);
+			responseMessage.setJMSCorrelationID(correlationId);
+			messageProducer().send(replyTo, responseMessage);
 		} catch (JMSException e) {
 			throw new MprcException(e);
 		}
@@ -132,6 +193,11 @@ final class SimpleQueueService implements Service {
 
 	@Override
 	public Request receiveRequest(final long timeout) {
+		synchronized (receivedRequests) {
+			if (!receivedRequests.isEmpty()) {
+				return receivedRequests.removeFirst();
+			}
+		}
 		try {
 			final Message message = messageConsumer().receive(timeout);
 			if (message != null) {
@@ -207,6 +273,9 @@ final class SimpleQueueService implements Service {
 
                     final String decoratedQueueName = decorateQueueName(queueName);
 					setRequestDestination(sendingSession().createQueue(decoratedQueueName));
+					if (batched) {
+						batchedTransport = new BatchedTransport(new BatchSender(), queueName);
+					}
 
 					LOGGER.debug("Connected to JMS broker: " + connection.getClientID() + " queue: " + queueName);
 				} catch (JMSException e) {
@@ -218,8 +287,25 @@ final class SimpleQueueService implements Service {
 
 	@Override
 	public void stop() {
+		// The transport flushes on its own thread, through methods that lock this service.
+		// Stop it outside of the lock, while the connection is still open.
+		final BatchedTransport transport;
+		synchronized (this) {
+			transport = batchedTransport;
+			batchedTransport = null;
+		}
+		if (transport != null) {
+			transport.stop();
+		}
 		synchronized (this) {
 			if (isRunning()) {
+				synchronized (receivedRequests) {
+					if (!receivedRequests.isEmpty()) {
+						// The batch was not acknowledged, the broker delivers it again
+						LOGGER.warn("Stopping " + queueName + " with " + receivedRequests.size() + " received requests not processed");
+						receivedRequests.clear();
+					}
+				}
 				closeSession(receivingSession);
 				closeSession(sendingSession);
 				if (null != consumer.get()) {
@@ -248,6 +334,12 @@ final class SimpleQueueService implements Service {
 		}
 	}
 
+	private BatchedTransport getBatchedTransport() {
+		synchronized (this) {
+			return batchedTransport;
+		}
+	}
+
 	/**
 	 * This is where the requests get sent to. A destination supports concurrent use.
 	 */
@@ -262,4 +354,53 @@ final class SimpleQueueService implements Service {
 			this.requestDestination = requestDestination;
 		}
 	}
+
+	/**
+	 * Sends the batches on behalf of {@link BatchedTransport}, using the session of the transport thread.
+	 */
+	private final class BatchSender implements BatchedTransport.Sender {
+		@Override
+		public void sendRequests(final int priority, final List<Serializable> requests) throws JMSException {
+			final BytesMessage message = createBatch(requests);
+			for (int i = 0; i < requests.size(); i += 2) {
+				if (requests.get(i) != null) {
+					message.setJMSReplyTo(responseDispatcher.getResponseDestination());
+					break;
+				}
+			}
+			final MessageProducer messageProducer = messageProducer();
+			messageProducer.send(getRequestDestination(), message, messageProducer.getDeliveryMode(), priority, messageProducer.getTimeToLive());
+		}
+
+		@Override
+		public void sendResponses(final String correlationId, final Destination replyTo, final List<Serializable> responses, final boolean isLast) throws JMSException {
+			final BytesMessage message = createBatch(responses);
+			message.setBooleanProperty(ResponseDispatcher.LAST_RESPONSE, isLast);
+			message.setJMSCorrelationID(correlationId);
+			messageProducer().send(replyTo, message);
+		}
+
+		private BytesMessage createBatch(final List<Serializable> data) throws JMSException {
+			final BytesMessage message = sendingSession().createBytesMessage();
+			message.writeBytes(MessageCodec.encode(data));
+			message.setBooleanProperty(BATCH, true);
+			return message;
+		}
+
+		@Override
+		public void requestFailed(final String correlationId, final ResponseListener listener, final MprcException exception) {
+			if (listener == null) {
+				LOGGER.error("Could not send request to " + queueName, exception);
+				return;
+			}
+			responseDispatcher.unregisterMessageListener(correlationId);
+			listener.responseReceived(exception, true);
+		}
+
+		@Override
+		public void release() {
+			producer.set(null);
+			closeSession(sendingSession);
+		}
+	}
 }
@@ -0,0 +1,51 @@
+package edu.mayo.mprc.messaging;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runs the batched transport through a real {@link SimpleQueueService}.
+ *
+ * @author Roman Zenka
+ */
+public final class BatchedQueueServiceTest extends MessagingTestBase {
+	private static final String QUEUE_NAME = "batched_test_queue";
+	private static final int TOTAL_REQUESTS = 200;
+	private static final long MAX_STOP_MILLIS = 5000;
+
+	@Test
+	public void shouldDeliverEverythingOnStop() {
+		startBroker();
+
+		final SimpleQueueService sender = new SimpleQueueService(serviceFactory, responseDispatcher, QUEUE_NAME, true);
+		sender.start();
+		for (int i = 0; i < TOTAL_REQUESTS; i++) {
+			sender.sendRequest("request " + i, SendReceiveTest.PRIORITY, null);
+		}
+		final long start = System.currentTimeMillis();
+		sender.stop();
+		final long stopMillis = System.currentTimeMillis() - start;
+		Assert.assertTrue(stopMillis < MAX_STOP_MILLIS, "Stopping the service took " + stopMillis + " ms");
+		Assert.assertFalse(sender.isRunning());
+
+		final SimpleQueueService receiver = new SimpleQueueService(serviceFactory, responseDispatcher, QUEUE_NAME, false);
+		receiver.start();
+		try {
+			final Set<Object> received = new HashSet<Object>();
+			while (received.size() < TOTAL_REQUESTS) {
+				final Request request = receiver.receiveRequest(10000);
+				Assert.assertNotNull(request, "Only " + received.size() + " of " + TOTAL_REQUESTS + " requests were delivered");
+				request.processed();
+				received.add(request.getMessageData());
+			}
+			for (int i = 0; i < TOTAL_REQUESTS; i++) {
+				Assert.assertTrue(received.contains("request " + i), "Missing request " + i);
+			}
+		} finally {
+			receiver.stop();
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package edu.mayo.mprc.messaging;
+
+import edu.mayo.mprc.MprcException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Roman Zenka
+ */
+public final class BatchedTransportTest {
+	@Test
+	public void shouldCoalesceResponses() throws InterruptedException {
+		final RecordingSender sender = new RecordingSender();
+		final BatchedTransport transport = new BatchedTransport(sender, "test");
+		for (int i = 0; i < 10; i++) {
+			transport.sendResponse("progress " + i, "1", null, false);
+		}
+		transport.sendResponse("done", "1", null, true);
+		transport.sendResponse("progress", "2", null, false);
+		Thread.sleep(BatchedTransport.COALESCE_WINDOW_MILLIS * 3);
+		transport.sendResponse("done", "2", null, true);
+		transport.stop();
+
+		final List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			expected.add("progress " + i);
+		}
+		expected.add("done");
+		Assert.assertEquals(sender.messages, Arrays.asList(
+				"1:" + expected + ":last",
+				"2:[progress]",
+				"2:[done]:last"));
+		Assert.assertTrue(sender.released);
+	}
+
+	@Test
+	public void shouldSendEverythingOnStop() {
+		final RecordingSender sender = new RecordingSender();
+		final BatchedTransport transport = new BatchedTransport(sender, "test");
+		transport.sendResponse("progress", "1", null, false);
+		transport.sendRequest("request", 5, "2", null);
+		transport.stop();
+		Assert.assertEquals(sender.messages, Arrays.asList("5:[2, request]", "1:[progress]"));
+	}
+
+	@Test
+	public void shouldReportFailedRequests() {
+		final RecordingSender sender = new RecordingSender();
+		sender.fail = true;
+		final BatchedTransport transport = new BatchedTransport(sender, "test");
+		final List<Serializable> responses = new ArrayList<Serializable>();
+		transport.sendRequest("request", 5, "1", new ResponseListener() {
+			@Override
+			public void responseReceived(final Serializable response, final boolean isLast) {
+				Assert.assertTrue(isLast);
+				responses.add(response);
+			}
+		});
+		transport.stop();
+		Assert.assertEquals(sender.failed, Arrays.asList("1"));
+		Assert.assertEquals(responses.size(), 1);
+		Assert.assertTrue(responses.get(0) instanceof MprcException);
+	}
+
+	private static final class RecordingSender implements BatchedTransport.Sender {
+		private final List<String> messages = new ArrayList<String>();
+		private final List<String> failed = new ArrayList<String>();
+		private boolean fail;
+		private boolean released;
+
+		@Override
+		public void sendRequests(final int priority, final List<Serializable> requests) throws JMSException {
+			if (fail) {
+				throw new JMSException("Broker is down");
+			}
+			messages.add(priority + ":" + requests);
+		}
+
+		@Override
+		public void sendResponses(final String correlationId, final Destination replyTo, final List<Serializable> responses, final boolean isLast) {
+			messages.add(correlationId + ":" + responses + (isLast ? ":last" : ""));
+		}
+
+		@Override
+		public void requestFailed(final String correlationId, final ResponseListener listener, final MprcException exception) {
+			failed.add(correlationId);
+			listener.responseReceived(exception, true);
+		}
+
+		@Override
+		public void release() {
+			released = true;
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package edu.mayo.mprc.messaging;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Roman Zenka
+ */
+public final class MessageCodecTest {
+	@Test
+	public void shouldRoundTrip() {
+		final List<Serializable> objects = Arrays.<Serializable>asList("12", "request", null, 5);
+		final byte[] body = MessageCodec.encode(objects);
+		Assert.assertTrue(body.length < MessageCodec.COMPRESSION_THRESHOLD);
+		Assert.assertEquals(MessageCodec.decode(body), objects);
+	}
+
+	@Test
+	public void shouldCompressLargeBatches() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < MessageCodec.COMPRESSION_THRESHOLD; i++) {
+			builder.append("progress ");
+		}
+		final List<Serializable> objects = Arrays.<Serializable>asList(builder.toString(), "last");
+		final byte[] body = MessageCodec.encode(objects);
+		Assert.assertTrue(body.length < MessageCodec.COMPRESSION_THRESHOLD, "Repetitive data must compress well");
+		Assert.assertEquals(MessageCodec.decode(body), objects);
+	}
+}
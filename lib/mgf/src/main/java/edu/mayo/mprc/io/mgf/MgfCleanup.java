@@ -1,10 +1,18 @@
 package edu.mayo.mprc.io.mgf;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.utilities.FileUtilities;
 import org.apache.log4j.Logger;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,20 +25,43 @@ import java.util.regex.Pattern;
  * <li>otherwise we produce consecutive numbers and use them as scan numbers</li>
  * </ul>
  * <p/>
+ * Whether the cleanup is needed is decided from the first {@link #PREFIX_SPECTRA} spectra only. The cleanup itself
+ * reads the file once, cuts it into blocks at spectrum boundaries and cleans the blocks in parallel. The blocks
+ * are written out in the original order.
+ * <p/>
  * <b>WARNING:</b> We expect that either all titles are valid or all are invalid. There might be issues for files that have just
  * some spectra invalid.
  */
 public final class MgfCleanup {
 	private static final Logger LOGGER = Logger.getLogger(MgfCleanup.class);
 	private static final int BUFFER_SIZE = 100 * 1024;
+	private static final int BLOCK_SIZE = 4 * 1024 * 1024;
+	/**
+	 * How many spectra to check before deciding that the titles are valid.
+	 */
+	static final int PREFIX_SPECTRA = 1000;
 	private static final Pattern VALID_TITLE = Pattern.compile("\\([^)]*\\.dta\\s*\\)");
 	private static final Pattern CHARGE = Pattern.compile("CHARGE=.*?(\\d+)");
 	private static final Pattern SCANS = Pattern.compile("SCANS=.*?(\\d+)");
+	private static final byte[] BEGIN_IONS = {'B', 'E', 'G', 'I', 'N', ' ', 'I', 'O', 'N', 'S'};
 
 	private File inputMgf;
+	private final int threads;
+	private final int blockSize;
 
 	public MgfCleanup(final File inputMgf) {
+		this(inputMgf, Runtime.getRuntime().availableProcessors(), BLOCK_SIZE);
+	}
+
+	/**
+	 * @param inputMgf  The .mgf to clean.
+	 * @param threads   How many blocks of the file to clean at the same time.
+	 * @param blockSize Size of a block in bytes. Blocks get bigger if a single spectrum does not fit.
+	 */
+	MgfCleanup(final File inputMgf, final int threads, final int blockSize) {
 		this.inputMgf = inputMgf;
+		this.threads = Math.max(1, threads);
+		this.blockSize = blockSize;
 	}
 
 	/**
@@ -39,34 +70,36 @@ public final class MgfCleanup {
 	 */
 	public boolean produceCleanedMgf(final File output) {
 		BufferedReader reader = null;
-		BufferedWriter writer = null;
-		boolean cleanupNeeded = false;
+		final boolean cleanupNeeded;
 		try {
 			reader = new BufferedReader(new FileReader(inputMgf), BUFFER_SIZE);
-			cleanupNeeded = cleanupNeeded(reader);
-			LOGGER.debug("Cleanup of " + inputMgf.getAbsolutePath() + " is " + (cleanupNeeded ? "needed" : "not needed"));
-			if (cleanupNeeded) {
-				FileUtilities.closeQuietly(reader);
-				reader = new BufferedReader(new FileReader(inputMgf), BUFFER_SIZE);
-				LOGGER.debug("Cleaning up " + inputMgf.getAbsolutePath() + " into " + output.getAbsolutePath());
-				FileUtilities.ensureFileExists(output);
-				writer = new BufferedWriter(new FileWriter(output));
-				final String prefix = FileUtilities.stripExtension(inputMgf.getName());
-				performCleanup(reader, writer, prefix);
-				LOGGER.debug("Cleanup finished");
-			}
+			cleanupNeeded = cleanupNeeded(reader, PREFIX_SPECTRA);
 		} catch (Exception t) {
 			throw new MprcException(t);
 		} finally {
 			FileUtilities.closeQuietly(reader);
-			FileUtilities.closeQuietly(writer);
+		}
+		LOGGER.debug("Cleanup of " + inputMgf.getAbsolutePath() + " is " + (cleanupNeeded ? "needed" : "not needed"));
+		if (cleanupNeeded) {
+			LOGGER.debug("Cleaning up " + inputMgf.getAbsolutePath() + " into " + output.getAbsolutePath());
+			FileUtilities.ensureFileExists(output);
+			performCleanup(output);
+			LOGGER.debug("Cleanup finished");
 		}
 		return cleanupNeeded;
 	}
 
 	static boolean cleanupNeeded(final BufferedReader reader) throws IOException {
+		return cleanupNeeded(reader, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxSpectra Stop checking after this many spectra and report the titles as valid.
+	 */
+	static boolean cleanupNeeded(final BufferedReader reader, final int maxSpectra) throws IOException {
 		boolean insideParamSection = false;
 		String title = null;
+		int spectra = 0;
 		// We assume (according to MGF specification), that search parameters must
 		// follow BEGIN IONS section. Once the param section is over (queries start),
 		// there must be NO parameters until we encounter another BEGIN IONS section.
@@ -77,6 +110,10 @@ public final class MgfCleanup {
 			}
 			if (!insideParamSection) {
 				if (line.startsWith("BEGIN IONS")) {
+					if (spectra == maxSpectra) {
+						break;
+					}
+					spectra++;
 					insideParamSection = true;
 					title = null;
 				}
@@ -99,8 +136,102 @@ public final class MgfCleanup {
 		return false;
 	}
 
+	/**
+	 * Read the input once, block by block. Each block is cleaned on the executor, the calling thread
+	 * writes the cleaned blocks in order. At most two blocks per thread are kept in memory.
+	 */
+	private void performCleanup(final File output) {
+		final String prefix = FileUtilities.stripExtension(inputMgf.getName());
+		final Charset charset = Charset.defaultCharset();
+		final ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setNameFormat("mgf-cleanup-%d").setDaemon(true).build());
+		final Deque<Future<CleanedBlock>> pending = new ArrayDeque<Future<CleanedBlock>>();
+		InputStream input = null;
+		BufferedWriter writer = null;
+		try {
+			input = new FileInputStream(inputMgf);
+			writer = new BufferedWriter(new FileWriter(output), BUFFER_SIZE);
+			int titleId = 0;
+			byte[] buffer = new byte[blockSize];
+			int filled = 0;
+			while (true) {
+				if (filled == buffer.length) {
+					// A single spectrum bigger than the buffer
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				}
+				final int read = input.read(buffer, filled, buffer.length - filled);
+				if (read < 0) {
+					if (filled > 0) {
+						pending.addLast(executor.submit(new BlockCleaner(Arrays.copyOf(buffer, filled), charset, prefix)));
+					}
+					break;
+				}
+				filled += read;
+				if (filled < buffer.length) {
+					continue;
+				}
+				final int split = lastSpectrumStart(buffer, filled);
+				if (split <= 0) {
+					continue;
+				}
+				pending.addLast(executor.submit(new BlockCleaner(Arrays.copyOf(buffer, split), charset, prefix)));
+				System.arraycopy(buffer, split, buffer, 0, filled - split);
+				filled -= split;
+
+				while (pending.size() >= 2 * threads) {
+					titleId = pending.removeFirst().get().writeTo(writer, prefix, titleId);
+				}
+			}
+			while (!pending.isEmpty()) {
+				titleId = pending.removeFirst().get().writeTo(writer, prefix, titleId);
+			}
+		} catch (ExecutionException e) {
+			throw new MprcException("Cleanup of " + inputMgf.getAbsolutePath() + " failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Cleanup of " + inputMgf.getAbsolutePath() + " was interrupted", e);
+		} catch (IOException e) {
+			throw new MprcException("Cleanup of " + inputMgf.getAbsolutePath() + " into " + output.getAbsolutePath() + " failed", e);
+		} finally {
+			executor.shutdownNow();
+			FileUtilities.closeQuietly(input);
+			FileUtilities.closeQuietly(writer);
+		}
+	}
+
+	/**
+	 * @return Position of the last line starting with BEGIN IONS, 0 if there is none (apart from the very first line).
+	 */
+	static int lastSpectrumStart(final byte[] buffer, final int length) {
+		for (int i = length - BEGIN_IONS.length; i > 0; i--) {
+			if (buffer[i - 1] == '\n' && startsWith(buffer, i, BEGIN_IONS)) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	private static boolean startsWith(final byte[] buffer, final int position, final byte[] prefix) {
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer[position + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	static void performCleanup(final BufferedReader reader, final BufferedWriter writer, final String prefix) throws IOException {
-		int invalidTitleId = 0;
+		cleanBlock(reader, prefix).writeTo(writer, prefix, 0);
+		writer.flush();
+	}
+
+	/**
+	 * Clean a block of spectra. The block does not know how many invalid titles came before it, so the titles
+	 * that need a made-up scan number are left as slots, filled in by {@link CleanedBlock#writeTo}.
+	 */
+	static CleanedBlock cleanBlock(final BufferedReader reader, final String prefix) throws IOException {
+		final CleanedBlock block = new CleanedBlock();
+		final StringBuilder writer = block.text;
 		boolean insideParamSection = false;
 		String title = null;
 		final StringBuilder headerBuilder = new StringBuilder(500);
@@ -134,11 +265,15 @@ public final class MgfCleanup {
 					writer.append(title);
 					if (!VALID_TITLE.matcher(title).find()) {
 						// Title is invalid
-						invalidTitleId++;
-						writer.append(getTitleDtaIdentification(scans, prefix, charge, invalidTitleId));
+						block.invalidTitles++;
+						if (scans == -1) {
+							block.addSlot(charge);
+						} else {
+							writer.append(getTitleDtaIdentification(scans, prefix, charge, block.invalidTitles));
+						}
 					}
 					writer.append('\n');
-					writer.append(headerBuilder.toString());
+					writer.append(headerBuilder);
 					writer.append(line).append('\n');
 				} else {
 					if (title == null && line.startsWith("TITLE=")) {
@@ -155,7 +290,7 @@ public final class MgfCleanup {
 				}
 			}
 		}
-		writer.flush();
+		return block;
 	}
 
 	static int parseCharge(final String line) {
@@ -184,4 +319,48 @@ public final class MgfCleanup {
 		return " (" + prefix + "." + fixedRunNumber + "." + fixedRunNumber + "." + charge + ".dta)";
 	}
 
+	/**
+	 * Cleaned text of a block, with slots for the invalid titles that get consecutive numbers.
+	 */
+	static final class CleanedBlock {
+		private final StringBuilder text = new StringBuilder(BUFFER_SIZE);
+		private final List<int[]> slots = new ArrayList<int[]>();
+		private int invalidTitles;
+
+		private void addSlot(final int charge) {
+			slots.add(new int[]{text.length(), charge, invalidTitles});
+		}
+
+		/**
+		 * @param previousInvalidTitles How many invalid titles were in the blocks written so far.
+		 * @return Invalid titles written including this block.
+		 */
+		int writeTo(final Writer writer, final String prefix, final int previousInvalidTitles) throws IOException {
+			int written = 0;
+			for (final int[] slot : slots) {
+				writer.append(text, written, slot[0]);
+				writer.append(getTitleDtaIdentification(-1, prefix, slot[1], previousInvalidTitles + slot[2]));
+				written = slot[0];
+			}
+			writer.append(text, written, text.length());
+			return previousInvalidTitles + invalidTitles;
+		}
+	}
+
+	private static final class BlockCleaner implements Callable<CleanedBlock> {
+		private final byte[] data;
+		private final Charset charset;
+		private final String prefix;
+
+		private BlockCleaner(final byte[] data, final Charset charset, final String prefix) {
+			this.data = data;
+			this.charset = charset;
+			this.prefix = prefix;
+		}
+
+		@Override
+		public CleanedBlock call() throws IOException {
+			return cleanBlock(new BufferedReader(new StringReader(new String(data, charset)), BUFFER_SIZE), prefix);
+		}
+	}
 }
@@ -0,0 +1,443 @@
+package edu.mayo.mprc.io.mgf;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
+import edu.mayo.mprc.peaklist.PeakList;
+import edu.mayo.mprc.peaklist.PeakListReader;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.proteomecommons.io.GenericPeak;
+import org.proteomecommons.io.Peak;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads .mgf files the same way as {@link MgfPeakListReader}, but parses the raw bytes directly.
+ * <p/>
+ * The peaks are parsed in place into reusable primitive arrays - there is no {@link String}
+ * created per line. When read through {@link #readPeakList(ColumnarPeakList)}, there is also no
+ * {@link Peak} object created per peak. Only the header lines (TITLE, PEPMASS, CHARGE) are ever turned into strings.
+ *
+ * @author Roman Zenka
+ */
+public final class MgfPeakArrayReader implements PeakListReader {
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final int INITIAL_PEAKS = 1024;
+
+	private static final byte[] PEPMASS = bytes("PEPMASS");
+	private static final byte[] CHARGE = bytes("CHARGE");
+	private static final byte[] TITLE = bytes("TITLE");
+	private static final byte[] BEGIN_IONS = bytes("BEGIN IONS");
+	private static final byte[] END_IONS = bytes("END IONS");
+
+	/**
+	 * Checks whether the PEPMASS is specified with both m/z and intensity. If so, only the first portion is used.
+	 */
+	private static final Pattern PEPMASS_INTENSITY = Pattern.compile("(PEPMASS\\s*=\\s*[0-9.+-e]+)\\s+.*");
+
+	/**
+	 * Powers of ten that are exactly representable as double.
+	 */
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	/**
+	 * Largest mantissa that is exactly representable as double.
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private final File inputFile;
+	private final InputStream stream;
+	private final Charset charset = Charset.defaultCharset();
+
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	// Valid data in the buffer is between position and limit
+	private int position;
+	private int limit;
+	private boolean endOfStream;
+
+	// Bounds of the current line within the buffer, without the end of line characters
+	private int lineStart;
+	private int lineEnd;
+
+	private boolean readPeaks;
+
+	// Header of the current spectrum
+	private String title;
+	private String pepmass;
+	private String charge;
+	private int tandemCount;
+
+	private double[] massOverCharge = new double[INITIAL_PEAKS];
+	private double[] intensity = new double[INITIAL_PEAKS];
+	private int peakCount;
+
+	// Output of parseDouble - the position right after the parsed number
+	private int parsedEnd;
+
+	public MgfPeakArrayReader(final File inputFile, final boolean readPeaks) {
+		this.inputFile = inputFile;
+		this.readPeaks = readPeaks;
+		stream = FileUtilities.getInputStream(inputFile);
+	}
+
+	@Override
+	public PeakList nextPeakList() {
+		if (!readSpectrum(readPeaks)) {
+			return null;
+		}
+		final PeakList peaklist = new PeakList();
+		if (tandemCount != PeakList.UNKNOWN_TANDEM_COUNT) {
+			peaklist.setTandemCount(tandemCount);
+		}
+		if (pepmass != null) {
+			peaklist.setPepmass(pepmass);
+		}
+		if (charge != null) {
+			peaklist.setCharge(charge);
+		}
+		if (title != null) {
+			peaklist.setTitle(title);
+		}
+
+		if (readPeaks) {
+			final Peak[] peaks = new Peak[peakCount];
+			for (int i = 0; i < peakCount; i++) {
+				final GenericPeak gp = new GenericPeak();
+				gp.setMassOverCharge(massOverCharge[i]);
+				gp.setIntensity(intensity[i]);
+				peaks[i] = gp;
+			}
+			peaklist.setPeaks(peaks);
+		}
+
+		return peaklist;
+	}
+
+	@Override
+	public boolean readPeakList(final ColumnarPeakList peakList) {
+		peakList.clear();
+		if (!readSpectrum(readPeaks)) {
+			return false;
+		}
+		peakList.setTitle(title);
+		peakList.setTandemCount(tandemCount);
+		peakList.setPrecursor(pepmass, charge);
+		peakList.setPeaks(massOverCharge, intensity, peakCount);
+		return true;
+	}
+
+	/**
+	 * Read next spectrum into the header fields and the peak arrays.
+	 *
+	 * @param parsePeaks When false, the peak lines are skipped.
+	 * @return False if there are no more spectra.
+	 */
+	private boolean readSpectrum(final boolean parsePeaks) {
+		boolean foundPeaks = false;
+		title = null;
+		pepmass = null;
+		charge = null;
+		tandemCount = PeakList.UNKNOWN_TANDEM_COUNT;
+		peakCount = 0;
+
+		try {
+			while (nextLine()) {
+				trimLine();
+
+				if (lineStart == lineEnd) {
+					continue;
+				}
+
+				if (lineStartsWith(PEPMASS)) {
+					tandemCount = 2;
+					final String line = lineToString();
+					final Matcher matcher = PEPMASS_INTENSITY.matcher(line);
+					if (matcher.matches()) {
+						pepmass = matcher.group(1);
+					} else {
+						pepmass = line;
+					}
+					continue;
+				}
+
+				if (lineStartsWith(CHARGE)) {
+					tandemCount = 2;
+					charge = lineToString();
+				}
+
+				if (lineStartsWith(TITLE)) {
+					final String line = lineToString();
+					title = line.substring(line.indexOf('=') + 1).trim();
+					continue;
+				}
+
+				if (lineStartsWith(BEGIN_IONS)) {
+					foundPeaks = true;
+				}
+
+				if (lineContains(END_IONS)) {
+					break;
+				}
+
+				if (foundPeaks && buffer[lineStart] >= '0' && buffer[lineStart] <= '9') {
+					do {
+						if (lineContains(END_IONS)) {
+							break;
+						}
+						if (parsePeaks) {
+							parsePeak();
+						}
+					} while (nextLine());
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new MprcException("Failure reading peaklists from .mgf file " + inputFile.getAbsolutePath(), e);
+		}
+
+		return foundPeaks;
+	}
+
+	/**
+	 * Parse a peak line in form {@code m/z intensity [anything]}. Lines that do not match are skipped,
+	 * same as in {@link MgfPeakListReader}.
+	 */
+	private void parsePeak() {
+		final int mzStart = skipWhitespace(lineStart);
+		final double mz = parseDouble(buffer, mzStart, lineEnd);
+		if (Double.isNaN(mz) || parsedEnd == mzStart || parsedEnd == lineEnd || !isWhitespace(buffer[parsedEnd])) {
+			return;
+		}
+		final int intensityStart = skipWhitespace(parsedEnd);
+		final double peakIntensity = parseDouble(buffer, intensityStart, lineEnd);
+		if (Double.isNaN(peakIntensity) || parsedEnd == intensityStart || (parsedEnd < lineEnd && !isWhitespace(buffer[parsedEnd]))) {
+			return;
+		}
+		if (peakCount == massOverCharge.length) {
+			massOverCharge = grow(massOverCharge);
+			intensity = grow(intensity);
+		}
+		massOverCharge[peakCount] = mz;
+		intensity[peakCount] = peakIntensity;
+		peakCount++;
+	}
+
+	/**
+	 * Parse a decimal number starting at given offset, stopping at first character that cannot be part of the number.
+	 * The end of the parsed number is stored in {@link #parsedEnd}.
+	 * <p/>
+	 * The common case (up to 18 significant digits, small exponent) is computed directly, giving the same
+	 * correctly rounded result as {@link Double#parseDouble}. Anything else falls back to {@link Double#parseDouble}.
+	 *
+	 * @return Parsed value or {@link Double#NaN} if there is no valid number.
+	 */
+	double parseDouble(final byte[] data, final int start, final int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (data[i] == '-' || data[i] == '+')) {
+			negative = data[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean seenDigit = false;
+		while (i < end && data[i] >= '0' && data[i] <= '9') {
+			seenDigit = true;
+			if (mantissa != 0 || data[i] != '0') {
+				digits++;
+			}
+			mantissa = mantissa * 10 + (data[i] - '0');
+			i++;
+		}
+		if (i < end && data[i] == '.') {
+			i++;
+			while (i < end && data[i] >= '0' && data[i] <= '9') {
+				seenDigit = true;
+				if (mantissa != 0 || data[i] != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (data[i] - '0');
+				fractionDigits++;
+				i++;
+			}
+		}
+		if (!seenDigit) {
+			parsedEnd = start;
+			return Double.NaN;
+		}
+		int exponent = 0;
+		if (i < end && (data[i] == 'e' || data[i] == 'E')) {
+			int j = i + 1;
+			boolean negativeExponent = false;
+			if (j < end && (data[j] == '-' || data[j] == '+')) {
+				negativeExponent = data[j] == '-';
+				j++;
+			}
+			if (j < end && data[j] >= '0' && data[j] <= '9') {
+				while (j < end && data[j] >= '0' && data[j] <= '9') {
+					if (exponent < 10000) {
+						exponent = exponent * 10 + (data[j] - '0');
+					}
+					j++;
+				}
+				if (negativeExponent) {
+					exponent = -exponent;
+				}
+				i = j;
+			}
+		}
+		parsedEnd = i;
+
+		final int power = exponent - fractionDigits;
+		if (digits > 18 || mantissa > MAX_EXACT_MANTISSA || power < -22 || power > 22) {
+			try {
+				return Double.parseDouble(new String(data, start, i - start, charset));
+			} catch (NumberFormatException ignore) {
+				// SWALLOWED: treat as invalid number
+				return Double.NaN;
+			}
+		}
+		final double value = power >= 0 ? (double) mantissa * POWERS_OF_TEN[power] : (double) mantissa / POWERS_OF_TEN[-power];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Move to the next line in the buffer, reading more data when needed.
+	 *
+	 * @return False if there are no more lines.
+	 */
+	private boolean nextLine() throws IOException {
+		while (true) {
+			for (int i = position; i < limit; i++) {
+				if (buffer[i] == '\n') {
+					setLine(position, i);
+					position = i + 1;
+					return true;
+				}
+			}
+			if (endOfStream) {
+				if (position < limit) {
+					setLine(position, limit);
+					position = limit;
+					return true;
+				}
+				return false;
+			}
+			fillBuffer();
+		}
+	}
+
+	private void setLine(final int start, final int end) {
+		lineStart = start;
+		lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+	}
+
+	/**
+	 * Move the unprocessed data to the beginning of the buffer and read more. Grows the buffer
+	 * if a single line does not fit.
+	 */
+	private void fillBuffer() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		} else if (limit == buffer.length) {
+			final byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, limit);
+			buffer = newBuffer;
+		}
+		final int read = stream.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			endOfStream = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	private void trimLine() {
+		while (lineStart < lineEnd && isWhitespace(buffer[lineStart])) {
+			lineStart++;
+		}
+		while (lineEnd > lineStart && isWhitespace(buffer[lineEnd - 1])) {
+			lineEnd--;
+		}
+	}
+
+	private int skipWhitespace(final int from) {
+		int i = from;
+		while (i < lineEnd && isWhitespace(buffer[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	private static boolean isWhitespace(final byte b) {
+		return b <= ' ' && b >= 0;
+	}
+
+	private boolean lineStartsWith(final byte[] prefix) {
+		if (lineEnd - lineStart < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer[lineStart + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean lineContains(final byte[] text) {
+		final int last = lineEnd - text.length;
+		outer:
+		for (int start = lineStart; start <= last; start++) {
+			for (int i = 0; i < text.length; i++) {
+				if (buffer[start + i] != text[i]) {
+					continue outer;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private String lineToString() {
+		return new String(buffer, lineStart, lineEnd - lineStart, charset);
+	}
+
+	private static double[] grow(final double[] array) {
+		final double[] result = new double[array.length * 2];
+		System.arraycopy(array, 0, result, 0, array.length);
+		return result;
+	}
+
+	private static byte[] bytes(final String s) {
+		final byte[] result = new byte[s.length()];
+		for (int i = 0; i < s.length(); i++) {
+			result[i] = (byte) s.charAt(i);
+		}
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		stream.close();
+	}
+
+	@Override
+	public boolean isReadPeaks() {
+		return readPeaks;
+	}
+
+	@Override
+	public void setReadPeaks(final boolean readPeaks) {
+		this.readPeaks = readPeaks;
+	}
+}
@@ -5,6 +5,7 @@
 package edu.mayo.mprc.io.mgf;
 
 import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
 import edu.mayo.mprc.peaklist.PeakList;
 import edu.mayo.mprc.peaklist.PeakListReader;
 import edu.mayo.mprc.utilities.FileUtilities;
@@ -165,6 +166,17 @@ public final class MgfPeakListReader implements PeakListReader {
 		return peaklist;
 	}
 
+	@Override
+	public boolean readPeakList(final ColumnarPeakList peakList) {
+		final PeakList next = nextPeakList();
+		if (next == null) {
+			peakList.clear();
+			return false;
+		}
+		peakList.copyFrom(next);
+		return true;
+	}
+
 	/**
 	 * Close the buffered reader that handles this mgf file.
 	 *
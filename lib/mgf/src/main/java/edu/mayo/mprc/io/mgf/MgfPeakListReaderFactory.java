@@ -7,13 +7,23 @@ import org.springframework.stereotype.Component;
 import java.io.File;
 
 /**
+ * Creates .mgf readers. By default the readers parse the raw bytes into primitive peak arrays
+ * ({@link MgfPeakArrayReader}), the original line-based {@link MgfPeakListReader} can be turned back on
+ * using {@link #setByteParsing(boolean)}.
+ *
  * @author Roman Zenka
  */
 @Component("mgfPeakListReaderFactory")
 public final class MgfPeakListReaderFactory implements PeakListReaderFactory {
+	private boolean byteParsing = true;
+
 	public MgfPeakListReaderFactory() {
 	}
 
+	public MgfPeakListReaderFactory(final boolean byteParsing) {
+		this.byteParsing = byteParsing;
+	}
+
 	@Override
 	public String getExtension() {
 		return "mgf";
@@ -21,6 +31,17 @@ public final class MgfPeakListReaderFactory implements PeakListReaderFactory {
 
 	@Override
 	public PeakListReader createReader(final File file, final boolean readPeaks) {
+		if (byteParsing) {
+			return new MgfPeakArrayReader(file, readPeaks);
+		}
 		return new MgfPeakListReader(file, readPeaks);
 	}
+
+	public boolean isByteParsing() {
+		return byteParsing;
+	}
+
+	public void setByteParsing(final boolean byteParsing) {
+		this.byteParsing = byteParsing;
+	}
 }
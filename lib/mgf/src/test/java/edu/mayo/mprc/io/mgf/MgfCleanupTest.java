@@ -1,5 +1,7 @@
 package edu.mayo.mprc.io.mgf;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import edu.mayo.mprc.utilities.FileUtilities;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -273,6 +275,53 @@ public final class MgfCleanupTest {
 	}
 
 
+	@Test
+	public void shouldDecideFromPrefix() throws IOException {
+		final String mgf = ""
+				+ "BEGIN IONS\n"
+				+ "TITLE=hello1 (test1.dta)\n"
+				+ "10.5\n"
+				+ "END IONS\n"
+				+ "BEGIN IONS\n"
+				+ "TITLE=hello2\n"
+				+ "10.5\n"
+				+ "END IONS\n";
+		Assert.assertFalse(MgfCleanup.cleanupNeeded(new BufferedReader(new StringReader(mgf)), 1), "Only the first spectrum is checked");
+		Assert.assertTrue(MgfCleanup.cleanupNeeded(new BufferedReader(new StringReader(mgf)), 2), "The second spectrum is invalid");
+	}
+
+	@Test
+	public void shouldCleanupInParallelBlocks() throws IOException {
+		final StringBuilder mgf = new StringBuilder("MASS=Monoisotopic\n");
+		for (int i = 0; i < 500; i++) {
+			mgf.append("BEGIN IONS\n");
+			if (i % 3 != 0) {
+				mgf.append("TITLE=spectrum ").append(i).append('\n');
+			}
+			mgf.append("CHARGE=").append(i % 4 + 1).append("+\n");
+			if (i % 5 == 0) {
+				mgf.append("SCANS=").append(1000 + i).append('\n');
+			}
+			mgf.append("100.").append(i).append(" 10.0\n")
+					.append("END IONS\n\n");
+		}
+
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File input = new File(folder, "filenameprefix.mgf");
+			Files.write(mgf, input, Charsets.US_ASCII);
+			final File output = new File(folder, "cleaned.mgf");
+			Assert.assertTrue(new MgfCleanup(input, 4, 256).produceCleanedMgf(output));
+
+			final StringWriter expected = new StringWriter();
+			final BufferedWriter writer = new BufferedWriter(expected);
+			MgfCleanup.performCleanup(new BufferedReader(new StringReader(mgf.toString())), writer, "filenameprefix");
+			Assert.assertEquals(Files.toString(output, Charsets.US_ASCII), expected.toString());
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
 	private static void testCorrectCleanup(final String mgfIn, final String mgfOut) throws IOException {
 		BufferedReader reader = null;
 		BufferedWriter writer = null;
@@ -0,0 +1,148 @@
+package edu.mayo.mprc.io.mgf;
+
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
+import edu.mayo.mprc.peaklist.PeakList;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.TestingUtilities;
+import org.proteomecommons.io.Peak;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author Roman Zenka
+ */
+public final class MgfPeakArrayReaderTest {
+	private static final String MULTI_PEAK_MGF = "CHARGE=2+\r\n" +
+			"BEGIN IONS\r\n" +
+			"TITLE= spectrum one (test.1.1.2.dta)\r\n" +
+			"PEPMASS=500.25 1234.5\r\n" +
+			"100.5 10\r\n" +
+			"  \r\n" +
+			"200.25\t1.5e3\r\n" +
+			"garbage\r\n" +
+			"300 0.001 extra\r\n" +
+			"END IONS\r\n" +
+			"\r\n" +
+			"BEGIN IONS\n" +
+			"TITLE=spectrum two (test.2.2.3.dta)\n" +
+			"CHARGE=3+\n" +
+			"PEPMASS=600.5\n" +
+			"50.125 7\n" +
+			"END IONS";
+
+	private File file;
+	private File multiPeakFile;
+
+	@BeforeClass
+	public void setup() throws IOException {
+		file = TestingUtilities.getTempFileFromResource(MgfPeakArrayReaderTest.class, "/edu/mayo/mprc/io/mgf/test.mgf", true, null);
+		multiPeakFile = File.createTempFile("multiPeak", ".mgf");
+		FileUtilities.writeStringToFile(multiPeakFile, MULTI_PEAK_MGF, true);
+	}
+
+	@AfterClass
+	public void teardown() {
+		FileUtilities.cleanupTempFile(file);
+		FileUtilities.cleanupTempFile(multiPeakFile);
+	}
+
+	@Test
+	public void shouldMatchLineReader() throws IOException {
+		assertSameAsLineReader(file);
+		assertSameAsLineReader(multiPeakFile);
+	}
+
+	@Test
+	public void shouldProvidePeakArrays() throws IOException {
+		final MgfPeakArrayReader reader = new MgfPeakArrayReader(multiPeakFile, true);
+		final ColumnarPeakList peakList = new ColumnarPeakList(1);
+		try {
+			Assert.assertTrue(reader.readPeakList(peakList));
+			Assert.assertEquals(peakList.getTitle(), "spectrum one (test.1.1.2.dta)");
+			Assert.assertEquals(peakList.getPrecursorMz(), 500.25);
+			Assert.assertEquals(peakList.getPrecursorCharge(), 2);
+			Assert.assertEquals(peakList.getTandemCount(), 2);
+			Assert.assertEquals(peakList.getPeakCount(), 3);
+			Assert.assertEquals(peakList.getMassOverCharge()[1], 200.25);
+			Assert.assertEquals(peakList.getIntensity()[1], 1500.0);
+			Assert.assertEquals(peakList.getMassOverCharge()[2], 300.0);
+			Assert.assertEquals(peakList.getIntensity()[2], 0.001);
+
+			Assert.assertTrue(reader.readPeakList(peakList));
+			Assert.assertEquals(peakList.getPrecursorCharge(), 3);
+			Assert.assertEquals(peakList.getPrecursorMz(), 600.5);
+			Assert.assertEquals(peakList.getPeakCount(), 1);
+			Assert.assertEquals(peakList.getMassOverCharge()[0], 50.125);
+
+			Assert.assertFalse(reader.readPeakList(peakList));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void shouldConvertToLegacyPeakList() {
+		final ColumnarPeakList peakList = new ColumnarPeakList();
+		peakList.setTitle("title");
+		peakList.setPrecursor("PEPMASS=506.5 100", "CHARGE=3-");
+		peakList.addPeak(145.5, 10.0);
+		Assert.assertEquals(peakList.getPrecursorIntensity(), 100.0);
+		Assert.assertEquals(peakList.getPrecursorCharge(), -3);
+
+		final PeakList legacy = peakList.toPeakList();
+		Assert.assertEquals(legacy.getPepmass(), "PEPMASS=506.5");
+		Assert.assertEquals(legacy.getCharge(), "CHARGE=3-");
+		Assert.assertEquals(legacy.getPeaks().length, 1);
+		Assert.assertEquals(legacy.getPeaks()[0].getMassOverCharge(), 145.5);
+	}
+
+	@Test
+	public void shouldParseNumbersLikeJava() {
+		final MgfPeakArrayReader reader = new MgfPeakArrayReader(file, true);
+		try {
+			final String[] numbers = {"0", "145.946", "-3.25", "+7", ".5", "5.", "0.000123", "1.5E-3", "2e+5",
+					"123456789.123456789", "1e300", "4.9e-324", "00012.500"};
+			for (final String number : numbers) {
+				final byte[] bytes = number.getBytes();
+				Assert.assertEquals(reader.parseDouble(bytes, 0, bytes.length), Double.parseDouble(number), number);
+			}
+			Assert.assertTrue(Double.isNaN(reader.parseDouble("abc".getBytes(), 0, 3)));
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+	}
+
+	private static void assertSameAsLineReader(final File mgf) throws IOException {
+		final MgfPeakListReader expectedReader = new MgfPeakListReader(mgf, true);
+		final MgfPeakArrayReader actualReader = new MgfPeakArrayReader(mgf, true);
+		try {
+			while (true) {
+				final PeakList expected = expectedReader.nextPeakList();
+				final PeakList actual = actualReader.nextPeakList();
+				if (expected == null) {
+					Assert.assertNull(actual);
+					break;
+				}
+				Assert.assertEquals(actual.getTitle(), expected.getTitle());
+				Assert.assertEquals(actual.getPepmass(), expected.getPepmass());
+				Assert.assertEquals(actual.getCharge(), expected.getCharge());
+				Assert.assertEquals(actual.getTandemCount(), expected.getTandemCount());
+				final Peak[] expectedPeaks = expected.getPeaks();
+				final Peak[] actualPeaks = actual.getPeaks();
+				Assert.assertEquals(actualPeaks.length, expectedPeaks.length);
+				for (int i = 0; i < expectedPeaks.length; i++) {
+					Assert.assertEquals(actualPeaks[i].getMassOverCharge(), expectedPeaks[i].getMassOverCharge());
+					Assert.assertEquals(actualPeaks[i].getIntensity(), expectedPeaks[i].getIntensity());
+				}
+			}
+		} finally {
+			expectedReader.close();
+			actualReader.close();
+		}
+	}
+}
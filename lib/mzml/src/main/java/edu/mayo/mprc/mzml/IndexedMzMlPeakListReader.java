@@ -0,0 +1,416 @@
+package edu.mayo.mprc.mzml;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
+import edu.mayo.mprc.peaklist.PeakList;
+import edu.mayo.mprc.peaklist.PeakListReader;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.proteomecommons.io.GenericPeak;
+import org.proteomecommons.io.Peak;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads MS2 spectra from an indexedmzML file using the spectrum offsets from its {@code <indexList>}.
+ * <p/>
+ * Each spectrum is parsed on its own with a StAX parser starting at its offset. MS1 (and MS3+) spectra are
+ * abandoned as soon as their ms level is known, so their binary data is never even read.
+ * The binary arrays are decoded straight into primitive arrays.
+ * <p/>
+ * Produces the same peak lists as {@link MzMlPeakListReader}. In addition, any spectrum can be looked up by its id
+ * using {@link #readSpectrum(String, ColumnarPeakList)}.
+ *
+ * @author Roman Zenka
+ */
+public final class IndexedMzMlPeakListReader implements PeakListReader {
+	// Stages of ms achieved in a multi stage mass spectrometry experiment.
+	private static final String MS_LEVEL = "MS:1000511";
+	private static final String SELECTED_ION_MZ = "MS:1000744";
+	private static final String CHARGE_STATE = "MS:1000041";
+	private static final String POSSIBLE_CHARGE_STATE = "MS:1000633";
+	private static final String FLOAT_32 = "MS:1000521";
+	private static final String FLOAT_64 = "MS:1000523";
+	private static final String ZLIB = "MS:1000574";
+	private static final String NO_COMPRESSION = "MS:1000576";
+
+	private final File file;
+	private final MzMlIndex index;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private final XMLInputFactory inputFactory;
+	private final MzMlBinaryDecoder decoder = new MzMlBinaryDecoder();
+	private boolean readPeaks;
+
+	// Position of the next spectrum to read in the index
+	private int nextPosition;
+
+	// Information about the spectrum being parsed
+	private String spectrumId;
+	private int msLevel;
+	private int defaultArrayLength;
+	private final List<PrecursorInfo> precursors = new ArrayList<PrecursorInfo>(2);
+	private double[] massOverCharge = new double[1024];
+	private double[] intensity = new double[1024];
+	private int peakCount;
+	private boolean hasMzArray;
+	private boolean hasIntensityArray;
+	private final StringBuilder binaryText = new StringBuilder(64 * 1024);
+
+	// Peak lists from the current spectrum that were not reported yet
+	private final List<PendingPeakList> pending = new ArrayList<PendingPeakList>(2);
+	private int pendingPosition;
+
+	public IndexedMzMlPeakListReader(final File file, final boolean readPeaks) {
+		this(file, readPeaks, MzMlIndex.read(file));
+	}
+
+	public IndexedMzMlPeakListReader(final File file, final boolean readPeaks, final MzMlIndex index) {
+		if (index == null) {
+			throw new MprcException("The mzML file [" + file.getAbsolutePath() + "] does not contain a spectrum index");
+		}
+		this.file = file;
+		this.readPeaks = readPeaks;
+		this.index = index;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+		} catch (IOException e) {
+			throw new MprcException("Cannot open mzML file [" + file.getAbsolutePath() + "]", e);
+		}
+		channel = randomAccessFile.getChannel();
+		inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+	}
+
+	/**
+	 * @return Index of all the spectra in the file.
+	 */
+	public MzMlIndex getIndex() {
+		return index;
+	}
+
+	@Override
+	public PeakList nextPeakList() {
+		final PendingPeakList next = nextPending();
+		if (next == null) {
+			return null;
+		}
+		final PeakList peakList = new PeakList();
+		peakList.setTitle(next.title);
+		peakList.setTandemCount(msLevel);
+		peakList.setPepmass("PEPMASS=" + next.precursorMz);
+		peakList.setCharge("CHARGE=" + next.charge + "+");
+		if (readPeaks) {
+			final Peak[] peaks = new Peak[peakCount];
+			for (int i = 0; i < peakCount; i++) {
+				final GenericPeak peak = new GenericPeak();
+				peak.setMassOverCharge(massOverCharge[i]);
+				peak.setIntensity(intensity[i]);
+				peaks[i] = peak;
+			}
+			peakList.setPeaks(peaks);
+		}
+		return peakList;
+	}
+
+	@Override
+	public boolean readPeakList(final ColumnarPeakList peakList) {
+		peakList.clear();
+		final PendingPeakList next = nextPending();
+		if (next == null) {
+			return false;
+		}
+		peakList.setTitle(next.title);
+		peakList.setTandemCount(msLevel);
+		peakList.setPrecursor(next.precursorMz == null ? null : "PEPMASS=" + next.precursorMz, next.charge);
+		if (readPeaks) {
+			peakList.setPeaks(massOverCharge, intensity, peakCount);
+		}
+		return true;
+	}
+
+	/**
+	 * Random access to a spectrum of any ms level. The title is set to the spectrum id, the precursor information
+	 * is taken from the first precursor (if any). All the peaks are read, regardless of {@link #isReadPeaks()}.
+	 *
+	 * @param id       Id of the spectrum.
+	 * @param peakList Peak list to fill in.
+	 * @return False if there is no such spectrum.
+	 */
+	public boolean readSpectrum(final String id, final ColumnarPeakList peakList) {
+		peakList.clear();
+		final int position = index.getPosition(id);
+		if (position < 0) {
+			return false;
+		}
+		// Random access invalidates whatever we had pending from sequential reading
+		pending.clear();
+		pendingPosition = 0;
+		parseSpectrum(position, false, true);
+		peakList.setTitle(spectrumId);
+		peakList.setTandemCount(msLevel);
+		if (!precursors.isEmpty()) {
+			final PrecursorInfo precursor = precursors.get(0);
+			final String charge = precursor.charge != null ? precursor.charge :
+					(precursor.possibleCharges.isEmpty() ? null : precursor.possibleCharges.get(0));
+			peakList.setPrecursor(precursor.mz == null ? null : "PEPMASS=" + precursor.mz, charge);
+		}
+		peakList.setPeaks(massOverCharge, intensity, peakCount);
+		return true;
+	}
+
+	private PendingPeakList nextPending() {
+		while (pendingPosition >= pending.size()) {
+			if (nextPosition >= index.size()) {
+				return null;
+			}
+			pending.clear();
+			pendingPosition = 0;
+			parseSpectrum(nextPosition, true, readPeaks);
+			nextPosition++;
+			if (msLevel == MzMlPeakListReader.MS2_SPECTRUM) {
+				queuePeakLists();
+			}
+		}
+		return pending.get(pendingPosition++);
+	}
+
+	/**
+	 * Same logic as {@link MzMlPeakListReader} - one peak list per precursor and possible charge.
+	 */
+	private void queuePeakLists() {
+		if (precursors.isEmpty()) {
+			throw new MprcException(spectrumException(" has zero listed precursors"));
+		}
+		final boolean multiplePrecursors = precursors.size() > 1;
+		int precursorId = 1;
+		for (final PrecursorInfo precursor : precursors) {
+			if (!precursor.hasSelectedIon) {
+				throw new MprcException(spectrumException(" does not specify any precursor ions"));
+			}
+			if (precursor.charge == null) {
+				if (precursor.possibleCharges.isEmpty()) {
+					throw new MprcException(spectrumException(" precursor charge state not specified"));
+				}
+				for (final String charge : precursor.possibleCharges) {
+					pending.add(new PendingPeakList(getSpectrumTitle(multiplePrecursors, precursorId, true, charge), precursor.mz, charge));
+				}
+			} else {
+				pending.add(new PendingPeakList(getSpectrumTitle(multiplePrecursors, precursorId, false, precursor.charge), precursor.mz, precursor.charge));
+			}
+			precursorId++;
+		}
+	}
+
+	private String getSpectrumTitle(final boolean multiplePrecursors, final int precursorId, final boolean multipleCharges, final String charge) {
+		return spectrumId + (multiplePrecursors ? " precursor=" + precursorId : "") + (multipleCharges ? " charge=" + charge : "");
+	}
+
+	/**
+	 * Parse spectrum at given index position.
+	 *
+	 * @param position    Position of the spectrum in the index.
+	 * @param ms2Only     Stop parsing as soon as we know this is not an MS2 spectrum.
+	 * @param parsePeaks  Decode the binary data arrays.
+	 */
+	private void parseSpectrum(final int position, final boolean ms2Only, final boolean parsePeaks) {
+		spectrumId = index.getSpectrumId(position);
+		msLevel = 0;
+		defaultArrayLength = 0;
+		precursors.clear();
+		peakCount = 0;
+		hasMzArray = false;
+		hasIntensityArray = false;
+
+		XMLStreamReader reader = null;
+		try {
+			channel.position(index.getOffset(position));
+			// The parser does its own buffering
+			reader = inputFactory.createXMLStreamReader(Channels.newInputStream(channel), "UTF-8");
+			parseSpectrumElement(reader, ms2Only, parsePeaks);
+		} catch (IOException e) {
+			throw new MprcException(spectrumException(" could not be read"), e);
+		} catch (XMLStreamException e) {
+			throw new MprcException(spectrumException(" could not be parsed"), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException ignore) {
+					// SWALLOWED: nothing we can do
+				}
+			}
+		}
+	}
+
+	private void parseSpectrumElement(final XMLStreamReader reader, final boolean ms2Only, final boolean parsePeaks) throws XMLStreamException {
+		// Depth relative to the spectrum element
+		int depth = 0;
+		PrecursorInfo precursor = null;
+		boolean inSelectedIon = false;
+		boolean inBinaryDataArray = false;
+		boolean doublePrecision = true;
+		boolean zlib = false;
+		boolean isMzArray = false;
+		boolean isIntensityArray = false;
+
+		while (reader.hasNext()) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				final String name = reader.getLocalName();
+				if (depth == 0) {
+					if (!"spectrum".equals(name)) {
+						throw new MprcException(spectrumException(" index points to <" + name + "> instead of <spectrum>"));
+					}
+					final String id = reader.getAttributeValue(null, "id");
+					if (id != null && !id.equals(spectrumId)) {
+						throw new MprcException(spectrumException(" index points to a different spectrum [" + id + "]"));
+					}
+					final String arrayLength = reader.getAttributeValue(null, "defaultArrayLength");
+					defaultArrayLength = arrayLength == null ? 0 : Integer.parseInt(arrayLength);
+				} else if ("cvParam".equals(name)) {
+					final String accession = reader.getAttributeValue(null, "accession");
+					if (depth == 1 && MS_LEVEL.equals(accession)) {
+						msLevel = Integer.parseInt(reader.getAttributeValue(null, "value"));
+						if (ms2Only && msLevel != MzMlPeakListReader.MS2_SPECTRUM) {
+							return;
+						}
+					} else if (inSelectedIon && precursor != null) {
+						if (SELECTED_ION_MZ.equals(accession)) {
+							precursor.mz = reader.getAttributeValue(null, "value");
+						} else if (CHARGE_STATE.equals(accession)) {
+							precursor.charge = reader.getAttributeValue(null, "value");
+						} else if (POSSIBLE_CHARGE_STATE.equals(accession)) {
+							precursor.possibleCharges.add(reader.getAttributeValue(null, "value"));
+						}
+					} else if (inBinaryDataArray) {
+						if (FLOAT_64.equals(accession)) {
+							doublePrecision = true;
+						} else if (FLOAT_32.equals(accession)) {
+							doublePrecision = false;
+						} else if (ZLIB.equals(accession)) {
+							zlib = true;
+						} else if (NO_COMPRESSION.equals(accession)) {
+							zlib = false;
+						} else if (MzMlPeakListReader.MZ_ARRAY.equals(accession)) {
+							isMzArray = true;
+						} else if (MzMlPeakListReader.INTENSITY_ARRAY.equals(accession)) {
+							isIntensityArray = true;
+						}
+					}
+				} else if ("precursor".equals(name)) {
+					precursor = new PrecursorInfo();
+					precursors.add(precursor);
+				} else if ("selectedIon".equals(name)) {
+					// Only the first selected ion is used
+					inSelectedIon = precursor != null && !precursor.hasSelectedIon;
+					if (precursor != null) {
+						precursor.hasSelectedIon = true;
+					}
+				} else if ("binaryDataArrayList".equals(name)) {
+					if (!parsePeaks) {
+						return;
+					}
+				} else if ("binaryDataArray".equals(name)) {
+					inBinaryDataArray = true;
+					doublePrecision = true;
+					zlib = false;
+					isMzArray = false;
+					isIntensityArray = false;
+				} else if ("binary".equals(name) && (isMzArray || isIntensityArray)) {
+					binaryText.setLength(0);
+					binaryText.append(reader.getElementText());
+					// getElementText moved us to the end element
+					decodeBinary(doublePrecision, zlib, isMzArray);
+					continue;
+				}
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+				final String name = reader.getLocalName();
+				if (depth == 0) {
+					break;
+				} else if ("selectedIon".equals(name)) {
+					inSelectedIon = false;
+				} else if ("binaryDataArray".equals(name)) {
+					inBinaryDataArray = false;
+				}
+			}
+		}
+
+		if (msLevel == 0) {
+			throw new MprcException(spectrumException(" does not specify ms-level (" + MS_LEVEL + ")"));
+		}
+		if (parsePeaks) {
+			if (!hasMzArray) {
+				throw new MprcException(spectrumException(" m/z data array missing"));
+			}
+			if (!hasIntensityArray) {
+				throw new MprcException(spectrumException(" intensity data array missing"));
+			}
+		}
+	}
+
+	private void decodeBinary(final boolean doublePrecision, final boolean zlib, final boolean isMzArray) {
+		if (isMzArray) {
+			massOverCharge = decoder.decode(binaryText, zlib, doublePrecision, defaultArrayLength, massOverCharge);
+			hasMzArray = true;
+		} else {
+			intensity = decoder.decode(binaryText, zlib, doublePrecision, defaultArrayLength, intensity);
+			hasIntensityArray = true;
+		}
+		final int length = decoder.getLastLength();
+		if (hasMzArray && hasIntensityArray && peakCount != length) {
+			throw new MprcException(spectrumException(" m/z and intensity arrays have different length"));
+		}
+		peakCount = length;
+	}
+
+	private String spectrumException(final String message) {
+		return "MzML file [" + file.getAbsolutePath() + "] spectrum [" + spectrumId + "]" + message;
+	}
+
+	@Override
+	public boolean isReadPeaks() {
+		return readPeaks;
+	}
+
+	@Override
+	public void setReadPeaks(final boolean readPeaks) {
+		this.readPeaks = readPeaks;
+	}
+
+	@Override
+	public void close() throws IOException {
+		decoder.close();
+		FileUtilities.closeQuietly(randomAccessFile);
+	}
+
+	private static final class PrecursorInfo {
+		private String mz;
+		private String charge;
+		private boolean hasSelectedIon;
+		private final List<String> possibleCharges = new ArrayList<String>(2);
+	}
+
+	private static final class PendingPeakList {
+		private final String title;
+		private final String precursorMz;
+		private final String charge;
+
+		private PendingPeakList(final String title, final String precursorMz, final String charge) {
+			this.title = title;
+			this.precursorMz = precursorMz;
+			this.charge = charge;
+		}
+	}
+}
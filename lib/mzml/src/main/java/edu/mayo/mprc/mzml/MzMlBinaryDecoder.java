@@ -0,0 +1,143 @@
+package edu.mayo.mprc.mzml;
+
+import edu.mayo.mprc.MprcException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes mzML {@code <binary>} contents (base64, optionally zlib compressed, little endian 32 or 64 bit floats)
+ * straight into a primitive array. All the intermediate buffers are reused between calls.
+ *
+ * @author Roman Zenka
+ */
+final class MzMlBinaryDecoder {
+	private static final byte[] BASE64_VALUES = new byte[128];
+
+	static {
+		for (int i = 0; i < BASE64_VALUES.length; i++) {
+			BASE64_VALUES[i] = -1;
+		}
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int i = 0; i < alphabet.length(); i++) {
+			BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+		}
+	}
+
+	private final Inflater inflater = new Inflater();
+	private byte[] decoded = new byte[64 * 1024];
+	private byte[] inflated = new byte[64 * 1024];
+	private int lastLength;
+
+	/**
+	 * @param base64          Base64 encoded data.
+	 * @param zlib            True if the data is zlib compressed.
+	 * @param doublePrecision True for 64 bit floats, false for 32 bit.
+	 * @param expectedLength  Expected amount of values, used to size the buffers. Use 0 if not known.
+	 * @param target          Array to decode into. If null or too short, a new one is allocated.
+	 * @return The array with the values. Use {@link #getLastLength()} to find out how many values are valid.
+	 */
+	public double[] decode(final CharSequence base64, final boolean zlib, final boolean doublePrecision, final int expectedLength, final double[] target) {
+		int length = decodeBase64(base64);
+		byte[] data = decoded;
+		if (zlib) {
+			length = inflate(length, expectedLength * (doublePrecision ? 8 : 4));
+			data = inflated;
+		}
+		final int valueSize = doublePrecision ? 8 : 4;
+		if (length % valueSize != 0) {
+			throw new MprcException("Binary data length " + length + " is not a multiple of " + valueSize);
+		}
+		lastLength = length / valueSize;
+		final double[] result = target == null || target.length < lastLength ? new double[Math.max(lastLength, 16)] : target;
+		final ByteBuffer buffer = ByteBuffer.wrap(data, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+		if (doublePrecision) {
+			for (int i = 0; i < lastLength; i++) {
+				result[i] = buffer.getDouble();
+			}
+		} else {
+			for (int i = 0; i < lastLength; i++) {
+				result[i] = buffer.getFloat();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Amount of values decoded by the last {@link #decode} call.
+	 */
+	public int getLastLength() {
+		return lastLength;
+	}
+
+	/**
+	 * Decode base64 into {@link #decoded}, skipping whitespace.
+	 *
+	 * @return Length of decoded data.
+	 */
+	int decodeBase64(final CharSequence base64) {
+		final int maxLength = base64.length() / 4 * 3 + 3;
+		if (decoded.length < maxLength) {
+			decoded = new byte[maxLength];
+		}
+		int out = 0;
+		int accumulator = 0;
+		int bits = 0;
+		for (int i = 0; i < base64.length(); i++) {
+			final char c = base64.charAt(i);
+			if (c == '=') {
+				break;
+			}
+			if (c <= ' ') {
+				continue;
+			}
+			final int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+			if (value < 0) {
+				throw new MprcException("Invalid base64 character '" + c + "' in binary data");
+			}
+			accumulator = (accumulator << 6) | value;
+			bits += 6;
+			if (bits >= 8) {
+				bits -= 8;
+				decoded[out++] = (byte) (accumulator >> bits);
+			}
+		}
+		return out;
+	}
+
+	byte[] getDecoded() {
+		return decoded;
+	}
+
+	private int inflate(final int length, final int expectedLength) {
+		if (inflated.length < expectedLength) {
+			inflated = new byte[expectedLength];
+		}
+		inflater.reset();
+		inflater.setInput(decoded, 0, length);
+		int total = 0;
+		try {
+			while (!inflater.finished()) {
+				if (total == inflated.length) {
+					final byte[] bigger = new byte[inflated.length * 2];
+					System.arraycopy(inflated, 0, bigger, 0, total);
+					inflated = bigger;
+				}
+				final int read = inflater.inflate(inflated, total, inflated.length - total);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				total += read;
+			}
+		} catch (DataFormatException e) {
+			throw new MprcException("Could not uncompress zlib binary data", e);
+		}
+		return total;
+	}
+
+	public void close() {
+		inflater.end();
+	}
+}
@@ -0,0 +1,164 @@
+package edu.mayo.mprc.mzml;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Spectrum offsets as listed in the {@code <indexList>} at the end of an indexedmzML file.
+ * <p/>
+ * The index is located through the {@code <indexListOffset>} element, so only the tail of the file
+ * and the index itself are ever read.
+ *
+ * @author Roman Zenka
+ */
+public final class MzMlIndex {
+	private static final int TAIL_SIZE = 4096;
+	private static final Pattern INDEX_LIST_OFFSET = Pattern.compile("<indexListOffset>\\s*(\\d+)\\s*</indexListOffset>");
+
+	private final List<String> spectrumIds;
+	private final long[] offsets;
+	private final long indexListOffset;
+	private final Map<String, Integer> idToPosition;
+
+	private MzMlIndex(final List<String> spectrumIds, final long[] offsets, final long indexListOffset) {
+		this.spectrumIds = Collections.unmodifiableList(spectrumIds);
+		this.offsets = offsets;
+		this.indexListOffset = indexListOffset;
+		idToPosition = new HashMap<String, Integer>(spectrumIds.size() * 2);
+		for (int i = 0; i < spectrumIds.size(); i++) {
+			idToPosition.put(spectrumIds.get(i), i);
+		}
+	}
+
+	/**
+	 * Load the spectrum index of given file.
+	 *
+	 * @param file indexedmzML file.
+	 * @return The index or null if the file does not have one.
+	 */
+	public static MzMlIndex read(final File file) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			final long indexListOffset = findIndexListOffset(raf);
+			if (indexListOffset < 0 || indexListOffset >= raf.length()) {
+				return null;
+			}
+			raf.seek(indexListOffset);
+			return parseIndexList(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 64 * 1024), indexListOffset);
+		} catch (IOException e) {
+			throw new MprcException("Could not read index of mzML file [" + file.getAbsolutePath() + "]", e);
+		} catch (XMLStreamException e) {
+			throw new MprcException("Could not parse index of mzML file [" + file.getAbsolutePath() + "]", e);
+		} finally {
+			FileUtilities.closeQuietly(raf);
+		}
+	}
+
+	private static long findIndexListOffset(final RandomAccessFile raf) throws IOException {
+		final long length = raf.length();
+		final int tailSize = (int) Math.min(TAIL_SIZE, length);
+		final byte[] tail = new byte[tailSize];
+		raf.seek(length - tailSize);
+		raf.readFully(tail);
+		final Matcher matcher = INDEX_LIST_OFFSET.matcher(new String(tail, "ISO-8859-1"));
+		if (!matcher.find()) {
+			return -1;
+		}
+		return Long.parseLong(matcher.group(1));
+	}
+
+	private static MzMlIndex parseIndexList(final BufferedInputStream stream, final long indexListOffset) throws XMLStreamException {
+		final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(stream, "UTF-8");
+		try {
+			final List<String> ids = new ArrayList<String>(1000);
+			long[] offsets = new long[1000];
+			boolean inSpectrumIndex = false;
+			while (reader.hasNext()) {
+				final int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					final String name = reader.getLocalName();
+					if ("index".equals(name)) {
+						inSpectrumIndex = "spectrum".equals(reader.getAttributeValue(null, "name"));
+					} else if (inSpectrumIndex && "offset".equals(name)) {
+						final String id = reader.getAttributeValue(null, "idRef");
+						final long offset = Long.parseLong(reader.getElementText().trim());
+						if (ids.size() == offsets.length) {
+							final long[] newOffsets = new long[offsets.length * 2];
+							System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+							offsets = newOffsets;
+						}
+						offsets[ids.size()] = offset;
+						ids.add(id);
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					final String name = reader.getLocalName();
+					if ("index".equals(name)) {
+						inSpectrumIndex = false;
+					} else if ("indexList".equals(name)) {
+						break;
+					}
+				}
+			}
+			final long[] result = new long[ids.size()];
+			System.arraycopy(offsets, 0, result, 0, result.length);
+			return new MzMlIndex(ids, result, indexListOffset);
+		} finally {
+			reader.close();
+		}
+	}
+
+	public int size() {
+		return spectrumIds.size();
+	}
+
+	/**
+	 * @return Spectrum ids in the order they are listed in the index.
+	 */
+	public List<String> getSpectrumIds() {
+		return spectrumIds;
+	}
+
+	public String getSpectrumId(final int position) {
+		return spectrumIds.get(position);
+	}
+
+	/**
+	 * @return Byte offset of the {@code <spectrum>} element at given position.
+	 */
+	public long getOffset(final int position) {
+		return offsets[position];
+	}
+
+	/**
+	 * @return Position of the spectrum with given id, -1 if there is no such spectrum.
+	 */
+	public int getPosition(final String spectrumId) {
+		final Integer position = idToPosition.get(spectrumId);
+		return position == null ? -1 : position;
+	}
+
+	/**
+	 * @return Byte offset of the {@code <indexList>} element.
+	 */
+	public long getIndexListOffset() {
+		return indexListOffset;
+	}
+}
@@ -1,6 +1,7 @@
 package edu.mayo.mprc.mzml;
 
 import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
 import edu.mayo.mprc.peaklist.PeakList;
 import edu.mayo.mprc.peaklist.PeakListReader;
 import org.proteomecommons.io.GenericPeak;
@@ -47,7 +48,7 @@ public final class MzMlPeakListReader implements PeakListReader {
 	private final MzMLObjectIterator<Spectrum> iterator;
 	private Spectrum spectrum;
 	// Peak lists we would like to report in the future
-	private Queue<PeakList> parsedPeakLists = new ArrayDeque<PeakList>(10);
+	private Queue<ParsedPeakList> parsedPeakLists = new ArrayDeque<ParsedPeakList>(10);
 
 	public MzMlPeakListReader(final File file, final boolean readPeaks) {
 		this.file = file;
@@ -90,7 +91,7 @@ public final class MzMlPeakListReader implements PeakListReader {
 					final String precursorMz = getCvParamValue(precursorIon.getCvParam(), SELECTED_ION_MZ);
 					final String chargeState = getCvParamValue(precursorIon.getCvParam(), CHARGE_STATE);
 
-					Peak[] peaks = null;
+					double[][] peaks = null;
 					if (isReadPeaks()) {
 						peaks = parsePeaks(spectrum);
 					}
@@ -121,19 +122,19 @@ public final class MzMlPeakListReader implements PeakListReader {
 		return spectrumTitle + (multiplePrecursors ? " precursor=" + precursorId : "") + (multipleCharges ? " charge=" + charge : "");
 	}
 
-	private void queuePeakList(final String title, final String precursorMz, final String chargeState, final Peak[] peaks, final int msLevel) {
+	private void queuePeakList(final String title, final String precursorMz, final String chargeState, final double[][] peaks, final int msLevel) {
 		final PeakList peakList = new PeakList();
 		peakList.setTitle(title);
 		peakList.setTandemCount(msLevel);
 		peakList.setPepmass("PEPMASS=" + precursorMz);
 		peakList.setCharge("CHARGE=" + chargeState + "+");
-		if (peaks != null) {
-			peakList.setPeaks(peaks);
-		}
-		parsedPeakLists.add(peakList);
+		parsedPeakLists.add(new ParsedPeakList(peakList, peaks));
 	}
 
-	private Peak[] parsePeaks(final Spectrum spectrum) {
+	/**
+	 * @return Two arrays - m/z and intensity.
+	 */
+	private double[][] parsePeaks(final Spectrum spectrum) {
 		double[] mz = null;
 		double[] intensity = null;
 		for (final BinaryDataArray dataArray : spectrum.getBinaryDataArrayList().getBinaryDataArray()) {
@@ -164,14 +165,7 @@ public final class MzMlPeakListReader implements PeakListReader {
 			throw new MprcException(spectrumException(" m/z and intensity arrays have different length"));
 		}
 
-		final Peak[] peaks = new Peak[mz.length];
-		for (int i = 0; i < mz.length; i++) {
-			final GenericPeak peak = new GenericPeak();
-			peak.setMassOverCharge(mz[i]);
-			peak.setIntensity(intensity[i]);
-			peaks[i] = peak;
-		}
-		return peaks;
+		return new double[][]{mz, intensity};
 	}
 
 	@Override
@@ -180,11 +174,41 @@ public final class MzMlPeakListReader implements PeakListReader {
 			parsePeakLists();
 		}
 		if (parsedPeakLists.size() > 0) {
-			return parsedPeakLists.remove();
+			final ParsedPeakList parsed = parsedPeakLists.remove();
+			if (parsed.peaks != null) {
+				final double[] mz = parsed.peaks[0];
+				final double[] intensity = parsed.peaks[1];
+				final Peak[] peaks = new Peak[mz.length];
+				for (int i = 0; i < mz.length; i++) {
+					final GenericPeak peak = new GenericPeak();
+					peak.setMassOverCharge(mz[i]);
+					peak.setIntensity(intensity[i]);
+					peaks[i] = peak;
+				}
+				parsed.header.setPeaks(peaks);
+			}
+			return parsed.header;
 		}
 		return null;
 	}
 
+	@Override
+	public boolean readPeakList(final ColumnarPeakList peakList) {
+		if (parsedPeakLists.size() == 0) {
+			parsePeakLists();
+		}
+		if (parsedPeakLists.size() == 0) {
+			peakList.clear();
+			return false;
+		}
+		final ParsedPeakList parsed = parsedPeakLists.remove();
+		peakList.copyFrom(parsed.header);
+		if (parsed.peaks != null) {
+			peakList.setPeaks(parsed.peaks[0], parsed.peaks[1], parsed.peaks[0].length);
+		}
+		return true;
+	}
+
 	private String spectrumException(final String message) {
 		return "MzML file [" + file.getAbsolutePath() + "] spectrum [" + spectrum.getId() + "]" + message;
 	}
@@ -228,6 +252,19 @@ public final class MzMlPeakListReader implements PeakListReader {
 		this.readPeaks = readPeaks;
 	}
 
+	/**
+	 * Peak list header with peaks still stored as primitive arrays.
+	 */
+	private static final class ParsedPeakList {
+		private final PeakList header;
+		private final double[][] peaks;
+
+		private ParsedPeakList(final PeakList header, final double[][] peaks) {
+			this.header = header;
+			this.peaks = peaks;
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		//To change body of implemented methods use File | Settings | File Templates.
@@ -7,13 +7,23 @@ import org.springframework.stereotype.Component;
 import java.io.File;
 
 /**
+ * Creates mzML readers. Files with a spectrum index (indexedmzML) are read using {@link IndexedMzMlPeakListReader},
+ * which seeks directly to the spectra. Files without an index, or all files when {@link #setIndexedReading(boolean)}
+ * is turned off, go through the JAXB-based {@link MzMlPeakListReader}.
+ *
  * @author Roman Zenka
  */
 @Component("mzMlPeakListReaderFactory")
 public final class MzMlPeakListReaderFactory implements PeakListReaderFactory {
+	private boolean indexedReading = true;
+
 	public MzMlPeakListReaderFactory() {
 	}
 
+	public MzMlPeakListReaderFactory(final boolean indexedReading) {
+		this.indexedReading = indexedReading;
+	}
+
 	@Override
 	public String getExtension() {
 		return "mzML";
@@ -21,6 +31,20 @@ public final class MzMlPeakListReaderFactory implements PeakListReaderFactory {
 
 	@Override
 	public PeakListReader createReader(final File file, final boolean readPeaks) {
+		if (indexedReading) {
+			final MzMlIndex index = MzMlIndex.read(file);
+			if (index != null) {
+				return new IndexedMzMlPeakListReader(file, readPeaks, index);
+			}
+		}
 		return new MzMlPeakListReader(file, readPeaks);
 	}
+
+	public boolean isIndexedReading() {
+		return indexedReading;
+	}
+
+	public void setIndexedReading(final boolean indexedReading) {
+		this.indexedReading = indexedReading;
+	}
 }
@@ -0,0 +1,235 @@
+package edu.mayo.mprc.peaklist;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.mzml.IndexedMzMlPeakListReader;
+import edu.mayo.mprc.mzml.MzMlIndex;
+import edu.mayo.mprc.mzml.MzMlPeakListReaderFactory;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * @author Roman Zenka
+ */
+public final class IndexedMzMlPeakListReaderTest {
+	private File file;
+
+	@BeforeClass
+	public void setup() throws IOException {
+		file = File.createTempFile("indexed", ".mzML");
+		writeIndexedMzMl(file);
+	}
+
+	@AfterClass
+	public void teardown() {
+		FileUtilities.cleanupTempFile(file);
+	}
+
+	@Test
+	public void shouldReadIndex() {
+		final MzMlIndex index = MzMlIndex.read(file);
+		Assert.assertNotNull(index);
+		Assert.assertEquals(index.getSpectrumIds(), Arrays.asList("scan=1", "scan=2", "scan=3"));
+		Assert.assertEquals(index.getPosition("scan=3"), 2);
+		Assert.assertEquals(index.getPosition("scan=4"), -1);
+	}
+
+	@Test
+	public void shouldSkipMs1Spectra() throws IOException {
+		final IndexedMzMlPeakListReader reader = new IndexedMzMlPeakListReader(file, true);
+		final ColumnarPeakList peakList = new ColumnarPeakList();
+		try {
+			Assert.assertTrue(reader.readPeakList(peakList));
+			Assert.assertEquals(peakList.getTitle(), "scan=2");
+			Assert.assertEquals(peakList.getPrecursorMz(), 445.5);
+			Assert.assertEquals(peakList.getPrecursorCharge(), 2);
+			Assert.assertEquals(peakList.getTandemCount(), 2);
+			Assert.assertEquals(peakList.getPeakCount(), 3);
+			Assert.assertEquals(peakList.getMassOverCharge()[2], 300.25);
+			Assert.assertEquals(peakList.getIntensity()[1], 20.5);
+
+			Assert.assertTrue(reader.readPeakList(peakList));
+			Assert.assertEquals(peakList.getTitle(), "scan=3 charge=2");
+			Assert.assertTrue(reader.readPeakList(peakList));
+			Assert.assertEquals(peakList.getTitle(), "scan=3 charge=3");
+			Assert.assertEquals(peakList.getPrecursorCharge(), 3);
+			Assert.assertEquals(peakList.getPeakCount(), 2);
+			Assert.assertEquals(peakList.getMassOverCharge()[1], 1234.5678);
+			Assert.assertEquals(peakList.getIntensity()[1], 99.0);
+
+			Assert.assertFalse(reader.readPeakList(peakList));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void shouldLookUpById() throws IOException {
+		final IndexedMzMlPeakListReader reader = new IndexedMzMlPeakListReader(file, false);
+		final ColumnarPeakList peakList = new ColumnarPeakList();
+		try {
+			Assert.assertTrue(reader.readSpectrum("scan=1", peakList));
+			Assert.assertEquals(peakList.getTandemCount(), 1);
+			Assert.assertEquals(peakList.getPeakCount(), 2);
+			Assert.assertEquals(peakList.getMassOverCharge()[0], 100.0);
+			Assert.assertFalse(peakList.hasPrecursorMz());
+
+			Assert.assertFalse(reader.readSpectrum("scan=999", peakList));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void shouldMatchJaxbReader() throws IOException {
+		final File dtaExample = fileFromClasspath("mzml/dta_example.mzML");
+		if (MzMlIndex.read(dtaExample) == null) {
+			throw new SkipException("The example file is not an indexedmzML");
+		}
+		final PeakListReader expectedReader = new MzMlPeakListReaderFactory(false).createReader(dtaExample, true);
+		final PeakListReader actualReader = new MzMlPeakListReaderFactory(true).createReader(dtaExample, true);
+		Assert.assertTrue(actualReader instanceof IndexedMzMlPeakListReader);
+		try {
+			while (true) {
+				final PeakList expected = expectedReader.nextPeakList();
+				final PeakList actual = actualReader.nextPeakList();
+				if (expected == null) {
+					Assert.assertNull(actual);
+					break;
+				}
+				Assert.assertEquals(actual.getTitle(), expected.getTitle());
+				Assert.assertEquals(actual.getPepmass(), expected.getPepmass());
+				Assert.assertEquals(actual.getCharge(), expected.getCharge());
+				Assert.assertEquals(actual.getPeaks().length, expected.getPeaks().length);
+				for (int i = 0; i < expected.getPeaks().length; i++) {
+					Assert.assertEquals(actual.getPeaks()[i].getMassOverCharge(), expected.getPeaks()[i].getMassOverCharge());
+					Assert.assertEquals(actual.getPeaks()[i].getIntensity(), expected.getPeaks()[i].getIntensity());
+				}
+			}
+		} finally {
+			expectedReader.close();
+			actualReader.close();
+		}
+	}
+
+	/**
+	 * Write a minimal indexedmzML with one MS1 spectrum and two MS2 spectra, using different binary encodings.
+	 */
+	private static void writeIndexedMzMl(final File file) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(out, "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+				"<indexedmzML xmlns=\"http://psi.hupo.org/ms/mzml\">\n" +
+				"<mzML xmlns=\"http://psi.hupo.org/ms/mzml\" version=\"1.1.0\">\n" +
+				"<run id=\"test\">\n" +
+				"<spectrumList count=\"3\">\n");
+		final List<Integer> offsets = new ArrayList<Integer>();
+
+		offsets.add(out.size());
+		write(out, spectrum("scan=1", 0, 1, "",
+				binaryArray(new double[]{100.0, 200.0}, true, true, "MS:1000514") +
+						binaryArray(new double[]{1.0, 2.0}, true, true, "MS:1000515")));
+
+		offsets.add(out.size());
+		write(out, spectrum("scan=2", 1, 2,
+				precursor("<cvParam cvRef=\"MS\" accession=\"MS:1000744\" name=\"selected ion m/z\" value=\"445.5\"/>" +
+						"<cvParam cvRef=\"MS\" accession=\"MS:1000041\" name=\"charge state\" value=\"2\"/>"),
+				binaryArray(new double[]{100.5, 200.0, 300.25}, false, false, "MS:1000514") +
+						binaryArray(new double[]{10.0, 20.5, 30.0}, false, false, "MS:1000515")));
+
+		offsets.add(out.size());
+		write(out, spectrum("scan=3", 2, 2,
+				precursor("<cvParam cvRef=\"MS\" accession=\"MS:1000744\" name=\"selected ion m/z\" value=\"600.1\"/>" +
+						"<cvParam cvRef=\"MS\" accession=\"MS:1000633\" name=\"possible charge state\" value=\"2\"/>" +
+						"<cvParam cvRef=\"MS\" accession=\"MS:1000633\" name=\"possible charge state\" value=\"3\"/>"),
+				binaryArray(new double[]{150.0, 1234.5678}, true, true, "MS:1000514") +
+						binaryArray(new double[]{5.0, 99.0}, true, false, "MS:1000515")));
+
+		write(out, "</spectrumList>\n</run>\n</mzML>\n");
+		final int indexListOffset = out.size();
+		write(out, "<indexList count=\"1\">\n<index name=\"spectrum\">\n");
+		for (int i = 0; i < offsets.size(); i++) {
+			write(out, "<offset idRef=\"scan=" + (i + 1) + "\">" + offsets.get(i) + "</offset>\n");
+		}
+		write(out, "</index>\n</indexList>\n<indexListOffset>" + indexListOffset + "</indexListOffset>\n</indexedmzML>\n");
+
+		FileUtilities.writeStringToFile(file, out.toString("UTF-8"), true);
+	}
+
+	private static String spectrum(final String id, final int index, final int msLevel, final String precursors, final String binaryArrays) {
+		return "<spectrum index=\"" + index + "\" id=\"" + id + "\" defaultArrayLength=\"2\">\n" +
+				"<cvParam cvRef=\"MS\" accession=\"MS:1000511\" name=\"ms level\" value=\"" + msLevel + "\"/>\n" +
+				precursors +
+				"<binaryDataArrayList count=\"2\">\n" + binaryArrays + "</binaryDataArrayList>\n" +
+				"</spectrum>\n";
+	}
+
+	private static String precursor(final String selectedIonParams) {
+		return "<precursorList count=\"1\"><precursor><selectedIonList count=\"1\"><selectedIon>" +
+				selectedIonParams +
+				"</selectedIon></selectedIonList></precursor></precursorList>\n";
+	}
+
+	private static String binaryArray(final double[] values, final boolean doublePrecision, final boolean zlib, final String arrayType) {
+		final ByteBuffer buffer = ByteBuffer.allocate(values.length * (doublePrecision ? 8 : 4)).order(ByteOrder.LITTLE_ENDIAN);
+		for (final double value : values) {
+			if (doublePrecision) {
+				buffer.putDouble(value);
+			} else {
+				buffer.putFloat((float) value);
+			}
+		}
+		byte[] data = buffer.array();
+		if (zlib) {
+			final Deflater deflater = new Deflater();
+			deflater.setInput(data);
+			deflater.finish();
+			final byte[] compressed = new byte[data.length + 100];
+			final int length = deflater.deflate(compressed);
+			deflater.end();
+			data = Arrays.copyOf(compressed, length);
+		}
+		return "<binaryDataArray encodedLength=\"0\">\n" +
+				"<cvParam cvRef=\"MS\" accession=\"" + (doublePrecision ? "MS:1000523" : "MS:1000521") + "\" name=\"float\" value=\"\"/>\n" +
+				"<cvParam cvRef=\"MS\" accession=\"" + (zlib ? "MS:1000574" : "MS:1000576") + "\" name=\"compression\" value=\"\"/>\n" +
+				"<cvParam cvRef=\"MS\" accession=\"" + arrayType + "\" name=\"array\" value=\"\"/>\n" +
+				"<binary>" + DatatypeConverter.printBase64Binary(data) + "</binary>\n" +
+				"</binaryDataArray>\n";
+	}
+
+	private static void write(final ByteArrayOutputStream out, final String text) {
+		try {
+			out.write(text.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new MprcException(e);
+		} catch (IOException e) {
+			throw new MprcException(e);
+		}
+	}
+
+	private static File fileFromClasspath(final String path) {
+		try {
+			final URL url = ClassLoader.getSystemResource(path);
+			// Turn the resource into a File object
+			return new File(url.toURI());
+		} catch (URISyntaxException e) {
+			throw new MprcException("Could not get file on classpath with path " + path);
+		}
+	}
+}
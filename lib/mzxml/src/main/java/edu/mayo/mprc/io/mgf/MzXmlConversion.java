@@ -0,0 +1,49 @@
+package edu.mayo.mprc.io.mgf;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+
+/**
+ * One input file to be converted to mzXML as a part of {@link MzXmlConverter#convert(java.util.List, int)}.
+ *
+ * @author Roman Zenka
+ */
+public final class MzXmlConversion {
+	private final File inputFile;
+	private final File mzXMLOutputFile;
+	private final File scanTitleFile;
+	private final boolean enable64BitPrecision;
+
+	/**
+	 * @param inputFile            Mgf or mzML input file.
+	 * @param mzXMLOutputFile      MzXML output file.
+	 * @param scanTitleFile        Tab-separated file to write the mzXML scan number to spectrum title mapping to.
+	 *                             Can be null if the mapping is not needed.
+	 * @param enable64BitPrecision True for 64 bit peaks, false for 32 bit.
+	 */
+	public MzXmlConversion(final File inputFile, final File mzXMLOutputFile, final File scanTitleFile, final boolean enable64BitPrecision) {
+		Preconditions.checkArgument(inputFile != null, "inputFile parameter can not be null.");
+		Preconditions.checkArgument(mzXMLOutputFile != null, "mzXMLOutputFile parameter can not be null.");
+		this.inputFile = inputFile;
+		this.mzXMLOutputFile = mzXMLOutputFile;
+		this.scanTitleFile = scanTitleFile;
+		this.enable64BitPrecision = enable64BitPrecision;
+	}
+
+	public File getInputFile() {
+		return inputFile;
+	}
+
+	public File getMzXMLOutputFile() {
+		return mzXMLOutputFile;
+	}
+
+	public File getScanTitleFile() {
+		return scanTitleFile;
+	}
+
+	public boolean isEnable64BitPrecision() {
+		return enable64BitPrecision;
+	}
+}
@@ -5,9 +5,11 @@
 package edu.mayo.mprc.io.mgf;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.io.mzxml.MzXMLPeakListWriter;
-import edu.mayo.mprc.peaklist.PeakList;
+import edu.mayo.mprc.io.mzxml.MzXmlScan;
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
 import edu.mayo.mprc.peaklist.PeakListReader;
 import edu.mayo.mprc.peaklist.PeakListReaders;
 import edu.mayo.mprc.utilities.FileUtilities;
@@ -16,16 +18,58 @@ import org.apache.log4j.Logger;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Utility class that provides functionality for converting mgf or mzml files to mzXML files.
+ * <p/>
+ * The conversion is pipelined. A reader thread parses the spectra, a pool of encoder threads packs and
+ * base64-encodes the peaks and the calling thread writes the encoded scans in their original order.
+ * The stages are connected with bounded queues, so only {@link #getQueueSize()} spectra per file are in memory
+ * at any time.
+ * <p/>
+ * The mapping from mzXML scan numbers to the original spectrum titles can be streamed into a tab-separated side file
+ * (see {@link #convert(File, File, boolean, File)}) instead of being kept on the heap.
  */
 @Component("mzXmlConverter")
 public final class MzXmlConverter {
+	private static final Logger LOGGER = Logger.getLogger(MzXmlConverter.class);
+
+	/**
+	 * Separates the scan number from the title in the scan to title side file.
+	 */
+	public static final char SCAN_TITLE_SEPARATOR = '\t';
+
+	public static final int DEFAULT_QUEUE_SIZE = 32;
+
+	/**
+	 * Marks the end of the input in the queue of scans to be written.
+	 */
+	private static final Future<Slot> END_OF_INPUT = new FutureTask<Slot>(new Runnable() {
+		@Override
+		public void run() {
+		}
+	}, null);
+
 	private PeakListReaders readers;
+	private int encoderThreads = Runtime.getRuntime().availableProcessors();
+	private int queueSize = DEFAULT_QUEUE_SIZE;
 
 	public MzXmlConverter() {
 	}
@@ -62,6 +106,75 @@ public final class MzXmlConverter {
 	 *         corresponding spectra titles in the mgf file.
 	 */
 	public Map<Integer, String> convert(final File inputFile, final File mzXMLOutputFile, final boolean enable64BitPrecision) {
+		final Map<Integer, String> mzXMLScanToMGFTitle = new HashMap<Integer, String>(1000);
+		final ExecutorService encoders = createEncoders(encoderThreads);
+		try {
+			convert(inputFile, mzXMLOutputFile, enable64BitPrecision, encoders, mzXMLScanToMGFTitle, null);
+		} finally {
+			shutdown(encoders);
+		}
+		return mzXMLScanToMGFTitle;
+	}
+
+	/**
+	 * Same as {@link #convert(File, File, boolean)}, only the mapping from mzXML scan numbers to spectrum titles
+	 * is streamed into a file, one {@code scan<TAB>title} line per spectrum.
+	 *
+	 * @param scanTitleFile File to write the mzXML scan number to spectrum title mapping to.
+	 * @return Number of scans written.
+	 */
+	public int convert(final File inputFile, final File mzXMLOutputFile, final boolean enable64BitPrecision, final File scanTitleFile) {
+		Preconditions.checkArgument(scanTitleFile != null, "scanTitleFile parameter can not be null.");
+		final ExecutorService encoders = createEncoders(encoderThreads);
+		try {
+			return convert(inputFile, mzXMLOutputFile, enable64BitPrecision, encoders, null, scanTitleFile);
+		} finally {
+			shutdown(encoders);
+		}
+	}
+
+	/**
+	 * Convert multiple files at once.
+	 * <p/>
+	 * All the files share one pool of {@code cores} encoder threads. Half as many files as there are cores are
+	 * converted concurrently, as the reading and writing of each file is mostly waiting for the disk.
+	 *
+	 * @param conversions List of files to convert.
+	 * @param cores       How many cores can the conversion use.
+	 */
+	public void convert(final List<MzXmlConversion> conversions, final int cores) {
+		if (conversions.isEmpty()) {
+			return;
+		}
+		final int threads = Math.max(1, cores);
+		final int parallelFiles = Math.min(conversions.size(), Math.max(1, threads / 2));
+		final ExecutorService encoders = createEncoders(threads);
+		final ExecutorService files = Executors.newFixedThreadPool(parallelFiles, new ThreadFactoryBuilder()
+				.setDaemon(true)
+				.setNameFormat("mzxml-converter-%d")
+				.build());
+		try {
+			final List<Future<Integer>> results = new ArrayList<Future<Integer>>(conversions.size());
+			for (final MzXmlConversion conversion : conversions) {
+				results.add(files.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						return convert(conversion.getInputFile(), conversion.getMzXMLOutputFile(), conversion.isEnable64BitPrecision(),
+								encoders, null, conversion.getScanTitleFile());
+					}
+				}));
+			}
+			for (final Future<Integer> result : results) {
+				getResult(result);
+			}
+		} finally {
+			files.shutdownNow();
+			shutdown(encoders);
+		}
+	}
+
+	private int convert(final File inputFile, final File mzXMLOutputFile, final boolean enable64BitPrecision,
+	                    final ExecutorService encoders, final Map<Integer, String> scanToTitle, final File scanTitleFile) {
 
 		Preconditions.checkArgument(inputFile != null, "inputFile parameter can not be null.");
 		Preconditions.checkArgument(mzXMLOutputFile != null, "mzXMLOutputFileName parameter can not be null.");
@@ -71,27 +184,165 @@ public final class MzXmlConverter {
 		 */
 		MzXMLPeakListWriter mzXMLWriter = null;
 		PeakListReader inputReader = null;
-		final Map<Integer, String> mzXMLScanToMGFTitle = new HashMap<Integer, String>(1000);
+		Writer scanTitleWriter = null;
+		final int scans;
 
 		try {
 			inputReader = readers.createReader(inputFile, true);
 			mzXMLWriter = new MzXMLPeakListWriter(mzXMLOutputFile, enable64BitPrecision);
+			if (scanTitleFile != null) {
+				scanTitleWriter = new BufferedWriter(FileUtilities.getWriter(scanTitleFile));
+			}
+			final ScanTitles titles = new ScanTitles(scanToTitle, scanTitleWriter);
 
-			PeakList peakList = null;
-
-			while ((peakList = inputReader.nextPeakList()) != null) {
-				mzXMLScanToMGFTitle.put(mzXMLWriter.writePeakList(peakList), peakList.getTitle());
+			if (encoders == null) {
+				scans = convertSequentially(inputReader, mzXMLWriter, titles);
+			} else {
+				scans = convertPipelined(inputFile, inputReader, mzXMLWriter, encoders, titles);
+			}
+			if (scanTitleWriter != null) {
+				scanTitleWriter.flush();
 			}
 		} catch (Exception t) {
 			throw new MprcException("Conversion of " + inputFile.getAbsolutePath() + " to " + mzXMLOutputFile.getAbsolutePath() + " failed.", t);
 		} finally {
+			FileUtilities.closeQuietly(scanTitleWriter);
 			FileUtilities.closeQuietly(mzXMLWriter);
 			FileUtilities.closeQuietly(inputReader);
 		}
 
-		Logger.getLogger(MzXmlConverter.class).log(Level.DEBUG, "File of type mzxml created. [" + mzXMLOutputFile.getAbsolutePath() + "]");
+		LOGGER.log(Level.DEBUG, "File of type mzxml created. [" + mzXMLOutputFile.getAbsolutePath() + "]");
 
-		return mzXMLScanToMGFTitle;
+		return scans;
+	}
+
+	private static int convertSequentially(final PeakListReader inputReader, final MzXMLPeakListWriter mzXMLWriter, final ScanTitles titles) throws IOException {
+		// The peak list is reused for all spectra, no objects are created per peak
+		final ColumnarPeakList peakList = new ColumnarPeakList();
+		int scans = 0;
+		while (inputReader.readPeakList(peakList)) {
+			titles.add(mzXMLWriter.writePeakList(peakList), peakList.getTitle());
+			scans++;
+		}
+		return scans;
+	}
+
+	/**
+	 * Reader thread -> encoders -> the calling thread writing the scans in order.
+	 * <p/>
+	 * A fixed set of {@link Slot} objects circulates through the pipeline, so the peak arrays and encoding buffers
+	 * are reused and the amount of spectra in flight is limited.
+	 */
+	private int convertPipelined(final File inputFile, final PeakListReader inputReader, final MzXMLPeakListWriter mzXMLWriter,
+	                             final ExecutorService encoders, final ScanTitles titles) throws IOException {
+		final BlockingQueue<Slot> free = new ArrayBlockingQueue<Slot>(queueSize);
+		for (int i = 0; i < queueSize; i++) {
+			free.add(new Slot(mzXMLWriter.isEnable64BitPrecision()));
+		}
+		// Encoded scans in their input order, plus room for the end marker
+		final BlockingQueue<Future<Slot>> ordered = new ArrayBlockingQueue<Future<Slot>>(queueSize + 1);
+		final AtomicReference<Throwable> readerFailure = new AtomicReference<Throwable>();
+
+		final Thread readerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final Slot slot = free.take();
+						if (!inputReader.readPeakList(slot.peakList)) {
+							break;
+						}
+						ordered.put(encoders.submit(slot));
+					}
+				} catch (InterruptedException ignore) {
+					// SWALLOWED: the writer has failed and is no longer interested in more spectra
+					return;
+				} catch (Throwable t) {
+					readerFailure.set(t);
+				}
+				try {
+					ordered.put(END_OF_INPUT);
+				} catch (InterruptedException ignore) {
+					// SWALLOWED: the writer has failed and is not waiting for the end marker
+				}
+			}
+		}, "mzxml-reader-" + inputFile.getName());
+		readerThread.setDaemon(true);
+		readerThread.start();
+
+		int scans = 0;
+		boolean success = false;
+		try {
+			while (true) {
+				final Future<Slot> next = ordered.take();
+				if (next == END_OF_INPUT) {
+					break;
+				}
+				final Slot slot = getResult(next);
+				titles.add(mzXMLWriter.writeScan(slot.scan), slot.peakList.getTitle());
+				scans++;
+				free.add(slot);
+			}
+			success = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while converting " + inputFile.getAbsolutePath(), e);
+		} finally {
+			if (!success) {
+				readerThread.interrupt();
+				for (final Future<Slot> pending : ordered) {
+					pending.cancel(false);
+				}
+			}
+			joinQuietly(readerThread);
+		}
+
+		if (readerFailure.get() != null) {
+			throw new MprcException("Could not read spectra from " + inputFile.getAbsolutePath(), readerFailure.get());
+		}
+		return scans;
+	}
+
+	private static <T> T getResult(final Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Interrupted while converting to mzXML", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MprcException) {
+				throw (MprcException) e.getCause();
+			}
+			throw new MprcException(e.getCause());
+		}
+	}
+
+	private static void joinQuietly(final Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException ignore) {
+			// SWALLOWED: we are already failing, just preserve the interrupted status
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return Pool of encoder threads, null if the conversion should run on the calling thread only.
+	 */
+	private static ExecutorService createEncoders(final int threads) {
+		if (threads <= 1) {
+			return null;
+		}
+		return Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+				.setDaemon(true)
+				.setNameFormat("mzxml-encoder-%d")
+				.build());
+	}
+
+	private static void shutdown(final ExecutorService executor) {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
 	}
 
 	public PeakListReaders getReaders() {
@@ -102,4 +353,72 @@ public final class MzXmlConverter {
 	public void setReaders(final PeakListReaders readers) {
 		this.readers = readers;
 	}
+
+	/**
+	 * @return How many threads encode the peaks when converting a single file. 1 means no extra threads are used.
+	 */
+	public int getEncoderThreads() {
+		return encoderThreads;
+	}
+
+	public void setEncoderThreads(final int encoderThreads) {
+		this.encoderThreads = encoderThreads;
+	}
+
+	/**
+	 * @return Maximum amount of spectra per file being read, encoded or written at the same time.
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(final int queueSize) {
+		Preconditions.checkArgument(queueSize > 0, "The queue size must be positive");
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * A spectrum travelling through the pipeline together with its encoded form.
+	 */
+	private static final class Slot implements Callable<Slot> {
+		private final ColumnarPeakList peakList = new ColumnarPeakList();
+		private final MzXmlScan scan;
+
+		private Slot(final boolean enable64BitPrecision) {
+			scan = new MzXmlScan(enable64BitPrecision);
+		}
+
+		@Override
+		public Slot call() {
+			scan.encode(peakList);
+			return this;
+		}
+	}
+
+	/**
+	 * Collects the mzXML scan number to spectrum title mapping into a map, a side file, or both.
+	 */
+	private static final class ScanTitles {
+		private final Map<Integer, String> scanToTitle;
+		private final Writer writer;
+
+		private ScanTitles(final Map<Integer, String> scanToTitle, final Writer writer) {
+			this.scanToTitle = scanToTitle;
+			this.writer = writer;
+		}
+
+		public void add(final int scan, final String title) throws IOException {
+			if (scanToTitle != null) {
+				scanToTitle.put(scan, title);
+			}
+			if (writer != null) {
+				writer.write(Integer.toString(scan));
+				writer.write(SCAN_TITLE_SEPARATOR);
+				if (title != null) {
+					writer.write(title);
+				}
+				writer.write('\n');
+			}
+		}
+	}
 }
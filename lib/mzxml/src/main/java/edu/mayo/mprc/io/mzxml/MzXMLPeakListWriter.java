@@ -5,11 +5,11 @@
 package edu.mayo.mprc.io.mzxml;
 
 import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
 import edu.mayo.mprc.peaklist.PeakListWriter;
 import edu.mayo.mprc.utilities.FileUtilities;
 import org.proteomecommons.io.Peak;
 import org.proteomecommons.io.PeakList;
-import org.proteomecommons.io.mzxml.Base64;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -17,8 +17,6 @@ import javax.xml.stream.XMLStreamWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 /**
  * Utility class for creating mzXML files given peak list objects.
@@ -29,6 +27,7 @@ public final class MzXMLPeakListWriter implements PeakListWriter {
 	private XMLStreamWriter xmlWriter;
 	private boolean enable64BitPrecision;
 	private int scanNumber;
+	private final MzXmlScan scan;
 
 	/**
 	 * @param outputFileName
@@ -71,6 +70,7 @@ public final class MzXMLPeakListWriter implements PeakListWriter {
 	public MzXMLPeakListWriter(final File outputFile, final boolean enable64BitPrecision) throws XMLStreamException, IOException {
 
 		this.enable64BitPrecision = enable64BitPrecision;
+		scan = new MzXmlScan(enable64BitPrecision);
 
 		/**
 		 * Scan number must start at 1
@@ -100,41 +100,26 @@ public final class MzXMLPeakListWriter implements PeakListWriter {
 
 	@Override
 	public int writePeakList(final PeakList peakList) {
-		final Peak[] peaks = peakList.getPeaks();
-
-		int byteBufferCapacity = 0;
-
-		/**
-		 * bytes needed = (bits per double/bits per byte)*2 double per peak*number of peaks
-		 */
-		if (enable64BitPrecision) {
-			byteBufferCapacity = (64 / 8) * 2 * peaks.length;
-		} else {
-			byteBufferCapacity = (32 / 8) * 2 * peaks.length;
-		}
-
-		ByteBuffer bb = ByteBuffer.allocate(byteBufferCapacity);
+		scan.encode(peakList);
+		return writeScan(scan);
+	}
 
-		/**
-		 * Network byte order is big endian http://mindprod.com/jgloss/endian.html
-		 */
-		bb = bb.order(ByteOrder.BIG_ENDIAN);
+	@Override
+	public int writePeakList(final ColumnarPeakList peakList) {
+		scan.encode(peakList);
+		return writeScan(scan);
+	}
 
-		for (final Peak peak : peaks) {
-			if (!enable64BitPrecision) {
-				bb.putFloat((float) peak.getMassOverCharge());
-				bb.putFloat((float) peak.getIntensity());
-			} else {
-				bb.putDouble(peak.getMassOverCharge());
-				bb.putDouble(peak.getIntensity());
-			}
+	/**
+	 * Write a scan that was already encoded, possibly on another thread.
+	 *
+	 * @param scanToWrite Encoded scan. Its precision must match the precision of this writer.
+	 * @return Number of the scan written.
+	 */
+	public int writeScan(final MzXmlScan scanToWrite) {
+		if (scanToWrite.isEnable64BitPrecision() != enable64BitPrecision) {
+			throw new MprcException("The scan precision does not match the mzXML writer precision");
 		}
-
-		/**
-		 * Convert bytes
-		 */
-		final String encodedBytes = Base64.encodeBytes(bb.array(), false);
-
 		try {
 			xmlWriter.writeCharacters("\n");
 			xmlWriter.writeStartElement("scan");
@@ -143,44 +128,27 @@ public final class MzXMLPeakListWriter implements PeakListWriter {
 
 			scanNumber++;
 
-			if (peakList.getTandemCount() != PeakList.UNKNOWN_TANDEM_COUNT) {
-				xmlWriter.writeAttribute("msLevel", "" + peakList.getTandemCount());
+			if (scanToWrite.getTandemCount() != PeakList.UNKNOWN_TANDEM_COUNT) {
+				xmlWriter.writeAttribute("msLevel", "" + scanToWrite.getTandemCount());
 			}
 
-			xmlWriter.writeAttribute("peaksCount", "" + peaks.length);
+			xmlWriter.writeAttribute("peaksCount", "" + scanToWrite.getPeaksCount());
 
-			/**
-			 * Write precursor mz info
-			 */
-			if (peakList.getParentPeak() != null) {
-				final Peak parentPeak = peakList.getParentPeak();
-
-				if (parentPeak.getIntensity() == Peak.UNKNOWN_INTENSITY) {
-					throw new IllegalArgumentException("mzXML requires an intensity value for precursor peaks.");
-				}
-
-				if (parentPeak.getMassOverCharge() == Peak.UNKNOWN_MZ) {
-					throw new IllegalArgumentException("mzXML requires an mz value for precursor peaks.");
-				}
-
-				xmlWriter.writeCharacters("\n");
-				xmlWriter.writeStartElement("precursorMz");
+			xmlWriter.writeCharacters("\n");
+			xmlWriter.writeStartElement("precursorMz");
 
-				writeNonNull("precursorIntensity", Float.toString((float) parentPeak.getIntensity()));
+			writeNonNull("precursorIntensity", Float.toString((float) scanToWrite.getPrecursorIntensity()));
 
-				if (parentPeak.getCharge() != Peak.UNKNOWN_CHARGE) {
-					xmlWriter.writeAttribute("precursorCharge", Integer.toString(parentPeak.getCharge()));
-				}
+			if (scanToWrite.getPrecursorCharge() != Peak.UNKNOWN_CHARGE) {
+				xmlWriter.writeAttribute("precursorCharge", Integer.toString(scanToWrite.getPrecursorCharge()));
+			}
 
-				xmlWriter.writeCharacters(Float.toString((float) parentPeak.getMassOverCharge()));
+			xmlWriter.writeCharacters(Float.toString((float) scanToWrite.getPrecursorMz()));
 
-				/**
-				 * Close the precursorMz element
-				 */
-				xmlWriter.writeEndElement();
-			} else {
-				throw new IllegalArgumentException("mzXML requires an intensity and mz values for precursor peaks.");
-			}
+			/**
+			 * Close the precursorMz element
+			 */
+			xmlWriter.writeEndElement();
 
 			/**
 			 * Setup peaks element
@@ -199,7 +167,7 @@ public final class MzXMLPeakListWriter implements PeakListWriter {
 			 */
 			xmlWriter.writeAttribute("byteOrder", "network");
 			xmlWriter.writeAttribute("pairOrder", "m/z-int");
-			xmlWriter.writeCharacters(encodedBytes);
+			xmlWriter.writeCharacters(scanToWrite.getEncodedPeaks(), 0, scanToWrite.getEncodedLength());
 
 			/**
 			 * End peaks and scan
@@ -215,6 +183,10 @@ public final class MzXMLPeakListWriter implements PeakListWriter {
 		}
 	}
 
+	public boolean isEnable64BitPrecision() {
+		return enable64BitPrecision;
+	}
+
 	private void writeNonNull(final String name, final String value) throws XMLStreamException {
 		if (name != null && value != null) {
 			xmlWriter.writeAttribute(name, value);
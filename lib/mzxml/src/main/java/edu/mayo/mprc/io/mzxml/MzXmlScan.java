@@ -0,0 +1,204 @@
+package edu.mayo.mprc.io.mzxml;
+
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
+import org.proteomecommons.io.Peak;
+import org.proteomecommons.io.PeakList;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A single mzXML scan with its peaks already packed and base64-encoded, ready to be written out by
+ * {@link MzXMLPeakListWriter#writeScan(MzXmlScan)}.
+ * <p/>
+ * Encoding is the expensive part of writing mzXML. Keeping it separate from writing allows the encoding
+ * to happen on multiple threads, while the writer only appends the finished scans in order.
+ * The object is meant to be reused - the peak buffers only grow when a larger spectrum comes along.
+ *
+ * @author Roman Zenka
+ */
+public final class MzXmlScan {
+	private static final int MIN_PEAK_BUFFER_SIZE = 64 * 1024;
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+	private final boolean enable64BitPrecision;
+
+	private int tandemCount;
+	private int peaksCount;
+	private double precursorMz;
+	private double precursorIntensity;
+	private int precursorCharge;
+
+	private ByteBuffer peakBuffer;
+	private char[] encodedPeaks;
+	private int encodedLength;
+
+	/**
+	 * @param enable64BitPrecision True for 64 bit peaks, false for 32 bit.
+	 */
+	public MzXmlScan(final boolean enable64BitPrecision) {
+		this.enable64BitPrecision = enable64BitPrecision;
+	}
+
+	/**
+	 * Pack and encode given peak list.
+	 */
+	public void encode(final ColumnarPeakList peakList) {
+		if (!peakList.hasPrecursorMz()) {
+			throw new IllegalArgumentException("mzXML requires an intensity and mz values for precursor peaks.");
+		}
+
+		final int peakCount = peakList.getPeakCount();
+		final double[] massOverCharge = peakList.getMassOverCharge();
+		final double[] intensity = peakList.getIntensity();
+		final ByteBuffer bb = getPeakBuffer(peakCount);
+
+		for (int i = 0; i < peakCount; i++) {
+			if (!enable64BitPrecision) {
+				bb.putFloat((float) massOverCharge[i]);
+				bb.putFloat((float) intensity[i]);
+			} else {
+				bb.putDouble(massOverCharge[i]);
+				bb.putDouble(intensity[i]);
+			}
+		}
+
+		tandemCount = peakList.getTandemCount();
+		peaksCount = peakCount;
+		precursorMz = peakList.getPrecursorMz();
+		precursorIntensity = peakList.getPrecursorIntensity();
+		precursorCharge = peakList.getPrecursorCharge() == ColumnarPeakList.UNKNOWN_CHARGE ? Peak.UNKNOWN_CHARGE : peakList.getPrecursorCharge();
+		encodedLength = encodeBase64(bb.array(), bb.position());
+	}
+
+	/**
+	 * Pack and encode given legacy peak list. The precursor information is taken from the parent peak.
+	 */
+	public void encode(final PeakList peakList) {
+		final Peak[] peaks = peakList.getPeaks();
+
+		final ByteBuffer bb = getPeakBuffer(peaks.length);
+
+		for (final Peak peak : peaks) {
+			if (!enable64BitPrecision) {
+				bb.putFloat((float) peak.getMassOverCharge());
+				bb.putFloat((float) peak.getIntensity());
+			} else {
+				bb.putDouble(peak.getMassOverCharge());
+				bb.putDouble(peak.getIntensity());
+			}
+		}
+
+		final Peak parentPeak = peakList.getParentPeak();
+		if (parentPeak == null) {
+			throw new IllegalArgumentException("mzXML requires an intensity and mz values for precursor peaks.");
+		}
+
+		if (parentPeak.getIntensity() == Peak.UNKNOWN_INTENSITY) {
+			throw new IllegalArgumentException("mzXML requires an intensity value for precursor peaks.");
+		}
+
+		if (parentPeak.getMassOverCharge() == Peak.UNKNOWN_MZ) {
+			throw new IllegalArgumentException("mzXML requires an mz value for precursor peaks.");
+		}
+
+		tandemCount = peakList.getTandemCount();
+		peaksCount = peaks.length;
+		precursorMz = parentPeak.getMassOverCharge();
+		precursorIntensity = parentPeak.getIntensity();
+		precursorCharge = parentPeak.getCharge();
+		encodedLength = encodeBase64(bb.array(), bb.position());
+	}
+
+	public boolean isEnable64BitPrecision() {
+		return enable64BitPrecision;
+	}
+
+	public int getTandemCount() {
+		return tandemCount;
+	}
+
+	public int getPeaksCount() {
+		return peaksCount;
+	}
+
+	public double getPrecursorMz() {
+		return precursorMz;
+	}
+
+	public double getPrecursorIntensity() {
+		return precursorIntensity;
+	}
+
+	/**
+	 * @return Precursor charge, {@link Peak#UNKNOWN_CHARGE} if not known.
+	 */
+	public int getPrecursorCharge() {
+		return precursorCharge;
+	}
+
+	/**
+	 * @return Base64 encoded peaks. Only the first {@link #getEncodedLength()} characters are valid.
+	 */
+	public char[] getEncodedPeaks() {
+		return encodedPeaks;
+	}
+
+	public int getEncodedLength() {
+		return encodedLength;
+	}
+
+	/**
+	 * @return Cleared buffer large enough to hold given amount of peaks. The buffer is reused between spectra.
+	 */
+	private ByteBuffer getPeakBuffer(final int peakCount) {
+		/**
+		 * bytes needed = (bits per double/bits per byte)*2 double per peak*number of peaks
+		 */
+		final int byteBufferCapacity;
+		if (enable64BitPrecision) {
+			byteBufferCapacity = (64 / 8) * 2 * peakCount;
+		} else {
+			byteBufferCapacity = (32 / 8) * 2 * peakCount;
+		}
+
+		if (peakBuffer == null || peakBuffer.capacity() < byteBufferCapacity) {
+			/**
+			 * Network byte order is big endian http://mindprod.com/jgloss/endian.html
+			 */
+			peakBuffer = ByteBuffer.allocate(Math.max(byteBufferCapacity, MIN_PEAK_BUFFER_SIZE)).order(ByteOrder.BIG_ENDIAN);
+		}
+		peakBuffer.clear();
+		return peakBuffer;
+	}
+
+	/**
+	 * Base64-encode (no line breaks) given bytes into the reused {@link #encodedPeaks} buffer.
+	 *
+	 * @return Length of the encoded data.
+	 */
+	private int encodeBase64(final byte[] data, final int length) {
+		final int resultLength = (length + 2) / 3 * 4;
+		if (encodedPeaks == null || encodedPeaks.length < resultLength) {
+			encodedPeaks = new char[Math.max(resultLength, MIN_PEAK_BUFFER_SIZE)];
+		}
+		int out = 0;
+		int i = 0;
+		for (; i + 2 < length; i += 3) {
+			final int triple = ((data[i] & 0xff) << 16) | ((data[i + 1] & 0xff) << 8) | (data[i + 2] & 0xff);
+			encodedPeaks[out++] = BASE64[(triple >> 18) & 0x3f];
+			encodedPeaks[out++] = BASE64[(triple >> 12) & 0x3f];
+			encodedPeaks[out++] = BASE64[(triple >> 6) & 0x3f];
+			encodedPeaks[out++] = BASE64[triple & 0x3f];
+		}
+		final int remaining = length - i;
+		if (remaining > 0) {
+			final int triple = ((data[i] & 0xff) << 16) | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+			encodedPeaks[out++] = BASE64[(triple >> 18) & 0x3f];
+			encodedPeaks[out++] = BASE64[(triple >> 12) & 0x3f];
+			encodedPeaks[out++] = remaining == 2 ? BASE64[(triple >> 6) & 0x3f] : '=';
+			encodedPeaks[out++] = '=';
+		}
+		return out;
+	}
+}
@@ -12,7 +12,9 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * @author Roman Zenka
@@ -76,4 +78,39 @@ public final class TestMzXmlConverter {
 				"</peaks>\n" +
 				"</scan></msRun></mzXML>", "The output mzXML is different");
 	}
+
+	@Test
+	public void shouldStreamScanTitles() throws IOException {
+		PeakListReaders readers = new PeakListReaders(Arrays.asList((PeakListReaderFactory) new MgfPeakListReaderFactory()));
+		MzXmlConverter converter = new MzXmlConverter(readers);
+		final File titles = new File(temp, "titles.tsv");
+
+		Assert.assertEquals(converter.convert(inputMgf, new File(temp, "titles.mzxml"), true, titles), 2);
+
+		Assert.assertEquals(Files.toString(titles, Charsets.US_ASCII),
+				"1\ttest scan 1 1 (test.1.1.3.dta)\n" +
+						"2\ttest scan 2 2 (test.2.2.2.dta)\n");
+	}
+
+	@Test
+	public void shouldConvertInParallel() throws IOException {
+		PeakListReaders readers = new PeakListReaders(Arrays.asList((PeakListReaderFactory) new MgfPeakListReaderFactory()));
+		MzXmlConverter converter = new MzXmlConverter(readers);
+		converter.setEncoderThreads(1);
+		final File expected = new File(temp, "sequential.mzxml");
+		converter.convert(inputMgf, expected, false);
+
+		converter.setQueueSize(1);
+		final List<MzXmlConversion> conversions = new ArrayList<MzXmlConversion>();
+		for (int i = 0; i < 5; i++) {
+			conversions.add(new MzXmlConversion(inputMgf, new File(temp, "parallel" + i + ".mzxml"), new File(temp, "parallel" + i + ".tsv"), false));
+		}
+		converter.convert(conversions, 4);
+
+		for (final MzXmlConversion conversion : conversions) {
+			Assert.assertEquals(Files.toString(conversion.getMzXMLOutputFile(), Charsets.US_ASCII), Files.toString(expected, Charsets.US_ASCII),
+					"Parallel conversion must produce the same output as the sequential one");
+			Assert.assertTrue(conversion.getScanTitleFile().length() > 0, "The scan title file must be written");
+		}
+	}
 }
@@ -0,0 +1,256 @@
+package edu.mayo.mprc.peaklist;
+
+import org.proteomecommons.io.GenericPeak;
+import org.proteomecommons.io.Peak;
+
+/**
+ * A peak list that stores the peaks as parallel primitive arrays instead of one {@link Peak} object per peak.
+ * The precursor m/z, intensity and charge are parsed once into numeric fields.
+ * <p/>
+ * The object is meant to be reused - readers fill it in using {@link PeakListReader#readPeakList(ColumnarPeakList)},
+ * growing the arrays only when a spectrum with more peaks than ever before comes along.
+ * Use {@link #toPeakList()} and {@link #copyFrom(org.proteomecommons.io.PeakList)} to convert from/to
+ * the legacy {@link PeakList} representation.
+ *
+ * @author Roman Zenka
+ */
+public final class ColumnarPeakList {
+	public static final int UNKNOWN_CHARGE = 0;
+	private static final int INITIAL_CAPACITY = 256;
+
+	private String title;
+	private int tandemCount;
+	private double precursorMz;
+	private double precursorIntensity;
+	private int precursorCharge;
+
+	private double[] massOverCharge;
+	private double[] intensity;
+	private int peakCount;
+
+	public ColumnarPeakList() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public ColumnarPeakList(final int initialCapacity) {
+		massOverCharge = new double[initialCapacity];
+		intensity = new double[initialCapacity];
+		clear();
+	}
+
+	/**
+	 * Reset to an empty spectrum with no header information. The peak arrays are kept for reuse.
+	 */
+	public void clear() {
+		title = null;
+		tandemCount = PeakList.UNKNOWN_TANDEM_COUNT;
+		precursorMz = Double.NaN;
+		precursorIntensity = 0.0;
+		precursorCharge = UNKNOWN_CHARGE;
+		peakCount = 0;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(final String title) {
+		this.title = title;
+	}
+
+	public int getTandemCount() {
+		return tandemCount;
+	}
+
+	public void setTandemCount(final int tandemCount) {
+		this.tandemCount = tandemCount;
+	}
+
+	/**
+	 * @return Precursor m/z or {@link Double#NaN} if not known.
+	 */
+	public double getPrecursorMz() {
+		return precursorMz;
+	}
+
+	public void setPrecursorMz(final double precursorMz) {
+		this.precursorMz = precursorMz;
+	}
+
+	public boolean hasPrecursorMz() {
+		return !Double.isNaN(precursorMz);
+	}
+
+	/**
+	 * @return Precursor intensity, 0 if not known.
+	 */
+	public double getPrecursorIntensity() {
+		return precursorIntensity;
+	}
+
+	public void setPrecursorIntensity(final double precursorIntensity) {
+		this.precursorIntensity = precursorIntensity;
+	}
+
+	/**
+	 * @return Precursor charge (negative for negative ions), {@link #UNKNOWN_CHARGE} if not known.
+	 */
+	public int getPrecursorCharge() {
+		return precursorCharge;
+	}
+
+	public void setPrecursorCharge(final int precursorCharge) {
+		this.precursorCharge = precursorCharge;
+	}
+
+	public int getPeakCount() {
+		return peakCount;
+	}
+
+	/**
+	 * @return m/z values. Only the first {@link #getPeakCount()} values are valid.
+	 */
+	public double[] getMassOverCharge() {
+		return massOverCharge;
+	}
+
+	/**
+	 * @return Intensities. Only the first {@link #getPeakCount()} values are valid.
+	 */
+	public double[] getIntensity() {
+		return intensity;
+	}
+
+	public void addPeak(final double mz, final double peakIntensity) {
+		if (peakCount == massOverCharge.length) {
+			ensureCapacity(peakCount * 2 + 1);
+		}
+		massOverCharge[peakCount] = mz;
+		intensity[peakCount] = peakIntensity;
+		peakCount++;
+	}
+
+	/**
+	 * Replace the peaks with a copy of given arrays.
+	 */
+	public void setPeaks(final double[] mz, final double[] peakIntensity, final int count) {
+		ensureCapacity(count);
+		System.arraycopy(mz, 0, massOverCharge, 0, count);
+		System.arraycopy(peakIntensity, 0, intensity, 0, count);
+		peakCount = count;
+	}
+
+	public void ensureCapacity(final int capacity) {
+		if (massOverCharge.length < capacity) {
+			final double[] newMz = new double[capacity];
+			final double[] newIntensity = new double[capacity];
+			System.arraycopy(massOverCharge, 0, newMz, 0, peakCount);
+			System.arraycopy(intensity, 0, newIntensity, 0, peakCount);
+			massOverCharge = newMz;
+			intensity = newIntensity;
+		}
+	}
+
+	/**
+	 * Set the precursor information from .mgf-style header lines.
+	 *
+	 * @param pepmass PEPMASS line, e.g. {@code PEPMASS=506.605 1234.5}, can be null.
+	 * @param charge  CHARGE line, e.g. {@code CHARGE=3+}, can be null.
+	 */
+	public void setPrecursor(final String pepmass, final String charge) {
+		precursorMz = Double.NaN;
+		precursorIntensity = 0.0;
+		if (pepmass != null) {
+			final String[] values = valuePart(pepmass).split("\\s+");
+			if (values.length > 0 && values[0].length() > 0) {
+				precursorMz = Double.parseDouble(values[0]);
+			}
+			if (values.length > 1) {
+				precursorIntensity = Double.parseDouble(values[1]);
+			}
+		}
+		precursorCharge = parseCharge(charge);
+	}
+
+	/**
+	 * @param charge CHARGE line or value, e.g. {@code CHARGE=3+}, {@code 2-} or {@code 2+ and 3+}.
+	 * @return First charge listed, {@link #UNKNOWN_CHARGE} if there is none.
+	 */
+	public static int parseCharge(final String charge) {
+		if (charge == null) {
+			return UNKNOWN_CHARGE;
+		}
+		final String value = valuePart(charge);
+		int i = 0;
+		while (i < value.length() && !Character.isDigit(value.charAt(i))) {
+			i++;
+		}
+		int result = 0;
+		boolean found = false;
+		while (i < value.length() && Character.isDigit(value.charAt(i))) {
+			result = result * 10 + (value.charAt(i) - '0');
+			found = true;
+			i++;
+		}
+		if (!found) {
+			return UNKNOWN_CHARGE;
+		}
+		final boolean negative = (i < value.length() && value.charAt(i) == '-') || value.startsWith("-");
+		return negative ? -result : result;
+	}
+
+	private static String valuePart(final String line) {
+		return line.substring(line.indexOf('=') + 1).trim();
+	}
+
+	/**
+	 * Fill this object from a legacy peak list.
+	 */
+	public void copyFrom(final org.proteomecommons.io.PeakList peakList) {
+		clear();
+		tandemCount = peakList.getTandemCount();
+		if (peakList instanceof PeakList) {
+			final PeakList mgfPeakList = (PeakList) peakList;
+			title = mgfPeakList.getTitle();
+			setPrecursor(mgfPeakList.getPepmass(), mgfPeakList.getCharge());
+		} else if (peakList.getParentPeak() != null) {
+			final Peak parent = peakList.getParentPeak();
+			precursorMz = parent.getMassOverCharge();
+			precursorIntensity = parent.getIntensity() == Peak.UNKNOWN_INTENSITY ? 0.0 : parent.getIntensity();
+			precursorCharge = parent.getCharge() == Peak.UNKNOWN_CHARGE ? UNKNOWN_CHARGE : parent.getCharge();
+		}
+		final Peak[] peaks = peakList.getPeaks();
+		if (peaks != null) {
+			ensureCapacity(peaks.length);
+			for (final Peak peak : peaks) {
+				massOverCharge[peakCount] = peak.getMassOverCharge();
+				intensity[peakCount] = peak.getIntensity();
+				peakCount++;
+			}
+		}
+	}
+
+	/**
+	 * Adapter for legacy code - create a {@link PeakList} with a {@link Peak} object for every peak.
+	 */
+	public PeakList toPeakList() {
+		final PeakList peakList = new PeakList();
+		peakList.setTitle(title);
+		peakList.setTandemCount(tandemCount);
+		if (hasPrecursorMz()) {
+			peakList.setPepmass("PEPMASS=" + precursorMz);
+		}
+		if (precursorCharge != UNKNOWN_CHARGE) {
+			peakList.setCharge("CHARGE=" + Math.abs(precursorCharge) + (precursorCharge > 0 ? "+" : "-"));
+		}
+		final Peak[] peaks = new Peak[peakCount];
+		for (int i = 0; i < peakCount; i++) {
+			final GenericPeak peak = new GenericPeak();
+			peak.setMassOverCharge(massOverCharge[i]);
+			peak.setIntensity(intensity[i]);
+			peaks[i] = peak;
+		}
+		peakList.setPeaks(peaks);
+		return peakList;
+	}
+}
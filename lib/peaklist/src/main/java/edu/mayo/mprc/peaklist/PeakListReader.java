@@ -13,6 +13,14 @@ public interface PeakListReader extends Closeable {
 	 */
 	PeakList nextPeakList();
 
+	/**
+	 * Read the next peak list into a reusable object, without creating an object per peak.
+	 *
+	 * @param peakList Peak list to fill in. Its previous contents are discarded.
+	 * @return False if we are at the end of the file (the peak list is then left cleared).
+	 */
+	boolean readPeakList(ColumnarPeakList peakList);
+
 	/**
 	 * @return True if this reader actually reads the peak information (otherwise it reads just the headers)
 	 */
@@ -14,4 +14,10 @@ public interface PeakListWriter extends Closeable {
 	 * @return scan number written
 	 */
 	int writePeakList(PeakList peakList);
+
+	/**
+	 * @param peakList Peak list with primitive peak arrays to write
+	 * @return scan number written
+	 */
+	int writePeakList(ColumnarPeakList peakList);
 }
@@ -4,8 +4,7 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.CountingInputStream;
 import edu.mayo.mprc.MprcException;
-import edu.mayo.mprc.utilities.BufferedEofReader;
-import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.io.TsvScanner;
 import edu.mayo.mprc.utilities.progress.PercentDoneReporter;
 import edu.mayo.mprc.utilities.progress.ProgressReporter;
 import edu.mayo.mprc.utilities.progress.UserProgressReporter;
@@ -285,17 +284,16 @@ public abstract class ScaffoldReportReader {
 		} else {
 			reader = new InputStreamReader(stream);
 		}
-		BufferedReader br = null;
+		final TsvScanner scanner = new TsvScanner(reader, '\t', true);
 		try {
-			br = new BufferedReader(reader);
 			// Skip the header portion of the file, process the header line
 			String line;
 			while (true) {
-				line = br.readLine();
 				lineNumber++;
-				if (line == null) {
+				if (!scanner.nextLine()) {
 					throw new MprcException("End of file reached before we could find the header line");
 				}
+				line = scanner.getLine();
 
 				final int colonPos = line.indexOf(':');
 				if (colonPos >= 0) {
@@ -318,9 +316,9 @@ public abstract class ScaffoldReportReader {
 			if (!processHeader(line)) {
 				return;
 			}
-			loadContents(br);
+			loadContents(scanner);
 		} finally {
-			FileUtilities.closeQuietly(br);
+			scanner.close();
 		}
 	}
 
@@ -349,19 +347,32 @@ public abstract class ScaffoldReportReader {
 	 */
 	public abstract boolean processRow(String line);
 
-	private void loadContents(final BufferedReader reader) throws IOException {
-		final BufferedEofReader eofReader = new BufferedEofReader(reader);
+	/**
+	 * Process one row from the spectra file, as split by the scanner. The default implementation passes the row
+	 * as a string to {@link #processRow(String)}. Readers that only need a few of the columns can override this
+	 * to access the fields in place, without splitting and copying the whole line.
+	 *
+	 * @param row Scanner positioned at the row. The fields are trimmed.
+	 * @return Whether to keep processing. False stops.
+	 */
+	protected boolean processRow(final TsvScanner row) {
+		return processRow(row.getLine());
+	}
+
+	private void loadContents(final TsvScanner scanner) {
 		while (true) {
-			final String line = eofReader.readLine();
 			lineNumber++;
-			if (END_OF_FILE.equals(line)) {
+			if (!scanner.nextLine()) {
+				throw new MprcException("Scaffold file is truncated - the " + END_OF_FILE + " marker not found");
+			}
+			if (scanner.getFieldCount() == 1 && scanner.fieldEquals(0, END_OF_FILE)) {
 				break;
 			}
-			if (line == null || eofReader.isEof()) {
+			if (scanner.isEof()) {
 				// We are at the end of file, but have not reach the end of file mark!
 				throw new MprcException("Scaffold file is truncated - the " + END_OF_FILE + " marker not found");
 			}
-			if (!processRow(line)) {
+			if (!processRow(scanner)) {
 				break;
 			}
 			if (lineNumber % REPORT_FREQUENCY == 0 && percentDoneReporter != null) {
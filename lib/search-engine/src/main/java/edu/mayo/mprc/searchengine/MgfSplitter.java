@@ -0,0 +1,187 @@
+package edu.mayo.mprc.searchengine;
+
+import com.google.common.base.Charsets;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an .mgf file into several smaller .mgf files (shards), so each can be searched separately.
+ * <p/>
+ * The split only happens at a <tt>BEGIN IONS</tt> line, a spectrum is never torn apart.
+ * Anything before the first spectrum (global parameters like <tt>CHARGE=</tt>) is repeated at the top of every shard.
+ * The file is copied byte by byte, the spectra are not parsed.
+ *
+ * @author Roman Zenka
+ */
+public final class MgfSplitter {
+	private static final Logger LOGGER = Logger.getLogger(MgfSplitter.class);
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final String BEGIN_IONS_LINE = "BEGIN IONS";
+	private static final byte[] BEGIN_IONS = BEGIN_IONS_LINE.getBytes();
+
+	private final File outputFolder;
+	private final String baseName;
+	private final long maxShardBytes;
+	private final List<File> shards = new ArrayList<File>();
+
+	/**
+	 * Everything before the first BEGIN IONS.
+	 */
+	private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+	private OutputStream output;
+	private long shardBytes;
+
+	private MgfSplitter(final File mgf, final File outputFolder, final long maxShardBytes) {
+		this.outputFolder = outputFolder;
+		baseName = FileUtilities.stripExtension(mgf.getName());
+		this.maxShardBytes = maxShardBytes;
+	}
+
+	/**
+	 * Split the .mgf file into given amount of shards of about the same size.
+	 *
+	 * @param mgf          File to split.
+	 * @param outputFolder Where to put the shards.
+	 * @param shardCount   How many shards to make.
+	 * @return List of the shards. There can be fewer than requested when the file has only a few spectra.
+	 */
+	public static List<File> splitIntoShards(final File mgf, final File outputFolder, final int shardCount) {
+		if (shardCount < 1) {
+			throw new MprcException("The number of shards must be at least 1, was " + shardCount);
+		}
+		return split(mgf, outputFolder, (mgf.length() + shardCount - 1) / shardCount);
+	}
+
+	/**
+	 * Split the .mgf file into shards of given size. A shard is closed at the first spectrum that starts after
+	 * the size was reached, so a shard is larger than the limit by one spectrum at most.
+	 *
+	 * @param mgf           File to split.
+	 * @param outputFolder  Where to put the shards.
+	 * @param maxShardBytes Size of one shard.
+	 * @return List of the shards, named after the original file.
+	 */
+	public static List<File> split(final File mgf, final File outputFolder, final long maxShardBytes) {
+		FileUtilities.ensureFolderExists(outputFolder);
+		final MgfSplitter splitter = new MgfSplitter(mgf, outputFolder, maxShardBytes);
+		InputStream input = null;
+		try {
+			input = new FileInputStream(mgf);
+			splitter.split(input);
+		} catch (IOException e) {
+			throw new MprcException("Could not split " + mgf.getAbsolutePath() + " into shards", e);
+		} finally {
+			FileUtilities.closeQuietly(input);
+			FileUtilities.closeQuietly(splitter.output);
+		}
+		LOGGER.debug("Split " + mgf.getAbsolutePath() + " into " + splitter.shards.size() + " shards");
+		return splitter.shards;
+	}
+
+	/**
+	 * @param mgf File to count the spectra in.
+	 * @return Number of spectra (<tt>BEGIN IONS</tt> lines) in the file.
+	 */
+	public static int countSpectra(final File mgf) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(mgf), Charsets.ISO_8859_1), BUFFER_SIZE);
+			int count = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().startsWith(BEGIN_IONS_LINE)) {
+					count++;
+				}
+			}
+			return count;
+		} catch (IOException e) {
+			throw new MprcException("Could not count spectra in " + mgf.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+	}
+
+	private void split(final InputStream input) throws IOException {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		// Line that did not fit in the buffer
+		final ByteArrayOutputStream carry = new ByteArrayOutputStream();
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			int lineStart = 0;
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] == '\n') {
+					if (carry.size() > 0) {
+						carry.write(buffer, lineStart, i + 1 - lineStart);
+						line(carry.toByteArray(), 0, carry.size());
+						carry.reset();
+					} else {
+						line(buffer, lineStart, i + 1 - lineStart);
+					}
+					lineStart = i + 1;
+				}
+			}
+			carry.write(buffer, lineStart, read - lineStart);
+		}
+		if (carry.size() > 0) {
+			line(carry.toByteArray(), 0, carry.size());
+		}
+		if (output != null) {
+			output.close();
+		}
+	}
+
+	private void line(final byte[] buffer, final int offset, final int length) throws IOException {
+		if (isBeginIons(buffer, offset, length) && (output == null || shardBytes >= maxShardBytes)) {
+			if (output != null) {
+				output.close();
+			}
+			final File shard = new File(outputFolder, baseName + ".shard" + (shards.size() + 1) + ".mgf");
+			shards.add(shard);
+			output = new BufferedOutputStream(new FileOutputStream(shard), BUFFER_SIZE);
+			header.writeTo(output);
+			shardBytes = header.size();
+		}
+		if (output == null) {
+			header.write(buffer, offset, length);
+		} else {
+			output.write(buffer, offset, length);
+			shardBytes += length;
+		}
+	}
+
+	/**
+	 * @return True if the line is a BEGIN IONS. Leading whitespace is ignored.
+	 */
+	private static boolean isBeginIons(final byte[] buffer, final int offset, final int length) {
+		final int end = offset + length;
+		int i = offset;
+		while (i < end && (buffer[i] == ' ' || buffer[i] == '\t')) {
+			i++;
+		}
+		if (end - i < BEGIN_IONS.length) {
+			return false;
+		}
+		for (final byte b : BEGIN_IONS) {
+			if (buffer[i] != b) {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+}
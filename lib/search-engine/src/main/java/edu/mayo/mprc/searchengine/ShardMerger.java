@@ -0,0 +1,19 @@
+package edu.mayo.mprc.searchengine;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Merges search engine outputs for individual shards of an input file into a single output,
+ * as if the whole input was searched at once.
+ *
+ * @author Roman Zenka
+ */
+public interface ShardMerger {
+	/**
+	 * @param shardOutputs Outputs of the shards, in the order the shards appear in the original input.
+	 *                     Each output is in a folder of its own, next to the shard input named the same as the original input.
+	 * @param output       The merged output.
+	 */
+	void merge(List<File> shardOutputs, File output);
+}
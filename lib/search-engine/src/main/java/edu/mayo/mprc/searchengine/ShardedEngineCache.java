@@ -0,0 +1,296 @@
+package edu.mayo.mprc.searchengine;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.config.ConfigReader;
+import edu.mayo.mprc.config.ConfigWriter;
+import edu.mayo.mprc.config.ui.UiBuilder;
+import edu.mayo.mprc.daemon.WorkCache;
+import edu.mayo.mprc.daemon.worker.WorkPacket;
+import edu.mayo.mprc.utilities.FileListener;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.progress.PercentDone;
+import edu.mayo.mprc.utilities.progress.ProgressInfo;
+import edu.mayo.mprc.utilities.progress.ProgressListener;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A search engine cache that can split the input .mgf file into several shards and search each of them as a separate
+ * request. The requests go to the cached search engine service, so they get spread over all the runners
+ * the service has - threads of a local runner or slots of the grid engine.
+ * <p/>
+ * Once all the shards are searched, their outputs are merged into the single output file that was requested,
+ * so the rest of Swift cannot tell the difference.
+ * <p/>
+ * Each shard is stored in its own subfolder, under the same name the original input has. This way the spectrum
+ * names the engines derive from the input file name stay the same as for an unsharded search.
+ *
+ * @param <T> Type of the engine work packet.
+ * @author Roman Zenka
+ */
+public abstract class ShardedEngineCache<T extends EngineWorkPacket> extends WorkCache<T> {
+	private static final Logger LOGGER = Logger.getLogger(ShardedEngineCache.class);
+	private static final String SHARD_FOLDER = "shards";
+	private static final String MGF = "mgf";
+
+	private int shards = 1;
+
+	protected ShardedEngineCache() {
+	}
+
+	/**
+	 * @return Into how many shards to split each input file. 1 means the file is searched whole.
+	 */
+	public final int getShards() {
+		return shards;
+	}
+
+	public final void setShards(final int shards) {
+		this.shards = shards;
+	}
+
+	/**
+	 * @param packet      The original work packet.
+	 * @param shardInput  Input file for the shard.
+	 * @param shardOutput Where the shard output should go.
+	 * @return Work packet searching the shard the same way the original packet would search the whole input.
+	 */
+	protected abstract T createShardPacket(T packet, File shardInput, File shardOutput);
+
+	/**
+	 * @param packet The original work packet.
+	 * @return Merger for the output format the packet produces, null if the output cannot be merged (the input is then searched whole).
+	 */
+	protected abstract ShardMerger getMerger(T packet);
+
+	@Override
+	protected void sendWork(final WorkPacket workPacket, final ProgressListener listener) {
+		if (!(workPacket instanceof EngineWorkPacket) || shards <= 1) {
+			super.sendWork(workPacket, listener);
+			return;
+		}
+		final T packet = (T) workPacket;
+		final ShardMerger merger = getMerger(packet);
+		if (merger == null || !MGF.equalsIgnoreCase(FileUtilities.getExtension(packet.getInputFile().getName()))) {
+			super.sendWork(workPacket, listener);
+			return;
+		}
+
+		final File shardFolder = new File(packet.getOutputFile().getParentFile(), SHARD_FOLDER);
+		final List<File> splits = MgfSplitter.splitIntoShards(packet.getInputFile(), shardFolder, shards);
+		if (splits.size() < 2) {
+			FileUtilities.deleteNow(shardFolder);
+			super.sendWork(workPacket, listener);
+			return;
+		}
+
+		final List<T> shardPackets = new ArrayList<T>(splits.size());
+		final List<File> shardOutputs = new ArrayList<File>(splits.size());
+		for (int i = 0; i < splits.size(); i++) {
+			final File folder = new File(shardFolder, String.valueOf(i + 1));
+			FileUtilities.ensureFolderExists(folder);
+			final File shardInput = new File(folder, packet.getInputFile().getName());
+			FileUtilities.rename(splits.get(i), shardInput);
+			final File shardOutput = new File(folder, packet.getOutputFile().getName());
+			final T shardPacket = createShardPacket(packet, shardInput, shardOutput);
+			shardPacket.setTaskId(packet.getTaskId());
+			shardPackets.add(shardPacket);
+			shardOutputs.add(shardOutput);
+		}
+
+		LOGGER.info(String.format("Searching %s in %d shards using %s", packet.getInputFile().getAbsolutePath(), shardPackets.size(), getDaemon().getConnectionName()));
+		final ShardedSearch search = new ShardedSearch(listener, merger, shardFolder, shardOutputs, packet.getOutputFile());
+		try {
+			for (int i = 0; i < shardPackets.size(); i++) {
+				getDaemon().sendWork(shardPackets.get(i), search.new ShardListener(i));
+			}
+		} catch (final Exception e) {
+			search.terminate(new MprcException("Could not send shards of " + packet.getInputFile().getAbsolutePath(), e));
+		}
+	}
+
+	/**
+	 * Collects the progress of all the shards and reports it as progress of the original request.
+	 */
+	private static final class ShardedSearch {
+		private final ProgressListener listener;
+		private final ShardMerger merger;
+		private final File shardFolder;
+		private final List<File> shardOutputs;
+		private final File outputFile;
+		private final double[] percentDone;
+
+		private int running;
+		private boolean enqueued;
+		private boolean started;
+		private boolean terminated;
+		private Exception failure;
+
+		private ShardedSearch(final ProgressListener listener, final ShardMerger merger, final File shardFolder, final List<File> shardOutputs, final File outputFile) {
+			this.listener = listener;
+			this.merger = merger;
+			this.shardFolder = shardFolder;
+			this.shardOutputs = shardOutputs;
+			this.outputFile = outputFile;
+			percentDone = new double[shardOutputs.size()];
+			running = shardOutputs.size();
+		}
+
+		/**
+		 * A shard is done. Once all of them are, either merge the outputs or report the first failure.
+		 */
+		private void shardDone(final Exception e) {
+			final Exception reportFailure;
+			synchronized (this) {
+				if (e != null && failure == null) {
+					failure = e;
+				}
+				running--;
+				if (running > 0 || terminated) {
+					return;
+				}
+				reportFailure = failure;
+			}
+			if (reportFailure != null) {
+				// The work-in-progress folder including the shards gets deleted by the cache
+				listener.requestTerminated(reportFailure);
+				return;
+			}
+			FileUtilities.waitForFiles(shardOutputs, new FileListener() {
+				@Override
+				public void fileChanged(final Collection<File> files, final boolean timeout) {
+					if (timeout) {
+						listener.requestTerminated(new MprcException("Timeout when waiting for shard outputs in " + shardFolder.getAbsolutePath()));
+						return;
+					}
+					try {
+						merger.merge(shardOutputs, outputFile);
+						FileUtilities.deleteNow(shardFolder);
+					} catch (final Exception e) {
+						listener.requestTerminated(e);
+						return;
+					}
+					listener.requestProcessingFinished();
+				}
+			});
+		}
+
+		/**
+		 * The search failed before all shards could be sent. Report the failure right away and ignore
+		 * whatever the shards that were already sent report later.
+		 */
+		private void terminate(final Exception e) {
+			synchronized (this) {
+				if (terminated) {
+					return;
+				}
+				terminated = true;
+			}
+			FileUtilities.deleteNow(shardFolder);
+			listener.requestTerminated(e);
+		}
+
+		private final class ShardListener implements ProgressListener {
+			private final int index;
+
+			private ShardListener(final int index) {
+				this.index = index;
+			}
+
+			@Override
+			public void requestEnqueued(final String hostString) {
+				synchronized (ShardedSearch.this) {
+					if (enqueued) {
+						return;
+					}
+					enqueued = true;
+				}
+				listener.requestEnqueued(hostString);
+			}
+
+			@Override
+			public void requestProcessingStarted(final String hostString) {
+				synchronized (ShardedSearch.this) {
+					if (started) {
+						return;
+					}
+					started = true;
+				}
+				listener.requestProcessingStarted(hostString);
+			}
+
+			@Override
+			public void requestProcessingFinished() {
+				shardDone(null);
+			}
+
+			@Override
+			public void requestTerminated(final Exception e) {
+				shardDone(e);
+			}
+
+			@Override
+			public void userProgressInformation(final ProgressInfo progressInfo) {
+				if (progressInfo instanceof PercentDone) {
+					double total = 0.0;
+					synchronized (ShardedSearch.this) {
+						percentDone[index] = ((PercentDone) progressInfo).getPercentDone();
+						for (final double percent : percentDone) {
+							total += percent;
+						}
+					}
+					listener.userProgressInformation(new PercentDone(total / percentDone.length));
+				} else {
+					listener.userProgressInformation(progressInfo);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cache config that also knows how many shards to split the input into.
+	 */
+	public static class ShardedCacheConfig extends CacheConfig {
+		public static final String SHARDS = "shards";
+		private int shards = 1;
+
+		/**
+		 * @return Into how many shards to split each input file.
+		 */
+		public int getShards() {
+			return shards;
+		}
+
+		public void setShards(final int shards) {
+			this.shards = shards;
+		}
+
+		@Override
+		public void save(final ConfigWriter writer) {
+			super.save(writer);
+			writer.put(SHARDS, getShards(), 1, "Into how many shards to split each .mgf file. The shards are searched in parallel and the results merged");
+		}
+
+		@Override
+		public void load(final ConfigReader reader) {
+			super.load(reader);
+			shards = reader.getInteger(SHARDS, 1);
+		}
+
+		/**
+		 * Adds the shard count property to the UI of a sharded cache.
+		 */
+		public static void addShardsProperty(final UiBuilder builder) {
+			builder
+					.property(SHARDS, "Shards", "Split each .mgf file into this many shards. The shards are searched in parallel "
+							+ "by all the runners of the search engine and the results merged back into a single file."
+							+ "<p>Set to 1 to search each file whole.</p>")
+					.integerValue(1, null)
+					.defaultValue("1");
+		}
+	}
+}
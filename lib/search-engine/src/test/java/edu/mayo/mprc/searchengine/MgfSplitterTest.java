@@ -0,0 +1,88 @@
+package edu.mayo.mprc.searchengine;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @author Roman Zenka
+ */
+public final class MgfSplitterTest {
+	private File folder;
+	private File mgf;
+
+	@BeforeMethod
+	public void setup() throws IOException {
+		folder = FileUtilities.createTempFolder();
+		mgf = new File(folder, "test.mgf");
+		final StringBuilder content = new StringBuilder("MASS=Monoisotopic\r\nCHARGE=2+\r\n\r\n");
+		for (int i = 1; i <= 10; i++) {
+			content.append(spectrum(i));
+		}
+		Files.write(content.toString(), mgf, Charsets.US_ASCII);
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldSplitAtSpectra() throws IOException {
+		final List<File> shards = MgfSplitter.splitIntoShards(mgf, new File(folder, "shards"), 3);
+
+		Assert.assertEquals(shards.size(), 3);
+		final StringBuilder spectra = new StringBuilder();
+		for (final File shard : shards) {
+			final String content = Files.toString(shard, Charsets.US_ASCII);
+			Assert.assertTrue(content.startsWith("MASS=Monoisotopic\r\nCHARGE=2+\r\n\r\nBEGIN IONS\r\n"), "Every shard starts with the global parameters");
+			Assert.assertTrue(content.endsWith("END IONS\r\n"), "A shard ends with a complete spectrum");
+			spectra.append(content.substring(content.indexOf("BEGIN IONS")));
+		}
+		final String original = Files.toString(mgf, Charsets.US_ASCII);
+		Assert.assertEquals(spectra.toString(), original.substring(original.indexOf("BEGIN IONS")), "All spectra are present exactly once");
+	}
+
+	@Test
+	public void shouldKeepSmallFileWhole() {
+		final List<File> shards = MgfSplitter.split(mgf, new File(folder, "shards"), mgf.length() * 2);
+
+		Assert.assertEquals(shards.size(), 1);
+		Assert.assertEquals(shards.get(0).length(), mgf.length());
+	}
+
+	@Test
+	public void shouldPutSpectrumPerShard() {
+		final List<File> shards = MgfSplitter.split(mgf, new File(folder, "shards"), 1);
+
+		Assert.assertEquals(shards.size(), 10, "The shard is closed as soon as it reaches the limit");
+	}
+
+	@Test
+	public void shouldCountSpectra() {
+		Assert.assertEquals(MgfSplitter.countSpectra(mgf), 10);
+		final List<File> shards = MgfSplitter.splitIntoShards(mgf, new File(folder, "shards"), 3);
+		int total = 0;
+		for (final File shard : shards) {
+			total += MgfSplitter.countSpectra(shard);
+		}
+		Assert.assertEquals(total, 10, "Every spectrum ends up in exactly one shard");
+	}
+
+	private static String spectrum(final int scan) {
+		return "BEGIN IONS\r\n" +
+				"TITLE=test scan " + scan + " " + scan + " (test." + scan + "." + scan + ".2.dta)\r\n" +
+				"PEPMASS=" + (500 + scan) + ".25\r\n" +
+				"120.5 10.0\r\n" +
+				"230.1 " + scan + ".5\r\n" +
+				"END IONS\r\n";
+	}
+}
@@ -0,0 +1,276 @@
+package edu.mayo.mprc.searchengine;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.daemon.DaemonConnection;
+import edu.mayo.mprc.daemon.DaemonRequest;
+import edu.mayo.mprc.daemon.files.FileTokenFactory;
+import edu.mayo.mprc.daemon.worker.WorkPacket;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.progress.PercentDone;
+import edu.mayo.mprc.utilities.progress.ProgressInfo;
+import edu.mayo.mprc.utilities.progress.ProgressListener;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Roman Zenka
+ */
+public final class ShardedEngineCacheTest {
+	private static final int SHARDS = 3;
+
+	private File folder;
+	private File mgf;
+	private File output;
+	private TestConnection connection;
+	private TestShardedCache cache;
+	private RecordingListener listener;
+
+	@BeforeMethod
+	public void setup() throws IOException {
+		folder = FileUtilities.createTempFolder();
+		mgf = new File(folder, "test.mgf");
+		final StringBuilder content = new StringBuilder("MASS=Monoisotopic\r\n\r\n");
+		for (int i = 1; i <= 9; i++) {
+			content.append("BEGIN IONS\r\nTITLE=scan ").append(i).append("\r\nPEPMASS=500.25\r\n120.5 10.0\r\nEND IONS\r\n");
+		}
+		Files.write(content.toString(), mgf, Charsets.US_ASCII);
+		output = new File(new File(folder, "out"), "test.out");
+		FileUtilities.ensureFolderExists(output.getParentFile());
+
+		connection = new TestConnection();
+		cache = new TestShardedCache();
+		cache.setShards(SHARDS);
+		cache.setDaemon(connection);
+		listener = new RecordingListener();
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldSplitAndMerge() throws IOException, InterruptedException {
+		cache.sendWork(new TestEngineWorkPacket(mgf, output), listener);
+
+		Assert.assertEquals(connection.packets.size(), SHARDS);
+		final File shardFolder = new File(output.getParentFile(), "shards");
+		for (int i = 0; i < SHARDS; i++) {
+			final TestEngineWorkPacket shard = connection.packets.get(i);
+			Assert.assertEquals(shard.getInputFile(), new File(new File(shardFolder, String.valueOf(i + 1)), mgf.getName()), "Shard keeps the input name");
+			Assert.assertEquals(shard.getOutputFile().getName(), output.getName());
+			Assert.assertTrue(shard.getInputFile().isFile());
+		}
+
+		for (int i = 0; i < SHARDS; i++) {
+			connection.listeners.get(i).requestEnqueued("host");
+			connection.listeners.get(i).requestProcessingStarted("host");
+		}
+		Assert.assertEquals(listener.enqueued, 1, "Enqueued is reported once for all shards");
+		Assert.assertEquals(listener.started, 1, "Start is reported once for all shards");
+
+		connection.listeners.get(0).userProgressInformation(new PercentDone(60.0));
+		connection.listeners.get(2).userProgressInformation(new PercentDone(30.0));
+		Assert.assertEquals(listener.percentDone.get(listener.percentDone.size() - 1), 30.0, 1e-9, "Progress is averaged over all shards");
+
+		for (int i = 0; i < SHARDS; i++) {
+			Assert.assertEquals(listener.done.getCount(), 1L, "The request finishes only once all shards do");
+			connection.finish(i);
+		}
+		Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS), "The merge did not happen");
+		Assert.assertNull(listener.failure);
+		Assert.assertEquals(listener.finished, 1);
+
+		final String merged = Files.toString(output, Charsets.US_ASCII);
+		final String original = Files.toString(mgf, Charsets.US_ASCII);
+		Assert.assertEquals(merged.replace("MASS=Monoisotopic\r\n\r\n", ""), original.replace("MASS=Monoisotopic\r\n\r\n", ""), "All shard outputs are merged in order");
+		Assert.assertFalse(shardFolder.exists(), "Shards are deleted after the merge");
+	}
+
+	@Test
+	public void shouldFailWhenShardFails() throws InterruptedException {
+		cache.sendWork(new TestEngineWorkPacket(mgf, output), listener);
+
+		connection.finish(0);
+		connection.listeners.get(1).requestTerminated(new MprcException("Shard failed"));
+		Assert.assertEquals(listener.done.getCount(), 1L, "The request waits for the remaining shard");
+		connection.finish(2);
+
+		Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+		Assert.assertEquals(listener.terminated, 1);
+		Assert.assertEquals(listener.finished, 0);
+		Assert.assertEquals(listener.failure.getMessage(), "Shard failed");
+		Assert.assertFalse(output.exists(), "Nothing gets merged");
+	}
+
+	@Test
+	public void shouldFailWhenShardCannotBeSent() {
+		connection.failOnPacket = 1;
+		cache.sendWork(new TestEngineWorkPacket(mgf, output), listener);
+
+		Assert.assertEquals(connection.packets.size(), 1, "Only the first shard got sent");
+		Assert.assertEquals(listener.terminated, 1);
+		Assert.assertFalse(new File(output.getParentFile(), "shards").exists(), "Shards are cleaned up");
+
+		connection.listeners.get(0).requestTerminated(new MprcException("Shard input deleted"));
+		Assert.assertEquals(listener.terminated, 1, "The failure is reported only once");
+		Assert.assertEquals(listener.finished, 0);
+	}
+
+	private static final class TestEngineWorkPacket extends EngineWorkPacket {
+		private static final long serialVersionUID = -2357094817364930615L;
+
+		TestEngineWorkPacket(final File inputFile, final File outputFile) {
+			super(inputFile, outputFile, "search parameters", new File("database"), false, false);
+		}
+
+		@Override
+		public WorkPacket translateToCachePacket(final File cacheFolder) {
+			return null;
+		}
+	}
+
+	private static final class TestShardedCache extends ShardedEngineCache<TestEngineWorkPacket> {
+		@Override
+		protected TestEngineWorkPacket createShardPacket(final TestEngineWorkPacket packet, final File shardInput, final File shardOutput) {
+			return new TestEngineWorkPacket(shardInput, shardOutput);
+		}
+
+		@Override
+		protected ShardMerger getMerger(final TestEngineWorkPacket packet) {
+			return new ConcatenatingMerger();
+		}
+	}
+
+	/**
+	 * Concatenates the spectra of all shards.
+	 */
+	private static final class ConcatenatingMerger implements ShardMerger {
+		@Override
+		public void merge(final List<File> shardOutputs, final File output) {
+			try {
+				final StringBuilder merged = new StringBuilder();
+				for (final File shardOutput : shardOutputs) {
+					final String content = Files.toString(shardOutput, Charsets.US_ASCII);
+					merged.append(content.substring(content.indexOf("BEGIN IONS")));
+				}
+				Files.write(merged.toString(), output, Charsets.US_ASCII);
+			} catch (IOException e) {
+				throw new MprcException(e);
+			}
+		}
+	}
+
+	/**
+	 * Records what got sent, the test plays the role of the search engine.
+	 */
+	private static final class TestConnection implements DaemonConnection {
+		private final List<TestEngineWorkPacket> packets = new ArrayList<TestEngineWorkPacket>();
+		private final List<ProgressListener> listeners = new ArrayList<ProgressListener>();
+		private int failOnPacket = -1;
+
+		@Override
+		public FileTokenFactory getFileTokenFactory() {
+			return null;
+		}
+
+		@Override
+		public String getConnectionName() {
+			return "test";
+		}
+
+		@Override
+		public void sendWork(final WorkPacket workPacket, final ProgressListener listener) {
+			sendWork(workPacket, 5, listener);
+		}
+
+		@Override
+		public void sendWork(final WorkPacket workPacket, final int priority, final ProgressListener listener) {
+			if (packets.size() == failOnPacket) {
+				throw new MprcException("The service is not running");
+			}
+			packets.add((TestEngineWorkPacket) workPacket);
+			listeners.add(listener);
+		}
+
+		/**
+		 * The engine "searches" the shard by copying its input to the output.
+		 */
+		public void finish(final int index) {
+			final TestEngineWorkPacket packet = packets.get(index);
+			try {
+				Files.copy(packet.getInputFile(), packet.getOutputFile());
+			} catch (IOException e) {
+				throw new MprcException(e);
+			}
+			listeners.get(index).requestProcessingFinished();
+		}
+
+		@Override
+		public DaemonRequest receiveDaemonRequest(final long timeout) {
+			return null;
+		}
+
+		@Override
+		public boolean isRunning() {
+			return true;
+		}
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public void stop() {
+		}
+	}
+
+	private static final class RecordingListener implements ProgressListener {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private final List<Double> percentDone = new ArrayList<Double>();
+		private int enqueued;
+		private int started;
+		private int finished;
+		private int terminated;
+		private Exception failure;
+
+		@Override
+		public void requestEnqueued(final String hostString) {
+			enqueued++;
+		}
+
+		@Override
+		public void requestProcessingStarted(final String hostString) {
+			started++;
+		}
+
+		@Override
+		public synchronized void requestProcessingFinished() {
+			finished++;
+			done.countDown();
+		}
+
+		@Override
+		public synchronized void requestTerminated(final Exception e) {
+			terminated++;
+			failure = e;
+			done.countDown();
+		}
+
+		@Override
+		public void userProgressInformation(final ProgressInfo progressInfo) {
+			percentDone.add(((PercentDone) progressInfo).getPercentDone());
+		}
+	}
+}
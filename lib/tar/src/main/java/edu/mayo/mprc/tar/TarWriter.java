@@ -3,87 +3,69 @@ package edu.mayo.mprc.tar;
 
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.utilities.FileUtilities;
-import edu.mayo.mprc.utilities.ProcessCaller;
-import edu.mayo.mprc.utilities.progress.UserProgressReporter;
 import org.apache.log4j.Logger;
 import org.apache.tools.tar.TarEntry;
 import org.apache.tools.tar.TarOutputStream;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.List;
 
 /**
- * used to write out files to a tar archive
- * When the tar is intially created a TarOuputStream is opened on it for writing to the tar.
- * A tar cannot be reopened and appended to once it has been closed (the tar library outputs EOF record when closing the tar,
- * so appending would mean seeking before the EOF header and rewriting the end of the file, which has not been implemented yet).
- * David Lentz decided to rollover the tar to another tar with extension {@link #ROLL_OVER_EXTENSION} on open, and then
- * concatenate the two tars on close by calling <tt>tar</tt> directly. That means this class <b>will work only on Unix</b>.
+ * Used to write out files to a tar archive.
  * <p/>
- * When the tar is again closed the two tar files are concatenated, rollover + tar via a tar concatenate system call (ughh)
+ * When the tar file already exists, the writer appends to it in place. The end-of-archive records
+ * of the existing tar are located, the file is truncated right after the last entry and the new entries are
+ * written from there. This way the archive is never copied, no matter how many times it gets reopened,
+ * and no external <tt>tar</tt> is needed.
  * <p/>
  * The major operations are
  * <ul>
  * <li>
- * create the object using the constructor. If a tar file already exists an output stream on it would corrupt it
- * so instead a rollover tar is created with name provided by {@link #getRolloverFile()} .
- * On {@link #close} the two tar files will be concatenated together.
+ * create the object using the constructor.
  * </li>
  * <li>
- * addFile, addFiles - to add file(s) to the tar (these do not close the output stream)
+ * addFile, addFiles, addEntry - to add file(s) or in-memory content to the tar (addFile and addEntry do not close the output stream)
  * </li>
  * <li>
- * close - close the output stream on the tar (concatenating tars if required)
+ * close - close the output stream on the tar. Adding more entries afterwards reopens the tar and appends to it.
  * </li>
  * </ul>
  * </p>
  * The most effective way to use this is to create the instance,
- * add all the files to be included in the tar and then close the {@link TarWriter} instance.
+ * add all the entries to be included in the tar and then close the {@link TarWriter} instance.
  */
 public final class TarWriter {
 	private static final Logger LOGGER = Logger.getLogger(TarWriter.class);
-	private TarOutputStream outputStream;
-	private File tarFile;
-	private static final int MAX_BUFF_SIZE = 1000;
+
 	/**
-	 * indicates tar written and closed
+	 * Size of a tar header and of the blocks the entry data is padded to.
 	 */
-	private boolean written;
-	private boolean rolled;
-	private UserProgressReporter progressReporter;
-
-	private static final String ROLL_OVER_EXTENSION = ".1.tar";
+	private static final int RECORD_SIZE = 512;
 
 	/**
-	 * if the tar file exists it rolls it otherwise creates it
+	 * Buffer used when copying files into the tar.
 	 */
-	public TarWriter(final File tarFile, UserProgressReporter progressReporter) {
-		initialize(tarFile, progressReporter);
-	}
+	private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
 	/**
-	 * create the tar file  if it does not exist. If it already exists create the rollover tar as backup and open the new file.
-	 *
-	 * @param file
+	 * Buffer in front of the tar file itself.
 	 */
-	private void initialize(final File file, final UserProgressReporter progressReporter) {
-		tarFile = file;
-		this.progressReporter = progressReporter;
-		if (tarFile.exists()) {
-			// backup the existing one to the file with name tarFileName + ROLL_OVER_EXTENSION
-			FileUtilities.rename(tarFile, getRolloverFile());
-		}
-		FileUtilities.ensureFileExists(tarFile);
+	private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+	private TarOutputStream outputStream;
+	private final File tarFile;
+
+	public TarWriter(final File tarFile) {
+		this.tarFile = tarFile;
 	}
 
 	/**
 	 * determine if the tar file has been closed
-	 *
-	 * @return
 	 */
 	private boolean isTarClosed() {
 		return outputStream == null;
@@ -94,54 +76,45 @@ public final class TarWriter {
 	 * content
 	 */
 	public void addFile(final File file) {
-		if (isTarClosed()) {
-			rolloverContents();
-		}
 		final String name = file.getName();
 		final TarEntry t = new TarEntry(file);
 		t.setName(name);
-		try {
-			outputStream.putNextEntry(t);
-		} catch (IOException e) {
-			throw new MprcException("failed adding tar entry for file=" + name + "to tar file=" + tarFile.getAbsolutePath(), e);
-		}
-		BufferedInputStream bis = null;
+		putNextEntry(t);
 
+		InputStream stream = null;
 		try {
-			bis = new BufferedInputStream(FileUtilities.getInputStream(file));
-			final byte[] buf = new byte[MAX_BUFF_SIZE];
-			int n = 0;
+			stream = FileUtilities.getInputStream(file);
+			final byte[] buf = new byte[COPY_BUFFER_SIZE];
 			while (true) {
+				final int n;
 				try {
-					n = bis.read(buf, 0, MAX_BUFF_SIZE - 1);
+					n = stream.read(buf);
 				} catch (IOException e) {
-					throw new MprcException("error reading stream", e);
+					throw new MprcException("error reading file=" + file.getAbsolutePath(), e);
 				}
-				if (n != -1) {
-					try {
-						outputStream.write(buf, 0, n);
-					} catch (IOException e) {
-						throw new MprcException("error writing to stream", e);
-					}
-				} else {
-					try {
-						outputStream.flush();
-					} catch (IOException e) {
-						throw new MprcException("could not flush stream to tar file=" + tarFile.getAbsolutePath(), e);
-					}
-					try {
-						outputStream.closeEntry();
-					} catch (IOException e) {
-						throw new MprcException("could not close the stream to tar file=" + tarFile.getAbsolutePath(), e);
-					}
-					return;
+				if (n == -1) {
+					break;
 				}
+				write(buf, 0, n);
 			}
-
 		} finally {
-			FileUtilities.closeQuietly(bis);
+			FileUtilities.closeQuietly(stream);
 		}
+		closeEntry();
+	}
 
+	/**
+	 * Place in-memory content in the tar archive, as if it was a file of given name.
+	 *
+	 * @param name    Name of the entry.
+	 * @param content Content of the entry.
+	 */
+	public void addEntry(final String name, final byte[] content) {
+		final TarEntry t = new TarEntry(name);
+		t.setSize(content.length);
+		putNextEntry(t);
+		write(content, 0, content.length);
+		closeEntry();
 	}
 
 	/**
@@ -150,36 +123,12 @@ public final class TarWriter {
 	 * @param files- files to append
 	 */
 	public void addFiles(final List<File> files) {
-		rolloverContents();
 		for (final File file : files) {
 			addFile(file);
 		}
 		close();
 	}
 
-	/**
-	 * concatenate the files
-	 */
-	/**
-	 * concatenate the tar files
-	 *
-	 * @param to       append to this file
-	 * @param from     contents of this appended to 'to'
-	 * @param reporter Object to help with reporting progress (specifically log files)
-	 */
-	public static void concatenateTars(final File to, final File from, final UserProgressReporter reporter) {
-		if (to.getName().equals(from.getName())) {
-			return;
-		}
-		LOGGER.debug("concatenating tars, " + to.getAbsolutePath() + " << " + from.getAbsolutePath());
-		final List<String> command = Arrays.asList("tar", "-A", "-f", to.getAbsolutePath(), from.getAbsolutePath());
-		final ProcessBuilder builder = new ProcessBuilder(command);
-		final ProcessCaller caller = new ProcessCaller(builder, reporter.getLog());
-		caller.runAndCheck("tar file concatenation");
-		FileUtilities.quietDelete(from);
-	}
-
-
 	/**
 	 * close the tar archive
 	 */
@@ -192,73 +141,102 @@ public final class TarWriter {
 				throw new MprcException("could not close the tar file=" + tarFile.getAbsolutePath(), e);
 			}
 			outputStream = null;
-			written = true;
-			rolled = false;
-
-			// now concatenate this
-			// tar concatenate example : <tar --concatenate --file foo.tar fooadd.tar>
-			final File newTar = getRolloverFile();
-			if (newTar.exists()) {
-				concatenateTars(tarFile, newTar, progressReporter);
-			}
 		}
 	}
 
 	/**
-	 * @return The file name used for doing the rollover.
+	 * @return tar file name
 	 */
-	private File getRolloverFile() {
-		return new File(tarFile.getAbsolutePath() + ROLL_OVER_EXTENSION);
+	public File getTarFile() {
+		return tarFile;
 	}
 
-	/**
-	 * create a new tar file, append the records to it
-	 * then concatenate these to the intitial tar file
-	 * then delete the new temporary tar
-	 * leave the output stream of the tar file open so can add the additional files to it
-	 * tar concatenate example : <tar --concatenate --file foo.tar fooadd.tar>
-	 *
-	 * @return the tar file object
-	 */
-	public File rolloverContents() {
-		if (tarFile.exists() && written && !rolled) {
-			if (outputStream != null) {
-				try {
-					outputStream.close();
-				} catch (IOException e) {
-					throw new MprcException(e);
-				}
-				outputStream = null;
-			}
-			rolled = true;
-			// create the new tar file then append the records to it
-			final File newTar = getRolloverFile();
-			// now append to this file
-			final FileOutputStream fo = FileUtilities.getOutputStream(newTar);
-			outputStream = new TarOutputStream(fo);
-			return newTar;
+	private void putNextEntry(final TarEntry entry) {
+		if (isTarClosed()) {
+			openTar();
+		}
+		try {
+			outputStream.putNextEntry(entry);
+		} catch (IOException e) {
+			throw new MprcException("failed adding tar entry for file=" + entry.getName() + " to tar file=" + tarFile.getAbsolutePath(), e);
 		}
+	}
 
-		if (isTarClosed()) {
-			return openTar();
+	private void write(final byte[] buf, final int offset, final int length) {
+		try {
+			outputStream.write(buf, offset, length);
+		} catch (IOException e) {
+			throw new MprcException("error writing to tar file=" + tarFile.getAbsolutePath(), e);
+		}
+	}
+
+	private void closeEntry() {
+		try {
+			outputStream.closeEntry();
+		} catch (IOException e) {
+			throw new MprcException("could not close the entry in tar file=" + tarFile.getAbsolutePath(), e);
 		}
-		return null;
 	}
 
 	/**
-	 * open the tar for writing
-	 *
-	 * @return file object for tar
+	 * Open the tar for writing. An existing tar is truncated after its last entry, so the new entries
+	 * get appended to it.
 	 */
-	private File openTar() {
-		outputStream = new TarOutputStream(FileUtilities.getOutputStream(tarFile));
-		return tarFile;
+	private void openTar() {
+		FileUtilities.ensureFolderExists(tarFile.getAbsoluteFile().getParentFile());
+		final long appendAt = tarFile.exists() ? findEndOfEntries(tarFile) : 0;
+		final FileOutputStream stream;
+		try {
+			stream = new FileOutputStream(tarFile, appendAt > 0);
+			stream.getChannel().truncate(appendAt);
+		} catch (IOException e) {
+			throw new MprcException("could not open tar file=" + tarFile.getAbsolutePath() + " for writing", e);
+		}
+		if (appendAt > 0) {
+			LOGGER.debug("appending to tar file=" + tarFile.getAbsolutePath() + " at " + appendAt);
+		}
+		outputStream = new TarOutputStream(new BufferedOutputStream(stream, OUTPUT_BUFFER_SIZE));
 	}
 
 	/**
-	 * @return tar file name
+	 * Walk the headers of an existing tar, skipping over the entry data.
+	 *
+	 * @param tarFile Tar to check.
+	 * @return Offset of the first end-of-archive record, which is where new entries should go.
 	 */
-	public File getTarFile() {
-		return tarFile;
+	static long findEndOfEntries(final File tarFile) {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(tarFile, "r");
+			final long length = file.length();
+			final byte[] header = new byte[RECORD_SIZE];
+			long position = 0;
+			while (position + RECORD_SIZE <= length) {
+				file.seek(position);
+				file.readFully(header);
+				if (isEndOfArchive(header)) {
+					return position;
+				}
+				final long size = new TarEntry(header).getSize();
+				position += RECORD_SIZE + (size + RECORD_SIZE - 1) / RECORD_SIZE * RECORD_SIZE;
+			}
+			if (position != length) {
+				throw new MprcException("the tar file=" + tarFile.getAbsolutePath() + " is truncated");
+			}
+			return position;
+		} catch (IOException e) {
+			throw new MprcException("could not read tar file=" + tarFile.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(file);
+		}
+	}
+
+	private static boolean isEndOfArchive(final byte[] header) {
+		for (final byte b : header) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
 	}
 }
@@ -1,11 +1,12 @@
 package edu.mayo.mprc.tar;
 
 
+import com.google.common.base.Joiner;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.TestingUtilities;
-import edu.mayo.mprc.utilities.progress.TestProgressReporter;
 import org.apache.log4j.Logger;
+import org.apache.tools.tar.TarInputStream;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -39,10 +40,6 @@ public final class TestTarWriter {
 	 */
 	@Test(enabled = true)
 	public void testWritetoTarFile() {
-		if (FileUtilities.isWindowsPlatform() || FileUtilities.isMacPlatform()) {
-			return;
-		}
-
 		String name = null;
 		String tarName = null;
 
@@ -53,7 +50,7 @@ public final class TestTarWriter {
 			final File tar = File.createTempFile("mytarfile", ".tar");
 			tarName = tar.getAbsolutePath();
 
-			final TarWriter tt = new TarWriter(tar, new TestProgressReporter());
+			final TarWriter tt = new TarWriter(tar);
 
 			LOGGER.debug("wrote tar at " + tar.getAbsolutePath());
 
@@ -103,10 +100,6 @@ public final class TestTarWriter {
 	 */
 	@Test(enabled = true)
 	public void testWritetoTarFileTwice() throws IOException {
-		if (FileUtilities.isWindowsPlatform() || FileUtilities.isMacPlatform()) {
-			return;
-		}
-
 		String name = null;
 		String name1 = null;
 		String tarName = null;
@@ -119,7 +112,7 @@ public final class TestTarWriter {
 			final File tar = File.createTempFile("mytarfile2", ".tar");
 			tarName = tar.getAbsolutePath();
 
-			final TarWriter tt = new TarWriter(tar, new TestProgressReporter());
+			final TarWriter tt = new TarWriter(tar);
 
 			LOGGER.debug("wrote tar at " + tar.getAbsolutePath());
 
@@ -142,9 +135,6 @@ public final class TestTarWriter {
 	 */
 	@Test(enabled = true)
 	public void testWritetoTarAll() throws IOException {
-		if (FileUtilities.isWindowsPlatform() || FileUtilities.isMacPlatform()) {
-			return;
-		}
 		String tempFolder = null;
 		try {
 			final File folder = FileUtilities.createTempFolder();
@@ -159,7 +149,7 @@ public final class TestTarWriter {
 
 			final File tar = File.createTempFile("mytarfileall", ".tar");
 
-			final TarWriter tt = new TarWriter(tar, new TestProgressReporter());
+			final TarWriter tt = new TarWriter(tar);
 
 			LOGGER.debug("wrote tar at " + tar.getAbsolutePath());
 
@@ -179,9 +169,6 @@ public final class TestTarWriter {
 
 	@Test(enabled = true)
 	public void testWriteToTarFileWithRollover() throws IOException {
-		if (FileUtilities.isWindowsPlatform() || FileUtilities.isMacPlatform()) {
-			return;
-		}
 		String tempFolder = null;
 		try {
 
@@ -198,7 +185,7 @@ public final class TestTarWriter {
 
 			final File tar = File.createTempFile("mytarfile2", ".tar");
 
-			final TarWriter tt = new TarWriter(tar, new TestProgressReporter());
+			final TarWriter tt = new TarWriter(tar);
 
 			LOGGER.debug("wrote tar at " + tar.getAbsolutePath());
 
@@ -227,4 +214,42 @@ public final class TestTarWriter {
 			TestingUtilities.quietDelete(tempFolder);
 		}
 	}
+
+	@Test
+	public void shouldAppendEntriesInPlace() throws IOException {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File tar = new File(folder, "entries.tar");
+			final byte[] dta = Joiner.on("\n").join(lines).getBytes("US-ASCII");
+
+			final TarWriter tt = new TarWriter(tar);
+			tt.addEntry("first.dta", dta);
+			tt.close();
+			Assert.assertEquals(TarWriter.findEndOfEntries(tar), 2L * 512, "one header and one data record");
+
+			tt.addEntry("second.dta", dta);
+			tt.addEntry("third.dta", new byte[0]);
+			tt.close();
+
+			new TarWriter(tar).addFiles(Arrays.asList(createFilledTempFileinTempFolder(folder, "fourth", "dta", lines)));
+
+			Assert.assertEquals(TarReader.readNumberHeaders(tar), 4, "number headers incorrect");
+			Assert.assertEquals(TarWriter.findEndOfEntries(tar), 7L * 512, "the entries are appended one after another");
+
+			final TarInputStream stream = new TarInputStream(FileUtilities.getInputStream(tar));
+			try {
+				Assert.assertEquals(stream.getNextEntry().getName(), "first.dta");
+				final byte[] content = new byte[dta.length];
+				Assert.assertEquals(stream.read(content), dta.length);
+				Assert.assertEquals(new String(content, "US-ASCII"), Joiner.on("\n").join(lines));
+				Assert.assertEquals(stream.getNextEntry().getName(), "second.dta");
+				Assert.assertEquals(stream.getNextEntry().getSize(), 0L);
+				Assert.assertEquals(stream.getNextEntry().getName(), "fourth.dta");
+			} finally {
+				FileUtilities.closeQuietly(stream);
+			}
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
 }
@@ -0,0 +1,117 @@
+package edu.mayo.mprc.io;
+
+import java.util.Arrays;
+
+/**
+ * Maps a primitive long key (typically a scan id) to the position and length of a piece of a file.
+ * <p/>
+ * An open-addressing hash table with linear probing, stored in plain arrays - about 20 bytes per entry instead of
+ * the hundreds a {@link java.util.HashMap} of strings takes. Adding an existing key replaces its location,
+ * just like {@link java.util.Map#put} would.
+ * <p/>
+ * Not thread safe for writing. Once filled, it can be read concurrently.
+ *
+ * @author Roman Zenka
+ */
+public final class LongOffsetIndex {
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int EMPTY = -1;
+
+	private long[] keys;
+	private long[] offsets;
+	/**
+	 * {@link #EMPTY} marks an unused slot.
+	 */
+	private int[] lengths;
+	private int size;
+
+	public LongOffsetIndex() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param key    Key to store.
+	 * @param offset Where the data for the key starts.
+	 * @param length How many bytes of data there are.
+	 */
+	public void put(final long key, final long offset, final int length) {
+		if (length < 0) {
+			throw new IllegalArgumentException("Negative length " + length + " for key " + key);
+		}
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+		final int slot = slotFor(key);
+		if (lengths[slot] == EMPTY) {
+			keys[slot] = key;
+			size++;
+		}
+		offsets[slot] = offset;
+		lengths[slot] = length;
+	}
+
+	/**
+	 * @return Slot for given key, -1 if the key is not present.
+	 */
+	public int find(final long key) {
+		final int slot = slotFor(key);
+		return lengths[slot] == EMPTY ? -1 : slot;
+	}
+
+	public boolean contains(final long key) {
+		return find(key) >= 0;
+	}
+
+	public long getOffset(final int slot) {
+		return offsets[slot];
+	}
+
+	public int getLength(final int slot) {
+		return lengths[slot];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The slot holding the key, or the empty slot where the key belongs.
+	 */
+	private int slotFor(final long key) {
+		final int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (lengths[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(final long key) {
+		// Scan ids are consecutive, mix the bits so they do not form long clusters
+		long h = key * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) h;
+	}
+
+	private void grow() {
+		final long[] oldKeys = keys;
+		final long[] oldOffsets = offsets;
+		final int[] oldLengths = lengths;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldLengths[i] != EMPTY) {
+				final int slot = slotFor(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				offsets[slot] = oldOffsets[i];
+				lengths[slot] = oldLengths[i];
+			}
+		}
+	}
+
+	private void allocate(final int capacity) {
+		keys = new long[capacity];
+		offsets = new long[capacity];
+		lengths = new int[capacity];
+		Arrays.fill(lengths, EMPTY);
+	}
+}
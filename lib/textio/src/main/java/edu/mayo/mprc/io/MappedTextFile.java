@@ -0,0 +1,163 @@
+package edu.mayo.mprc.io;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A read-only, memory-mapped text file. Lets readers keep just the offsets of the lines they are interested in
+ * and decode the text lazily, instead of holding the whole file in memory as strings.
+ * <p/>
+ * The file is scanned as bytes. This is safe for the delimiters we use (tabs, commas, line ends) in all the
+ * ASCII-compatible encodings. The text is decoded using the platform default charset, same as a {@link java.io.FileReader} would.
+ * <p/>
+ * The mapping is released when the object is garbage collected. The file must not be modified while it is mapped.
+ *
+ * @author Roman Zenka
+ */
+public final class MappedTextFile {
+	/**
+	 * Files larger than this are mapped in multiple segments.
+	 */
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	private final File file;
+	private final MappedByteBuffer[] segments;
+	private final long length;
+	private final Charset charset;
+
+	public MappedTextFile(final File file) {
+		this.file = file;
+		charset = Charset.defaultCharset();
+		RandomAccessFile input = null;
+		try {
+			input = new RandomAccessFile(file, "r");
+			final FileChannel channel = input.getChannel();
+			length = channel.size();
+			segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+			for (int i = 0; i < segments.length; i++) {
+				final long start = (long) i * SEGMENT_SIZE;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not map file " + file.getAbsolutePath(), e);
+		} finally {
+			// The mapping stays valid after the channel is closed
+			FileUtilities.closeQuietly(input);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public byte get(final long position) {
+		return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+	}
+
+	/**
+	 * @return Position of the first occurrence of given byte at or after {@code from}, before {@code to}. -1 if not found.
+	 */
+	public long indexOf(final byte value, final long from, final long to) {
+		for (long i = from; i < to; i++) {
+			if (get(i) == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Position of the end of the line starting at given position - the position of the line feed or
+	 *         the end of the file. A carriage return before the line feed is not a part of the line.
+	 */
+	public long lineEnd(final long lineStart) {
+		long end = indexOf((byte) '\n', lineStart, length);
+		if (end < 0) {
+			end = length;
+		}
+		if (end > lineStart && get(end - 1) == '\r') {
+			end--;
+		}
+		return end;
+	}
+
+	/**
+	 * @return Position where the line after the one ending at {@code lineEnd} starts.
+	 */
+	public long nextLine(final long lineEnd) {
+		long next = lineEnd;
+		if (next < length && get(next) == '\r') {
+			next++;
+		}
+		return next < length ? next + 1 : length;
+	}
+
+	/**
+	 * Decode given part of the file.
+	 */
+	public String getString(final long offset, final int byteLength) {
+		final byte[] bytes = new byte[byteLength];
+		int done = 0;
+		while (done < byteLength) {
+			final long position = offset + done;
+			final MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)].duplicate();
+			segment.position((int) (position % SEGMENT_SIZE));
+			final int chunk = Math.min(byteLength - done, segment.remaining());
+			segment.get(bytes, done, chunk);
+			done += chunk;
+		}
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * @return View of given part of the file as ASCII characters, for parsing numbers with
+	 *         {@link TsvScanner#parseLong} or {@link TsvScanner#parseDouble} without decoding.
+	 */
+	public CharSequence getAscii(final long start, final long end) {
+		return new AsciiView(start, (int) (end - start));
+	}
+
+	private final class AsciiView implements CharSequence {
+		private final long start;
+		private final int length;
+
+		private AsciiView(final long start, final int length) {
+			this.start = start;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index " + index + " out of view of length " + length);
+			}
+			return (char) (get(start + index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return toString().substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return getString(start, length);
+		}
+	}
+}
@@ -0,0 +1,537 @@
+package edu.mayo.mprc.io;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Scans delimiter-separated text a line at a time without allocating a string per line and per field.
+ * <p/>
+ * The input is read into a reusable character window. {@link #nextLine()} locates the fields of the current line
+ * within the window, the values are then accessed by their index:
+ * <ul>
+ * <li>{@link #getInt}, {@link #getLong} and {@link #getDouble} parse the number directly from the window</li>
+ * <li>{@link #getField} provides a view of the field that is valid until the next call to {@link #nextLine()}</li>
+ * <li>{@link #getString} copies the field out when the value is to be kept</li>
+ * </ul>
+ * Columns can be looked up by name once the header was read using {@link #readHeader()}, so a reader only touches
+ * the columns it needs.
+ * <p/>
+ * Fields past the end of a short line are treated as empty.
+ * <p/>
+ * The implementation is not thread safe.
+ *
+ * @author Roman Zenka
+ */
+public final class TsvScanner implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_FIELDS = 64;
+
+	/**
+	 * Largest number of significant digits that is always exactly representable as a double.
+	 */
+	private static final int MAX_EXACT_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private final Reader reader;
+	private final char delimiter;
+	private final boolean trim;
+
+	private char[] buffer = new char[BUFFER_SIZE];
+	/**
+	 * Valid characters in the buffer end here.
+	 */
+	private int limit;
+	/**
+	 * Where the next line starts.
+	 */
+	private int position;
+	private boolean endOfInput;
+
+	private int lineStart;
+	private int lineEnd;
+	private int lineNumber;
+	private boolean hasLine;
+
+	private int fieldCount;
+	private int[] fieldStarts = new int[INITIAL_FIELDS];
+	private int[] fieldEnds = new int[INITIAL_FIELDS];
+	private FieldView[] views = new FieldView[INITIAL_FIELDS];
+	private final FieldView emptyView = new FieldView(-1);
+
+	private String[] header;
+	private Map<String, Integer> columns;
+
+	/**
+	 * @param reader    Reader to scan. Will be closed by {@link #close()}.
+	 * @param delimiter Character separating the fields.
+	 * @param trim      Whether to trim whitespace around the fields.
+	 */
+	public TsvScanner(final Reader reader, final char delimiter, final boolean trim) {
+		this.reader = reader;
+		this.delimiter = delimiter;
+		this.trim = trim;
+	}
+
+	/**
+	 * Scan a tab-separated file, fields are not trimmed.
+	 */
+	public TsvScanner(final File file) {
+		this(FileUtilities.getReader(file), '\t', false);
+	}
+
+	/**
+	 * Move to the next line.
+	 *
+	 * @return False if there are no more lines.
+	 */
+	public boolean nextLine() {
+		hasLine = false;
+		fieldCount = 0;
+		try {
+			int scan = position;
+			int end;
+			while (true) {
+				end = indexOfNewline(scan);
+				if (end >= 0 || endOfInput) {
+					break;
+				}
+				final int scanned = limit - position;
+				fill();
+				scan = position + scanned;
+			}
+			if (end < 0) {
+				if (position == limit) {
+					return false;
+				}
+				end = limit;
+			}
+			lineStart = position;
+			position = end < limit ? end + 1 : limit;
+			lineEnd = end > lineStart && buffer[end - 1] == '\r' ? end - 1 : end;
+			lineNumber++;
+			hasLine = true;
+			split();
+			return true;
+		} catch (IOException e) {
+			throw new MprcException("Could not read line " + (lineNumber + 1), e);
+		}
+	}
+
+	/**
+	 * @return True if there is no line after the current one.
+	 */
+	public boolean isEof() {
+		try {
+			while (position == limit && !endOfInput) {
+				fill();
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not read line " + (lineNumber + 1), e);
+		}
+		return position == limit;
+	}
+
+	/**
+	 * Read the next line as a header, so the columns can be looked up by their names.
+	 *
+	 * @return The column names. Null if there was no line to read.
+	 */
+	public String[] readHeader() {
+		if (!nextLine()) {
+			return null;
+		}
+		header = new String[fieldCount];
+		columns = new HashMap<String, Integer>(fieldCount * 2);
+		for (int i = 0; i < fieldCount; i++) {
+			header[i] = getString(i);
+			final String key = header[i].toUpperCase(Locale.US);
+			if (!columns.containsKey(key)) {
+				columns.put(key, i);
+			}
+		}
+		return header.clone();
+	}
+
+	/**
+	 * @param name Column name, case insensitive.
+	 * @return Index of the column, -1 if there is no such column.
+	 */
+	public int findColumn(final String name) {
+		if (columns == null) {
+			throw new MprcException("The header was not read yet");
+		}
+		final Integer index = columns.get(name.toUpperCase(Locale.US));
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * @param name Column name, case insensitive.
+	 * @return Index of the column. Throws an exception if the column is missing.
+	 */
+	public int getColumn(final String name) {
+		final int index = findColumn(name);
+		if (index < 0) {
+			throw new MprcException("Missing column [" + name + "]");
+		}
+		return index;
+	}
+
+	/**
+	 * @param names Names of columns to project.
+	 * @return Indices of the columns. Throws an exception if any of them is missing.
+	 */
+	public int[] getColumns(final String... names) {
+		final int[] indices = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			indices[i] = getColumn(names[i]);
+		}
+		return indices;
+	}
+
+	/**
+	 * @return Number of fields on the current line.
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @return Number of the current line, the first line is 1.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/**
+	 * @return The whole current line.
+	 */
+	public String getLine() {
+		checkLine();
+		return new String(buffer, lineStart, lineEnd - lineStart);
+	}
+
+	/**
+	 * @return The current line starting with given field, untrimmed. Empty string if there is no such field.
+	 */
+	public String getLineFrom(final int field) {
+		checkLine();
+		if (field >= fieldCount) {
+			return "";
+		}
+		int start = lineStart;
+		for (int i = 0; i < field; i++) {
+			while (buffer[start] != delimiter) {
+				start++;
+			}
+			start++;
+		}
+		return new String(buffer, start, lineEnd - start);
+	}
+
+	/**
+	 * @return View of the field, valid until the next line is read.
+	 */
+	public CharSequence getField(final int field) {
+		checkLine();
+		if (field >= fieldCount) {
+			return emptyView;
+		}
+		if (field >= views.length) {
+			final FieldView[] newViews = new FieldView[Math.max(views.length * 2, field + 1)];
+			System.arraycopy(views, 0, newViews, 0, views.length);
+			views = newViews;
+		}
+		if (views[field] == null) {
+			views[field] = new FieldView(field);
+		}
+		return views[field];
+	}
+
+	/**
+	 * @return Copy of the field.
+	 */
+	public String getString(final int field) {
+		checkLine();
+		if (field >= fieldCount) {
+			return "";
+		}
+		return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field]);
+	}
+
+	public boolean isEmpty(final int field) {
+		checkLine();
+		return field >= fieldCount || fieldStarts[field] == fieldEnds[field];
+	}
+
+	/**
+	 * @return True if the field equals given value, without copying the field.
+	 */
+	public boolean fieldEquals(final int field, final String value) {
+		final CharSequence chars = getField(field);
+		if (chars.length() != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (chars.charAt(i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getInt(final int field) {
+		final CharSequence chars = getField(field);
+		return parseInt(chars, 0, chars.length());
+	}
+
+	public long getLong(final int field) {
+		final CharSequence chars = getField(field);
+		return parseLong(chars, 0, chars.length());
+	}
+
+	public double getDouble(final int field) {
+		final CharSequence chars = getField(field);
+		return parseDouble(chars, 0, chars.length());
+	}
+
+	/**
+	 * Parse an integer from a part of given characters, like {@link Integer#parseInt} would.
+	 */
+	public static int parseInt(final CharSequence chars, final int start, final int end) {
+		final long value = parseLong(chars, start, end);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw numberFormat(chars, start, end);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Parse a long from a part of given characters, like {@link Long#parseLong} would.
+	 */
+	public static long parseLong(final CharSequence chars, final int start, final int end) {
+		int i = start;
+		final boolean negative = i < end && chars.charAt(i) == '-';
+		if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+			i++;
+		}
+		if (i == end) {
+			throw numberFormat(chars, start, end);
+		}
+		// Accumulate negatively, so Long.MIN_VALUE fits
+		long value = 0;
+		final long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		for (; i < end; i++) {
+			final int digit = chars.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || value < (limit + digit) / 10) {
+				throw numberFormat(chars, start, end);
+			}
+			value = value * 10 - digit;
+		}
+		return negative ? value : -value;
+	}
+
+	/**
+	 * Parse a double from a part of given characters, with the same result as {@link Double#parseDouble}.
+	 * <p/>
+	 * Numbers with up to 15 significant digits and a moderate exponent are computed directly, as both the digits
+	 * and the power of ten are exact doubles and a single division or multiplication rounds correctly.
+	 * Anything else is handed over to {@link Double#parseDouble}.
+	 */
+	public static double parseDouble(final CharSequence chars, final int start, final int end) {
+		int i = start;
+		final boolean negative = i < end && chars.charAt(i) == '-';
+		if (i < end && (chars.charAt(i) == '-' || chars.charAt(i) == '+')) {
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+		boolean seenDot = false;
+		for (; i < end; i++) {
+			final char c = chars.charAt(i);
+			if (c >= '0' && c <= '9') {
+				seenDigit = true;
+				if (mantissa != 0 || c != '0') {
+					digits++;
+				}
+				if (digits > MAX_EXACT_DIGITS) {
+					return slowParseDouble(chars, start, end);
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				if (seenDot) {
+					exponent--;
+				}
+			} else if (c == '.' && !seenDot) {
+				seenDot = true;
+			} else {
+				break;
+			}
+		}
+		if (!seenDigit) {
+			return slowParseDouble(chars, start, end);
+		}
+		if (i < end) {
+			final char c = chars.charAt(i);
+			if ((c != 'e' && c != 'E') || i + 1 == end) {
+				return slowParseDouble(chars, start, end);
+			}
+			try {
+				exponent += parseInt(chars, i + 1, end);
+			} catch (NumberFormatException ignore) {
+				// SWALLOWED: let the slow path decide
+				return slowParseDouble(chars, start, end);
+			}
+		}
+		final double value;
+		if (mantissa == 0) {
+			value = 0.0;
+		} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+			value = mantissa * POWERS_OF_TEN[exponent];
+		} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+			value = mantissa / POWERS_OF_TEN[-exponent];
+		} else {
+			return slowParseDouble(chars, start, end);
+		}
+		return negative ? -value : value;
+	}
+
+	private static double slowParseDouble(final CharSequence chars, final int start, final int end) {
+		return Double.parseDouble(chars.subSequence(start, end).toString());
+	}
+
+	private static NumberFormatException numberFormat(final CharSequence chars, final int start, final int end) {
+		return new NumberFormatException("For input string: \"" + chars.subSequence(start, end) + "\"");
+	}
+
+	private void checkLine() {
+		if (!hasLine) {
+			throw new MprcException("There is no current line");
+		}
+	}
+
+	private int indexOfNewline(final int from) {
+		for (int i = from; i < limit; i++) {
+			if (buffer[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Move the unprocessed data and the current line (if any) to the beginning of the buffer, growing it
+	 * if it is full, and read more.
+	 */
+	private void fill() throws IOException {
+		final int keepFrom = hasLine ? lineStart : position;
+		final int remaining = limit - keepFrom;
+		if (remaining == buffer.length) {
+			final char[] newBuffer = new char[buffer.length * 2];
+			System.arraycopy(buffer, keepFrom, newBuffer, 0, remaining);
+			buffer = newBuffer;
+		} else if (keepFrom > 0) {
+			System.arraycopy(buffer, keepFrom, buffer, 0, remaining);
+		}
+		if (keepFrom > 0) {
+			position -= keepFrom;
+			lineStart -= keepFrom;
+			lineEnd -= keepFrom;
+			for (int i = 0; i < fieldCount; i++) {
+				fieldStarts[i] -= keepFrom;
+				fieldEnds[i] -= keepFrom;
+			}
+		}
+		limit = remaining;
+		final int read = reader.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			endOfInput = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	private void split() {
+		fieldCount = 0;
+		int start = lineStart;
+		for (int i = lineStart; i <= lineEnd; i++) {
+			if (i == lineEnd || buffer[i] == delimiter) {
+				addField(start, i);
+				start = i + 1;
+			}
+		}
+	}
+
+	private void addField(final int start, final int end) {
+		if (fieldCount == fieldStarts.length) {
+			final int[] newStarts = new int[fieldCount * 2];
+			final int[] newEnds = new int[fieldCount * 2];
+			System.arraycopy(fieldStarts, 0, newStarts, 0, fieldCount);
+			System.arraycopy(fieldEnds, 0, newEnds, 0, fieldCount);
+			fieldStarts = newStarts;
+			fieldEnds = newEnds;
+		}
+		int trimmedStart = start;
+		int trimmedEnd = end;
+		if (trim) {
+			while (trimmedStart < trimmedEnd && buffer[trimmedStart] <= ' ') {
+				trimmedStart++;
+			}
+			while (trimmedEnd > trimmedStart && buffer[trimmedEnd - 1] <= ' ') {
+				trimmedEnd--;
+			}
+		}
+		fieldStarts[fieldCount] = trimmedStart;
+		fieldEnds[fieldCount] = trimmedEnd;
+		fieldCount++;
+	}
+
+	@Override
+	public void close() {
+		FileUtilities.closeQuietly(reader);
+	}
+
+	/**
+	 * A field of the current line, reading straight from the buffer.
+	 */
+	private final class FieldView implements CharSequence {
+		private final int field;
+
+		private FieldView(final int field) {
+			this.field = field;
+		}
+
+		@Override
+		public int length() {
+			return field < 0 ? 0 : fieldEnds[field] - fieldStarts[field];
+		}
+
+		@Override
+		public char charAt(final int index) {
+			if (index < 0 || index >= length()) {
+				throw new IndexOutOfBoundsException("Index " + index + " out of field of length " + length());
+			}
+			return buffer[fieldStarts[field] + index];
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return toString().substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return field < 0 ? "" : new String(buffer, fieldStarts[field], length());
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package edu.mayo.mprc.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public final class LongOffsetIndexTest {
+
+	@Test
+	public void shouldStoreManyKeys() {
+		final LongOffsetIndex index = new LongOffsetIndex();
+		for (long key = -5000; key < 100000; key += 3) {
+			index.put(key, key * 100L, (int) (key & 0xFF));
+		}
+		Assert.assertEquals(index.size(), 35000);
+		for (long key = -5000; key < 100000; key++) {
+			final int slot = index.find(key);
+			if ((key + 5000) % 3 == 0) {
+				Assert.assertTrue(slot >= 0, "Key " + key + " should be present");
+				Assert.assertEquals(index.getOffset(slot), key * 100L);
+				Assert.assertEquals(index.getLength(slot), (int) (key & 0xFF));
+			} else {
+				Assert.assertEquals(slot, -1, "Key " + key + " should be missing");
+			}
+		}
+	}
+
+	@Test
+	public void shouldReplaceExistingKey() {
+		final LongOffsetIndex index = new LongOffsetIndex();
+		index.put(Long.MIN_VALUE, 1, 10);
+		index.put(Long.MIN_VALUE, 2, 20);
+		Assert.assertEquals(index.size(), 1);
+		Assert.assertTrue(index.contains(Long.MIN_VALUE));
+		Assert.assertEquals(index.getOffset(index.find(Long.MIN_VALUE)), 2L);
+		Assert.assertEquals(index.getLength(index.find(Long.MIN_VALUE)), 20);
+		Assert.assertFalse(index.contains(0));
+	}
+}
@@ -0,0 +1,105 @@
+package edu.mayo.mprc.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.StringReader;
+import java.util.Random;
+
+public final class TsvScannerTest {
+
+	@Test
+	public void shouldSplitLines() {
+		final TsvScanner scanner = scanner("a\tb\t\tc\r\n\nlast\tline", false);
+
+		Assert.assertTrue(scanner.nextLine());
+		Assert.assertEquals(scanner.getFieldCount(), 4);
+		Assert.assertEquals(scanner.getString(0), "a");
+		Assert.assertEquals(scanner.getField(1).toString(), "b");
+		Assert.assertTrue(scanner.isEmpty(2));
+		Assert.assertEquals(scanner.getString(3), "c");
+		Assert.assertEquals(scanner.getString(10), "", "Fields past the end of line are empty");
+		Assert.assertEquals(scanner.getLine(), "a\tb\t\tc");
+		Assert.assertEquals(scanner.getLineFrom(1), "b\t\tc");
+
+		Assert.assertTrue(scanner.nextLine());
+		Assert.assertEquals(scanner.getFieldCount(), 1);
+		Assert.assertEquals(scanner.getLine(), "");
+
+		Assert.assertTrue(scanner.nextLine());
+		Assert.assertTrue(scanner.isEof());
+		Assert.assertEquals(scanner.getLine(), "last\tline", "The current line survives the end of file check");
+		Assert.assertEquals(scanner.getLineNumber(), 3);
+
+		Assert.assertFalse(scanner.nextLine());
+		scanner.close();
+	}
+
+	@Test
+	public void shouldTrimAndProject() {
+		final TsvScanner scanner = scanner(" Scan Id \tRT\t TIC\n 12 \t 3.25\t1e6 \n", true);
+		Assert.assertEquals(scanner.readHeader(), new String[]{"Scan Id", "RT", "TIC"});
+		final int[] columns = scanner.getColumns("tic", "SCAN ID");
+		Assert.assertEquals(columns, new int[]{2, 0});
+		Assert.assertEquals(scanner.findColumn("missing"), -1);
+
+		Assert.assertTrue(scanner.nextLine());
+		Assert.assertEquals(scanner.getInt(columns[1]), 12);
+		Assert.assertEquals(scanner.getDouble(scanner.getColumn("RT")), 3.25);
+		Assert.assertEquals(scanner.getDouble(columns[0]), 1e6);
+		Assert.assertTrue(scanner.fieldEquals(0, "12"));
+		Assert.assertFalse(scanner.nextLine());
+	}
+
+	@Test
+	public void shouldReadLinesLongerThanBuffer() {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			builder.append(i).append(',');
+		}
+		builder.append("end\nnext");
+		final TsvScanner scanner = new TsvScanner(new StringReader(builder.toString()), ',', false);
+		Assert.assertTrue(scanner.nextLine());
+		Assert.assertEquals(scanner.getFieldCount(), 50001);
+		Assert.assertEquals(scanner.getInt(49999), 49999);
+		Assert.assertEquals(scanner.getString(50000), "end");
+		Assert.assertTrue(scanner.nextLine());
+		Assert.assertEquals(scanner.getLine(), "next");
+	}
+
+	@Test
+	public void shouldParseNumbers() {
+		final String[] doubles = {"0", "-0", "1", "-1.5", "0.1", ".5", "5.", "1e10", "1E-5", "-2.5e+3", "123456789012345",
+				"1234567890123456789", "0.000000000000000000000001", "1e300", "NaN", "-Infinity", "3.14159265358979323846", "7d"};
+		for (final String value : doubles) {
+			Assert.assertEquals(TsvScanner.parseDouble(value, 0, value.length()), Double.parseDouble(value), value);
+		}
+		final Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			final String value = String.valueOf(random.nextDouble() * Math.pow(10, random.nextInt(20) - 10));
+			Assert.assertEquals(TsvScanner.parseDouble(value, 0, value.length()), Double.parseDouble(value), value);
+		}
+
+		Assert.assertEquals(TsvScanner.parseLong("9223372036854775807", 0, 19), Long.MAX_VALUE);
+		Assert.assertEquals(TsvScanner.parseLong("-9223372036854775808", 0, 20), Long.MIN_VALUE);
+		Assert.assertEquals(TsvScanner.parseInt("x-42x", 1, 4), -42);
+		for (final String invalid : new String[]{"", "-", "1.5", "9223372036854775808", "12a"}) {
+			try {
+				TsvScanner.parseLong(invalid, 0, invalid.length());
+				Assert.fail("Should not parse [" + invalid + "]");
+			} catch (NumberFormatException ignore) {
+				// SWALLOWED: expected
+			}
+		}
+		try {
+			TsvScanner.parseDouble("1,000", 0, 5);
+			Assert.fail("Commas are not supported");
+		} catch (NumberFormatException ignore) {
+			// SWALLOWED: expected
+		}
+	}
+
+	private static TsvScanner scanner(final String text, final boolean trim) {
+		return new TsvScanner(new StringReader(text), '\t', trim);
+	}
+}
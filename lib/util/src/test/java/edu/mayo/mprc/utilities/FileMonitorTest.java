@@ -4,8 +4,13 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileMonitorTest {
@@ -28,6 +33,41 @@ public class FileMonitorTest {
 		Assert.assertEquals(listener.timeoutCount.get(), TOTAL_FILES);
 	}
 
+	@Test
+	public void shouldNotifyWhenAllFilesAppear() throws IOException, InterruptedException {
+		final FileMonitor fileMonitor = new FileMonitor(10);
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final List<File> files = new ArrayList<File>();
+			for (int i = 0; i < 10; i++) {
+				files.add(new File(folder, "file" + i + ".txt"));
+			}
+			final Semaphore semaphore = new Semaphore(0);
+			final AtomicInteger notifications = new AtomicInteger(0);
+			fileMonitor.filesToExist(files, new FileListener() {
+				@Override
+				public void fileChanged(final Collection<File> changed, final boolean timeout) {
+					Assert.assertFalse(timeout, "The files appeared, no timeout expected");
+					notifications.incrementAndGet();
+					semaphore.release();
+				}
+			}, 10000);
+
+			// Let the polling slow down
+			Thread.sleep(200);
+			for (final File file : files) {
+				Assert.assertTrue(file.createNewFile());
+			}
+
+			Assert.assertTrue(semaphore.tryAcquire(10 * FileMonitor.MAX_BACKOFF * 2, TimeUnit.MILLISECONDS), "The listener must be notified");
+			Thread.sleep(50);
+			Assert.assertEquals(notifications.get(), 1);
+		} finally {
+			fileMonitor.stop();
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
 	private class MyFileListener implements FileListener {
 		AtomicInteger timeoutCount = new AtomicInteger();
 		AtomicInteger numFilesWatched = new AtomicInteger(0);
@@ -6,9 +6,13 @@ import edu.mayo.mprc.config.ResourceConfig;
 import edu.mayo.mprc.config.ui.ServiceUiFactory;
 import edu.mayo.mprc.config.ui.UiBuilder;
 import edu.mayo.mprc.daemon.WorkCache;
+import edu.mayo.mprc.searchengine.ShardMerger;
+import edu.mayo.mprc.searchengine.ShardedEngineCache;
 import org.springframework.stereotype.Component;
 
-public final class CometCache extends WorkCache<CometWorkPacket> {
+import java.io.File;
+
+public final class CometCache extends ShardedEngineCache<CometWorkPacket> {
 	public static final String TYPE = "cometCache";
 	public static final String NAME = "Comet Cache";
 	public static final String DESC = "Caches previous Comet search results. <p>Speeds up consecutive Comet searches if the same file with same parameters is processed multiple times.</p>";
@@ -16,7 +20,23 @@ public final class CometCache extends WorkCache<CometWorkPacket> {
 	public CometCache() {
 	}
 
-	public static final class Config extends CacheConfig {
+	@Override
+	protected CometWorkPacket createShardPacket(final CometWorkPacket packet, final File shardInput, final File shardOutput) {
+		return new CometWorkPacket(shardInput, packet.getSearchParams(), shardOutput, packet.getDatabaseFile(), false, packet.isFromScratch());
+	}
+
+	@Override
+	protected ShardMerger getMerger(final CometWorkPacket packet) {
+		final String outputName = packet.getOutputFile().getName();
+		if (outputName.endsWith(CometWorker.PEP_XML)) {
+			return new PepXmlMerger(packet.getInputFile());
+		} else if (outputName.endsWith(CometWorker.SQT)) {
+			return new SqtMerger();
+		}
+		return null;
+	}
+
+	public static final class Config extends ShardedCacheConfig {
 		public Config() {
 		}
 	}
@@ -25,7 +45,9 @@ public final class CometCache extends WorkCache<CometWorkPacket> {
 	public static final class Factory extends WorkCache.Factory<Config> {
 		@Override
 		public WorkCache createCache(final Config config, final DependencyResolver dependencies) {
-			return new CometCache();
+			final CometCache cache = new CometCache();
+			cache.setShards(config.getShards());
+			return cache;
 		}
 	}
 
@@ -38,8 +60,11 @@ public final class CometCache extends WorkCache<CometWorkPacket> {
 					.property(CacheConfig.CACHE_FOLDER, "Comet Cache Folder", "When a file gets searched by Comet, the result is stored in this folder. Subsequent searches of the same file with same parameters use the cached value."
 							+ "<p>Ideally, this folder would be on a fast, potentially less reliable storage.</p>")
 					.required()
-					.defaultValue(DEFAULT_CACHE)
+					.defaultValue(DEFAULT_CACHE);
 
+			ShardedCacheConfig.addShardsProperty(builder);
+
+			builder
 					.property(CacheConfig.SERVICE, "Comet Search Engine", "The Comet engine that will do the search. The cache just caches the results.")
 					.reference("comet", UiBuilder.NONE_TYPE);
 		}
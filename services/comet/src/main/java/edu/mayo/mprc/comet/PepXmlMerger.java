@@ -0,0 +1,113 @@
+package edu.mayo.mprc.comet;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.searchengine.ShardMerger;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Merges pepXML files produced by Comet for shards of a single input.
+ * <p/>
+ * The first shard provides everything except the spectrum queries, the spectrum queries of all shards follow
+ * each other within the single <tt>msms_run_summary</tt>. The <tt>index</tt> of the queries is renumbered.
+ * The <tt>base_name</tt> of the run and search summaries is changed from the first shard to the original input,
+ * as the shards get deleted after the merge.
+ * <p/>
+ * Comet writes every element on its own line, so the files are processed line by line.
+ *
+ * @author Roman Zenka
+ */
+final class PepXmlMerger implements ShardMerger {
+	private static final Pattern INDEX = Pattern.compile("(<spectrum_query\\s.*?\\bindex=\")(\\d+)(\")");
+	private static final Pattern BASE_NAME = Pattern.compile("(\\bbase_name=\")[^\"]*(\")");
+	private static final String SPECTRUM_QUERY = "<spectrum_query";
+	private static final String RUN_SUMMARY = "<msms_run_summary";
+	private static final String SEARCH_SUMMARY = "<search_summary";
+	private static final String RUN_SUMMARY_END = "</msms_run_summary>";
+
+	private final String baseName;
+
+	/**
+	 * @param input The original input file that got split into shards.
+	 */
+	PepXmlMerger(final File input) {
+		baseName = FileUtilities.stripExtension(input.getAbsolutePath());
+	}
+
+	@Override
+	public void merge(final List<File> shardOutputs, final File output) {
+		BufferedWriter writer = null;
+		try {
+			writer = Files.newWriter(output, Charsets.ISO_8859_1);
+			final List<String> tail = new ArrayList<String>();
+			int index = 0;
+			for (int i = 0; i < shardOutputs.size(); i++) {
+				index = copyQueries(shardOutputs.get(i), writer, index, i == 0 ? tail : null);
+			}
+			for (final String line : tail) {
+				writeLine(writer, line);
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not merge pepXML shards into " + output.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(writer);
+		}
+	}
+
+	/**
+	 * @param tail When not null, the lines before the queries are copied as well and the lines after the queries
+	 *             are collected into the tail.
+	 * @return Index of the last query written.
+	 */
+	private int copyQueries(final File shard, final BufferedWriter writer, final int lastIndex, final List<String> tail) throws IOException {
+		int index = lastIndex;
+		final BufferedReader reader = Files.newReader(shard, Charsets.ISO_8859_1);
+		try {
+			boolean inQueries = false;
+			boolean inTail = false;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!inTail && line.contains(RUN_SUMMARY_END)) {
+					if (tail == null) {
+						break;
+					}
+					inTail = true;
+				}
+				if (inTail) {
+					tail.add(line);
+				} else if (inQueries || line.contains(SPECTRUM_QUERY)) {
+					inQueries = true;
+					final Matcher matcher = INDEX.matcher(line);
+					if (matcher.find()) {
+						index++;
+						line = matcher.replaceFirst("$1" + index + "$3");
+					}
+					writeLine(writer, line);
+				} else if (tail != null) {
+					if (line.contains(RUN_SUMMARY) || line.contains(SEARCH_SUMMARY)) {
+						line = BASE_NAME.matcher(line).replaceFirst("$1" + Matcher.quoteReplacement(baseName) + "$2");
+					}
+					writeLine(writer, line);
+				}
+			}
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+		return index;
+	}
+
+	private static void writeLine(final BufferedWriter writer, final String line) throws IOException {
+		writer.write(line);
+		writer.write('\n');
+	}
+}
@@ -0,0 +1,55 @@
+package edu.mayo.mprc.comet;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.searchengine.ShardMerger;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Merges .sqt files produced by Comet for shards of a single input.
+ * The header (<tt>H</tt> lines) is taken from the first shard, the spectra of all shards follow.
+ *
+ * @author Roman Zenka
+ */
+final class SqtMerger implements ShardMerger {
+	@Override
+	public void merge(final List<File> shardOutputs, final File output) {
+		BufferedWriter writer = null;
+		try {
+			writer = Files.newWriter(output, Charsets.ISO_8859_1);
+			for (int i = 0; i < shardOutputs.size(); i++) {
+				copy(shardOutputs.get(i), writer, i == 0);
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not merge .sqt shards into " + output.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(writer);
+		}
+	}
+
+	private static void copy(final File shard, final BufferedWriter writer, final boolean withHeader) throws IOException {
+		final BufferedReader reader = Files.newReader(shard, Charsets.ISO_8859_1);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (withHeader || !isHeader(line)) {
+					writer.write(line);
+					writer.write('\n');
+				}
+			}
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+	}
+
+	private static boolean isHeader(final String line) {
+		return line.startsWith("H\t") || "H".equals(line);
+	}
+}
@@ -0,0 +1,93 @@
+package edu.mayo.mprc.comet;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Roman Zenka
+ */
+public final class TestPepXmlMerger {
+	private File folder;
+
+	@BeforeMethod
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldMergeQueries() throws IOException {
+		final File input = new File(folder, "test.mgf");
+		final File shard1 = shard(1, 1, 2);
+		final File shard2 = shard(2, 4, 5, 6);
+		final File merged = new File(folder, "test.pep.xml");
+
+		new PepXmlMerger(input).merge(Arrays.asList(shard1, shard2), merged);
+
+		final String baseName = new File(folder, "test").getAbsolutePath();
+		final String expected = header(baseName)
+				+ query(1, 1)
+				+ query(2, 2)
+				+ query(3, 4)
+				+ query(4, 5)
+				+ query(5, 6)
+				+ footer();
+		Assert.assertEquals(Files.toString(merged, Charsets.ISO_8859_1), expected);
+	}
+
+	/**
+	 * @param scans Scans identified within the shard, as numbered in the original input.
+	 */
+	private File shard(final int shard, final int... scans) throws IOException {
+		final File shardFolder = new File(new File(folder, "shards"), String.valueOf(shard));
+		FileUtilities.ensureFolderExists(shardFolder);
+		final StringBuilder content = new StringBuilder(header(new File(shardFolder, "test").getAbsolutePath()));
+		for (int i = 0; i < scans.length; i++) {
+			content.append(query(i + 1, scans[i]));
+		}
+		content.append(footer());
+		final File file = new File(shardFolder, "test.pep.xml");
+		Files.write(content.toString(), file, Charsets.ISO_8859_1);
+		return file;
+	}
+
+	private static String header(final String baseName) {
+		return "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+				"<msms_pipeline_analysis date=\"2013-05-02T10:00:00\" xmlns=\"http://regis-web.systemsbiology.net/pepXML\">\n" +
+				" <msms_run_summary base_name=\"" + baseName + "\" raw_data_type=\"raw\" raw_data=\".mgf\">\n" +
+				" <sample_enzyme name=\"Trypsin\">\n" +
+				"  <specificity cut=\"KR\" no_cut=\"P\" sense=\"C\"/>\n" +
+				" </sample_enzyme>\n" +
+				" <search_summary base_name=\"" + baseName + "\" search_engine=\"Comet\" search_engine_version=\"2013.01 rev. 0\" precursor_mass_type=\"monoisotopic\" fragment_mass_type=\"monoisotopic\" search_id=\"1\">\n" +
+				"  <search_database local_path=\"/db/test.fasta\" type=\"AA\"/>\n" +
+				" </search_summary>\n";
+	}
+
+	private static String query(final int index, final int scan) {
+		return " <spectrum_query spectrum=\"test." + scan + "." + scan + ".2\" start_scan=\"" + scan + "\" end_scan=\"" + scan + "\" precursor_neutral_mass=\"1000.5\" assumed_charge=\"2\" index=\"" + index + "\">\n" +
+				"  <search_result>\n" +
+				"   <search_hit hit_rank=\"1\" peptide=\"PEPTIDEK\" protein=\"PROT\" num_tot_proteins=\"1\" calc_neutral_pep_mass=\"1000.5\" massdiff=\"0.0\">\n" +
+				"    <search_score name=\"xcorr\" value=\"2.5\"/>\n" +
+				"   </search_hit>\n" +
+				"  </search_result>\n" +
+				" </spectrum_query>\n";
+	}
+
+	private static String footer() {
+		return " </msms_run_summary>\n" +
+				"</msms_pipeline_analysis>\n";
+	}
+}
@@ -0,0 +1,71 @@
+package edu.mayo.mprc.comet;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Roman Zenka
+ */
+public final class TestSqtMerger {
+	private File folder;
+
+	@BeforeMethod
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldConcatenateSpectra() throws IOException {
+		final File shard1 = shard("shard1.sqt", "shard 1", 1, 2);
+		final File shard2 = shard("shard2.sqt", "shard 2", 3);
+		final File merged = new File(folder, "merged.sqt");
+
+		new SqtMerger().merge(Arrays.asList(shard1, shard2), merged);
+
+		final String expected = header("shard 1")
+				+ spectrum(1)
+				+ spectrum(2)
+				+ spectrum(3);
+		Assert.assertEquals(Files.toString(merged, Charsets.ISO_8859_1), expected);
+	}
+
+	private File shard(final String name, final String comment, final int... scans) throws IOException {
+		final StringBuilder content = new StringBuilder(header(comment));
+		for (final int scan : scans) {
+			content.append(spectrum(scan));
+		}
+		final File file = new File(folder, name);
+		Files.write(content.toString(), file, Charsets.ISO_8859_1);
+		return file;
+	}
+
+	private static String header(final String comment) {
+		return "H\tSQTGenerator Comet\n" +
+				"H\tSQTGeneratorVersion\t2013.01 rev. 0\n" +
+				"H\tComment\t" + comment + "\n" +
+				"H\tDatabase\t/db/test.fasta\n";
+	}
+
+	private static String spectrum(final int scan) {
+		return "S\t" + scan + "\t" + scan + "\t2\t1\tlocalhost\t1001.50\t0.0\t0.0\t42\n" +
+				"M\t1\t1\t1001.50\t0.0000\t2.5000\t0.0\t5\t12\tK.PEPTIDEK.A\tU\n" +
+				"L\tPROT" + scan + "\n" +
+				"M\t2\t2\t1001.49\t0.1000\t1.2000\t0.0\t3\t12\tR.PEPTIDER.G\tU\n" +
+				"L\tPROT" + scan + "\n" +
+				"L\tDECOY_PROT" + scan + "\n";
+	}
+}
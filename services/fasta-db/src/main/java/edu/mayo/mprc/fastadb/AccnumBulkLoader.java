@@ -0,0 +1,40 @@
+package edu.mayo.mprc.fastadb;
+
+import edu.mayo.mprc.database.SessionProvider;
+import edu.mayo.mprc.database.bulk.BulkLoadJobStarter;
+import edu.mayo.mprc.database.bulk.BulkLoader;
+import edu.mayo.mprc.database.bulk.TempKey;
+
+/**
+ * @author Roman Zenka
+ */
+public final class AccnumBulkLoader extends BulkLoader<ProteinAccnum> {
+	public AccnumBulkLoader(final BulkLoadJobStarter jobStarter, final SessionProvider sessionProvider) {
+		super(jobStarter, sessionProvider);
+	}
+
+	@Override
+	public String getTempTableName() {
+		return "temp_protein_accnum";
+	}
+
+	@Override
+	public String getTableName() {
+		return "protein_accnum";
+	}
+
+	@Override
+	public String getEqualityString() {
+		return "<t>.accession_number = <s>.accession_number";
+	}
+
+	@Override
+	public Object wrapForTempTable(final ProteinAccnum value, final TempKey key) {
+		return new TempProteinAccnum(key, value);
+	}
+
+	@Override
+	public String getColumnsToTransfer() {
+		return "accession_number";
+	}
+}
@@ -0,0 +1,40 @@
+package edu.mayo.mprc.fastadb;
+
+import edu.mayo.mprc.database.SessionProvider;
+import edu.mayo.mprc.database.bulk.BulkLoadJobStarter;
+import edu.mayo.mprc.database.bulk.BulkLoader;
+import edu.mayo.mprc.database.bulk.TempKey;
+
+/**
+ * @author Roman Zenka
+ */
+public final class DescriptionBulkLoader extends BulkLoader<ProteinDescription> {
+	public DescriptionBulkLoader(final BulkLoadJobStarter jobStarter, final SessionProvider sessionProvider) {
+		super(jobStarter, sessionProvider);
+	}
+
+	@Override
+	public String getTempTableName() {
+		return "temp_protein_description";
+	}
+
+	@Override
+	public String getTableName() {
+		return "protein_description";
+	}
+
+	@Override
+	public String getEqualityString() {
+		return "<t>.description = <s>.description";
+	}
+
+	@Override
+	public Object wrapForTempTable(final ProteinDescription value, final TempKey key) {
+		return new TempProteinDescription(key, value);
+	}
+
+	@Override
+	public String getColumnsToTransfer() {
+		return "description";
+	}
+}
@@ -0,0 +1,311 @@
+package edu.mayo.mprc.fastadb;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.database.PersistableBase;
+import edu.mayo.mprc.database.SessionProvider;
+import edu.mayo.mprc.database.bulk.BulkLoadJob;
+import edu.mayo.mprc.database.bulk.BulkLoadJobStarter;
+import edu.mayo.mprc.dbcurator.model.Curation;
+import edu.mayo.mprc.fasta.FASTAInputStream;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.progress.PercentDoneReporter;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads a FASTA file into the database, see {@link FastaDbDaoHibernate#addFastaDatabase}.
+ * <p/>
+ * The FASTA file is parsed on a separate thread, while the current thread stores the previous batch of
+ * {@link #BATCH_SIZE} entries. The parser de-duplicates sequences, accession numbers and descriptions
+ * using MD5 hashes of their values, so each distinct value is sent to the database only once. The hashes are all
+ * that is kept in memory for the values already stored.
+ * <p/>
+ * The batches are stored using the temporary table {@link edu.mayo.mprc.database.bulk.BulkLoader}s - first the
+ * sequences, accession numbers and descriptions, then the entries that reference them.
+ * <p/>
+ * All the work is done in the session given to the constructor.
+ *
+ * @author Roman Zenka
+ */
+final class FastaDatabaseLoader implements SessionProvider, BulkLoadJobStarter {
+	/**
+	 * How many FASTA entries to store at once.
+	 */
+	static final int BATCH_SIZE = 10000;
+
+	/**
+	 * How many parsed batches can wait for the database.
+	 */
+	private static final int PARSED_BATCHES = 2;
+
+	private final SessionProvider sessionProvider;
+	private final Session session;
+	private final Curation database;
+	private final File fasta;
+	private final PercentDoneReporter percentReporter;
+
+	/**
+	 * @param sessionProvider Provides the dialect and table names.
+	 * @param session         Session to load the data in. The caller manages its transaction.
+	 * @param database        Database to load.
+	 * @param percentReporter Progress of the loading is reported here.
+	 */
+	FastaDatabaseLoader(final SessionProvider sessionProvider, final Session session, final Curation database, final PercentDoneReporter percentReporter) {
+		this.sessionProvider = sessionProvider;
+		this.session = session;
+		this.database = database;
+		fasta = database.getFastaFile().getFile();
+		this.percentReporter = percentReporter;
+	}
+
+	/**
+	 * @return How many FASTA entries were loaded.
+	 */
+	public long load() {
+		final BlockingQueue<Batch> batches = new ArrayBlockingQueue<Batch>(PARSED_BATCHES);
+		final ExecutorService parser = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder()
+						.setNameFormat("fasta-parser-%d")
+						.setDaemon(true)
+						.build());
+		try {
+			parser.execute(new Parser(batches));
+			long loaded = 0L;
+			while (true) {
+				final Batch batch = batches.take();
+				if (batch.failure != null) {
+					throw new MprcException("Could not parse " + fasta.getAbsolutePath(), batch.failure);
+				}
+				store(batch);
+				loaded += batch.entries.size();
+				percentReporter.reportProgress(batch.percentRead);
+				if (batch.last) {
+					return loaded;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Loading of " + fasta.getAbsolutePath() + " was interrupted", e);
+		} finally {
+			// Stops the parser if we failed
+			parser.shutdownNow();
+		}
+	}
+
+	private void store(final Batch batch) {
+		new SequenceBulkLoader(this, this, "protein_sequence").addObjects(batch.sequences);
+		new AccnumBulkLoader(this, this).addObjects(batch.accnums);
+		new DescriptionBulkLoader(this, this).addObjects(batch.descriptions);
+		for (final Ref ref : batch.newRefs) {
+			ref.resolve();
+		}
+
+		final Curation curation = (Curation) session.load(Curation.class, database.getId());
+		final List<ProteinEntry> entries = new ArrayList<ProteinEntry>(batch.entries.size());
+		for (final Ref[] entry : batch.entries) {
+			entries.add(new ProteinEntry(curation,
+					(ProteinAccnum) session.load(ProteinAccnum.class, entry[0].id),
+					(ProteinDescription) session.load(ProteinDescription.class, entry[1].id),
+					(ProteinSequence) session.load(ProteinSequence.class, entry[2].id)));
+		}
+		new ProteinEntryBulkLoader(this, this).addObjects(entries);
+	}
+
+	@Override
+	public Session getSession() {
+		return session;
+	}
+
+	@Override
+	public Dialect getDialect() {
+		return sessionProvider.getDialect();
+	}
+
+	@Override
+	public String qualifyTableName(final String table) {
+		return sessionProvider.qualifyTableName(table);
+	}
+
+	@Override
+	public BulkLoadJob startNewJob() {
+		final BulkLoadJob job = new BulkLoadJob();
+		session.save(job);
+		return job;
+	}
+
+	@Override
+	public void endJob(final BulkLoadJob job) {
+		session.delete(job);
+	}
+
+	/**
+	 * Reads the FASTA file and splits it into batches.
+	 */
+	private final class Parser implements Runnable {
+		private final BlockingQueue<Batch> batches;
+		private final MessageDigest digest;
+		private final Map<HashKey, Ref> sequences = new HashMap<HashKey, Ref>();
+		private final Map<HashKey, Ref> accnums = new HashMap<HashKey, Ref>();
+		private final Map<HashKey, Ref> descriptions = new HashMap<HashKey, Ref>();
+
+		private Parser(final BlockingQueue<Batch> batches) {
+			this.batches = batches;
+			try {
+				digest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new MprcException("MD5 is not supported", e);
+			}
+		}
+
+		@Override
+		public void run() {
+			final FASTAInputStream stream = new FASTAInputStream(fasta);
+			try {
+				stream.beforeFirst();
+				Batch batch = new Batch();
+				while (stream.gotoNextSequence()) {
+					add(batch, stream.getHeader(), stream.getSequence());
+					if (batch.entries.size() >= BATCH_SIZE) {
+						batch.percentRead = stream.percentRead();
+						batches.put(batch);
+						batch = new Batch();
+					}
+				}
+				batch.percentRead = stream.percentRead();
+				batch.last = true;
+				batches.put(batch);
+			} catch (InterruptedException ignore) {
+				// SWALLOWED: the loading was aborted, nobody is listening
+			} catch (Exception e) {
+				final Batch failed = new Batch();
+				failed.failure = e;
+				try {
+					batches.put(failed);
+				} catch (InterruptedException ignore) {
+					// SWALLOWED: the loading was aborted, nobody is listening
+				}
+			} finally {
+				FileUtilities.closeQuietly(stream);
+			}
+		}
+
+		private void add(final Batch batch, final String header, final String sequence) {
+			final int space = header.indexOf(' ');
+			final String accessionNumber;
+			final String description;
+			if (1 <= space) {
+				accessionNumber = header.substring(1, space);
+				description = header.substring(space + 1).trim();
+			} else {
+				accessionNumber = header.substring(1);
+				description = "";
+			}
+
+			final ProteinAccnum accnum = new ProteinAccnum(accessionNumber);
+			final ProteinDescription desc = new ProteinDescription(description);
+			final ProteinSequence proteinSequence = new ProteinSequence(sequence);
+			batch.entries.add(new Ref[]{
+					getRef(accnums, accnum.getAccnum(), accnum, batch.accnums, batch),
+					getRef(descriptions, desc.getDescription(), desc, batch.descriptions, batch),
+					getRef(sequences, proteinSequence.getSequence(), proteinSequence, batch.sequences, batch),
+			});
+		}
+
+		/**
+		 * Find the reference to given value. If the value was not seen before, it gets added to the batch.
+		 */
+		private <T extends PersistableBase> Ref getRef(final Map<HashKey, Ref> refs, final String value, final T entity, final List<T> newValues, final Batch batch) {
+			final HashKey key = new HashKey(digest.digest(value.getBytes(Charsets.UTF_8)));
+			Ref ref = refs.get(key);
+			if (ref == null) {
+				ref = new Ref(entity);
+				refs.put(key, ref);
+				newValues.add(entity);
+				batch.newRefs.add(ref);
+			}
+			return ref;
+		}
+	}
+
+	/**
+	 * Reference to a stored value. The id is known once the batch that introduced the value is stored.
+	 * Only the loading thread touches the id.
+	 */
+	private static final class Ref {
+		private PersistableBase entity;
+		private Integer id;
+
+		private Ref(final PersistableBase entity) {
+			this.entity = entity;
+		}
+
+		void resolve() {
+			id = entity.getId();
+			// We do not need the value any more
+			entity = null;
+		}
+	}
+
+	/**
+	 * 128 bit hash of a value.
+	 */
+	private static final class HashKey {
+		private final long high;
+		private final long low;
+
+		private HashKey(final byte[] hash) {
+			final ByteBuffer buffer = ByteBuffer.wrap(hash);
+			high = buffer.getLong();
+			low = buffer.getLong();
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof HashKey)) {
+				return false;
+			}
+			final HashKey hashKey = (HashKey) o;
+			return high == hashKey.high && low == hashKey.low;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (low ^ (low >>> 32));
+		}
+	}
+
+	private static final class Batch {
+		private final List<ProteinSequence> sequences = new ArrayList<ProteinSequence>();
+		private final List<ProteinAccnum> accnums = new ArrayList<ProteinAccnum>();
+		private final List<ProteinDescription> descriptions = new ArrayList<ProteinDescription>();
+		/**
+		 * References to the values first seen in this batch.
+		 */
+		private final List<Ref> newRefs = new ArrayList<Ref>();
+		/**
+		 * Accession number, description and sequence of each entry.
+		 */
+		private final List<Ref[]> entries = new ArrayList<Ref[]>();
+		private float percentRead;
+		private boolean last;
+		private Exception failure;
+	}
+}
@@ -6,13 +6,12 @@ import edu.mayo.mprc.database.Database;
 import edu.mayo.mprc.database.bulk.BulkDaoBase;
 import edu.mayo.mprc.dbcurator.model.Curation;
 import edu.mayo.mprc.dbcurator.model.CurationDao;
-import edu.mayo.mprc.fasta.FASTAInputStream;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.progress.PercentDoneReporter;
 import edu.mayo.mprc.utilities.progress.UserProgressReporter;
 import org.apache.log4j.Logger;
 import org.hibernate.Query;
-import org.hibernate.StatelessSession;
+import org.hibernate.Session;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.Nullable;
@@ -29,8 +28,6 @@ import java.util.*;
 @Repository("fastaDbDao")
 public final class FastaDbDaoHibernate extends BulkDaoBase implements FastaDbDao {
 	private static final Logger LOGGER = Logger.getLogger(FastaDbDaoHibernate.class);
-	// Progress will be checked each X spectra
-	public static final long REPORT_FREQUENCY = 100L;
 	private static final String HBM_HOME = "edu/mayo/mprc/fastadb/";
 
 	private CurationDao curationDao;
@@ -79,27 +76,6 @@ public final class FastaDbDaoHibernate extends BulkDaoBase implements FastaDbDao
 		return proteinSequence;
 	}
 
-	private ProteinSequence addProteinSequence(final StatelessSession session, final ProteinSequence proteinSequence) {
-		if (null == proteinSequence.getId()) {
-			return saveStateless(session, proteinSequence, nullSafeEq("sequence", proteinSequence.getSequence()), false);
-		}
-		return proteinSequence;
-	}
-
-	private ProteinAccnum addAccessionNumber(final StatelessSession session, final ProteinAccnum accessionNumber) {
-		if (null == accessionNumber.getId()) {
-			return saveStateless(session, accessionNumber, nullSafeEq("accnum", accessionNumber.getAccnum()), false);
-		}
-		return accessionNumber;
-	}
-
-	private ProteinDescription addDescription(final StatelessSession session, final ProteinDescription description) {
-		if (null == description.getId()) {
-			return saveStateless(session, description, nullSafeEq("description", description.getDescription()), false);
-		}
-		return description;
-	}
-
 	@Override
 	public ProteinSequence getProteinSequence(final int proteinId) {
 		return (ProteinSequence) getSession().get(ProteinSequence.class, proteinId);
@@ -112,64 +88,39 @@ public final class FastaDbDaoHibernate extends BulkDaoBase implements FastaDbDao
 	}
 
 	/**
-	 * This method opens its own stateless session for its duration, so you do not need to call {@link #begin}
+	 * This method opens its own session for its duration, so you do not need to call {@link #begin}
 	 * or {@link #commit} around this method. This makes the method quite special.
 	 * <p/>
 	 * If the curation was already previously loaded into the database, the method does nothing.
+	 * <p/>
+	 * The loading is done in large batches by {@link FastaDatabaseLoader}.
 	 *
 	 * @param database Database to load data for.
 	 */
 	@Override
 	public void addFastaDatabase(final Curation database, @Nullable final UserProgressReporter progressReporter) {
-		final StatelessSession session = getDatabase().getSessionFactory().openStatelessSession();
-		final Query entryCount = session.createQuery("select count(*) from ProteinEntry p where p.database=:database").setEntity("database", database);
-		if (0L != ((Long) entryCount.uniqueResult()).longValue()) {
-			// We have loaded the database already
-			return;
-		}
-
-		final File fasta = database.getFastaFile().getFile();
-		FileUtilities.ensureReadableFile("fasta database", fasta);
-		final FASTAInputStream stream = new FASTAInputStream(fasta);
-		final PercentDoneReporter percentReporter = new PercentDoneReporter(
-				progressReporter,
-				MessageFormat.format("Loading [{0}] to database: ", fasta.getAbsolutePath()));
+		final Session session = getDatabase().getSessionFactory().openSession();
 		try {
-			session.getTransaction().begin();
-			stream.beforeFirst();
-			long numSequencesRead = 0L;
-			while (stream.gotoNextSequence()) {
-				numSequencesRead++;
-				final String header = stream.getHeader();
-				final String sequence = stream.getSequence();
-				final int space = header.indexOf(' ');
-				final String accessionNumber;
-				final String description;
-				if (1 <= space) {
-					accessionNumber = header.substring(1, space);
-					description = header.substring(space + 1).trim();
-				} else {
-					accessionNumber = header.substring(1);
-					description = "";
-				}
-				final ProteinSequence proteinSequence = addProteinSequence(session, new ProteinSequence(sequence));
-				final ProteinAccnum accnum = addAccessionNumber(session, new ProteinAccnum(accessionNumber));
-				final ProteinDescription desc = addDescription(session, new ProteinDescription(description));
-				final ProteinEntry entry = new ProteinEntry(database, accnum, desc, proteinSequence);
-				// We know that we will never save two identical entries (fasta has each entry unique and we have not
-				// loaded the database yet. So no need to check)
-				saveStateless(session, entry, null, false);
-				if (0 == numSequencesRead % REPORT_FREQUENCY) {
-					percentReporter.reportProgress(stream.percentRead());
-				}
+			session.beginTransaction();
+			final Query entryCount = session.createQuery("select count(*) from ProteinEntry p where p.database=:database").setEntity("database", database);
+			if (0L != ((Long) entryCount.uniqueResult()).longValue()) {
+				// We have loaded the database already
+				session.getTransaction().commit();
+				return;
 			}
-			LOGGER.info(MessageFormat.format("Loaded [{0}] to database: {1,number} sequences added.", fasta.getAbsolutePath(), numSequencesRead));
+
+			final File fasta = database.getFastaFile().getFile();
+			FileUtilities.ensureReadableFile("fasta database", fasta);
+			final PercentDoneReporter percentReporter = new PercentDoneReporter(
+					progressReporter,
+					MessageFormat.format("Loading [{0}] to database: ", fasta.getAbsolutePath()));
+			final long numSequencesRead = new FastaDatabaseLoader(this, session, database, percentReporter).load();
 			session.getTransaction().commit();
+			LOGGER.info(MessageFormat.format("Loaded [{0}] to database: {1,number} sequences added.", fasta.getAbsolutePath(), numSequencesRead));
 		} catch (final Exception e) {
 			session.getTransaction().rollback();
 			throw new MprcException("Could not add FASTA file to database " + database.getTitle(), e);
 		} finally {
-			FileUtilities.closeQuietly(stream);
 			session.close();
 		}
 	}
@@ -191,7 +142,10 @@ public final class FastaDbDaoHibernate extends BulkDaoBase implements FastaDbDao
 				HBM_HOME + "ProteinEntry.hbm.xml",
 				HBM_HOME + "ProteinAccnum.hbm.xml",
 				HBM_HOME + "ProteinDescription.hbm.xml",
-				HBM_HOME + "TempSequenceLoading.hbm.xml"
+				HBM_HOME + "TempSequenceLoading.hbm.xml",
+				HBM_HOME + "TempProteinAccnum.hbm.xml",
+				HBM_HOME + "TempProteinDescription.hbm.xml",
+				HBM_HOME + "TempProteinEntry.hbm.xml"
 		));
 		list.addAll(super.getHibernateMappings());
 		return list;
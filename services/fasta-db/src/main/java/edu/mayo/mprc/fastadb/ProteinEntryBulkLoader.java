@@ -0,0 +1,43 @@
+package edu.mayo.mprc.fastadb;
+
+import edu.mayo.mprc.database.SessionProvider;
+import edu.mayo.mprc.database.bulk.BulkLoadJobStarter;
+import edu.mayo.mprc.database.bulk.BulkLoader;
+import edu.mayo.mprc.database.bulk.TempKey;
+
+/**
+ * @author Roman Zenka
+ */
+public final class ProteinEntryBulkLoader extends BulkLoader<ProteinEntry> {
+	public ProteinEntryBulkLoader(final BulkLoadJobStarter jobStarter, final SessionProvider sessionProvider) {
+		super(jobStarter, sessionProvider);
+	}
+
+	@Override
+	public String getTempTableName() {
+		return "temp_protein_entry";
+	}
+
+	@Override
+	public String getTableName() {
+		return "protein_entry";
+	}
+
+	@Override
+	public String getEqualityString() {
+		return "<t>.curation_id = <s>.curation_id" +
+				" and <t>.protein_accnum_id = <s>.protein_accnum_id" +
+				" and <t>.protein_description_id = <s>.protein_description_id" +
+				" and <t>.protein_sequence_id = <s>.protein_sequence_id";
+	}
+
+	@Override
+	public Object wrapForTempTable(final ProteinEntry value, final TempKey key) {
+		return new TempProteinEntry(key, value);
+	}
+
+	@Override
+	public String getColumnsToTransfer() {
+		return "curation_id, protein_accnum_id, protein_description_id, protein_sequence_id";
+	}
+}
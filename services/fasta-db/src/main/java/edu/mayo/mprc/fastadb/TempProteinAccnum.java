@@ -0,0 +1,45 @@
+package edu.mayo.mprc.fastadb;
+
+import edu.mayo.mprc.database.bulk.TempKey;
+
+/**
+ * @author Roman Zenka
+ */
+public class TempProteinAccnum {
+	private TempKey tempKey;
+
+	private Integer newId;
+	private String accnum;
+
+	public TempProteinAccnum() {
+	}
+
+	public TempProteinAccnum(final TempKey tempKey, final ProteinAccnum accnum) {
+		this.tempKey = tempKey;
+		this.accnum = accnum.getAccnum();
+	}
+
+	public TempKey getTempKey() {
+		return tempKey;
+	}
+
+	public void setTempKey(final TempKey tempKey) {
+		this.tempKey = tempKey;
+	}
+
+	public Integer getNewId() {
+		return newId;
+	}
+
+	public void setNewId(final Integer newId) {
+		this.newId = newId;
+	}
+
+	public String getAccnum() {
+		return accnum;
+	}
+
+	public void setAccnum(final String accnum) {
+		this.accnum = accnum;
+	}
+}
@@ -0,0 +1,45 @@
+package edu.mayo.mprc.fastadb;
+
+import edu.mayo.mprc.database.bulk.TempKey;
+
+/**
+ * @author Roman Zenka
+ */
+public class TempProteinDescription {
+	private TempKey tempKey;
+
+	private Integer newId;
+	private String description;
+
+	public TempProteinDescription() {
+	}
+
+	public TempProteinDescription(final TempKey tempKey, final ProteinDescription description) {
+		this.tempKey = tempKey;
+		this.description = description.getDescription();
+	}
+
+	public TempKey getTempKey() {
+		return tempKey;
+	}
+
+	public void setTempKey(final TempKey tempKey) {
+		this.tempKey = tempKey;
+	}
+
+	public Integer getNewId() {
+		return newId;
+	}
+
+	public void setNewId(final Integer newId) {
+		this.newId = newId;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public void setDescription(final String description) {
+		this.description = description;
+	}
+}
@@ -0,0 +1,75 @@
+package edu.mayo.mprc.fastadb;
+
+import edu.mayo.mprc.database.bulk.TempKey;
+
+/**
+ * @author Roman Zenka
+ */
+public class TempProteinEntry {
+	private TempKey tempKey;
+
+	private Integer newId;
+	private Integer curationId;
+	private Integer accnumId;
+	private Integer descriptionId;
+	private Integer sequenceId;
+
+	public TempProteinEntry() {
+	}
+
+	public TempProteinEntry(final TempKey tempKey, final ProteinEntry entry) {
+		this.tempKey = tempKey;
+		curationId = entry.getDatabase().getId();
+		accnumId = entry.getAccessionNumber().getId();
+		descriptionId = entry.getDescription().getId();
+		sequenceId = entry.getSequence().getId();
+	}
+
+	public TempKey getTempKey() {
+		return tempKey;
+	}
+
+	public void setTempKey(final TempKey tempKey) {
+		this.tempKey = tempKey;
+	}
+
+	public Integer getNewId() {
+		return newId;
+	}
+
+	public void setNewId(final Integer newId) {
+		this.newId = newId;
+	}
+
+	public Integer getCurationId() {
+		return curationId;
+	}
+
+	public void setCurationId(final Integer curationId) {
+		this.curationId = curationId;
+	}
+
+	public Integer getAccnumId() {
+		return accnumId;
+	}
+
+	public void setAccnumId(final Integer accnumId) {
+		this.accnumId = accnumId;
+	}
+
+	public Integer getDescriptionId() {
+		return descriptionId;
+	}
+
+	public void setDescriptionId(final Integer descriptionId) {
+		this.descriptionId = descriptionId;
+	}
+
+	public Integer getSequenceId() {
+		return sequenceId;
+	}
+
+	public void setSequenceId(final Integer sequenceId) {
+		this.sequenceId = sequenceId;
+	}
+}
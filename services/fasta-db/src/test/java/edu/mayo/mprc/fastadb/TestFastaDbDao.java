@@ -143,6 +143,35 @@ public class TestFastaDbDao extends DaoTest {
 		}
 	}
 
+	@Test
+	public void shouldStoreDuplicateValuesOnce() {
+		final File folder = FileUtilities.createTempFolder();
+		try {
+			final File fasta = new File(folder, "duplicates.fasta");
+			FileUtilities.writeStringToFile(fasta, ">PROT1 Shared description\n" +
+					"MKVLAAGIR\n" +
+					">PROT2 Shared description\n" +
+					"mkvlaagir*\n" +
+					">PROT3\n" +
+					"ACDEFGHIK\n", true);
+			final Curation duplicates = loadFasta(fasta, "Duplicates");
+
+			fastaDbDao.begin();
+			try {
+				Assert.assertEquals(fastaDbDao.countDatabaseEntries(duplicates), 3);
+				Assert.assertEquals(fastaDbDao.getProteinSequence(duplicates, "PROT1").getId(),
+						fastaDbDao.getProteinSequence(duplicates, "PROT2").getId(), "The same sequence must be stored once");
+				Assert.assertEquals(fastaDbDao.getProteinDescription(duplicates, "PROT2"), "Shared description");
+				Assert.assertEquals(fastaDbDao.getProteinDescription(duplicates, "PROT3"), "");
+				Assert.assertEquals(fastaDbDao.getProteinSequence(duplicates, "PROT3").getSequence(), "ACDEFGHIK");
+			} finally {
+				fastaDbDao.commit();
+			}
+		} finally {
+			FileUtilities.cleanupTempFile(folder);
+		}
+	}
+
 	private Curation loadFasta(final String resource, final String shortName) {
 		File file = null;
 		try {
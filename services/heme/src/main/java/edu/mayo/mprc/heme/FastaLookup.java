@@ -0,0 +1,249 @@
+package edu.mayo.mprc.heme;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.io.MappedTextFile;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Read-only accession number to description/sequence lookup for a FASTA database.
+ * <p/>
+ * The lookup is stored in a compact file made by {@link #build}. The file is memory-mapped, so opening it is instant
+ * and multiple users share the same pages. Only the entries that are actually looked up get decoded.
+ * <p/>
+ * File layout:
+ * <ul>
+ * <li>header - magic number, version, number of entries</li>
+ * <li>fixed-size records sorted by accession number: offset+length of the accession number, description and sequence</li>
+ * <li>the text itself</li>
+ * </ul>
+ * A missing description or sequence has length -1.
+ *
+ * @author Roman Zenka
+ */
+public final class FastaLookup {
+	private static final int MAGIC = 0x48464c4b; // HFLK
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int RECORD_SIZE = 3 * (8 + 4);
+	private static final int MISSING = -1;
+
+	/**
+	 * Only the entries with a mass at the end of their header have a sequence stored.
+	 */
+	private static final Pattern MASS_PATTERN = Pattern.compile(".+ (\\d+\\.\\d+)?"); //last double on line
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private final MappedTextFile file;
+	private final int size;
+
+	public FastaLookup(final File lookupFile) {
+		file = new MappedTextFile(lookupFile);
+		if (file.length() < HEADER_SIZE || readInt(0) != MAGIC) {
+			throw new MprcException("Not a FASTA lookup file: " + lookupFile.getAbsolutePath());
+		}
+		if (readInt(4) != VERSION) {
+			throw new MprcException("Unsupported FASTA lookup file version " + readInt(4) + " in " + lookupFile.getAbsolutePath());
+		}
+		size = readInt(8);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Full FASTA header line (including the leading &gt;) for given accession number, null if not present.
+	 */
+	public String getDescription(final String accessionNumber) {
+		return getValue(accessionNumber, 1);
+	}
+
+	/**
+	 * @return Sequence for given accession number, null if not present. Only entries with a mass at the end
+	 *         of the header have sequences.
+	 */
+	public String getSequence(final String accessionNumber) {
+		return getValue(accessionNumber, 2);
+	}
+
+	private String getValue(final String accessionNumber, final int field) {
+		final int index = find(accessionNumber);
+		if (index < 0) {
+			return null;
+		}
+		return getString(index, field);
+	}
+
+	/**
+	 * Binary search for the accession number.
+	 */
+	private int find(final String accessionNumber) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int comparison = getString(middle, 0).compareTo(accessionNumber);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	private String getString(final int index, final int field) {
+		final long position = HEADER_SIZE + (long) index * RECORD_SIZE + field * (8 + 4);
+		final int length = readInt(position + 8);
+		if (length == MISSING) {
+			return null;
+		}
+		return file.getString(readLong(position), length);
+	}
+
+	private int readInt(final long position) {
+		return ((file.get(position) & 0xFF) << 24)
+				| ((file.get(position + 1) & 0xFF) << 16)
+				| ((file.get(position + 2) & 0xFF) << 8)
+				| (file.get(position + 3) & 0xFF);
+	}
+
+	private long readLong(final long position) {
+		return ((long) readInt(position) << 32) | (readInt(position + 4) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Build the lookup file. The descriptions and the sequences can come from different FASTA files.
+	 * When an accession number repeats, the last entry wins. Each sequence is expected to be on a single line.
+	 *
+	 * @param descriptionFasta FASTA to take the descriptions from.
+	 * @param sequenceFasta    FASTA to take the sequences from.
+	 * @param lookupFile       Where to write the lookup.
+	 */
+	public static void build(final File descriptionFasta, final File sequenceFasta, final File lookupFile) {
+		final Map<String, String> descriptions = loadDescriptions(descriptionFasta);
+		final Map<String, String> sequences = loadSequences(sequenceFasta);
+
+		final Map<String, String[]> entries = new HashMap<String, String[]>(descriptions.size() + sequences.size());
+		for (final Map.Entry<String, String> entry : descriptions.entrySet()) {
+			getEntry(entries, entry.getKey())[0] = entry.getValue();
+		}
+		for (final Map.Entry<String, String> entry : sequences.entrySet()) {
+			getEntry(entries, entry.getKey())[1] = entry.getValue();
+		}
+		final String[] keys = entries.keySet().toArray(new String[entries.size()]);
+		Arrays.sort(keys);
+
+		final Charset charset = Charset.defaultCharset();
+		DataOutputStream output = null;
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(lookupFile)));
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeInt(keys.length);
+
+			long offset = HEADER_SIZE + (long) keys.length * RECORD_SIZE;
+			for (final String key : keys) {
+				final String[] values = entries.get(key);
+				offset = writeRecord(output, key, offset, charset);
+				offset = writeRecord(output, values[0], offset, charset);
+				offset = writeRecord(output, values[1], offset, charset);
+			}
+			for (final String key : keys) {
+				final String[] values = entries.get(key);
+				output.write(key.getBytes(charset));
+				if (values[0] != null) {
+					output.write(values[0].getBytes(charset));
+				}
+				if (values[1] != null) {
+					output.write(values[1].getBytes(charset));
+				}
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not write FASTA lookup " + lookupFile.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(output);
+		}
+	}
+
+	private static String[] getEntry(final Map<String, String[]> entries, final String key) {
+		String[] values = entries.get(key);
+		if (values == null) {
+			values = new String[2];
+			entries.put(key, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Write a record pointing at given offset, return the offset for the next record.
+	 */
+	private static long writeRecord(final DataOutput output, final String value, final long offset, final Charset charset) throws IOException {
+		output.writeLong(offset);
+		if (value == null) {
+			output.writeInt(MISSING);
+			return offset;
+		}
+		final int length = value.getBytes(charset).length;
+		output.writeInt(length);
+		return offset + length;
+	}
+
+	private static Map<String, String> loadDescriptions(final File fasta) {
+		final Map<String, String> result = new HashMap<String, String>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(fasta));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (isHeader(line)) {
+					result.put(getAccessionNumber(line), line);
+				}
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not read descriptions from " + fasta.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+		return result;
+	}
+
+	private static Map<String, String> loadSequences(final File fasta) {
+		final Map<String, String> result = new HashMap<String, String>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(fasta));
+			String line;
+			String accessionNumber = null;
+			while ((line = reader.readLine()) != null) {
+				if (isHeader(line)) {
+					accessionNumber = MASS_PATTERN.matcher(line).matches() ? getAccessionNumber(line) : null;
+				} else if (accessionNumber != null && !line.isEmpty()) {
+					result.put(accessionNumber, line);
+				}
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not read sequences from " + fasta.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+		return result;
+	}
+
+	private static boolean isHeader(final String line) {
+		return !line.isEmpty() && line.charAt(0) == '>';
+	}
+
+	private static String getAccessionNumber(final String header) {
+		return WHITESPACE.split(header, 2)[0].substring(1);
+	}
+}
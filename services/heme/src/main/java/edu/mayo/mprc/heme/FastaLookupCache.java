@@ -0,0 +1,57 @@
+package edu.mayo.mprc.heme;
+
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps one {@link FastaLookup} per FASTA database, shared by everyone who asks for it.
+ * <p/>
+ * The lookup files live in the cache folder. A lookup is built the first time a database is requested,
+ * and built again only when the FASTA file gets newer than the lookup.
+ *
+ * @author Roman Zenka
+ */
+public final class FastaLookupCache {
+	private static final Logger LOGGER = Logger.getLogger(FastaLookupCache.class);
+	public static final String LOOKUP_EXTENSION = ".lookup";
+
+	private final File cacheFolder;
+	private final Map<File, FastaLookup> lookups = new HashMap<File, FastaLookup>();
+
+	public FastaLookupCache(final File cacheFolder) {
+		this.cacheFolder = cacheFolder;
+	}
+
+	/**
+	 * @param name             Name of the database, determines the name of the lookup file.
+	 * @param descriptionFasta FASTA to take the descriptions from.
+	 * @param sequenceFasta    FASTA to take the sequences from.
+	 * @return Lookup for given database.
+	 */
+	public synchronized FastaLookup getLookup(final String name, final File descriptionFasta, final File sequenceFasta) {
+		final File lookupFile = new File(cacheFolder, name + LOOKUP_EXTENSION);
+		final long sourceModified = Math.max(descriptionFasta.lastModified(), sequenceFasta.lastModified());
+
+		FastaLookup lookup = lookups.get(lookupFile);
+		if (lookup != null && lookupFile.lastModified() >= sourceModified) {
+			return lookup;
+		}
+
+		if (!lookupFile.exists() || lookupFile.lastModified() < sourceModified) {
+			LOGGER.info("Building FASTA lookup " + lookupFile.getAbsolutePath());
+			FileUtilities.ensureFolderExists(cacheFolder);
+			// Build aside and move in place, so nobody maps a half-written file
+			final File tempFile = new File(cacheFolder, name + LOOKUP_EXTENSION + ".tmp");
+			FastaLookup.build(descriptionFasta, sequenceFasta, tempFile);
+			FileUtilities.rename(tempFile, lookupFile);
+		}
+
+		lookup = new FastaLookup(lookupFile);
+		lookups.put(lookupFile, lookup);
+		return lookup;
+	}
+}
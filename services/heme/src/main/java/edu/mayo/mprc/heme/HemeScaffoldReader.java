@@ -4,8 +4,6 @@ import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.scaffoldparser.spectra.ScaffoldReportReader;
 import org.apache.log4j.Logger;
 
-import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -21,12 +19,10 @@ public class HemeScaffoldReader extends ScaffoldReportReader {
     private int peptideSeq;
     private static final Pattern MASS_PATTERN = Pattern.compile(".+ (\\d+\\.\\d+)?"); //last double on line
     private HemeReport report;
-    private HashMap<String, String> databaseCache;
-    private HashMap<String, String> mutationSequenceCache;
+    private FastaLookup fastaLookup;
 
-    public HemeScaffoldReader(File cache, File mutCache, HemeReport myNewReport) {
-        this.databaseCache = SerializeFastaDB.load(cache.getAbsolutePath());
-        this.mutationSequenceCache = SerializeFastaDB.load(mutCache.getAbsolutePath());
+    public HemeScaffoldReader(FastaLookup fastaLookup, HemeReport myNewReport) {
+        this.fastaLookup = fastaLookup;
         this.report = myNewReport;
 
 	}
@@ -65,7 +61,7 @@ public class HemeScaffoldReader extends ScaffoldReportReader {
             }
 
             //missing desc -> null results in error chain
-			final ProteinEntity prot = report.find_or_create_ProteinEntity(accNum, description, getMassIsotopic(description), mutationSequenceCache.get(accNum));
+			final ProteinEntity prot = report.find_or_create_ProteinEntity(accNum, description, getMassIsotopic(description), fastaLookup.getSequence(accNum));
             prot.setTotalSpectra( parseInt(currentLine[numberOfTotalSpectra]) );
 
             // Everyone else category (contaminants & wild-type proteins):
@@ -83,11 +79,11 @@ public class HemeScaffoldReader extends ScaffoldReportReader {
 
             // No mutation means scaffold put it in the wrong place....needs to attach to wild type instead
             if( !mutationCheck ){
-                //prot.setSequence(mutationSequenceCache.get(accNum));
+                //prot.setSequence(fastaLookup.getSequence(accNum));
                 String[] splitAccNum = accNum.split("_");
                 String baseAcc = splitAccNum[0]+"_"+splitAccNum[2];
 
-                ProteinEntity baseProt = report.find_or_create_ProteinEntity(baseAcc, "Scaffold Non-Mutant peptides Reallocated", getMassIsotopic(description), mutationSequenceCache.get(accNum));
+                ProteinEntity baseProt = report.find_or_create_ProteinEntity(baseAcc, "Scaffold Non-Mutant peptides Reallocated", getMassIsotopic(description), fastaLookup.getSequence(accNum));
                 baseProt.incrementTotalSpectra();
                 baseProt.setFilter(ProteinEntity.Filter.OTHER);
                 baseProt.appendPeptide(newPep);
@@ -100,7 +96,7 @@ public class HemeScaffoldReader extends ScaffoldReportReader {
 
             /* Must be inside Mass Range & Have cooresponding mutation */
             if(massCheck){
-                //prot.setSequence(mutationSequenceCache.get(accNum));
+                //prot.setSequence(fastaLookup.getSequence(accNum));
                 prot.setFilter(ProteinEntity.Filter.MUTATION_CONFIRMED);
             }
             // Else: Mutation Proteins either outside of mass range or completely missing the target mutation
@@ -121,7 +117,7 @@ public class HemeScaffoldReader extends ScaffoldReportReader {
 	 */
 	private String getDescription(final String accNum) {
 
-        return databaseCache.get(accNum);
+        return fastaLookup.getDescription(accNum);
 	}
 
 	private static Double getMassIsotopic(final CharSequence description) {
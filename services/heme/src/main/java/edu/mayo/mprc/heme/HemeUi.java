@@ -65,6 +65,11 @@ public final class HemeUi implements Dao {
 	public static final double DEFAULT_MASS_DELTA_TOLERANCE = 2.0;
 	private static final String FASTA_DB_CACHE = "fastaDbCache";
 
+	/**
+	 * How many recently viewed reports to keep in memory.
+	 */
+	private static final int REPORT_CACHE_SIZE = 20;
+
 	private final File data;
 	private final File results;
 	private final HemeDao hemeDao;
@@ -84,7 +89,20 @@ public final class HemeUi implements Dao {
 	 */
 	private int chymoParameterSetId;
 	private String userEmail;
-	private File fastaDbCache;
+	private final FastaLookupCache fastaLookupCache;
+
+	/**
+	 * Recently created reports, keyed by {@link #getReportKey}. Access-ordered, so the least recently viewed report
+	 * is dropped first.
+	 */
+	private final Map<String, HemeReport> reportCache = new LinkedHashMap<String, HemeReport>(REPORT_CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 20141104;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, HemeReport> eldest) {
+			return size() > REPORT_CACHE_SIZE;
+		}
+	};
 
 	public HemeUi(final File data, final File results, final HemeDao hemeDao, final SwiftDao swiftDao,
 	              final ParamsDao paramsDao,
@@ -100,7 +118,7 @@ public final class HemeUi implements Dao {
 		this.trypsinParameterSetName = trypsinParameterSetName;
 		this.chymoParameterSetName = chymoParameterSetName;
 		this.userEmail = userEmail;
-		this.fastaDbCache = fastaDbCache;
+		this.fastaLookupCache = new FastaLookupCache(fastaDbCache);
 	}
 
 	@Override
@@ -285,6 +303,9 @@ public final class HemeUi implements Dao {
 
 	/**
 	 * Load all the protein groups from the report.
+	 * <p/>
+	 * The report is cached until the test settings or the Scaffold results change.
+	 * Treat the returned report as read-only.
 	 *
 	 * @param testId The id of the test to load.
 	 * @return Data ready to be passed to the report viewer.
@@ -296,30 +317,38 @@ public final class HemeUi implements Dao {
 		final File scaffoldFolder = new File(resultFolder, "scaffold");
 		final File scaffoldFile = new File(scaffoldFolder, test.getName() + SPECTRA_EXTENSION);
 
+		final String reportKey = getReportKey(testId, test, scaffoldFile);
+		synchronized (reportCache) {
+			final HemeReport cachedReport = reportCache.get(reportKey);
+			if (cachedReport != null) {
+				return cachedReport;
+			}
+		}
+
 		final SwiftSearchDefinition swiftSearchDefinition = swiftDao.getSwiftSearchDefinition(test.getSearchRun().getSwiftSearch());
 
 		final Curation database = swiftSearchDefinition.getSearchParameters().getDatabase();
-		String fastaName = FileUtilities.stripGzippedExtension(database.getCurationFile().getName());
-		File dbCache = new File(fastaDbCache, fastaName + "-desc.obj");
-		if (!dbCache.exists()) {
-			SerializeFastaDB.generateDesc(database.getCurationFile(), dbCache.toString());
-		}
+		final String fastaName = FileUtilities.stripGzippedExtension(database.getCurationFile().getName());
+		final FastaLookup fastaLookup = fastaLookupCache.getLookup(fastaName, database.getCurationFile(), database.getFastaFile().getFile());
 
-		File seqCache = new File(fastaDbCache, fastaName + "-seq.obj");
-		if (!seqCache.exists()) {
-			SerializeFastaDB.generateSequence(database.getFastaFile().getFile(), seqCache.toString());
-		}
-		HemeReport myNewReport = new HemeReport(test);
-
-		// final HemeScaffoldReader reader = new HemeScaffoldReader(fastaDbCache); // TODO - double check before deployment
-		final HemeScaffoldReader reader = new HemeScaffoldReader(dbCache, seqCache, myNewReport); // TODO - double check before deployment
-		// final HemeScaffoldReader reader = new HemeScaffoldReader(fastaDbDao, swiftSearchDefinition.getSearchParameters().getDatabase());
+		final HemeReport myNewReport = new HemeReport(test);
+		final HemeScaffoldReader reader = new HemeScaffoldReader(fastaLookup, myNewReport);
 		reader.load(scaffoldFile, "3", null);
 
-
+		synchronized (reportCache) {
+			reportCache.put(reportKey, myNewReport);
+		}
 		return myNewReport;
 	}
 
+	/**
+	 * The report depends on the test settings and on the Scaffold output. The output is identified by its timestamp and size.
+	 */
+	private static String getReportKey(final int testId, final HemeTest test, final File scaffoldFile) {
+		return testId + ":" + test.getName() + ":" + test.getDate().getTime() + ":" + test.getMass() + ":" + test.getMassTolerance()
+				+ ":" + scaffoldFile.lastModified() + ":" + scaffoldFile.length();
+	}
+
 	private String extractPatientName(final File patient) {
 		String name = null;
 		if (patient.getName().endsWith(CHYMO_SUFFIX)) {
@@ -19,27 +19,23 @@ import java.util.List;
  */
 public class HemeScaffoldReaderTest {
     private File fasta;
-    private File cache;
-    private File mutCache;
+    private File lookupFile;
     private File spectraFile;
 
     @BeforeTest
     public void setup() throws IOException {
         fasta = TestingUtilities.getTempFileFromResource(getClass(), "/edu/mayo/mprc/heme/testable_mutations.fasta", true, null );
 
-        cache = TestingUtilities.getUniqueTempFile(true, null, "-desc.obj");
-        SerializeFastaDB.generateDesc(fasta, cache.getAbsolutePath());
-
-        mutCache = TestingUtilities.getUniqueTempFile(true, null, "-seq.obj");
-        SerializeFastaDB.generateSequence(fasta, mutCache.getAbsolutePath());
+        lookupFile = TestingUtilities.getUniqueTempFile(true, null, FastaLookupCache.LOOKUP_EXTENSION);
+        FastaLookup.build(fasta, fasta, lookupFile);
 
         spectraFile = TestingUtilities.getTempFileFromResource(getClass(), "/edu/mayo/mprc/heme/10045908143.spectra.txt", true, null );;
     }
 
     @AfterTest
     public void teardown() {
-        FileUtilities.cleanupTempFile(cache);
-        FileUtilities.cleanupTempFile(mutCache);
+        FileUtilities.cleanupTempFile(fasta);
+        FileUtilities.cleanupTempFile(lookupFile);
         FileUtilities.cleanupTempFile(spectraFile);
     }
 
@@ -115,13 +111,24 @@ public class HemeScaffoldReaderTest {
 
     }
 
+    @Test
+    public void shouldLookUpFasta() {
+        FastaLookup lookup = new FastaLookup(lookupFile);
+        Assert.assertEquals(lookup.size(), 6);
+        Assert.assertEquals(lookup.getDescription("sp|P69905|HBA_HUMAN"), ">sp|P69905|HBA_HUMAN Hemoglobin subunit alpha OS=Homo sapiens GN=HBA1 PE=1 SV=2");
+        Assert.assertNull(lookup.getSequence("sp|P69905|HBA_HUMAN"), "Only entries with mass have sequences");
+        Assert.assertEquals(lookup.getSequence("HBB_L68P_HUMAN"), "FFESFGDLSTPDAVMGNPKVKAHGKKVPGAFSDGLAHLDNLKGTFATLSELHCDK");
+        Assert.assertNull(lookup.getDescription("HBB_MISSING"));
+        Assert.assertNull(lookup.getDescription(""));
+    }
+
     @Test
     public void shouldReadData() throws IOException {
         HemeTest hemeTest = new HemeTest("test", new Date(), spectraFile.getAbsolutePath(), 15807.0, 3.0);
         HemeReport report = new HemeReport(hemeTest);
         Assert.assertEquals(report.getMass(), 15807.0, "Mass must match");
 
-        HemeScaffoldReader reader = new HemeScaffoldReader(cache, mutCache, report);
+        HemeScaffoldReader reader = new HemeScaffoldReader(new FastaLookup(lookupFile), report);
         reader.load(spectraFile, "3", null);
 
         List<ProteinEntity> mutationConfirmed = report.get_ProteinEntities_by_filter(ProteinEntity.Filter.MUTATION_CONFIRMED);
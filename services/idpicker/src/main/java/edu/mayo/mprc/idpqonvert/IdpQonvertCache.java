@@ -42,6 +42,10 @@ public final class IdpQonvertCache extends WorkCache<IdpQonvertWorkPacket> {
 					.required()
 					.defaultValue(DEFAULT_CACHE)
 
+					.property(CacheConfig.MAX_CACHE_SIZE, "Maximum cache size (MB)", "When the cached files take more space than this, the least recently used ones are deleted. Set to 0 to never delete anything.")
+					.integerValue(0, null)
+					.defaultValue("0")
+
 					.property(CacheConfig.SERVICE, "IdpQonvert instance", "The module that will run IdpQonvert. The cache just caches the results.")
 					.reference("idpqonvert", UiBuilder.NONE_TYPE);
 		}
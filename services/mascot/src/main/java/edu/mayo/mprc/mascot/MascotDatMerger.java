@@ -0,0 +1,469 @@
+package edu.mayo.mprc.mascot;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Merges Mascot .dat files produced by searching shards of a single input file into one .dat file,
+ * as if the whole input was searched at once.
+ * <p/>
+ * A .dat file is a MIME multipart document. The merged file takes the sections from the first shard, except:
+ * <ul>
+ * <li><tt>parameters</tt> - <tt>FILE</tt> names the original input instead of the shard</li>
+ * <li><tt>header</tt> - the <tt>queries</tt> count is the total over all shards</li>
+ * <li><tt>*summary</tt>, <tt>*peptides</tt> - concatenated, the query numbers are shifted so they follow each other.
+ * The protein hit list of the summary (<tt>hN</tt> lines) is dropped, as it cannot be merged without re-scoring.</li>
+ * <li><tt>proteins</tt> - union over all shards</li>
+ * <li><tt>queryN</tt> - all queries of all shards, renumbered</li>
+ * <li><tt>index</tt> - recalculated for the merged file</li>
+ * </ul>
+ * The files are streamed, only the protein accessions are kept in memory.
+ *
+ * @author Roman Zenka
+ */
+final class MascotDatMerger {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Pattern BOUNDARY = Pattern.compile("boundary=(\\S+)");
+	private static final Pattern SECTION_NAME = Pattern.compile("name=\"([^\"]+)\"");
+	private static final Pattern QUERY_SECTION = Pattern.compile("query(\\d+)");
+	private static final Pattern QUERY_KEY = Pattern.compile("^(q[a-z]*)(\\d+)([_=].*)$");
+	private static final Pattern HIT_KEY = Pattern.compile("^(h\\d+|num_hits)[_=].*$");
+	private static final Pattern QUERIES = Pattern.compile("^queries=(\\d+)$");
+	private static final Pattern FILE = Pattern.compile("^FILE=.*$");
+
+	private static final String CONTENT_TYPE = "Content-Type: application/x-Mascot; name=\"";
+	private static final String PARAMETERS = "parameters";
+	private static final String HEADER = "header";
+	private static final String PROTEINS = "proteins";
+	private static final String INDEX = "index";
+
+	private final List<DatFile> inputs;
+	private final DatFile first;
+	private final File originalInput;
+
+	private OutputStream output;
+	private int outputLine;
+	private final Map<String, Integer> outputSections = new LinkedHashMap<String, Integer>();
+
+	private MascotDatMerger(final List<File> dats, final File originalInput) {
+		this.originalInput = originalInput;
+		inputs = new ArrayList<DatFile>(dats.size());
+		for (final File dat : dats) {
+			inputs.add(new DatFile(dat));
+		}
+		first = inputs.get(0);
+	}
+
+	/**
+	 * @param dats          Results of searching the shards, in the order of the shards.
+	 * @param originalInput The input file that was split into the shards.
+	 * @param merged        Where to write the merged result.
+	 */
+	public static void merge(final List<File> dats, final File originalInput, final File merged) {
+		if (dats.isEmpty()) {
+			throw new MprcException("There are no Mascot results to merge into " + merged.getAbsolutePath());
+		}
+		final MascotDatMerger merger = new MascotDatMerger(dats, originalInput);
+		try {
+			merger.output = new BufferedOutputStream(new FileOutputStream(merged), BUFFER_SIZE);
+			merger.write();
+			merger.output.close();
+		} catch (IOException e) {
+			throw new MprcException("Could not merge Mascot results into " + merged.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(merger.output);
+		}
+	}
+
+	private void write() throws IOException {
+		copyLines(first, 0, first.sections.get(0).boundaryOffset, null);
+
+		boolean queriesWritten = false;
+		for (final Section section : first.sections) {
+			if (INDEX.equals(section.name)) {
+				continue;
+			}
+			if (QUERY_SECTION.matcher(section.name).matches()) {
+				if (!queriesWritten) {
+					writeQueries();
+					queriesWritten = true;
+				}
+				continue;
+			}
+			startSection(section.name);
+			if (PARAMETERS.equals(section.name)) {
+				copyLines(first, section.contentOffset, section.endOffset, new FileReplacer());
+			} else if (HEADER.equals(section.name)) {
+				copyLines(first, section.contentOffset, section.endOffset, new QueryCountReplacer());
+			} else if (PROTEINS.equals(section.name)) {
+				final Set<String> proteins = new HashSet<String>();
+				for (final DatFile input : inputs) {
+					final Section proteinSection = input.getSection(PROTEINS);
+					if (proteinSection != null) {
+						copyLines(input, proteinSection.contentOffset, proteinSection.endOffset, new ProteinFilter(proteins));
+					}
+				}
+			} else if (section.name.endsWith("summary") || section.name.endsWith("peptides")) {
+				final boolean summary = section.name.endsWith("summary");
+				for (final DatFile input : inputs) {
+					final Section inputSection = input.getSection(section.name);
+					if (inputSection != null) {
+						copyLines(input, inputSection.contentOffset, inputSection.endOffset, new QueryRenumberer(input.queryOffset, summary, input != first));
+					}
+				}
+			} else {
+				copyLines(first, section.contentOffset, section.endOffset, null);
+			}
+		}
+
+		final Section index = first.getSection(INDEX);
+		if (index != null) {
+			writeIndex(index);
+		}
+		writeLine("--" + first.boundary + "--");
+	}
+
+	private void writeQueries() throws IOException {
+		for (final DatFile input : inputs) {
+			for (final Section section : input.sections) {
+				final Matcher matcher = QUERY_SECTION.matcher(section.name);
+				if (matcher.matches()) {
+					startSection("query" + (Integer.parseInt(matcher.group(1)) + input.queryOffset));
+					copyLines(input, section.contentOffset, section.endOffset, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The index lists the line each section starts at. We keep the numbering convention of the original file.
+	 */
+	private void writeIndex(final Section index) throws IOException {
+		final Map<String, Integer> originalIndex = new LinkedHashMap<String, Integer>();
+		copyLines(first, index.contentOffset, index.endOffset, new LineFilter() {
+			@Override
+			public String filter(final String line) {
+				final int equals = line.indexOf('=');
+				if (equals > 0) {
+					try {
+						originalIndex.put(line.substring(0, equals), Integer.valueOf(line.substring(equals + 1).trim()));
+					} catch (NumberFormatException ignore) {
+						// SWALLOWED: not an index line
+					}
+				}
+				return null;
+			}
+		});
+		final Section firstSection = first.sections.get(0);
+		final Integer firstIndex = originalIndex.get(firstSection.name);
+		final int shift = firstIndex == null ? 0 : firstIndex - firstSection.boundaryLine;
+
+		startSection(INDEX);
+		writeLine("");
+		for (final Map.Entry<String, Integer> entry : outputSections.entrySet()) {
+			if (!INDEX.equals(entry.getKey())) {
+				writeLine(entry.getKey() + "=" + (entry.getValue() + shift));
+			}
+		}
+	}
+
+	private void startSection(final String name) throws IOException {
+		outputSections.put(name, outputLine);
+		writeLine("--" + first.boundary);
+		writeLine(CONTENT_TYPE + name + "\"");
+	}
+
+	private void writeLine(final String line) throws IOException {
+		final int length = line.length();
+		for (int i = 0; i < length; i++) {
+			output.write(line.charAt(i));
+		}
+		output.write(first.lineEnd);
+		outputLine++;
+	}
+
+	/**
+	 * Copy lines between two offsets of the input file, passing them through a filter.
+	 */
+	private void copyLines(final DatFile input, final long from, final long to, final LineFilter filter) throws IOException {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(input.file, "r");
+			file.seek(from);
+			final LineScanner scanner = new LineScanner(new BufferedInputStream(Channels.newInputStream(file.getChannel()), BUFFER_SIZE), from);
+			String line;
+			while (scanner.getOffset() < to && (line = scanner.readLine()) != null) {
+				final String filtered = filter == null ? line : filter.filter(line);
+				if (filtered != null) {
+					writeLine(filtered);
+				}
+			}
+		} finally {
+			FileUtilities.closeQuietly(file);
+		}
+	}
+
+	private interface LineFilter {
+		/**
+		 * @return Line to write, null to skip the line.
+		 */
+		String filter(String line);
+	}
+
+	private final class QueryCountReplacer implements LineFilter {
+		@Override
+		public String filter(final String line) {
+			if (QUERIES.matcher(line).matches()) {
+				int total = 0;
+				for (final DatFile input : inputs) {
+					total += input.queries;
+				}
+				return "queries=" + total;
+			}
+			return line;
+		}
+	}
+
+	private final class FileReplacer implements LineFilter {
+		@Override
+		public String filter(final String line) {
+			if (FILE.matcher(line).matches()) {
+				return "FILE=" + originalInput.getAbsolutePath();
+			}
+			return line;
+		}
+	}
+
+	private static final class QueryRenumberer implements LineFilter {
+		private final int queryOffset;
+		private final boolean summary;
+		private final boolean skipBlank;
+
+		private QueryRenumberer(final int queryOffset, final boolean summary, final boolean skipBlank) {
+			this.queryOffset = queryOffset;
+			this.summary = summary;
+			this.skipBlank = skipBlank;
+		}
+
+		@Override
+		public String filter(final String line) {
+			if (skipBlank && line.isEmpty()) {
+				return null;
+			}
+			if (summary && HIT_KEY.matcher(line).matches()) {
+				return null;
+			}
+			final Matcher matcher = QUERY_KEY.matcher(line);
+			if (matcher.matches()) {
+				return matcher.group(1) + (Integer.parseInt(matcher.group(2)) + queryOffset) + matcher.group(3);
+			}
+			return line;
+		}
+	}
+
+	private static final class ProteinFilter implements LineFilter {
+		private final Set<String> seen;
+
+		private ProteinFilter(final Set<String> seen) {
+			this.seen = seen;
+		}
+
+		@Override
+		public String filter(final String line) {
+			final int equals = line.indexOf('=');
+			if (equals <= 0) {
+				// Blank lines only once, at the end of the section
+				return seen.add(line) ? line : null;
+			}
+			return seen.add(line.substring(0, equals)) ? line : null;
+		}
+	}
+
+	/**
+	 * Structure of a single .dat file - where do the sections start and end.
+	 */
+	private final class DatFile {
+		private final File file;
+		private String boundary;
+		private byte[] lineEnd = {'\n'};
+		private final List<Section> sections = new ArrayList<Section>();
+		private final Map<String, Section> sectionsByName = new LinkedHashMap<String, Section>();
+		/**
+		 * Number of queries in this file.
+		 */
+		private int queries;
+		/**
+		 * Added to the query numbers of this file.
+		 */
+		private final int queryOffset;
+
+		private DatFile(final File file) {
+			this.file = file;
+			queryOffset = inputs.isEmpty() ? 0 : inputs.get(inputs.size() - 1).queryOffset + inputs.get(inputs.size() - 1).queries;
+			InputStream stream = null;
+			try {
+				stream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+				scan(new LineScanner(stream, 0));
+			} catch (IOException e) {
+				throw new MprcException("Could not read Mascot result " + file.getAbsolutePath(), e);
+			} finally {
+				FileUtilities.closeQuietly(stream);
+			}
+			if (sections.isEmpty()) {
+				throw new MprcException("Not a Mascot result file: " + file.getAbsolutePath());
+			}
+		}
+
+		private void scan(final LineScanner scanner) throws IOException {
+			String line;
+			Section current = null;
+			int maxQuery = 0;
+			while (true) {
+				final long offset = scanner.getOffset();
+				final int lineNumber = scanner.getLineNumber();
+				line = scanner.readLine();
+				if (line == null) {
+					break;
+				}
+				if (boundary == null) {
+					final Matcher matcher = BOUNDARY.matcher(line);
+					if (matcher.find()) {
+						boundary = matcher.group(1).replace("\"", "");
+						lineEnd = scanner.isCrLf() ? new byte[]{'\r', '\n'} : new byte[]{'\n'};
+					}
+					continue;
+				}
+				if (line.startsWith("--" + boundary)) {
+					if (current != null) {
+						current.endOffset = offset;
+						current = null;
+					}
+					if (line.equals("--" + boundary)) {
+						current = new Section(offset, lineNumber);
+					}
+				} else if (current != null && current.name == null) {
+					final Matcher matcher = SECTION_NAME.matcher(line);
+					if (matcher.find()) {
+						current.name = matcher.group(1);
+						current.contentOffset = scanner.getOffset();
+						sections.add(current);
+						sectionsByName.put(current.name, current);
+						final Matcher query = QUERY_SECTION.matcher(current.name);
+						if (query.matches()) {
+							maxQuery = Math.max(maxQuery, Integer.parseInt(query.group(1)));
+						}
+					}
+				} else if (current != null && HEADER.equals(current.name)) {
+					final Matcher matcher = QUERIES.matcher(line);
+					if (matcher.matches()) {
+						queries = Integer.parseInt(matcher.group(1));
+					}
+				}
+			}
+			if (current != null) {
+				current.endOffset = scanner.getOffset();
+			}
+			queries = Math.max(queries, maxQuery);
+		}
+
+		private Section getSection(final String name) {
+			return sectionsByName.get(name);
+		}
+	}
+
+	private static final class Section {
+		private String name;
+		/**
+		 * Where the section boundary line starts.
+		 */
+		private final long boundaryOffset;
+		/**
+		 * Line number of the section boundary line.
+		 */
+		private final int boundaryLine;
+		/**
+		 * Where the content after the Content-Type line starts.
+		 */
+		private long contentOffset;
+		/**
+		 * Where the next boundary starts.
+		 */
+		private long endOffset;
+
+		private Section(final long boundaryOffset, final int boundaryLine) {
+			this.boundaryOffset = boundaryOffset;
+			this.boundaryLine = boundaryLine;
+		}
+	}
+
+	/**
+	 * Reads lines of bytes as ISO-8859-1, so they can be written out unchanged, keeping track of the offset.
+	 */
+	private static final class LineScanner {
+		private final InputStream stream;
+		private long offset;
+		private int lineNumber;
+		private boolean crLf;
+		private final StringBuilder line = new StringBuilder(256);
+
+		private LineScanner(final InputStream stream, final long offset) {
+			this.stream = stream;
+			this.offset = offset;
+		}
+
+		public String readLine() throws IOException {
+			line.setLength(0);
+			int c;
+			boolean any = false;
+			while ((c = stream.read()) != -1) {
+				any = true;
+				offset++;
+				if (c == '\n') {
+					break;
+				}
+				line.append((char) c);
+			}
+			if (!any) {
+				return null;
+			}
+			lineNumber++;
+			crLf = line.length() > 0 && line.charAt(line.length() - 1) == '\r';
+			if (crLf) {
+				line.setLength(line.length() - 1);
+			}
+			return line.toString();
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public int getLineNumber() {
+			return lineNumber;
+		}
+
+		public boolean isCrLf() {
+			return crLf;
+		}
+	}
+}
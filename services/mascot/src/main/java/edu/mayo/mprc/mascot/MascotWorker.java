@@ -1,6 +1,7 @@
 package edu.mayo.mprc.mascot;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.config.DaemonConfig;
 import edu.mayo.mprc.config.DependencyResolver;
@@ -15,10 +16,13 @@ import edu.mayo.mprc.daemon.worker.WorkerBase;
 import edu.mayo.mprc.daemon.worker.WorkerFactoryBase;
 import edu.mayo.mprc.searchengine.EngineFactory;
 import edu.mayo.mprc.searchengine.EngineMetadata;
+import edu.mayo.mprc.searchengine.MgfSplitter;
 import edu.mayo.mprc.utilities.FileUtilities;
 import edu.mayo.mprc.utilities.FormScraper;
 import edu.mayo.mprc.utilities.StreamRegExMatcher;
+import edu.mayo.mprc.utilities.log.ParentLog;
 import edu.mayo.mprc.utilities.progress.PercentDone;
+import edu.mayo.mprc.utilities.progress.ProgressInfo;
 import edu.mayo.mprc.utilities.progress.UserProgressReporter;
 import org.apache.log4j.Logger;
 import org.springframework.stereotype.Component;
@@ -36,6 +40,10 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,10 +53,23 @@ import java.util.regex.Pattern;
 public final class MascotWorker extends WorkerBase {
 	private static final Logger LOGGER = Logger.getLogger(MascotWorker.class);
 
-	private static final int BUFFER_SIZE = 8192;
+	private static final int BUFFER_SIZE = 64 * 1024;
 	private static final Pattern PERCENT_DONE = Pattern.compile("^\\.*(\\d+)\\% complete\\s*$");
 	public static final String MASCOT_URL = "mascotUrl";
 	private static final String MASCOT_PUBLIC_URL = "mascotPublicUrl";
+	public static final String MAX_SHARD_SIZE = "maxShardSize";
+	public static final String MAX_CONCURRENT_SHARDS = "maxConcurrentShards";
+	public static final String CHUNKED_UPLOAD = "chunkedUpload";
+
+	/**
+	 * Default maximum size of an .mgf file searched at once, in megabytes. Bigger files are split into shards.
+	 */
+	public static final int DEFAULT_MAX_SHARD_SIZE = 1024;
+	/**
+	 * Default number of shards submitted to Mascot at the same time.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_SHARDS = 2;
+	private static final long BYTES_PER_MB = 1024L * 1024L;
 	public static final String TYPE = "mascot";
 	public static final String NAME = "Mascot";
 	public static final String DESC = "<a href=\"http://www.matrixscience.com/\">Mascot search engine</a> support.<p>Swift was tested against Mascot 2.2 and 2.4 without enabled security.</p>";
@@ -59,12 +80,13 @@ public final class MascotWorker extends WorkerBase {
 	 * An URL the users can use to access Mascot from their workstations. Typically identical to the internal mascot URL.
 	 */
 	private URL publicBaseUrl;
-	private HttpURLConnection connection;
-	private WritableByteChannel channel;
 	private String boundary;
-	private File mascotOutputFile;
 	private final Charset charset = Charset.forName("UTF-8");
 
+	private long maxShardBytes = DEFAULT_MAX_SHARD_SIZE * BYTES_PER_MB;
+	private int maxConcurrentShards = DEFAULT_MAX_CONCURRENT_SHARDS;
+	private boolean chunkedUpload;
+
 	private static final Pattern DB_TAG_PATTERN = Pattern.compile("\\$\\{(?:DB|DBPath):([^}]+)\\}");
 	private static final Pattern INPUT_FORMAT_PATTERN = Pattern.compile("\\$\\{InputFormat\\}");
 
@@ -90,7 +112,6 @@ public final class MascotWorker extends WorkerBase {
 					mascotWorkPacket.getInputFile().getAbsolutePath(),
 					outputFile.getAbsolutePath(),
 					mascotWorkPacket.getShortDbName()));
-			setMascotOutputFile(outputFile);
 
 			final String extension = FileUtilities.getExtension(mascotWorkPacket.getInputFile().getName()).toLowerCase(Locale.US);
 			final String inputFormat;
@@ -113,10 +134,12 @@ public final class MascotWorker extends WorkerBase {
 			matcher.close();
 
 			// Now we can run the search
-			search(
-					mascotParams,
-					mascotWorkPacket.getInputFile().getAbsolutePath(),
-					progressReporter);
+			final File inputFile = mascotWorkPacket.getInputFile();
+			if ("mgf".equals(extension) && inputFile.length() > maxShardBytes) {
+				searchSharded(mascotParams, inputFile, outputFile, tempWorkFolder, progressReporter);
+			} else {
+				search(mascotParams, inputFile.getAbsolutePath(), outputFile, progressReporter);
+			}
 
 			publish(outputFile, finalOutputFile);
 		} catch (final Exception e) {
@@ -145,8 +168,26 @@ public final class MascotWorker extends WorkerBase {
 		}
 	}
 
-	private void setMascotOutputFile(final File file) {
-		mascotOutputFile = file;
+	/**
+	 * @param maxShardBytes .mgf files larger than this are split into shards that are searched separately.
+	 */
+	public void setMaxShardBytes(final long maxShardBytes) {
+		this.maxShardBytes = maxShardBytes;
+	}
+
+	/**
+	 * @param maxConcurrentShards How many shards to submit to Mascot at the same time.
+	 */
+	public void setMaxConcurrentShards(final int maxConcurrentShards) {
+		this.maxConcurrentShards = maxConcurrentShards;
+	}
+
+	/**
+	 * @param chunkedUpload Upload using chunked transfer encoding instead of announcing the length upfront.
+	 *                      Not supported by Mascot 2.2 on IIS 6.0.
+	 */
+	public void setChunkedUpload(final boolean chunkedUpload) {
+		this.chunkedUpload = chunkedUpload;
 	}
 
 	private ByteBuffer getFormBodyTop(final Map<String, String> hash) {
@@ -176,7 +217,8 @@ public final class MascotWorker extends WorkerBase {
 		return charset.encode("\r\n--" + boundary + "--\r\n");
 	}
 
-	public void setupPOSTConnection(final int len) {
+	private HttpURLConnection setupPOSTConnection(final long len) {
+		HttpURLConnection connection = null;
 		try {
 			connection = (HttpURLConnection) datFileBaseUrl.openConnection();
 		} catch (final Exception e) {
@@ -185,25 +227,34 @@ public final class MascotWorker extends WorkerBase {
 
 		try {
 			connection.setRequestMethod("POST");
-			// We must not use _connection.setChunkedStreamingMode(BUFFER_SIZE); here. This seems to be not supported
-			// by mascot 2.2 on IIS 6.0. However, if we do not specify content length at all, we run out of heap space.
+			// Chunked streaming is not supported by mascot 2.2 on IIS 6.0, so by default we send the length.
+			// If we do not specify content length at all, we run out of heap space.
 			// See http://forum.java.sun.com/thread.jspa?threadID=418441&messageID=2816084 for mor information
-			connection.setFixedLengthStreamingMode(len);
+			if (chunkedUpload) {
+				connection.setChunkedStreamingMode(BUFFER_SIZE);
+			} else if (len > Integer.MAX_VALUE) {
+				throw new MprcException("Cannot upload " + len + " bytes to Mascot at once, enable chunked upload or lower the maximum shard size");
+			} else {
+				connection.setFixedLengthStreamingMode((int) len);
+				connection.setRequestProperty("Content-Length", Long.toString(len));
+			}
 			connection.setDoOutput(true);
 			connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" +
 					boundary);
-			connection.setRequestProperty("Content-Length", Integer.toString(len));
 			connection.setRequestProperty("Connection", "Keep-Alive");
 			connection.setRequestProperty("Keep-Alive", "300");
+		} catch (final MprcException e) {
+			throw e;
 		} catch (final Exception e) {
 			die("POST error", e);
 		}
+		return connection;
 	}
 
 	/**
 	 * @return Returns the path to the resulting Mascot .dat file
 	 */
-	private String getPOSTResponse(final UserProgressReporter progressReporter) {
+	private String getPOSTResponse(final HttpURLConnection connection, final UserProgressReporter progressReporter) {
 		final StringBuilder completePage = new StringBuilder();
 		BufferedReader rreader = null;
 		try {
@@ -256,7 +307,6 @@ public final class MascotWorker extends WorkerBase {
 	}
 
 	private void getDatFile(final URL url, final File outputFile) {
-		int pos = 0;
 		final byte[] buffer = new byte[BUFFER_SIZE];
 
 		InputStream in = null;
@@ -266,14 +316,17 @@ public final class MascotWorker extends WorkerBase {
 			final URLConnection connection = url.openConnection();
 			in = connection.getInputStream();
 			out = new FileOutputStream(outputFile);
-			final int len = connection.getContentLength();
+			long pos = 0;
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				pos += read;
+			}
+			out.close();
 
-			while (pos < len) {
-				if (in.available() > 0) {
-					final int read = in.read(buffer);
-					pos += read;
-					out.write(buffer, 0, read);
-				}
+			final String contentLength = connection.getHeaderField("Content-Length");
+			if (contentLength != null && Long.parseLong(contentLength.trim()) != pos) {
+				throw new MprcException("Expected " + contentLength + " bytes, got " + pos);
 			}
 		} catch (final Exception t) {
 			throw new MprcException("Could not obtain Mascot .dat file from " + url.toString() + " as " + outputFile.getAbsolutePath(), t);
@@ -283,11 +336,60 @@ public final class MascotWorker extends WorkerBase {
 		}
 	}
 
-	private File getOutputFile() {
-		return mascotOutputFile;
+	/**
+	 * Split the .mgf into shards, search them concurrently and merge the resulting .dat files.
+	 */
+	private void searchSharded(final String parameters, final File inputFile, final File outputFile, final File tempWorkFolder,
+	                           final UserProgressReporter progressReporter) {
+		final File shardFolder = new File(tempWorkFolder, FileUtilities.stripExtension(outputFile.getName()) + ".shards");
+		final List<File> shards = MgfSplitter.split(inputFile, shardFolder, maxShardBytes);
+		try {
+			if (shards.size() <= 1) {
+				search(parameters, inputFile.getAbsolutePath(), outputFile, progressReporter);
+				return;
+			}
+			LOGGER.info("Searching " + inputFile.getAbsolutePath() + " in " + shards.size() + " shards, " + maxConcurrentShards + " at a time");
+
+			final ShardProgress shardProgress = new ShardProgress(progressReporter, shards.size());
+			final List<File> dats = new ArrayList<File>(shards.size());
+			final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrentShards),
+					new ThreadFactoryBuilder()
+							.setNameFormat("mascot-shard-%d")
+							.setDaemon(true)
+							.build());
+			try {
+				final List<Future<?>> searches = new ArrayList<Future<?>>(shards.size());
+				for (int i = 0; i < shards.size(); i++) {
+					final File shard = shards.get(i);
+					final File dat = new File(shardFolder, FileUtilities.stripExtension(shard.getName()) + ".dat");
+					dats.add(dat);
+					final UserProgressReporter reporter = shardProgress.forShard(i);
+					searches.add(executor.submit(new Runnable() {
+						@Override
+						public void run() {
+							search(parameters, shard.getAbsolutePath(), dat, reporter);
+						}
+					}));
+				}
+				for (final Future<?> search : searches) {
+					search.get();
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MprcException("Mascot search of " + inputFile.getAbsolutePath() + " was interrupted", e);
+			} catch (final ExecutionException e) {
+				throw new MprcException("Mascot search of a shard of " + inputFile.getAbsolutePath() + " failed", e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+
+			MascotDatMerger.merge(dats, inputFile, outputFile);
+		} finally {
+			FileUtilities.cleanupTempFile(shardFolder);
+		}
 	}
 
-	public void search(final String parameters, final String data, final UserProgressReporter progressReporter) {
+	public void search(final String parameters, final String data, final File outputFile, final UserProgressReporter progressReporter) {
 		if (!new File(data.trim()).exists()) {
 			throw new MprcException("data file does not exist: " + data.trim());
 		}
@@ -327,41 +429,42 @@ public final class MascotWorker extends WorkerBase {
 		}
 		final long length = dataLength + buffer.limit() + buffer2.limit() + buffer3.limit();
 
-		setupPOSTConnection((int) length);
+		final HttpURLConnection connection = setupPOSTConnection(length);
 
-		// try the niochannel approach
+		WritableByteChannel channel = null;
 		try {
 			channel = Channels.newChannel(connection.getOutputStream());
 			channel.write(buffer);
 			channel.write(buffer2);
 
-			// this only works if dealing with less than 20 Meg
+			final ByteBuffer chunk = ByteBuffer.allocate(BUFFER_SIZE);
 			long position = 0L;
-			long amount = 0L;
 			try {
-				while (position < dataLength) {
-					amount = mgfChannel.transferTo(position, dataLength - position, channel);
-					position += amount;
+				while (mgfChannel.read(chunk) != -1) {
+					chunk.flip();
+					while (chunk.hasRemaining()) {
+						position += channel.write(chunk);
+					}
+					chunk.clear();
 				}
 			} catch (final Exception t) {
-				LOGGER.debug("transferred " + position + "bytes, last chunk was " + amount + " bytes.");
-				throw new MprcException("nio approach failed, " + t.getMessage(), t);
+				throw new MprcException("upload failed after " + position + " bytes, " + t.getMessage(), t);
 			}
 
 			channel.write(buffer3);
 		} catch (final Exception e) {
-			throw new MprcException("nio channel write failed, " + e.getMessage(), e);
+			throw new MprcException("channel write failed, " + e.getMessage(), e);
 		} finally {
 			FileUtilities.closeQuietly(mgfChannel);
 			FileUtilities.closeQuietly(channel);
 		}
 
-		final String filePath = getPOSTResponse(progressReporter);
+		final String filePath = getPOSTResponse(connection, progressReporter);
 		try {
 			progressReporter.reportProgress(
 					new MascotResultUrl(
 							new URL(publicBaseUrl, "cgi/master_results.pl?file=" + filePath).toString()));
-			getDatFile(new URL(datFileBaseUrl, filePath), getOutputFile());
+			getDatFile(new URL(datFileBaseUrl, filePath), outputFile);
 		} catch (final Exception e) {
 			throw new MprcException("Cannot obtain mascot result", e);
 		}
@@ -399,6 +502,46 @@ public final class MascotWorker extends WorkerBase {
 		return "Mascot worker for URL: " + datFileBaseUrl.toString();
 	}
 
+	/**
+	 * Reports the average percent done over all the shards.
+	 */
+	private static final class ShardProgress {
+		private final UserProgressReporter reporter;
+		private final double[] percentDone;
+
+		private ShardProgress(final UserProgressReporter reporter, final int shards) {
+			this.reporter = reporter;
+			percentDone = new double[shards];
+		}
+
+		public UserProgressReporter forShard(final int shard) {
+			return new UserProgressReporter() {
+				@Override
+				public void reportProgress(final ProgressInfo progressInfo) {
+					if (progressInfo instanceof PercentDone) {
+						reporter.reportProgress(update(shard, ((PercentDone) progressInfo).getPercentDone()));
+					} else {
+						reporter.reportProgress(progressInfo);
+					}
+				}
+
+				@Override
+				public ParentLog getLog() {
+					return reporter.getLog();
+				}
+			};
+		}
+
+		private synchronized PercentDone update(final int shard, final double percent) {
+			percentDone[shard] = percent;
+			double total = 0;
+			for (final double value : percentDone) {
+				total += value;
+			}
+			return new PercentDone(total / percentDone.length);
+		}
+	}
+
 	/**
 	 * A factory capable of creating the worker
 	 */
@@ -420,9 +563,24 @@ public final class MascotWorker extends WorkerBase {
 			} catch (final MalformedURLException e) {
 				throw new MprcException("Not a valid mascot url: " + config.get(MASCOT_URL), e);
 			}
+			worker.setMaxShardBytes(getInt(config, MAX_SHARD_SIZE, DEFAULT_MAX_SHARD_SIZE) * BYTES_PER_MB);
+			worker.setMaxConcurrentShards(getInt(config, MAX_CONCURRENT_SHARDS, DEFAULT_MAX_CONCURRENT_SHARDS));
+			worker.setChunkedUpload(Boolean.parseBoolean(config.get(CHUNKED_UPLOAD)));
 			return worker;
 		}
 
+		private static int getInt(final Config config, final String key, final int defaultValue) {
+			final String value = config.get(key);
+			if (value == null || value.trim().isEmpty()) {
+				return defaultValue;
+			}
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (final NumberFormatException e) {
+				throw new MprcException("Not a valid number for " + key + ": " + value, e);
+			}
+		}
+
 		public MascotMappingFactory getMappingFactory() {
 			return mappingFactory;
 		}
@@ -460,7 +618,19 @@ public final class MascotWorker extends WorkerBase {
 		public void createUI(final DaemonConfig daemon, final ResourceConfig resource, final UiBuilder builder) {
 			builder
 					.property(MASCOT_URL, "URL", "Mascot search engine URL.<p>This URL is used by Swift to give commands to Mascot.</p>").required()
-					.property(MASCOT_PUBLIC_URL, "Public URL", "Mascot URL to be used when accessing Mascot by the users.<p>If not specified, the URL (above) will be used.");
+					.property(MASCOT_PUBLIC_URL, "Public URL", "Mascot URL to be used when accessing Mascot by the users.<p>If not specified, the URL (above) will be used.")
+
+					.property(MAX_SHARD_SIZE, "Maximum shard size (MB)", "Larger .mgf files are split into shards that are searched separately, the results are merged.<p>Has to stay below 2048 unless chunked upload is enabled.</p>")
+					.integerValue(1, null)
+					.defaultValue(String.valueOf(DEFAULT_MAX_SHARD_SIZE))
+
+					.property(MAX_CONCURRENT_SHARDS, "Concurrent shards", "How many shards of a single file to submit to Mascot at the same time.")
+					.integerValue(1, null)
+					.defaultValue(String.valueOf(DEFAULT_MAX_CONCURRENT_SHARDS))
+
+					.property(CHUNKED_UPLOAD, "Chunked upload", "Upload the input files using chunked transfer encoding.<p>Not supported by Mascot 2.2 on IIS 6.0.</p>")
+					.boolValue()
+					.defaultValue(Boolean.toString(Boolean.FALSE));
 		}
 	}
 }
@@ -0,0 +1,241 @@
+package edu.mayo.mprc.mascot;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.log.ParentLog;
+import edu.mayo.mprc.utilities.log.SimpleParentLog;
+import edu.mayo.mprc.utilities.progress.ProgressInfo;
+import edu.mayo.mprc.utilities.progress.UserProgressReporter;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a sharded search against a local stand-in for <tt>nph-mascot.exe</tt>.
+ * The stand-in reports one query per uploaded spectrum, with the spectrum title.
+ *
+ * @author Roman Zenka
+ */
+public final class TestShardedMascotSearch {
+	private static final String BOUNDARY = "gc0p4Jq0M2Yt08jU534c0p";
+	private static final Pattern TITLE = Pattern.compile("TITLE=(.*?)\r?\n");
+	private static final Pattern FILENAME = Pattern.compile("name=\"FILE\"; filename=\"([^\"]*)\"");
+	private static final int SPECTRA = 7;
+
+	private File folder;
+	private HttpServer server;
+	private final Map<String, byte[]> results = new ConcurrentHashMap<String, byte[]>();
+	private final AtomicInteger searches = new AtomicInteger(0);
+	private final AtomicInteger running = new AtomicInteger(0);
+	private final AtomicInteger maxRunning = new AtomicInteger(0);
+	private volatile boolean chunked;
+
+	@BeforeMethod
+	public void setup() throws IOException {
+		folder = FileUtilities.createTempFolder();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/cgi/nph-mascot.exe", new SearchHandler());
+		server.createContext("/data/", new ResultHandler());
+		server.start();
+	}
+
+	@AfterMethod
+	public void teardown() {
+		server.stop(0);
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldMergeShardResults() throws IOException {
+		final File mgf = new File(folder, "test.mgf");
+		final StringBuilder content = new StringBuilder("CHARGE=2+\n");
+		for (int i = 1; i <= SPECTRA; i++) {
+			content.append("BEGIN IONS\nTITLE=spectrum ").append(i).append("\nPEPMASS=").append(500 + i).append("\n100.0 1.0\n200.0 2.0\nEND IONS\n");
+		}
+		Files.write(content.toString(), mgf, Charsets.US_ASCII);
+
+		final MascotWorker worker = new MascotWorker();
+		final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/");
+		worker.setUrl(url);
+		worker.setPublicUrl(url);
+		worker.setMaxShardBytes(100);
+		worker.setMaxConcurrentShards(2);
+		worker.setChunkedUpload(true);
+
+		final File dat = new File(folder, "test.dat");
+		final File work = new File(folder, "work");
+		FileUtilities.ensureFolderExists(work);
+		worker.process(new MascotWorkPacket(dat, "COM=test\nDB=${DB:Current_SP}\nFORMAT=${InputFormat}\n", mgf, "Current_SP", false, false),
+				work, new NullReporter());
+
+		Assert.assertTrue(searches.get() > 2, "The file must be searched in several shards, was " + searches.get());
+		Assert.assertTrue(maxRunning.get() <= 2, "At most 2 shards are searched at once, was " + maxRunning.get());
+		Assert.assertTrue(chunked, "The upload has to be chunked");
+
+		final List<String> lines = Files.readLines(dat, Charsets.ISO_8859_1);
+		Assert.assertTrue(lines.contains("queries=" + SPECTRA));
+		Assert.assertEquals(count(lines, "FILE="), 1);
+		Assert.assertTrue(lines.contains("FILE=" + mgf.getAbsolutePath()), "The merged result names the original input, not a shard");
+		Assert.assertEquals(count(lines, "\"SHARED\"="), 1, "Each protein is listed once");
+		for (int i = 1; i <= SPECTRA; i++) {
+			Assert.assertTrue(lines.contains("qexp" + i + "=" + (500 + i) + ",2+"), "Summary of query " + i);
+			Assert.assertTrue(lines.contains("q" + i + "_p1=0,spectrum " + i), "Peptide of query " + i);
+			final int section = lines.indexOf("Content-Type: application/x-Mascot; name=\"query" + i + "\"");
+			Assert.assertEquals(lines.get(section + 2), "title=spectrum " + i, "Query " + i + " has to keep its title");
+		}
+		Assert.assertEquals(count(lines, "num_hits="), 0, "Protein hits are not merged");
+		Assert.assertEquals(lines.get(lines.size() - 1), "--" + BOUNDARY + "--");
+
+		// The index points at the section boundaries
+		final int index = lines.indexOf("Content-Type: application/x-Mascot; name=\"index\"");
+		for (final String line : lines.subList(index + 2, lines.size() - 1)) {
+			final String name = line.substring(0, line.indexOf('='));
+			final int position = Integer.parseInt(line.substring(line.indexOf('=') + 1));
+			Assert.assertEquals(lines.get(position), "--" + BOUNDARY, "Index of " + name);
+			Assert.assertEquals(lines.get(position + 1), "Content-Type: application/x-Mascot; name=\"" + name + "\"");
+		}
+	}
+
+	private static int count(final List<String> lines, final String prefix) {
+		int count = 0;
+		for (final String line : lines) {
+			if (line.startsWith(prefix)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Builds a .dat file with one query per spectrum.
+	 */
+	private static String createDat(final String fileName, final List<String> titles) {
+		final List<String> lines = new ArrayList<String>();
+		final List<String> index = new ArrayList<String>();
+		lines.add("MIME-Version: 1.0 (Generated by Mascot version 1.0)");
+		lines.add("Content-Type: multipart/mixed; boundary=" + BOUNDARY);
+		lines.add("");
+
+		section(lines, index, "parameters", "COM=test", "FILE=" + fileName);
+		section(lines, index, "header", "sequences=100", "queries=" + titles.size());
+		final List<String> summary = new ArrayList<String>();
+		final List<String> peptides = new ArrayList<String>();
+		for (int i = 1; i <= titles.size(); i++) {
+			final String mass = titles.get(i - 1).substring("spectrum ".length());
+			summary.add("qexp" + i + "=" + (500 + Integer.parseInt(mass)) + ",2+");
+			peptides.add("q" + i + "_p1=0," + titles.get(i - 1));
+			peptides.add("q" + i + "_p1_terms=K,-");
+		}
+		summary.add("num_hits=1");
+		summary.add("h1=SHARED,1.0");
+		section(lines, index, "summary", summary.toArray(new String[summary.size()]));
+		section(lines, index, "peptides", peptides.toArray(new String[peptides.size()]));
+		section(lines, index, "proteins", "\"SHARED\"=1000.0,\"Shared protein\"", "\"" + titles.get(0) + "\"=2000.0,\"First protein\"");
+		for (int i = 1; i <= titles.size(); i++) {
+			section(lines, index, "query" + i, "title=" + titles.get(i - 1), "index=" + (i - 1));
+		}
+		section(lines, index, "index", index.toArray(new String[index.size()]));
+		lines.add("--" + BOUNDARY + "--");
+
+		final StringBuilder dat = new StringBuilder();
+		for (final String line : lines) {
+			dat.append(line).append('\n');
+		}
+		return dat.toString();
+	}
+
+	private static void section(final List<String> lines, final List<String> index, final String name, final String... content) {
+		index.add(name + "=" + lines.size());
+		lines.add("--" + BOUNDARY);
+		lines.add("Content-Type: application/x-Mascot; name=\"" + name + "\"");
+		lines.add("");
+		for (final String line : content) {
+			lines.add(line);
+		}
+	}
+
+	private final class SearchHandler implements HttpHandler {
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			final int nowRunning = running.incrementAndGet();
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), nowRunning));
+			}
+			try {
+				if ("chunked".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Transfer-encoding"))) {
+					chunked = true;
+				}
+				final String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.ISO_8859_1);
+				final List<String> titles = new ArrayList<String>();
+				final Matcher matcher = TITLE.matcher(body);
+				while (matcher.find()) {
+					titles.add(matcher.group(1));
+				}
+				final Matcher fileName = FILENAME.matcher(body);
+				final String name = "F" + searches.incrementAndGet() + ".dat";
+				results.put(name, createDat(fileName.find() ? fileName.group(1) : "", titles).getBytes(Charsets.ISO_8859_1));
+				// Give the other shards a chance to overlap
+				Thread.sleep(50);
+
+				respond(exchange, ("<html><body>Searching\n.....50% complete\n" +
+						"<A HREF=\"../cgi/master_results.pl?file=../data/" + name + "\">Click here to see Search Report</A>\n" +
+						"</body></html>\n").getBytes(Charsets.ISO_8859_1));
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	private final class ResultHandler implements HttpHandler {
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			final String path = exchange.getRequestURI().getPath();
+			final byte[] result = results.get(path.substring(path.lastIndexOf('/') + 1));
+			if (result == null) {
+				exchange.sendResponseHeaders(404, -1);
+				exchange.close();
+				return;
+			}
+			respond(exchange, result);
+		}
+	}
+
+	private static void respond(final HttpExchange exchange, final byte[] response) throws IOException {
+		exchange.sendResponseHeaders(200, response.length);
+		final OutputStream body = exchange.getResponseBody();
+		body.write(response);
+		body.close();
+	}
+
+	private static final class NullReporter implements UserProgressReporter {
+		@Override
+		public void reportProgress(final ProgressInfo progressInfo) {
+		}
+
+		@Override
+		public ParentLog getLog() {
+			return new SimpleParentLog();
+		}
+	}
+}
@@ -1,8 +1,12 @@
 package edu.mayo.mprc.msmseval;
 
+import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.io.ValueSeparatedFileReader;
+import edu.mayo.mprc.io.mgf.MzXmlConverter;
 import edu.mayo.mprc.io.mgf.SpectrumNumberExtractor;
+import edu.mayo.mprc.utilities.FileUtilities;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -25,6 +29,59 @@ final class MSMSEvalOutputFileFormatter {
 	 * @throws IOException
 	 */
 	public static File replaceMzXMLScanIdsWithMgfNumbers(final File msmsEvalOutputFile, final File formattedOutputFile, final Map<Integer, String> mzXMLScanToMGFTitle) throws IOException {
+		final SpectrumNumberExtractor spectrumNumberExtractor = new SpectrumNumberExtractor();
+		int maxScan = 0;
+		for (final Integer scan : mzXMLScanToMGFTitle.keySet()) {
+			maxScan = Math.max(maxScan, scan);
+		}
+		final int[] spectrumNumbers = new int[maxScan + 1];
+		for (final Map.Entry<Integer, String> entry : mzXMLScanToMGFTitle.entrySet()) {
+			spectrumNumbers[entry.getKey()] = spectrumNumberExtractor.extractSpectrumNumberFromTitle(entry.getValue());
+		}
+		return replaceMzXMLScanIdsWithMgfNumbers(msmsEvalOutputFile, formattedOutputFile, spectrumNumbers);
+	}
+
+	/**
+	 * Same as {@link #replaceMzXMLScanIdsWithMgfNumbers(File, File, Map)}, with the scan to title mapping
+	 * loaded from a side file produced by {@link MzXmlConverter#convert(File, File, boolean, File)}.
+	 * Only the spectrum numbers are kept in memory, not the titles.
+	 */
+	public static File replaceMzXMLScanIdsWithMgfNumbers(final File msmsEvalOutputFile, final File formattedOutputFile, final File scanTitleFile) throws IOException {
+		return replaceMzXMLScanIdsWithMgfNumbers(msmsEvalOutputFile, formattedOutputFile, readSpectrumNumbers(scanTitleFile));
+	}
+
+	/**
+	 * @return Array indexed by mzXML scan number, containing the spectrum number extracted from the spectrum title.
+	 */
+	static int[] readSpectrumNumbers(final File scanTitleFile) throws IOException {
+		final SpectrumNumberExtractor spectrumNumberExtractor = new SpectrumNumberExtractor();
+		final BufferedReader reader = FileUtilities.getReader(scanTitleFile);
+		try {
+			int[] spectrumNumbers = new int[1000];
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null) {
+					break;
+				}
+				final int separator = line.indexOf(MzXmlConverter.SCAN_TITLE_SEPARATOR);
+				if (separator < 0) {
+					throw new MprcException("Wrong format of scan to title file " + scanTitleFile.getAbsolutePath() + ": " + line);
+				}
+				final int scan = Integer.parseInt(line.substring(0, separator));
+				if (scan >= spectrumNumbers.length) {
+					final int[] newSpectrumNumbers = new int[Math.max(scan + 1, spectrumNumbers.length * 2)];
+					System.arraycopy(spectrumNumbers, 0, newSpectrumNumbers, 0, spectrumNumbers.length);
+					spectrumNumbers = newSpectrumNumbers;
+				}
+				spectrumNumbers[scan] = spectrumNumberExtractor.extractSpectrumNumberFromTitle(line.substring(separator + 1));
+			}
+			return spectrumNumbers;
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+	}
+
+	private static File replaceMzXMLScanIdsWithMgfNumbers(final File msmsEvalOutputFile, final File formattedOutputFile, final int[] spectrumNumbers) throws IOException {
 		ValueSeparatedFileReader valueSeparatedFileReader = null;
 		BufferedWriter bufferedWriter = null;
 
@@ -32,8 +89,6 @@ final class MSMSEvalOutputFileFormatter {
 			valueSeparatedFileReader = new ValueSeparatedFileReader(msmsEvalOutputFile, ",");
 			bufferedWriter = new BufferedWriter(new FileWriter(formattedOutputFile));
 
-			final SpectrumNumberExtractor spectrumNumberExtractor = new SpectrumNumberExtractor();
-
 			List<String> row = null;
 
 			boolean wroteColumnHeaders = false;
@@ -43,7 +98,7 @@ final class MSMSEvalOutputFileFormatter {
 
 				if (wroteColumnHeaders) {
 					//Replace the current
-					row.set(0, Integer.toString(spectrumNumberExtractor.extractSpectrumNumberFromTitle(mzXMLScanToMGFTitle.get(Integer.parseInt(row.get(0))))));
+					row.set(0, Integer.toString(spectrumNumbers[Integer.parseInt(row.get(0))]));
 				} else {
 					wroteColumnHeaders = true;
 				}
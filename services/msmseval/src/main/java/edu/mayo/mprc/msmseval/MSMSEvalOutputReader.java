@@ -3,26 +3,26 @@ package edu.mayo.mprc.msmseval;
 import com.google.common.base.Joiner;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.io.KeyedTsvReader;
+import edu.mayo.mprc.io.LongOffsetIndex;
+import edu.mayo.mprc.io.MappedTextFile;
+import edu.mayo.mprc.io.TsvScanner;
 import edu.mayo.mprc.utilities.StringUtilities;
 import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * A class capable of reading msmsEval output and then responding to queries. For given scan number produces a tab-separated line
  * with msmsEval data. If the input file is null, the class will return empty output for any query.
  * <p/>
- * Right now the class simply loads the full file into memory, in the future (as we scale) we might want to do indexing
- * and serve the data from the disk.
+ * The file is memory-mapped and only the offsets of the lines are kept in memory. The lines are decoded
+ * when requested.
  */
 public final class MSMSEvalOutputReader implements KeyedTsvReader {
 	private static final Logger LOGGER = Logger.getLogger(MSMSEvalOutputReader.class);
 
-	private Map<String/*Scan ID*/, String/*The full line without scan ID*/> lines;
+	private MappedTextFile file;
+	private LongOffsetIndex lines; /* Scan ID -> the full line without scan ID */
 	private String[] header;
 	private static final String SCAN_NUM_HEADER = "Scan #";
 	/**
@@ -41,8 +41,7 @@ public final class MSMSEvalOutputReader implements KeyedTsvReader {
 	}
 
 	/**
-	 * Prepare the reader. In this implementation, the entire file is loaded at once and cached in memory (we
-	 * expect the file to have around 10000 lines).
+	 * Prepare the reader. The file is indexed at once, its lines are read on request.
 	 *
 	 * @param msmsEvalFile msmsEval file to process
 	 */
@@ -53,10 +52,11 @@ public final class MSMSEvalOutputReader implements KeyedTsvReader {
 			header = DEFAULT_HEADER;
 		} else {
 			try {
-				lines = new HashMap<String, String>();
-				parse(new BufferedReader(new FileReader(msmsEvalFile)), lines);
+				file = new MappedTextFile(msmsEvalFile);
+				lines = new LongOffsetIndex();
+				parse(file, lines);
 			} catch (Exception t) {
-				throw new MprcException("Cannot parse msmsEval output file [" + msmsEvalFile.getAbsolutePath() + "]");
+				throw new MprcException("Cannot parse msmsEval output file [" + msmsEvalFile.getAbsolutePath() + "]", t);
 			}
 		}
 	}
@@ -84,41 +84,45 @@ public final class MSMSEvalOutputReader implements KeyedTsvReader {
 		if (lines == null) {
 			return EMPTY_LINE;
 		}
-		final String line = lines.get(key);
-		if (line == null) {
+		final int slot;
+		try {
+			slot = lines.find(Long.parseLong(key));
+		} catch (NumberFormatException ignore) {
+			// SWALLOWED: not a scan number, we have no data for it
+			return EMPTY_LINE;
+		}
+		if (slot < 0) {
 			return EMPTY_LINE;
 		}
-		return line;
+		return file.getString(lines.getOffset(slot), lines.getLength(slot)).replace(',', '\t');
 	}
 
-	private void parse(final BufferedReader br, final Map<String, String> lines) {
+	private void parse(final MappedTextFile file, final LongOffsetIndex lines) {
 		try {
-			String line = br.readLine();
-			if (line == null) {
+			if (file.length() == 0) {
 				throw new MprcException("The msmsEval output has no header");
 			}
-			final String[] tmpHeader = line.split(",");
+			long lineEnd = file.lineEnd(0);
+			final String[] tmpHeader = file.getString(0, (int) lineEnd).split(",");
 			if (!SCAN_NUM_HEADER.equals(tmpHeader[0])) {
 				throw new MprcException("Unknown msmsEval output format (first column should be '" + SCAN_NUM_HEADER + "', was '" + tmpHeader[0] + "'.");
 			}
 			header = new String[tmpHeader.length - 1];
 			System.arraycopy(tmpHeader, 1, header, 0, tmpHeader.length - 1);
+			long lineStart = file.nextLine(lineEnd);
 			int ignoredLines = 0;
-			while (true) {
-				line = br.readLine();
-				if (line == null) {
-					break;
-				}
-
-				final int firstComma = line.indexOf(',');
-				if (firstComma > 0) {
+			while (lineStart < file.length()) {
+				lineEnd = file.lineEnd(lineStart);
+				final long firstComma = file.indexOf((byte) ',', lineStart, lineEnd);
+				if (firstComma > lineStart && isScanNumber(file, lineStart, firstComma)) {
 					// We have data
-					final String tabSeparatedLine = line.replace(',', '\t');
-					lines.put(line.substring(0, firstComma), tabSeparatedLine.substring(firstComma + 1));
+					final long scanNum = TsvScanner.parseLong(file.getAscii(lineStart, firstComma), 0, (int) (firstComma - lineStart));
+					lines.put(scanNum, firstComma + 1, (int) (lineEnd - firstComma - 1));
 				} else {
 					// Ignore the line
 					ignoredLines++;
 				}
+				lineStart = file.nextLine(lineEnd);
 			}
 			if (ignoredLines > 0) {
 				LOGGER.info("Ignored lines when parsing msmsEval output file: " + ignoredLines);
@@ -128,4 +132,16 @@ public final class MSMSEvalOutputReader implements KeyedTsvReader {
 		}
 	}
 
+	private static boolean isScanNumber(final MappedTextFile file, final long start, final long end) {
+		if (end - start > 18) {
+			return false;
+		}
+		for (long i = start; i < end; i++) {
+			final byte b = file.get(i);
+			if (b < '0' || b > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
 }
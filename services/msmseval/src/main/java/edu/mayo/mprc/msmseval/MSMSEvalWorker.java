@@ -21,7 +21,6 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Resource;
 import java.io.File;
 import java.util.Arrays;
-import java.util.Map;
 
 public final class MSMSEvalWorker extends WorkerBase {
 
@@ -78,6 +77,7 @@ public final class MSMSEvalWorker extends WorkerBase {
 		 */
 		final File outputMzXMLFile = MSMSEvalWorkPacket.getExpectedMzXMLOutputFileName(sourceFile, tempWorkFolder);
 		final File msmsEvalOutputFile = MSMSEvalWorkPacket.getExpectedMsmsEvalOutputFileName(sourceFile, tempWorkFolder);
+		final File scanTitleFile = new File(tempWorkFolder, FileUtilities.stripExtension(sourceFile.getName()) + ".titles.tsv");
 
 		/**
 		 * Files to be published.
@@ -99,7 +99,7 @@ public final class MSMSEvalWorker extends WorkerBase {
 		try {
 			LOGGER.info("Converting mgf to mzxml.");
 
-			final Map<Integer, String> mzXMLScanToMGFTitle = getConverter().convert(sourceFile, outputMzXMLFile, true);
+			getConverter().convert(sourceFile, outputMzXMLFile, true, scanTitleFile);
 
 			LOGGER.info("Convertion mgf to mzxml completed.");
 			LOGGER.info("Created mzxml file: " + outputMzXMLFile.getAbsolutePath());
@@ -114,7 +114,7 @@ public final class MSMSEvalWorker extends WorkerBase {
 
 			LOGGER.info("Formatting msmsEval output file with mgf scan numbers.");
 
-			MSMSEvalOutputFileFormatter.replaceMzXMLScanIdsWithMgfNumbers(msmsEvalOutputFile, outputFile, mzXMLScanToMGFTitle);
+			MSMSEvalOutputFileFormatter.replaceMzXMLScanIdsWithMgfNumbers(msmsEvalOutputFile, outputFile, scanTitleFile);
 
 			LOGGER.info("Formatted msmsEval output file " + outputFile.getAbsolutePath() + " created.");
 
@@ -124,9 +124,10 @@ public final class MSMSEvalWorker extends WorkerBase {
 			throw new DaemonException(e);
 		} finally {
 			//Clean up.
-			LOGGER.info("Deleting files: [" + msmsEvalOutputFile.getAbsolutePath() + ", " + outputMzXMLFile.getAbsolutePath() + "]");
+			LOGGER.info("Deleting files: [" + msmsEvalOutputFile.getAbsolutePath() + ", " + outputMzXMLFile.getAbsolutePath() + ", " + scanTitleFile.getAbsolutePath() + "]");
 			FileUtilities.deleteNow(msmsEvalOutputFile);
 			FileUtilities.deleteNow(outputMzXMLFile);
+			FileUtilities.deleteNow(scanTitleFile);
 		}
 	}
 
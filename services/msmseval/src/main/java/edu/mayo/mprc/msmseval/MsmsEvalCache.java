@@ -39,6 +39,10 @@ public final class MsmsEvalCache extends WorkCache<MSMSEvalWorkPacket> {
 					+ "<p>Ideally, this folder would be on a fast, potentially less reliable storage.</p>")
 					.defaultValue(DEFAULT_CACHE).required()
 
+					.property(CacheConfig.MAX_CACHE_SIZE, "Maximum cache size (MB)", "When the cached files take more space than this, the least recently used ones are deleted. Set to 0 to never delete anything.")
+					.integerValue(0, null)
+					.defaultValue("0")
+
 					.property(CacheConfig.SERVICE, "MsmsEval spectrum QA", "The msmsEval engine that will do the work. The cache just caches the results.")
 					.reference("msmsEval", UiBuilder.NONE_TYPE);
 		}
@@ -6,9 +6,13 @@ import edu.mayo.mprc.config.ResourceConfig;
 import edu.mayo.mprc.config.ui.ServiceUiFactory;
 import edu.mayo.mprc.config.ui.UiBuilder;
 import edu.mayo.mprc.daemon.WorkCache;
+import edu.mayo.mprc.searchengine.ShardMerger;
+import edu.mayo.mprc.searchengine.ShardedEngineCache;
 import org.springframework.stereotype.Component;
 
-public final class MyriMatchCache extends WorkCache<MyriMatchWorkPacket> {
+import java.io.File;
+
+public final class MyriMatchCache extends ShardedEngineCache<MyriMatchWorkPacket> {
 	public static final String TYPE = "myrimatchCache";
 	public static final String NAME = "MyriMatch Cache";
 	public static final String DESC = "Caches previous MyriMatch search results. <p>Speeds up consecutive MyriMatch searches if the same file with same parameters is processed multiple times.</p>";
@@ -16,7 +20,21 @@ public final class MyriMatchCache extends WorkCache<MyriMatchWorkPacket> {
 	public MyriMatchCache() {
 	}
 
-	public static final class Config extends WorkCache.CacheConfig {
+	@Override
+	protected MyriMatchWorkPacket createShardPacket(final MyriMatchWorkPacket packet, final File shardInput, final File shardOutput) {
+		return new MyriMatchWorkPacket(shardOutput, packet.getSearchParams(), shardInput, packet.getDatabaseFile(),
+				packet.getDecoySequencePrefix(), false, packet.isFromScratch());
+	}
+
+	@Override
+	protected ShardMerger getMerger(final MyriMatchWorkPacket packet) {
+		if (packet.getOutputFile().getName().endsWith(MyriMatchWorker.MZ_IDENT_ML)) {
+			return new MzIdentMlMerger(packet.getInputFile());
+		}
+		return null;
+	}
+
+	public static final class Config extends ShardedCacheConfig {
 		public Config() {
 		}
 	}
@@ -25,7 +43,9 @@ public final class MyriMatchCache extends WorkCache<MyriMatchWorkPacket> {
 	public static final class Factory extends WorkCache.Factory<Config> {
 		@Override
 		public WorkCache createCache(final Config config, final DependencyResolver dependencies) {
-			return new MyriMatchCache();
+			final MyriMatchCache cache = new MyriMatchCache();
+			cache.setShards(config.getShards());
+			return cache;
 		}
 	}
 
@@ -38,8 +58,11 @@ public final class MyriMatchCache extends WorkCache<MyriMatchWorkPacket> {
 					.property(WorkCache.CacheConfig.CACHE_FOLDER, "MyriMatch cache folder", "When a file gets searched by MyriMatch, the result is stored in this folder. Subsequent searches of the same file with same parameters use the cached value."
 							+ "<p>Ideally, this folder would be on a fast, potentially less reliable storage.</p>")
 					.required()
-					.defaultValue(DEFAULT_CACHE)
+					.defaultValue(DEFAULT_CACHE);
 
+			ShardedCacheConfig.addShardsProperty(builder);
+
+			builder
 					.property(WorkCache.CacheConfig.SERVICE, "MyriMatch Search Engine", "The MyriMatch engine that will do the search. The cache just caches the results.")
 					.reference("myrimatch", UiBuilder.NONE_TYPE);
 		}
@@ -0,0 +1,160 @@
+package edu.mayo.mprc.myrimatch;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.searchengine.ShardMerger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges mzIdentML files produced by MyriMatch for shards of a single input.
+ * <p/>
+ * The first shard is the base. The other shards contribute their spectrum identification results, peptides,
+ * peptide evidence and the database sequences the base does not list yet. MyriMatch numbers peptides and results
+ * within each file, so the ids coming from the other shards get a suffix to stay unique.
+ * <p/>
+ * The spectrum ids were already replaced with spectrum titles by the time the shards are merged, so they do not need
+ * to be touched.
+ * <p/>
+ * The <tt>SpectraData</tt> location is changed from the first shard to the original input, as the shards get deleted
+ * after the merge.
+ *
+ * @author Roman Zenka
+ */
+final class MzIdentMlMerger implements ShardMerger {
+	private static final String NAMESPACE = "http://psidev.info/psi/pi/mzIdentML/1.1";
+	private static final String[] RENAMED_ATTRIBUTES = {"id", "peptide_ref", "peptideEvidence_ref"};
+
+	private final File input;
+
+	/**
+	 * @param input The original input file that got split into shards.
+	 */
+	MzIdentMlMerger(final File input) {
+		this.input = input;
+	}
+
+	@Override
+	public void merge(final List<File> shardOutputs, final File output) {
+		try {
+			final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+			factory.setNamespaceAware(true);
+			final DocumentBuilder builder = factory.newDocumentBuilder();
+
+			final Document base = builder.parse(shardOutputs.get(0));
+			replaceSpectraLocation(base);
+			final Element sequences = single(base, "SequenceCollection");
+			final Element results = single(base, "SpectrumIdentificationList");
+			final Set<String> dbSequences = new HashSet<String>();
+			for (final Element dbSequence : children(sequences, "DBSequence")) {
+				dbSequences.add(dbSequence.getAttribute("id"));
+			}
+
+			for (int i = 1; i < shardOutputs.size(); i++) {
+				final Document shard = builder.parse(shardOutputs.get(i));
+				final String suffix = "_shard" + (i + 1);
+				final Element shardSequences = single(shard, "SequenceCollection");
+				final Node firstPeptide = first(sequences, "Peptide");
+				for (final Element dbSequence : children(shardSequences, "DBSequence")) {
+					if (dbSequences.add(dbSequence.getAttribute("id"))) {
+						sequences.insertBefore(base.importNode(dbSequence, true), firstPeptide);
+					}
+				}
+				final Node firstEvidence = first(sequences, "PeptideEvidence");
+				for (final Element peptide : children(shardSequences, "Peptide")) {
+					sequences.insertBefore(imported(base, peptide, suffix), firstEvidence);
+				}
+				for (final Element evidence : children(shardSequences, "PeptideEvidence")) {
+					sequences.appendChild(imported(base, evidence, suffix));
+				}
+				for (final Element result : children(single(shard, "SpectrumIdentificationList"), "SpectrumIdentificationResult")) {
+					results.appendChild(imported(base, result, suffix));
+				}
+			}
+
+			final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+			transformer.setOutputProperty(OutputKeys.ENCODING, "ISO-8859-1");
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			transformer.transform(new DOMSource(base), new StreamResult(output));
+		} catch (Exception e) {
+			throw new MprcException("Could not merge mzIdentML shards into " + output.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Point the spectra at the original input. MyriMatch also lists the input path in the id of the root element.
+	 */
+	private void replaceSpectraLocation(final Document base) {
+		final NodeList spectraData = base.getElementsByTagNameNS(NAMESPACE, "SpectraData");
+		final Element root = base.getDocumentElement();
+		for (int i = 0; i < spectraData.getLength(); i++) {
+			final Element element = (Element) spectraData.item(i);
+			final String location = element.getAttribute("location");
+			if (!location.isEmpty() && root.hasAttribute("id")) {
+				root.setAttribute("id", root.getAttribute("id").replace(location, input.getAbsolutePath()));
+			}
+			element.setAttribute("location", input.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Import an element from a shard, appending a suffix to all its ids and references to peptides and peptide evidence.
+	 */
+	private static Node imported(final Document base, final Element element, final String suffix) {
+		final Element copy = (Element) base.importNode(element, true);
+		rename(copy, suffix);
+		final NodeList descendants = copy.getElementsByTagNameNS(NAMESPACE, "*");
+		for (int i = 0; i < descendants.getLength(); i++) {
+			rename((Element) descendants.item(i), suffix);
+		}
+		return copy;
+	}
+
+	private static void rename(final Element element, final String suffix) {
+		for (final String attribute : RENAMED_ATTRIBUTES) {
+			if (element.hasAttribute(attribute)) {
+				element.setAttribute(attribute, element.getAttribute(attribute) + suffix);
+			}
+		}
+	}
+
+	private static Element single(final Document document, final String name) {
+		final NodeList list = document.getElementsByTagNameNS(NAMESPACE, name);
+		if (list.getLength() != 1) {
+			throw new MprcException("Expected exactly one " + name + " element, found " + list.getLength());
+		}
+		return (Element) list.item(0);
+	}
+
+	/**
+	 * @return First child element of given name, null if there is none.
+	 */
+	private static Node first(final Element parent, final String name) {
+		final List<Element> children = children(parent, name);
+		return children.isEmpty() ? null : children.get(0);
+	}
+
+	private static List<Element> children(final Element parent, final String name) {
+		final List<Element> result = new ArrayList<Element>();
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node instanceof Element && name.equals(node.getLocalName())) {
+				result.add((Element) node);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,64 @@
+package edu.mayo.mprc.myrimatch;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.TestingUtilities;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Roman Zenka
+ */
+public final class MzIdentMlMergerTest {
+	@Test
+	public void shouldMergeShards() throws IOException {
+		final File shard1 = TestingUtilities.getTempFileFromResource(MzIdentMlMergerTest.class, "test.mzid.xml", null);
+		final File shard2 = TestingUtilities.getTempFileFromResource(MzIdentMlMergerTest.class, "test.mzid.xml", null);
+		final File merged = File.createTempFile("merged", ".mzid");
+		final File input = new File(merged.getParentFile(), "test2.mgf");
+		try {
+			final String original = Files.toString(shard1, Charsets.ISO_8859_1);
+			new MzIdentMlMerger(input).merge(Arrays.asList(shard1, shard2), merged);
+			final String result = Files.toString(merged, Charsets.ISO_8859_1);
+
+			Assert.assertEquals(count(result, "<DBSequence "), count(original, "<DBSequence "), "Database sequences are listed once");
+			Assert.assertEquals(count(result, "<Peptide "), 2 * count(original, "<Peptide "));
+			Assert.assertEquals(count(result, "<PeptideEvidence "), 2 * count(original, "<PeptideEvidence "));
+			Assert.assertEquals(count(result, "<SpectrumIdentificationResult "), 2 * count(original, "<SpectrumIdentificationResult "));
+
+			Assert.assertTrue(result.contains("<Peptide id=\"PEP_1_shard2\""));
+			Assert.assertTrue(result.contains("peptide_ref=\"PEP_1_shard2\""));
+			Assert.assertTrue(result.contains("peptideEvidence_ref=\"DBSeq_Reversed_MSN5_YEAST_PEP_1_shard2\""));
+			Assert.assertTrue(result.contains("dBSequence_ref=\"DBSeq_Reversed_MSN5_YEAST\""), "References to database sequences stay");
+			Assert.assertFalse(result.contains("DBSeq_Reversed_MSN5_YEAST_shard2"), "Database sequences are not renamed");
+
+			Assert.assertEquals(count(result, "<SpectraData "), 1);
+			Assert.assertTrue(result.contains("location=\"" + input.getAbsolutePath() + "\""), "Spectra point to the original input");
+			Assert.assertFalse(result.contains("/var/cache/mgf/35/29/62/61/1/test2.mgf"), "Nothing points to the shard");
+
+			// The shard peptides go after the peptides of the base, before the peptide evidence
+			Assert.assertTrue(result.indexOf("<Peptide id=\"PEP_1_shard2\"") < result.indexOf("<PeptideEvidence "));
+			Assert.assertTrue(result.lastIndexOf("<DBSequence ") < result.indexOf("<Peptide "));
+		} finally {
+			FileUtilities.cleanupTempFile(shard1);
+			FileUtilities.cleanupTempFile(shard2);
+			FileUtilities.cleanupTempFile(merged);
+		}
+	}
+
+	private static int count(final String text, final String what) {
+		final Matcher matcher = Pattern.compile(Pattern.quote(what)).matcher(text);
+		int count = 0;
+		while (matcher.find()) {
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,352 @@
+package edu.mayo.mprc.qa;
+
+import com.google.common.base.Charsets;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The columnar QA file format shared by {@link ColumnarSpectrumInfoSink} and {@link ColumnarSpectrumInfoReader}.
+ * <p/>
+ * <pre>
+ * int magic, int version
+ * column chunks, block after block, column after column
+ * footer:
+ *   int columns, column names
+ *   int blocks, for each block: int rows, for each column: byte type, long offset, int length
+ *   int index entries, for each: long scan id, int row (sorted by scan id)
+ * long footer offset
+ * </pre>
+ * Each chunk is deflated on its own. Depending on the values it holds, a chunk stores
+ * <ul>
+ * <li>{@link #LONG} - delta-encoded variable length integers (scan ids, counts)</li>
+ * <li>{@link #DOUBLE} - plain doubles, empty values are NaN</li>
+ * <li>{@link #STRING} - a dictionary of distinct values followed by a variable length code per row</li>
+ * </ul>
+ *
+ * @author Roman Zenka
+ */
+final class ColumnCodec {
+	static final int MAGIC = 0x53464331; // SFC1
+	static final int VERSION = 1;
+	static final int BLOCK_ROWS = 8192;
+
+	static final byte LONG = 1;
+	static final byte DOUBLE = 2;
+	static final byte STRING = 3;
+
+	private static final Pattern LONG_VALUE = Pattern.compile("-?[1-9]\\d{0,17}|0");
+	private static final Pattern DOUBLE_VALUE = Pattern.compile("-?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][-+]?\\d+)?");
+
+	private ColumnCodec() {
+	}
+
+	/**
+	 * Encode and compress values of one column within one block.
+	 */
+	static Chunk encode(final String[] values) throws IOException {
+		final byte type = getType(values);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(bytes));
+		if (type == LONG) {
+			long previous = 0;
+			for (final String value : values) {
+				final long current = Long.parseLong(value);
+				writeVarLong(output, zigZag(current - previous));
+				previous = current;
+			}
+		} else if (type == DOUBLE) {
+			for (final String value : values) {
+				output.writeDouble(value.isEmpty() ? Double.NaN : Double.parseDouble(value));
+			}
+		} else {
+			final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+			final List<String> distinct = new ArrayList<String>();
+			final int[] codes = new int[values.length];
+			for (int i = 0; i < values.length; i++) {
+				Integer code = dictionary.get(values[i]);
+				if (code == null) {
+					code = distinct.size();
+					dictionary.put(values[i], code);
+					distinct.add(values[i]);
+				}
+				codes[i] = code;
+			}
+			writeVarLong(output, distinct.size());
+			for (final String value : distinct) {
+				final byte[] utf8 = value.getBytes(Charsets.UTF_8);
+				writeVarLong(output, utf8.length);
+				output.write(utf8);
+			}
+			for (final int code : codes) {
+				writeVarLong(output, code);
+			}
+		}
+		output.close();
+		return new Chunk(type, bytes.toByteArray());
+	}
+
+	private static byte getType(final String[] values) {
+		boolean allLong = true;
+		for (final String value : values) {
+			if (!value.isEmpty() && !DOUBLE_VALUE.matcher(value).matches()) {
+				return STRING;
+			}
+			allLong &= LONG_VALUE.matcher(value).matches();
+		}
+		return allLong ? LONG : DOUBLE;
+	}
+
+	/**
+	 * Decode a chunk as numbers. Strings that do not denote a number become NaN.
+	 */
+	static void decodeDoubles(final byte[] data, final byte type, final double[] target, final int start, final int rows) throws IOException {
+		final DataInputStream input = open(data);
+		try {
+			if (type == LONG) {
+				final long[] longs = decodeLongs(input, rows);
+				for (int i = 0; i < rows; i++) {
+					target[start + i] = longs[i];
+				}
+			} else if (type == DOUBLE) {
+				for (int i = 0; i < rows; i++) {
+					target[start + i] = input.readDouble();
+				}
+			} else {
+				final String[] dictionary = readDictionary(input);
+				final double[] numbers = new double[dictionary.length];
+				for (int i = 0; i < dictionary.length; i++) {
+					numbers[i] = DOUBLE_VALUE.matcher(dictionary[i]).matches() ? Double.parseDouble(dictionary[i]) : Double.NaN;
+				}
+				for (int i = 0; i < rows; i++) {
+					target[start + i] = numbers[(int) readVarLong(input)];
+				}
+			}
+		} finally {
+			FileUtilities.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * Decode a chunk as strings. Numbers are returned in their canonical form, empty numbers as empty strings.
+	 */
+	static void decodeStrings(final byte[] data, final byte type, final String[] target, final int start, final int rows) throws IOException {
+		final DataInputStream input = open(data);
+		try {
+			if (type == LONG) {
+				final long[] longs = decodeLongs(input, rows);
+				for (int i = 0; i < rows; i++) {
+					target[start + i] = String.valueOf(longs[i]);
+				}
+			} else if (type == DOUBLE) {
+				for (int i = 0; i < rows; i++) {
+					final double value = input.readDouble();
+					target[start + i] = Double.isNaN(value) ? "" : String.valueOf(value);
+				}
+			} else {
+				final String[] dictionary = readDictionary(input);
+				for (int i = 0; i < rows; i++) {
+					target[start + i] = dictionary[(int) readVarLong(input)];
+				}
+			}
+		} finally {
+			FileUtilities.closeQuietly(input);
+		}
+	}
+
+	private static long[] decodeLongs(final DataInput input, final int rows) throws IOException {
+		final long[] longs = new long[rows];
+		long value = 0;
+		for (int i = 0; i < rows; i++) {
+			value += unZigZag(readVarLong(input));
+			longs[i] = value;
+		}
+		return longs;
+	}
+
+	private static String[] readDictionary(final DataInputStream input) throws IOException {
+		final String[] dictionary = new String[(int) readVarLong(input)];
+		for (int i = 0; i < dictionary.length; i++) {
+			final byte[] utf8 = new byte[(int) readVarLong(input)];
+			input.readFully(utf8);
+			dictionary[i] = new String(utf8, Charsets.UTF_8);
+		}
+		return dictionary;
+	}
+
+	private static DataInputStream open(final byte[] data) {
+		return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
+	}
+
+	static void writeFooter(final DataOutputStream output, final long footerOffset, final List<String> columns, final List<Block> blocks, final List<ScanRow> scanIndex) throws IOException {
+		output.writeInt(columns.size());
+		for (final String column : columns) {
+			output.writeUTF(column);
+		}
+		output.writeInt(blocks.size());
+		for (final Block block : blocks) {
+			output.writeInt(block.getRows());
+			for (int column = 0; column < columns.size(); column++) {
+				output.writeByte(block.getType(column));
+				output.writeLong(block.getOffset(column));
+				output.writeInt(block.getLength(column));
+			}
+		}
+		Collections.sort(scanIndex);
+		output.writeInt(scanIndex.size());
+		for (final ScanRow scanRow : scanIndex) {
+			output.writeLong(scanRow.getScanId());
+			output.writeInt(scanRow.getRow());
+		}
+		output.writeLong(footerOffset);
+	}
+
+	static List<String> readColumns(final DataInput input) throws IOException {
+		final int count = input.readInt();
+		final List<String> columns = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++) {
+			columns.add(input.readUTF());
+		}
+		return columns;
+	}
+
+	static List<Block> readBlocks(final DataInput input, final int columns) throws IOException {
+		final int count = input.readInt();
+		final List<Block> blocks = new ArrayList<Block>(count);
+		for (int i = 0; i < count; i++) {
+			final Block block = new Block(input.readInt(), columns);
+			for (int column = 0; column < columns; column++) {
+				block.setChunk(column, input.readByte(), input.readLong(), input.readInt());
+			}
+			blocks.add(block);
+		}
+		return blocks;
+	}
+
+	private static void writeVarLong(final DataOutput output, final long value) throws IOException {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			output.writeByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		output.writeByte((int) remaining);
+	}
+
+	private static long readVarLong(final DataInput input) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = input.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new MprcException("Malformed variable length number in columnar QA file");
+	}
+
+	private static long zigZag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static final class Chunk {
+		private final byte type;
+		private final byte[] data;
+
+		Chunk(final byte type, final byte[] data) {
+			this.type = type;
+			this.data = data;
+		}
+
+		byte getType() {
+			return type;
+		}
+
+		byte[] getData() {
+			return data;
+		}
+	}
+
+	/**
+	 * Where the chunks of a single block are stored.
+	 */
+	static final class Block {
+		private final int rows;
+		private final byte[] types;
+		private final long[] offsets;
+		private final int[] lengths;
+
+		Block(final int rows, final int columns) {
+			this.rows = rows;
+			types = new byte[columns];
+			offsets = new long[columns];
+			lengths = new int[columns];
+		}
+
+		void setChunk(final int column, final byte type, final long offset, final int length) {
+			types[column] = type;
+			offsets[column] = offset;
+			lengths[column] = length;
+		}
+
+		int getRows() {
+			return rows;
+		}
+
+		byte getType(final int column) {
+			return types[column];
+		}
+
+		long getOffset(final int column) {
+			return offsets[column];
+		}
+
+		int getLength(final int column) {
+			return lengths[column];
+		}
+	}
+
+	static final class ScanRow implements Comparable<ScanRow> {
+		private final long scanId;
+		private final int row;
+
+		ScanRow(final long scanId, final int row) {
+			this.scanId = scanId;
+			this.row = row;
+		}
+
+		long getScanId() {
+			return scanId;
+		}
+
+		int getRow() {
+			return row;
+		}
+
+		@Override
+		public int compareTo(final ScanRow o) {
+			if (scanId != o.scanId) {
+				return scanId < o.scanId ? -1 : 1;
+			}
+			return row < o.row ? -1 : (row == o.row ? 0 : 1);
+		}
+	}
+}
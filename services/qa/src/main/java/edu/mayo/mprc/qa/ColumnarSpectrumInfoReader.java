@@ -0,0 +1,169 @@
+package edu.mayo.mprc.qa;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the columnar QA files written by {@link ColumnarSpectrumInfoSink}.
+ * <p/>
+ * Only the footer is loaded when the file is opened. A column is read on request, touching only the chunks
+ * of that column, so e.g. getting retention times and TIC for a plot does not require parsing the rest of the data.
+ * <p/>
+ * The column names are the same as the headers of the .sfs file, such as <tt>RT</tt>, <tt>TIC</tt> or
+ * the Scaffold probability columns.
+ *
+ * @author Roman Zenka
+ */
+public final class ColumnarSpectrumInfoReader implements Closeable {
+	private final File file;
+	private final RandomAccessFile input;
+	private final List<String> columns;
+	private final List<ColumnCodec.Block> blocks;
+	private final int rowCount;
+	private final long[] scanIds;
+	private final int[] scanRows;
+
+	public ColumnarSpectrumInfoReader(final File file) {
+		this.file = file;
+		try {
+			input = new RandomAccessFile(file, "r");
+		} catch (IOException e) {
+			throw new MprcException("Could not open columnar QA file " + file.getAbsolutePath(), e);
+		}
+		try {
+			if (input.readInt() != ColumnCodec.MAGIC) {
+				throw new MprcException("Not a columnar QA file: " + file.getAbsolutePath());
+			}
+			final int version = input.readInt();
+			if (version != ColumnCodec.VERSION) {
+				throw new MprcException("Unsupported version " + version + " of columnar QA file " + file.getAbsolutePath());
+			}
+			input.seek(input.length() - 8);
+			final long footerOffset = input.readLong();
+			final byte[] footerBytes = new byte[(int) (input.length() - 8 - footerOffset)];
+			input.seek(footerOffset);
+			input.readFully(footerBytes);
+			final DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBytes));
+
+			columns = Collections.unmodifiableList(ColumnCodec.readColumns(footer));
+			blocks = ColumnCodec.readBlocks(footer, columns.size());
+			int rows = 0;
+			for (final ColumnCodec.Block block : blocks) {
+				rows += block.getRows();
+			}
+			rowCount = rows;
+
+			final int indexSize = footer.readInt();
+			scanIds = new long[indexSize];
+			scanRows = new int[indexSize];
+			for (int i = 0; i < indexSize; i++) {
+				scanIds[i] = footer.readLong();
+				scanRows[i] = footer.readInt();
+			}
+		} catch (IOException e) {
+			FileUtilities.closeQuietly(input);
+			throw new MprcException("Could not read columnar QA file " + file.getAbsolutePath(), e);
+		} catch (MprcException e) {
+			FileUtilities.closeQuietly(input);
+			throw e;
+		}
+	}
+
+	public List<String> getColumnNames() {
+		return columns;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @param column Name of the column.
+	 * @return Values of the column as numbers. Empty or non-numeric values are NaN.
+	 */
+	public double[] getDoubleColumn(final String column) {
+		final int index = getColumnIndex(column);
+		final double[] result = new double[rowCount];
+		int start = 0;
+		for (final ColumnCodec.Block block : blocks) {
+			try {
+				ColumnCodec.decodeDoubles(readChunk(block, index), block.getType(index), result, start, block.getRows());
+			} catch (IOException e) {
+				throw new MprcException("Could not read column " + column + " from " + file.getAbsolutePath(), e);
+			}
+			start += block.getRows();
+		}
+		return result;
+	}
+
+	/**
+	 * @param column Name of the column.
+	 * @return Values of the column as strings. Numeric values are returned in canonical form.
+	 */
+	public String[] getStringColumn(final String column) {
+		final int index = getColumnIndex(column);
+		final String[] result = new String[rowCount];
+		int start = 0;
+		for (final ColumnCodec.Block block : blocks) {
+			try {
+				ColumnCodec.decodeStrings(readChunk(block, index), block.getType(index), result, start, block.getRows());
+			} catch (IOException e) {
+				throw new MprcException("Could not read column " + column + " from " + file.getAbsolutePath(), e);
+			}
+			start += block.getRows();
+		}
+		return result;
+	}
+
+	/**
+	 * @param scanId Scan id to look up.
+	 * @return Rows for given scan, in ascending order. There can be more rows for one scan when Scaffold identified
+	 *         the spectrum several times. Empty array if the scan is not present.
+	 */
+	public int[] getRows(final long scanId) {
+		int first = Arrays.binarySearch(scanIds, scanId);
+		if (first < 0) {
+			return new int[0];
+		}
+		while (first > 0 && scanIds[first - 1] == scanId) {
+			first--;
+		}
+		int last = first;
+		while (last + 1 < scanIds.length && scanIds[last + 1] == scanId) {
+			last++;
+		}
+		return Arrays.copyOfRange(scanRows, first, last + 1);
+	}
+
+	private int getColumnIndex(final String column) {
+		final int index = columns.indexOf(column);
+		if (index < 0) {
+			throw new MprcException("Column " + column + " is not present in " + file.getAbsolutePath());
+		}
+		return index;
+	}
+
+	private byte[] readChunk(final ColumnCodec.Block block, final int column) throws IOException {
+		final byte[] data = new byte[block.getLength(column)];
+		synchronized (input) {
+			input.seek(block.getOffset(column));
+			input.readFully(data);
+		}
+		return data;
+	}
+
+	@Override
+	public void close() {
+		FileUtilities.closeQuietly(input);
+	}
+}
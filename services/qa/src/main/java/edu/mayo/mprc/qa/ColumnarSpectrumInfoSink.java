@@ -0,0 +1,191 @@
+package edu.mayo.mprc.qa;
+
+import com.google.common.base.Splitter;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.msmseval.MSMSEvalOutputReader;
+import edu.mayo.mprc.myrimatch.MyriMatchPepXmlReader;
+import edu.mayo.mprc.scaffoldparser.spectra.ScaffoldQaSpectraReader;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes the same columns as {@link FileSpectrumInfoSink}, only in the columnar format
+ * read by {@link ColumnarSpectrumInfoReader}.
+ * <p/>
+ * The rows are collected into blocks of {@link ColumnCodec#BLOCK_ROWS}. When a block is full, each of its columns
+ * is encoded and compressed separately, so a reader can later fetch a single column without touching the others.
+ * The footer with the column names, block directory and scan id index is written on close.
+ *
+ * @author Roman Zenka
+ */
+public final class ColumnarSpectrumInfoSink implements SpectrumInfoSink {
+	private static final Splitter TAB_SPLITTER = Splitter.on('\t');
+	private static final int OUTPUT_BUFFER = 1024 * 1024;
+
+	private final File file;
+	private DataOutputStream output;
+	private long offset;
+	private String rawFileName;
+	private boolean scaffold;
+
+	private List<String> columns;
+	private final List<String[]> rows = new ArrayList<String[]>(ColumnCodec.BLOCK_ROWS);
+	private final List<ColumnCodec.Block> blocks = new ArrayList<ColumnCodec.Block>();
+	private final List<ColumnCodec.ScanRow> scanIndex = new ArrayList<ColumnCodec.ScanRow>();
+	private int rowCount;
+
+	public ColumnarSpectrumInfoSink(final File file) {
+		this.file = file;
+	}
+
+	@Override
+	public void initialize(final ScaffoldQaSpectraReader scaffold, final RawDumpReader rawDumpReader,
+	                       final MSMSEvalOutputReader msmsEvalReader, final MyriMatchPepXmlReader myrimatchReader,
+	                       final UvDataReader uvDataReader,
+	                       final String rawFileName) {
+		this.rawFileName = rawFileName;
+		this.scaffold = scaffold != null;
+
+		columns = new ArrayList<String>();
+		Collections.addAll(columns, "Scan Id", "Mz", "Z", "Mgf File Name");
+		if (scaffold != null) {
+			addColumns(scaffold.getHeaderLine());
+			columns.add("Scaffold version");
+		}
+		addColumns(msmsEvalReader.getHeaderLine());
+		if (rawFileName != null) {
+			columns.add("Raw File");
+		}
+		addColumns(rawDumpReader.getHeaderLine());
+		if (myrimatchReader != null) {
+			addColumns(myrimatchReader.getHeaderLine());
+		}
+		if (uvDataReader != null) {
+			addColumns(uvDataReader.getHeaderLine());
+		}
+
+		try {
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), OUTPUT_BUFFER));
+			output.writeInt(ColumnCodec.MAGIC);
+			output.writeInt(ColumnCodec.VERSION);
+			offset = output.size();
+		} catch (IOException e) {
+			FileUtilities.closeQuietly(output);
+			throw new MprcException("Could not create columnar QA file " + file.getAbsolutePath(), e);
+		}
+	}
+
+	private void addColumns(final String headerLine) {
+		for (final String column : TAB_SPLITTER.split(headerLine)) {
+			columns.add(column);
+		}
+	}
+
+	@Override
+	public void writeSpectrumInfo(final String scanIdStr, final Spectrum spectrum, final String scaffoldInfo,
+	                              final String scaffoldVersion,
+	                              final String msmsEvalData, final String rawDumpReaderData,
+	                              final String myrimatchReaderData, final String uvDataReaderData) {
+		final String[] row = new String[columns.size()];
+		Arrays.fill(row, "");
+		int column = 0;
+		column = set(row, column, scanIdStr);
+		column = set(row, column, spectrum != null ? String.valueOf(spectrum.getMz()) : "");
+		column = set(row, column, spectrum != null ? String.valueOf(spectrum.getCharge()) : "");
+		column = set(row, column, spectrum != null ? spectrum.getInputFileName() : "");
+		if (scaffold) {
+			column = setAll(row, column, scaffoldInfo);
+			column = set(row, column, scaffoldVersion);
+		}
+		column = setAll(row, column, msmsEvalData);
+		if (rawFileName != null) {
+			column = set(row, column, rawFileName);
+		}
+		column = setAll(row, column, rawDumpReaderData);
+		column = setAll(row, column, myrimatchReaderData);
+		setAll(row, column, uvDataReaderData);
+
+		try {
+			scanIndex.add(new ColumnCodec.ScanRow(Long.parseLong(scanIdStr.trim()), rowCount));
+		} catch (NumberFormatException ignore) {
+			// SWALLOWED: rows without numeric scan id are just not indexed
+		}
+		rows.add(row);
+		rowCount++;
+		if (rows.size() == ColumnCodec.BLOCK_ROWS) {
+			flushBlock();
+		}
+	}
+
+	private static int set(final String[] row, final int column, final String value) {
+		if (column < row.length) {
+			row[column] = value == null ? "" : value;
+		}
+		return column + 1;
+	}
+
+	/**
+	 * Set a tab-separated chunk of values, a missing (null) chunk leaves its columns empty.
+	 */
+	private static int setAll(final String[] row, final int column, final String values) {
+		if (values == null) {
+			return column;
+		}
+		int current = column;
+		for (final String value : TAB_SPLITTER.split(values)) {
+			current = set(row, current, value);
+		}
+		return current;
+	}
+
+	private void flushBlock() {
+		if (rows.isEmpty()) {
+			return;
+		}
+		final ColumnCodec.Block block = new ColumnCodec.Block(rows.size(), columns.size());
+		try {
+			final String[] values = new String[rows.size()];
+			for (int column = 0; column < columns.size(); column++) {
+				for (int row = 0; row < rows.size(); row++) {
+					values[row] = rows.get(row)[column];
+				}
+				final ColumnCodec.Chunk chunk = ColumnCodec.encode(values);
+				output.write(chunk.getData());
+				block.setChunk(column, chunk.getType(), offset, chunk.getData().length);
+				offset += chunk.getData().length;
+			}
+		} catch (IOException e) {
+			throw new MprcException("Could not write to columnar QA file " + file.getAbsolutePath(), e);
+		}
+		blocks.add(block);
+		rows.clear();
+	}
+
+	@Override
+	public String getDescription() {
+		return file.getAbsolutePath();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (output == null) {
+			return;
+		}
+		try {
+			flushBlock();
+			ColumnCodec.writeFooter(output, offset, columns, blocks, scanIndex);
+		} finally {
+			output.close();
+			output = null;
+		}
+	}
+}
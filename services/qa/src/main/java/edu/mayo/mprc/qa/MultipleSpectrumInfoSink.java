@@ -0,0 +1,71 @@
+package edu.mayo.mprc.qa;
+
+import com.google.common.base.Joiner;
+import edu.mayo.mprc.msmseval.MSMSEvalOutputReader;
+import edu.mayo.mprc.myrimatch.MyriMatchPepXmlReader;
+import edu.mayo.mprc.scaffoldparser.spectra.ScaffoldQaSpectraReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the same spectrum information into several sinks at once.
+ *
+ * @author Roman Zenka
+ */
+public final class MultipleSpectrumInfoSink implements SpectrumInfoSink {
+	private final List<SpectrumInfoSink> sinks;
+
+	public MultipleSpectrumInfoSink(final SpectrumInfoSink... sinks) {
+		this.sinks = Arrays.asList(sinks);
+	}
+
+	@Override
+	public void initialize(final ScaffoldQaSpectraReader scaffold, final RawDumpReader rawDumpReader,
+	                       final MSMSEvalOutputReader msmsEvalReader, final MyriMatchPepXmlReader myrimatchReader,
+	                       final UvDataReader uvDataReader, final String rawFileName) {
+		for (final SpectrumInfoSink sink : sinks) {
+			sink.initialize(scaffold, rawDumpReader, msmsEvalReader, myrimatchReader, uvDataReader, rawFileName);
+		}
+	}
+
+	@Override
+	public void writeSpectrumInfo(final String scanIdStr, final Spectrum spectrum, final String scaffoldInfo,
+	                              final String scaffoldVersion, final String msmsEvalData, final String rawDumpReaderData,
+	                              final String myrimatchReaderData, final String uvDataReaderData) {
+		for (final SpectrumInfoSink sink : sinks) {
+			sink.writeSpectrumInfo(scanIdStr, spectrum, scaffoldInfo, scaffoldVersion, msmsEvalData, rawDumpReaderData, myrimatchReaderData, uvDataReaderData);
+		}
+	}
+
+	@Override
+	public String getDescription() {
+		final List<String> descriptions = new ArrayList<String>(sinks.size());
+		for (final SpectrumInfoSink sink : sinks) {
+			descriptions.add(sink.getDescription());
+		}
+		return Joiner.on(", ").join(descriptions);
+	}
+
+	/**
+	 * Close all the sinks, even if some of them fail. The first failure is rethrown.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (final SpectrumInfoSink sink : sinks) {
+			try {
+				sink.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
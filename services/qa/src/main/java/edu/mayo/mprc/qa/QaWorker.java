@@ -173,7 +173,9 @@ public final class QaWorker extends WorkerBase {
 			final MSMSEvalOutputReader msmsEvalReader = new MSMSEvalOutputReader(qaFiles.getMsmsEvalOutputFile());
 			final UvDataReader uvDataReader = new UvDataReader(qaFiles.getUvDataFile());
 			final String rawInputFile = qaFiles.getRawInputFile() != null ? qaFiles.getRawInputFile().getAbsolutePath() : null;
-			final FileSpectrumInfoSink sink = new FileSpectrumInfoSink(outputFile);
+			final SpectrumInfoSink sink = new MultipleSpectrumInfoSink(
+					new FileSpectrumInfoSink(outputFile),
+					new ColumnarSpectrumInfoSink(getSfcFileName(qaReportFolder, uniqueMgfAnalysisName)));
 			generate = spectrumInfoJoiner.joinSpectrumData(
 					mgfFile,
 					scaffoldParser,
@@ -245,6 +247,15 @@ public final class QaWorker extends WorkerBase {
 		return new File(qaReportFolder, uniqueMgfAnalysisName + ".sfs");
 	}
 
+	/**
+	 * @param qaReportFolder        Folder with outputs
+	 * @param uniqueMgfAnalysisName Result of {@link #getAnalysisName}.
+	 * @return Name of the columnar .sfc file with the same data as the .sfs file, see {@link ColumnarSpectrumInfoReader}.
+	 */
+	public static File getSfcFileName(final File qaReportFolder, final String uniqueMgfAnalysisName) {
+		return new File(qaReportFolder, uniqueMgfAnalysisName + ".sfc");
+	}
+
 	/**
 	 * Go through all QA input files, find the modification time that is the newest.
 	 *
@@ -4,33 +4,30 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.io.KeyedTsvReader;
-import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.io.LongOffsetIndex;
+import edu.mayo.mprc.io.MappedTextFile;
+import edu.mayo.mprc.io.TsvScanner;
 import edu.mayo.mprc.utilities.StringUtilities;
 import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
 
 /**
  * A class capable of reading rawDump output and then responding to queries. For given scan number produces a tab-separated line
  * with rawDump data. If the input file is null, the class will return empty output for any query.
  * <p/>
- * Right now the class simply loads the full file into memory, in the future (as we scale) we might want to do indexing
- * and serve the data from the disk.
+ * The file is memory-mapped and only the offsets of the lines are kept in memory. The lines are decoded
+ * when requested, so multiple QA joins can run at once without each holding the whole file as strings.
  * <p/>
  * See also: {@link edu.mayo.mprc.msmseval.MSMSEvalOutputReader}.
  */
 public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 	private static final Logger LOGGER = Logger.getLogger(RawDumpReader.class);
 
-	private Map<String/*Scan ID*/, String/*The full line without scan ID*/> lines;
+	private MappedTextFile file;
+	private LongOffsetIndex lines; /* Scan ID -> the full line without scan ID */
 	private String[] header;
 	private static final String SCAN_NUM_HEADER = "Scan Id";
 	private int firstSpectrum;
@@ -53,7 +50,6 @@ public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 			"Polymer Segment Size", "Polymer Offset", "Polymer Score", "Polymer p-value"
 	};
 	private static final String EMPTY_LINE;
-	private static final Pattern TAB_SPLIT = Pattern.compile("\t");
 
 	static {
 		// One less tab - we produce tabs only in between values
@@ -73,8 +69,7 @@ public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 	}
 
 	/**
-	 * Prepare the reader. In this implementation, the entire file is loaded at once and cached in memory (we
-	 * expect the file to have around 10000 lines).
+	 * Prepare the reader. The file is indexed at once, its lines are read on request.
 	 *
 	 * @param rawDumpFile rawDump file to process
 	 */
@@ -85,15 +80,12 @@ public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 			header = DEFAULT_HEADER;
 			rtColumnIndex = findRtColumnIndex(DEFAULT_HEADER);
 		} else {
-			lines = new HashMap<String, String>();
-			BufferedReader reader = null;
 			try {
-				reader = new BufferedReader(new FileReader(rawDumpFile));
-				parse(reader, lines);
+				file = new MappedTextFile(rawDumpFile);
+				lines = new LongOffsetIndex();
+				parse(file, lines);
 			} catch (Exception t) {
 				throw new MprcException("Cannot parse rawDump file [" + rawDumpFile.getAbsolutePath() + "]", t);
-			} finally {
-				FileUtilities.closeQuietly(reader);
 			}
 		}
 	}
@@ -121,11 +113,17 @@ public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 		if (lines == null) {
 			return EMPTY_LINE;
 		}
-		final String line = lines.get(key);
-		if (line == null) {
+		final int slot;
+		try {
+			slot = lines.find(Long.parseLong(key));
+		} catch (NumberFormatException ignore) {
+			// SWALLOWED: not a scan id, we have no data for it
+			return EMPTY_LINE;
+		}
+		if (slot < 0) {
 			return EMPTY_LINE;
 		}
-		return line;
+		return file.getString(lines.getOffset(slot), lines.getLength(slot));
 	}
 
 	/**
@@ -152,29 +150,30 @@ public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 		}
 	}
 
-	private void parse(final BufferedReader br, final Map<String, String> lines) {
+	private void parse(final MappedTextFile file, final LongOffsetIndex lines) {
 		try {
 			initSpectrumMinMax();
-			header = readHeader(br);
-			String line;
+			if (file.length() == 0) {
+				throw new MprcException("The rawDump output has no header");
+			}
+			long lineEnd = file.lineEnd(0);
+			header = readHeader(file.getString(0, (int) lineEnd));
+			long lineStart = file.nextLine(lineEnd);
 			int ignoredLines = 0;
-			while (true) {
-				line = br.readLine();
-				if (line == null) {
-					break;
-				}
-				final int firstTab = line.indexOf('\t');
-				if (firstTab > 0) {
+			while (lineStart < file.length()) {
+				lineEnd = file.lineEnd(lineStart);
+				final long firstTab = file.indexOf((byte) '\t', lineStart, lineEnd);
+				if (firstTab > lineStart) {
 					// We have data
-					final String scanNumStr = line.substring(0, firstTab);
-					final int scanNum = Integer.parseInt(scanNumStr);
+					final int scanNum = TsvScanner.parseInt(file.getAscii(lineStart, firstTab), 0, (int) (firstTab - lineStart));
 
-					lines.put(scanNumStr, line.substring(firstTab + 1));
+					lines.put(scanNum, firstTab + 1, (int) (lineEnd - firstTab - 1));
 					updateSpectrumMinMax(scanNum);
 				} else {
 					// Ignore the line
 					ignoredLines++;
 				}
+				lineStart = file.nextLine(lineEnd);
 			}
 			if (ignoredLines > 0) {
 				LOGGER.info("Ignored lines when parsing rawDump output file: " + ignoredLines);
@@ -201,12 +200,8 @@ public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 		}
 	}
 
-	private String[] readHeader(final BufferedReader br) throws IOException {
-		final String line = br.readLine();
-		if (line == null) {
-			throw new MprcException("The rawDump output has no header");
-		}
-		final String[] tmpHeader = TAB_SPLIT.split(line);
+	private String[] readHeader(final String line) {
+		final String[] tmpHeader = line.split("\t");
 		if (!SCAN_NUM_HEADER.equals(tmpHeader[0])) {
 			throw new MprcException("Unknown rawDump output format (first column should be '" + SCAN_NUM_HEADER + "', was '" + tmpHeader[0] + "'.");
 		}
@@ -240,7 +235,7 @@ public final class RawDumpReader implements KeyedTsvReader, Iterable<String> {
 			public String next() {
 				currentSpectrum++;
 				final String spectrumStr = String.valueOf(currentSpectrum);
-				if (lines.containsKey(spectrumStr)) {
+				if (lines.contains(currentSpectrum)) {
 					return spectrumStr;
 				}
 				throw new NoSuchElementException("No spectrum #" + currentSpectrum);
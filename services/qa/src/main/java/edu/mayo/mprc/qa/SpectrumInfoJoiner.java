@@ -3,12 +3,12 @@ package edu.mayo.mprc.qa;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.msmseval.MSMSEvalOutputReader;
 import edu.mayo.mprc.myrimatch.MyriMatchPepXmlReader;
+import edu.mayo.mprc.peaklist.ColumnarPeakList;
 import edu.mayo.mprc.peaklist.PeakListReader;
 import edu.mayo.mprc.peaklist.PeakListReaders;
 import edu.mayo.mprc.scaffoldparser.spectra.ScaffoldQaSpectraReader;
 import edu.mayo.mprc.utilities.FileUtilities;
 import org.apache.log4j.Logger;
-import org.proteomecommons.io.mgf.MascotGenericFormatPeakList;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
@@ -238,7 +238,7 @@ public final class SpectrumInfoJoiner {
 	public void getSourceInformation(final File inputFile, final Map<String, Spectrum> spectrumMap) {
 		Spectrum spectrum = null;
 		PeakListReader peakListReader = null;
-		MascotGenericFormatPeakList peakList = null;
+		final ColumnarPeakList peakList = new ColumnarPeakList();
 		long spectrumNumber = 0;
 
 		try {
@@ -250,11 +250,11 @@ public final class SpectrumInfoJoiner {
 
 			peakListReader = readers.createReader(inputFile, false);
 
-			while ((peakList = peakListReader.nextPeakList()) != null) {
+			while (peakListReader.readPeakList(peakList)) {
 				spectrum = new Spectrum(
 						getSpectrum(peakList.getTitle()),
-						getMz(peakList.getPepmass()),
-						getCharge(peakList.getCharge()),
+						peakList.hasPrecursorMz() ? peakList.getPrecursorMz() : 0.0,
+						peakList.getPrecursorCharge(),
 						getScanId(peakList.getTitle()),
 						mgfPath,
 						spectrumNumber);
@@ -300,21 +300,6 @@ public final class SpectrumInfoJoiner {
 		}
 	}
 
-	private static int getCharge(final String charge) {
-		if (charge == null) {
-			return 0;
-		}
-		final String str = charge.substring(charge.indexOf('=') + 1).trim();
-		return Integer.parseInt(str.substring(0, str.length() - (str.endsWith("+") ? 1 : 0)).trim());
-	}
-
-	private static double getMz(final String mz) {
-		if (mz == null) {
-			return 0.0;
-		}
-		return Double.parseDouble(mz.substring(mz.indexOf('=') + 1).trim());
-	}
-
 	public PeakListReaders getReaders() {
 		return readers;
 	}
@@ -3,29 +3,44 @@ package edu.mayo.mprc.qa;
 import com.google.common.base.Joiner;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.io.KeyedTsvReader;
-import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.io.MappedTextFile;
+import edu.mayo.mprc.io.TsvScanner;
 import edu.mayo.mprc.utilities.StringUtilities;
 import org.apache.log4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * Loads data from the UV controller. Organizes them by retention time, so for each spectrum we can quickly look
  * up the closest RT from the controller. This is important because the UV controller uses different timing intervals
  * and the R code (and the user) benefit from having a single, collated, output document
+ * <p/>
+ * The file is memory-mapped. Only the retention times and the offsets of the lines are kept in memory, sorted
+ * by the retention time, the lines are decoded when requested.
  *
  * @author Roman Zenka
  */
 public final class UvDataReader implements KeyedTsvReader {
 	private static final Logger LOGGER = Logger.getLogger(UvDataReader.class);
 
-	private TreeMap<Double/* Retention time */, String/*The full line without id and RT*/> lines;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private MappedTextFile file;
+	/**
+	 * Number of lines with data.
+	 */
+	private int lineCount;
+	/**
+	 * Sorted retention times.
+	 */
+	private double[] retentionTimes;
+	/**
+	 * Where the line for the corresponding retention time starts (without the id).
+	 */
+	private long[] offsets;
+	private int[] lengths;
 	private String[] header;
 	private static final String ID_HEADER = "id";
 	private static final String RT_HEADER = "rt";
@@ -44,7 +59,6 @@ public final class UvDataReader implements KeyedTsvReader {
 			"Sampler.Volume"
 	};
 	private static final String EMPTY_LINE;
-	private static final Pattern TAB_SPLIT = Pattern.compile("\t");
 
 	static {
 		// Empty line has a tab for each header item (minus one)
@@ -52,8 +66,7 @@ public final class UvDataReader implements KeyedTsvReader {
 	}
 
 	/**
-	 * Prepare the reader. In this implementation, the entire file is loaded at once and cached in memory (we
-	 * expect the file to have around 10000 lines).
+	 * Prepare the reader. The file is indexed at once, its lines are read on request.
 	 *
 	 * @param uvDataFile rawDump file to process
 	 */
@@ -63,15 +76,11 @@ public final class UvDataReader implements KeyedTsvReader {
 			// Use default header (otherwise we use header obtained from the file).
 			header = DEFAULT_HEADER;
 		} else {
-			lines = new TreeMap<Double, String>();
-			BufferedReader reader = null;
 			try {
-				reader = new BufferedReader(new FileReader(uvDataFile));
-				parse(reader, lines);
+				file = new MappedTextFile(uvDataFile);
+				parse(file);
 			} catch (Exception t) {
 				throw new MprcException("Cannot parse uv data file [" + uvDataFile.getAbsolutePath() + "]", t);
-			} finally {
-				FileUtilities.closeQuietly(reader);
 			}
 		}
 	}
@@ -95,44 +104,73 @@ public final class UvDataReader implements KeyedTsvReader {
 	 */
 	@Override
 	public String getLineForKey(final String key) {
-		if (lines == null) {
+		if (lineCount == 0) {
 			return EMPTY_LINE;
 		}
-		Map.Entry<Double, String> entry = lines.floorEntry(Double.parseDouble(key));
-		if (entry == null) {
-			// Try ceiling if nothing below
-			entry = lines.ceilingEntry(Double.parseDouble(key));
-		}
-		final String line = entry.getValue();
-		if (line == null) {
-			return EMPTY_LINE;
+		final int index = floorIndex(Double.parseDouble(key));
+		// Try ceiling if nothing below
+		final int line = index < 0 ? 0 : index;
+		return file.getString(offsets[line], lengths[line]);
+	}
+
+	/**
+	 * @return Index of the greatest retention time less or equal to the given one, -1 if there is none.
+	 */
+	private int floorIndex(final double retentionTime) {
+		int low = 0;
+		int high = lineCount - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			if (retentionTimes[middle] <= retentionTime) {
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
 		}
-		return line;
+		return high;
 	}
 
-	private void parse(final BufferedReader br, final Map<Double, String> lines) {
+	private void parse(final MappedTextFile file) {
 		try {
-			header = readHeader(br);
-			String line;
+			if (file.length() == 0) {
+				throw new MprcException("The rawDump output has no header");
+			}
+			long lineEnd = file.lineEnd(0);
+			header = readHeader(file.getString(0, (int) lineEnd));
+			retentionTimes = new double[INITIAL_CAPACITY];
+			offsets = new long[INITIAL_CAPACITY];
+			lengths = new int[INITIAL_CAPACITY];
+			int count = 0;
+			boolean sorted = true;
+			long lineStart = file.nextLine(lineEnd);
 			int ignoredLines = 0;
-			while (true) {
-				line = br.readLine();
-				if (line == null) {
-					break;
-				}
-				final int firstTab = line.indexOf('\t');
-				if (firstTab > 0) {
-					final int secondTab = line.indexOf('\t', firstTab + 1);
+			while (lineStart < file.length()) {
+				lineEnd = file.lineEnd(lineStart);
+				final long firstTab = file.indexOf((byte) '\t', lineStart, lineEnd);
+				if (firstTab > lineStart) {
+					final long secondTab = file.indexOf((byte) '\t', firstTab + 1, lineEnd);
+					if (secondTab < 0) {
+						throw new MprcException("Missing retention time column on line: " + file.getString(lineStart, (int) (lineEnd - lineStart)));
+					}
 					// We have data
-					final String scanNumStr = line.substring(firstTab + 1, secondTab);
-					final double retentionTime = Double.parseDouble(scanNumStr);
-
-					lines.put(retentionTime, line.substring(firstTab + 1));
+					final double retentionTime = TsvScanner.parseDouble(file.getAscii(firstTab + 1, secondTab), 0, (int) (secondTab - firstTab - 1));
+					if (count == retentionTimes.length) {
+						retentionTimes = Arrays.copyOf(retentionTimes, count * 2);
+						offsets = Arrays.copyOf(offsets, count * 2);
+						lengths = Arrays.copyOf(lengths, count * 2);
+					}
+					sorted &= count == 0 || retentionTimes[count - 1] < retentionTime;
+					retentionTimes[count] = retentionTime;
+					offsets[count] = firstTab + 1;
+					lengths[count] = (int) (lineEnd - firstTab - 1);
+					count++;
 				} else {
 					// Ignore the line
 					ignoredLines++;
 				}
+				lineStart = file.nextLine(lineEnd);
 			}
+			lineCount = sorted ? count : sortByRetentionTime(count);
 			if (ignoredLines > 0) {
 				LOGGER.info("Ignored lines when parsing rawDump output file: " + ignoredLines);
 			}
@@ -141,12 +179,44 @@ public final class UvDataReader implements KeyedTsvReader {
 		}
 	}
 
-	private static String[] readHeader(final BufferedReader br) throws IOException {
-		final String line = br.readLine();
-		if (line == null) {
-			throw new MprcException("The rawDump output has no header");
+	/**
+	 * Sort the lines by retention time. When the same time is listed multiple times, the last line wins.
+	 *
+	 * @return Number of lines with distinct retention times.
+	 */
+	private int sortByRetentionTime(final int count) {
+		final Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		// The sort is stable, so lines with the same time stay in the original order
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(final Integer o1, final Integer o2) {
+				return Double.compare(retentionTimes[o1], retentionTimes[o2]);
+			}
+		});
+		final double[] sortedTimes = new double[count];
+		final long[] sortedOffsets = new long[count];
+		final int[] sortedLengths = new int[count];
+		int distinct = 0;
+		for (final int index : order) {
+			if (distinct > 0 && sortedTimes[distinct - 1] == retentionTimes[index]) {
+				distinct--;
+			}
+			sortedTimes[distinct] = retentionTimes[index];
+			sortedOffsets[distinct] = offsets[index];
+			sortedLengths[distinct] = lengths[index];
+			distinct++;
 		}
-		final String[] tmpHeader = TAB_SPLIT.split(line);
+		retentionTimes = sortedTimes;
+		offsets = sortedOffsets;
+		lengths = sortedLengths;
+		return distinct;
+	}
+
+	private static String[] readHeader(final String line) {
+		final String[] tmpHeader = line.split("\t");
 		if (tmpHeader.length < 2) {
 			throw new MprcException(String.format("Unknown rawDump output format - we expect at least %d columns, got %d", DEFAULT_HEADER.length + 2, tmpHeader.length));
 		}
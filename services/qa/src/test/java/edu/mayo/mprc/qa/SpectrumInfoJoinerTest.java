@@ -15,6 +15,7 @@ import org.testng.annotations.Test;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Matcher;
 
 public final class SpectrumInfoJoinerTest {
@@ -53,6 +54,58 @@ public final class SpectrumInfoJoinerTest {
 		}
 	}
 
+	@Test
+	public void columnarOutputShouldMatchTsv() throws IOException {
+		final File tempFolder = FileUtilities.createTempFolder();
+
+		try {
+			final File mgfFile = TestingUtilities.getNamedFileFromResource("/edu/mayo/mprc/qa/test1.mgf", tempFolder);
+			final File scaffoldSpectra = TestingUtilities.getNamedFileFromResource("/edu/mayo/mprc/qa/scaffoldSpectra.txt", tempFolder);
+			final File rawDumpFile = TestingUtilities.getNamedFileFromResource("/edu/mayo/mprc/qa/rawdump.tsv", tempFolder);
+			final File msmsEvalFile = TestingUtilities.getNamedFileFromResource("/edu/mayo/mprc/qa/msmsEval.csv", tempFolder);
+			final File uvDataFile = TestingUtilities.getNamedFileFromResource("/edu/mayo/mprc/qa/uv.tsv", tempFolder);
+
+			final File tsvFile = new File(tempFolder, "output.tsv");
+			final File columnarFile = new File(tempFolder, "output.sfc");
+
+			final ScaffoldQaSpectraReader spectra = new ScaffoldQaSpectraReader();
+			spectra.load(scaffoldSpectra, "2", null);
+			final SpectrumInfoSink sink = new MultipleSpectrumInfoSink(new FileSpectrumInfoSink(tsvFile), new ColumnarSpectrumInfoSink(columnarFile));
+
+			spectrumInfoJoiner().joinSpectrumData(mgfFile, spectra, new RawDumpReader(rawDumpFile), new MSMSEvalOutputReader(msmsEvalFile), null, sink, new UvDataReader(uvDataFile), null);
+
+			final List<String> lines = Files.readLines(tsvFile, Charsets.UTF_8);
+			final String[] header = lines.get(0).split("\t", -1);
+			final ColumnarSpectrumInfoReader reader = new ColumnarSpectrumInfoReader(columnarFile);
+			try {
+				Assert.assertEquals(reader.getColumnNames(), Arrays.asList(header));
+				Assert.assertEquals(reader.getRowCount(), lines.size() - 1);
+				for (int column = 0; column < header.length; column++) {
+					final String[] values = reader.getStringColumn(header[column]);
+					for (int row = 1; row < lines.size(); row++) {
+						final String[] cells = lines.get(row).split("\t", -1);
+						final String expected = column < cells.length ? cells[column] : "";
+						if (!expected.equals(values[row - 1])) {
+							Assert.assertEquals(Double.parseDouble(values[row - 1]), Double.parseDouble(expected), 1E-10, header[column] + " in row " + row);
+						}
+					}
+				}
+
+				final String[] scanIds = reader.getStringColumn("Scan Id");
+				final int[] rows = reader.getRows(Long.parseLong(scanIds[0]));
+				Assert.assertTrue(rows.length > 0);
+				for (final int row : rows) {
+					Assert.assertEquals(scanIds[row], scanIds[0]);
+				}
+				Assert.assertEquals(reader.getRows(-1L).length, 0);
+			} finally {
+				reader.close();
+			}
+		} finally {
+			FileUtilities.cleanupTempFile(tempFolder);
+		}
+	}
+
 	@Test
 	public void shouldParseMgfTitles() {
 		Assert.assertEquals(SpectrumInfoJoiner.getSpectrum("test1 scan 10 10 (test1.10.10.3.dta)"), "test1.10.10.3.dta");
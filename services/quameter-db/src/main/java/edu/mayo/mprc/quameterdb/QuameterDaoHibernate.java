@@ -1,8 +1,10 @@
 package edu.mayo.mprc.quameterdb;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import edu.mayo.mprc.MprcException;
@@ -138,6 +140,30 @@ public final class QuameterDaoHibernate extends DaoBase implements QuameterDao,
 		return listResults(ListItems.HIDDEN, true);
 	}
 
+	@Override
+	public String getVisibleResultsStamp() {
+		final Object[] results = (Object[]) getSession().createSQLQuery(""
+				+ "SELECT COUNT(*), MAX(quameter_result_id), SUM(CASE WHEN hidden=1 THEN quameter_result_id ELSE 0 END) FROM "
+				+ swiftDao.qualifyTableName("quameter_result"))
+				.uniqueResult();
+		final Object[] hiddenSearches = (Object[]) getSession().createSQLQuery(""
+				+ "SELECT COUNT(*), SUM(transaction_id) FROM "
+				+ swiftDao.qualifyTableName("transaction")
+				+ " WHERE hidden=1")
+				.uniqueResult();
+		final Object[] proteinGroups = (Object[]) getSession().createSQLQuery(""
+				+ "SELECT COUNT(*), MAX(quameter_pg_id), COUNT(deletion) FROM "
+				+ swiftDao.qualifyTableName("quameter_pg"))
+				.uniqueResult();
+		// Every annotation change, including hiding and un-hiding, replaces the annotation row with a new one
+		final Object[] annotations = (Object[]) getSession().createSQLQuery(""
+				+ "SELECT COUNT(*), MAX(quameter_annotation_id) FROM "
+				+ swiftDao.qualifyTableName("quameter_annotation"))
+				.uniqueResult();
+		return Joiner.on(':').useForNull("").join(Iterables.concat(
+				Arrays.asList(results), Arrays.asList(hiddenSearches), Arrays.asList(proteinGroups), Arrays.asList(annotations)));
+	}
+
 	/**
 	 * @param listedItems Shown/hidden items?
 	 * @param timeLimit   Apply the 1-year time limit
@@ -263,7 +289,7 @@ public final class QuameterDaoHibernate extends DaoBase implements QuameterDao,
 	@Override
 	public void hideQuameterResult(final int quameterResultId, final String hideReason) {
 		final QuameterResult quameterResult = (QuameterResult) getSession().get(QuameterResult.class, quameterResultId);
-		addAnnotation(new QuameterAnnotation("hidden", quameterResultId, hideReason));
+		addAnnotation(new QuameterAnnotation("hidden", quameterResultId, reasonOrDefault(hideReason, "Hidden")));
 		quameterResult.setHidden(true);
 		getSession().saveOrUpdate(quameterResult);
 	}
@@ -271,11 +297,18 @@ public final class QuameterDaoHibernate extends DaoBase implements QuameterDao,
 	@Override
 	public void unhideQuameterResult(final int quameterResultId, final String unhideReason) {
 		final QuameterResult quameterResult = (QuameterResult) getSession().get(QuameterResult.class, quameterResultId);
-		addAnnotation(new QuameterAnnotation("hidden", quameterResultId, unhideReason));
+		addAnnotation(new QuameterAnnotation("hidden", quameterResultId, reasonOrDefault(unhideReason, "Unhidden")));
 		quameterResult.setHidden(false);
 		getSession().saveOrUpdate(quameterResult);
 	}
 
+	/**
+	 * Hiding and un-hiding always leaves an annotation, so {@link #getVisibleResultsStamp()} notices the change.
+	 */
+	private static String reasonOrDefault(final String reason, final String defaultReason) {
+		return reason == null || reason.trim().isEmpty() ? defaultReason : reason;
+	}
+
 	@Override
 	public List<QuameterAnnotation> listAnnotations() {
 		// Only list annotations that belong to non-hidden quameter results
@@ -295,18 +328,18 @@ public final class QuameterDaoHibernate extends DaoBase implements QuameterDao,
 
 	@Override
 	public QuameterAnnotation addAnnotation(final QuameterAnnotation annotation) {
+		// The previous annotation is replaced by a new row, not updated, so getVisibleResultsStamp() sees the change
+		getSession()
+				.createQuery("delete from QuameterAnnotation a where " +
+						"a.metricCode = :metricCode " +
+						"and a.quameterResultId = :qrId")
+				.setParameter("metricCode", annotation.getMetricCode())
+				.setParameter("qrId", annotation.getQuameterResultId())
+				.executeUpdate();
 		if ("".equals(annotation.getText().trim())) {
-			getSession()
-					.createQuery("delete from QuameterAnnotation a where " +
-							"a.metricCode = :metricCode " +
-							"and a.quameterResultId = :qrId")
-					.setParameter("metricCode", annotation.getMetricCode())
-					.setParameter("qrId", annotation.getQuameterResultId())
-					.executeUpdate();
 			return null;
-		} else {
-			return save(annotation, false);
 		}
+		return save(annotation, false);
 	}
 
 	@Override
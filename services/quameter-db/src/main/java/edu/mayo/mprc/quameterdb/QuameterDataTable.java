@@ -0,0 +1,105 @@
+package edu.mayo.mprc.quameterdb;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.StringUtilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized QuaMeter dashboard data, ready to be sent to the browser as-is.
+ * <p/>
+ * Keeps the JSON, its UTF-8 bytes and a gzipped copy, so a cached table can be served without any further work.
+ * The ETag is computed from the content, so it stays the same across restarts as long as the data does not change.
+ *
+ * @author Roman Zenka
+ */
+public final class QuameterDataTable {
+	private static final String UTF_8 = "UTF-8";
+
+	private final String json;
+	private final byte[] bytes;
+	private final byte[] gzipped;
+	private final String eTag;
+
+	public QuameterDataTable(final String json) {
+		this.json = json;
+		try {
+			bytes = json.getBytes(UTF_8);
+		} catch (UnsupportedEncodingException e) {
+			throw new MprcException(e);
+		}
+		gzipped = gzip(bytes);
+		eTag = '"' + md5(bytes) + '"';
+	}
+
+	public String getJson() {
+		return json;
+	}
+
+	/**
+	 * @return The JSON encoded in UTF-8. Do not modify.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The JSON encoded in UTF-8 and gzipped. Do not modify.
+	 */
+	public byte[] getGzipped() {
+		return gzipped;
+	}
+
+	/**
+	 * @return Quoted entity tag, as it goes to the HTTP ETag header.
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * @param ifNoneMatch Value of the HTTP If-None-Match header, can be null.
+	 * @return True if the client already has this exact table.
+	 */
+	public boolean matches(final String ifNoneMatch) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (final String tag : ifNoneMatch.split(",")) {
+			final String trimmed = tag.trim();
+			if ("*".equals(trimmed) || eTag.equals(trimmed)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static byte[] gzip(final byte[] data) {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4 + 64);
+		GZIPOutputStream gzip = null;
+		try {
+			gzip = new GZIPOutputStream(output);
+			gzip.write(data);
+			gzip.finish();
+		} catch (IOException e) {
+			throw new MprcException("Could not compress QuaMeter data", e);
+		} finally {
+			FileUtilities.closeQuietly(gzip);
+		}
+		return output.toByteArray();
+	}
+
+	private static String md5(final byte[] data) {
+		try {
+			return StringUtilities.toHex(MessageDigest.getInstance("MD5").digest(data), "");
+		} catch (NoSuchAlgorithmException e) {
+			throw new MprcException(e);
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package edu.mayo.mprc.quameterdb;
 
-import com.google.common.base.Splitter;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -14,6 +13,7 @@ import edu.mayo.mprc.daemon.worker.Worker;
 import edu.mayo.mprc.daemon.worker.WorkerBase;
 import edu.mayo.mprc.daemon.worker.WorkerFactoryBase;
 import edu.mayo.mprc.database.Database;
+import edu.mayo.mprc.io.TsvScanner;
 import edu.mayo.mprc.quameterdb.dao.QuameterDao;
 import edu.mayo.mprc.quameterdb.dao.QuameterProteinGroup;
 import edu.mayo.mprc.swift.db.SwiftDao;
@@ -24,9 +24,7 @@ import org.apache.log4j.Logger;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.IOException;
 import java.io.Reader;
 import java.util.*;
 import java.util.regex.Pattern;
@@ -107,34 +105,29 @@ public final class QuameterDbWorker extends WorkerBase {
 
 	static Map<String, Double> loadQuameterResultFile(final Reader reader) {
 		final Map<String, Double> map = new TreeMap<String, Double>();
-		final BufferedReader bufferedReader = new BufferedReader(reader);
+		final TsvScanner scanner = new TsvScanner(reader, '\t', false);
 
 		try {
-			final String header = bufferedReader.readLine();
-			final String body = bufferedReader.readLine();
-			final Iterator<String> headerSplit = Splitter.on("\t").split(header).iterator();
-			final Iterator<String> bodySplit = Splitter.on("\t").split(body).iterator();
-			while (headerSplit.hasNext()) {
-				final String key = headerSplit.next();
-				if (!bodySplit.hasNext()) {
+			final String[] header = scanner.readHeader();
+			if (header == null || !scanner.nextLine()) {
+				throw new MprcException("Malformed quameter file - expected a header and a line of values");
+			}
+			for (int i = 0; i < header.length; i++) {
+				final String key = header[i];
+				if (i >= scanner.getFieldCount()) {
 					throw new MprcException("Malformed quameter file - no value for key [" + key + "]");
 				}
-				final String value = bodySplit.next();
 				if ("Filename".equalsIgnoreCase(key) || "StartTimeStamp".equalsIgnoreCase(key)) {
 					continue;
 				}
 				try {
-					final double valueDouble = Double.parseDouble(value);
-					map.put(key, valueDouble);
+					map.put(key, scanner.getDouble(i));
 				} catch (final NumberFormatException e) {
-					throw new MprcException("Value for key [" + key + "] is not numeric: [" + value + "]", e);
+					throw new MprcException("Value for key [" + key + "] is not numeric: [" + scanner.getString(i) + "]", e);
 				}
 			}
-
-		} catch (final IOException e) {
-			throw new MprcException("Could not read QuaMeter data", e);
 		} finally {
-			FileUtilities.closeQuietly(bufferedReader);
+			scanner.close();
 		}
 		return map;
 	}
@@ -21,6 +21,7 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.List;
 import java.util.Locale;
@@ -42,6 +43,12 @@ public final class QuameterUi implements Dao, UiConfigurationProvider, Lifecycle
 	private final Map<String, String> instrumentMap;
 	private static final DateTimeFormatter DATE_FORMAT_1 = DateTimeFormat.forPattern("'Date('yyyy, ").withLocale(Locale.US);
 	private static final DateTimeFormatter DATE_FORMAT_2 = DateTimeFormat.forPattern(", d, H, m, s, S')'").withLocale(Locale.US);
+	private static final DateTimeFormatter DAY_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd").withLocale(Locale.US);
+
+	/**
+	 * Rough size of a single serialized result, to size the output buffer.
+	 */
+	private static final int INITIAL_ROW_SIZE = 4000;
 
 	private static final String LOW = "low";
 	private static final String HIGH = "high";
@@ -102,6 +109,16 @@ public final class QuameterUi implements Dao, UiConfigurationProvider, Lifecycle
 
 	private boolean running;
 
+	private final Object dataTableLock = new Object();
+	/**
+	 * Last rendered dashboard data, guarded by {@link #dataTableLock}.
+	 */
+	private QuameterDataTable dataTable;
+	/**
+	 * Stamp of the database state {@link #dataTable} was rendered from, guarded by {@link #dataTableLock}.
+	 */
+	private String dataTableStamp;
+
 	/**
 	 * Use this constant to get to a list of quameter categories from the user interface
 	 */
@@ -134,11 +151,48 @@ public final class QuameterUi implements Dao, UiConfigurationProvider, Lifecycle
 		return quameterDao.qualifyTableName(table);
 	}
 
+	/**
+	 * Write the dashboard data into given writer. Must be called within a transaction.
+	 */
 	public void dataTableJson(final Writer writer) {
+		try {
+			writer.write(getDataTable().getJson());
+		} catch (final IOException e) {
+			throw new MprcException("Could not render QuaMeter data", e);
+		}
+	}
+
+	/**
+	 * The dashboard data are listed and serialized only when {@link QuameterDao#getVisibleResultsStamp()} says
+	 * they changed since the last time - a result got added, hidden, un-hidden or annotated, its search was hidden or the protein groups changed.
+	 * The stamp also includes the current day, as the list is limited to the last year.
+	 * Must be called within a transaction.
+	 *
+	 * @return Serialized, possibly cached dashboard data.
+	 */
+	public QuameterDataTable getDataTable() {
+		final String daoStamp = quameterDao.getVisibleResultsStamp();
+		final String stamp = daoStamp == null ? null : daoStamp + ":" + new DateTime().toString(DAY_FORMAT);
+		synchronized (dataTableLock) {
+			if (stamp != null && stamp.equals(dataTableStamp)) {
+				return dataTable;
+			}
+		}
+
+		final QuameterDataTable newTable = renderDataTable();
+
+		synchronized (dataTableLock) {
+			dataTable = newTable;
+			dataTableStamp = stamp;
+		}
+		return newTable;
+	}
 
+	private QuameterDataTable renderDataTable() {
 		final List<QuameterProteinGroup> proteinGroups = quameterDao.listProteinGroups();
 		final List<QuameterResult> quameterResults = quameterDao.listVisibleResults();
 
+		final StringWriter writer = new StringWriter(INITIAL_ROW_SIZE * (quameterResults.size() + 1));
 		final JsonWriter w = new JsonWriter(writer);
 		w.setIndent("    ");
 
@@ -147,9 +201,11 @@ public final class QuameterUi implements Dao, UiConfigurationProvider, Lifecycle
 			writeCols(w, proteinGroups);
 			writeRows(w, quameterResults, proteinGroups);
 			w.endObject();
+			w.flush();
 		} catch (final IOException e) {
 			throw new MprcException("Could not render QuaMeter data", e);
 		}
+		return new QuameterDataTable(writer.toString());
 	}
 
 	public void writeMetricsJson(final Writer writer) {
@@ -40,6 +40,16 @@ public interface QuameterDao extends Dao {
 	 */
 	List<QuameterResult> listHiddenResults();
 
+	/**
+	 * A cheap check whether the output of {@link #listVisibleResults()} could have changed. The stamp changes
+	 * when a result is added, hidden or un-hidden, when an annotation changes, when a search gets hidden or when
+	 * the protein groups change.
+	 * It does not account for the sliding one year limit.
+	 *
+	 * @return Opaque stamp of the current state of the QuaMeter data.
+	 */
+	String getVisibleResultsStamp();
+
 	void hideQuameterResult(int quameterResultId, final String hideReason);
 
 	void unhideQuameterResult(int quameterResultId, final String unhideReason);
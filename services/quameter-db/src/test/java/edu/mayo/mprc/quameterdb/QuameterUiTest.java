@@ -26,8 +26,7 @@ import java.io.StringWriter;
 import java.util.List;
 import java.util.Map;
 
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 /**
  * @author Roman Zenka
@@ -41,6 +40,7 @@ public final class QuameterUiTest {
 		quameterDao = mock(QuameterDao.class);
 		when(quameterDao.listProteinGroups()).thenReturn(quameterProteinGroups());
 		when(quameterDao.listVisibleResults()).thenReturn(quameterResults());
+		when(quameterDao.getVisibleResultsStamp()).thenReturn("1");
 
 		final QuameterDbWorker.Config quameterDbConfig = new QuameterDbWorker.Config(null, "animal,-cat*,-dog", "{\"albumin\":\"ALBU_HUMAN\",\"keratin\":\"K1C1_HUMAN\"}", "");
 
@@ -129,6 +129,40 @@ public final class QuameterUiTest {
 		Assert.assertEquals(actual, expected, "Json objects must match");
 	}
 
+	@Test
+	public void shouldCacheDataTable() {
+		final QuameterDataTable first = quameterUi.getDataTable();
+		final QuameterDataTable second = quameterUi.getDataTable();
+		Assert.assertSame(second, first, "Unchanged data must come from the cache");
+		verify(quameterDao, times(1)).listVisibleResults();
+		Assert.assertTrue(first.matches(first.getETag()));
+		Assert.assertTrue(first.matches("\"other\", " + first.getETag()));
+		Assert.assertFalse(first.matches(null));
+
+		when(quameterDao.getVisibleResultsStamp()).thenReturn("2");
+		when(quameterDao.listVisibleResults()).thenReturn(quameterResults().subList(0, 1));
+		final QuameterDataTable third = quameterUi.getDataTable();
+		verify(quameterDao, times(2)).listVisibleResults();
+		Assert.assertFalse(third.getETag().equals(first.getETag()), "Different data must have a different ETag");
+		Assert.assertFalse(third.matches(first.getETag()));
+	}
+
+	@Test
+	public void shouldRefreshWhenHiddenResultsSwap() {
+		final List<QuameterResult> results = quameterResults();
+		when(quameterDao.listVisibleResults()).thenReturn(results.subList(0, 1));
+		final QuameterDataTable first = quameterUi.getDataTable();
+
+		// A different result is hidden now. The number of results is the same, only the annotations tell the difference.
+		when(quameterDao.getVisibleResultsStamp()).thenReturn("1:annotated");
+		when(quameterDao.listVisibleResults()).thenReturn(results.subList(1, 2));
+		final QuameterDataTable second = quameterUi.getDataTable();
+
+		Assert.assertNotSame(second, first, "A changed stamp must not be served from the cache");
+		Assert.assertFalse(second.getJson().equals(first.getJson()));
+		Assert.assertFalse(second.matches(first.getETag()));
+	}
+
 	@Test
 	public void shouldWriteMetrics() {
 		final StringWriter writer = new StringWriter(1000);
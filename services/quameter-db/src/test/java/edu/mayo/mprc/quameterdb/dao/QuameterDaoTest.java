@@ -162,6 +162,43 @@ public final class QuameterDaoTest extends DaoTest {
 		quameterDao.commit();
 	}
 
+	@Test
+	public void shouldChangeStampOnEveryHide() {
+		quameterDao.begin();
+
+		final QuameterResult result1 = addResult1();
+		final QuameterResult result2 = addResult2();
+
+		nextTransaction();
+
+		quameterDao.hideQuameterResult(result1.getId(), "reason");
+		nextTransaction();
+		final String hidden1 = quameterDao.getVisibleResultsStamp();
+
+		// The hidden set changes from {1} to {2} and back to {1}, with no reason given
+		quameterDao.unhideQuameterResult(result1.getId(), "");
+		quameterDao.hideQuameterResult(result2.getId(), "");
+		nextTransaction();
+		final String hidden2 = quameterDao.getVisibleResultsStamp();
+		Assert.assertFalse(hidden2.equals(hidden1), "Hiding a different result must change the stamp");
+
+		quameterDao.unhideQuameterResult(result2.getId(), "");
+		quameterDao.hideQuameterResult(result1.getId(), "reason");
+		nextTransaction();
+		final String hiddenAgain = quameterDao.getVisibleResultsStamp();
+		Assert.assertFalse(hiddenAgain.equals(hidden2));
+		Assert.assertFalse(hiddenAgain.equals(hidden1), "Every hide or unhide changes the stamp, even when the sums stay the same");
+
+		quameterDao.addAnnotation(new QuameterAnnotation("MS2-4A", result2.getId(), "note"));
+		nextTransaction();
+		final String annotated = quameterDao.getVisibleResultsStamp();
+		quameterDao.addAnnotation(new QuameterAnnotation("MS2-4A", result2.getId(), "changed note"));
+		nextTransaction();
+		Assert.assertFalse(quameterDao.getVisibleResultsStamp().equals(annotated), "Changing an annotation changes the stamp");
+
+		quameterDao.commit();
+	}
+
 	@Test
 	public void shouldFilterOutputs() {
 		quameterDao.begin();
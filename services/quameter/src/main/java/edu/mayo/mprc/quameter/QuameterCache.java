@@ -43,6 +43,10 @@ public final class QuameterCache extends WorkCache<QuameterWorkPacket> {
 					.required()
 					.defaultValue(DEFAULT_CACHE)
 
+					.property(WorkCache.CacheConfig.MAX_CACHE_SIZE, "Maximum cache size (MB)", "When the cached files take more space than this, the least recently used ones are deleted. Set to 0 to never delete anything.")
+					.integerValue(0, null)
+					.defaultValue("0")
+
 					.property(WorkCache.CacheConfig.SERVICE, "QuaMeter Search Engine", "The QuaMeter engine that will do the search. The cache just caches the results.")
 					.reference("quameter", UiBuilder.NONE_TYPE);
 		}
@@ -0,0 +1,183 @@
+package edu.mayo.mprc.raw2mgf;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+
+/**
+ * Appends .dta files to an open .mgf file.
+ * <p/>
+ * The .dta files are copied as bytes through a single reusable buffer, only the first line (MH+ and charge)
+ * gets parsed. Keep one instance for all the batches of a conversion, it is not thread safe.
+ *
+ * @author Roman Zenka
+ */
+public final class DtaToMgfStream implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(DtaToMgfStream.class);
+
+	private static final double PROTON_AMU = 1.00727646;
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+	private static final byte[] END_IONS = "\nEND IONS\n\n".getBytes(Charset.forName("US-ASCII"));
+
+	private final File mgfFile;
+	private final OutputStream output;
+	private final boolean wineCleanup;
+	private final Charset charset = Charset.defaultCharset();
+	private final DecimalFormat massFormat = new DecimalFormat("#.############");
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+	private String searchName;
+	private boolean searchNameWarning;
+	private long spectraWritten;
+
+	/**
+	 * @param mgfFile     File to append to.
+	 * @param wineCleanup If the .dta files were produced by wine, we remove the 0 characters from them.
+	 */
+	public DtaToMgfStream(final File mgfFile, final boolean wineCleanup) {
+		this.mgfFile = mgfFile;
+		this.wineCleanup = wineCleanup;
+		try {
+			output = new BufferedOutputStream(new FileOutputStream(mgfFile, true), INITIAL_BUFFER_SIZE);
+		} catch (FileNotFoundException e) {
+			throw new MprcException("Cannot open " + mgfFile.getAbsolutePath() + " for writing", e);
+		}
+	}
+
+	/**
+	 * Append given .dta files to the .mgf, in the order given.
+	 *
+	 * @return Number of spectra appended.
+	 */
+	public long append(final File[] dtaFiles) {
+		final long before = spectraWritten;
+		for (final File file : dtaFiles) {
+			final DtaName match = new DtaName(file);
+			if (file.isHidden() || !match.matches()) {
+				continue;
+			}
+			try {
+				append(file, match);
+			} catch (IOException e) {
+				throw new MprcException("Could not append " + file.getAbsolutePath() + " to " + mgfFile.getAbsolutePath(), e);
+			}
+		}
+		return spectraWritten - before;
+	}
+
+	private void append(final File file, final DtaName match) throws IOException {
+		final String thisSearchName = match.getSearchName();
+		if (searchName == null) {
+			searchName = thisSearchName;
+		}
+		if (!thisSearchName.equals(searchName) && !searchNameWarning) {
+			LOGGER.warn("This directory " +
+					"appears to contain DTA files from " +
+					"more than one RAW file: " + searchName +
+					" " + thisSearchName + "\n");
+			searchNameWarning = true;
+		}
+
+		final int length = readFully(file);
+		if (length == 0) {
+			throw new MprcException("File " + file.getAbsolutePath() + " length is " + file.length() + ". This may be caused by disk running out of space.");
+		}
+
+		final int firstLineEnd = lineEnd(0, length);
+		final String[] tokens = cleanup(new String(buffer, 0, firstLineEnd, charset)).trim().split("\\s+");
+		if (tokens.length != 2) {
+			return;
+		}
+		final double mh = Double.parseDouble(tokens[0]);
+		final int z = Integer.parseInt(tokens[1]);
+		final double mOverZ = (mh + (z - 1) * PROTON_AMU) / z;
+
+		final StringBuilder header = new StringBuilder(200)
+				.append("BEGIN IONS\n")
+				.append("TITLE=").append(searchName).append(" scan ").append(match.getFirstScan()).append(' ').append(match.getSecondScan());
+		if (match.getExtras() != null) {
+			header.append(' ').append(match.getExtras());
+		}
+		header.append(" (").append(file.getName()).append(")\n")
+				.append("CHARGE=").append(z).append("+\n")
+				.append("PEPMASS=").append(massFormat.format(mOverZ)).append('\n');
+
+		int bodyStart = nextLine(firstLineEnd, length);
+		if (wineCleanup && bodyStart < length) {
+			// If we ran through wine, we make sure we convert the second line of input (to be safe) removing nulls.
+			final int secondLineEnd = lineEnd(bodyStart, length);
+			header.append(cleanup(new String(buffer, bodyStart, secondLineEnd - bodyStart, charset))).append("\r\n");
+			bodyStart = nextLine(secondLineEnd, length);
+		}
+
+		output.write(header.toString().getBytes(charset));
+		output.write(buffer, bodyStart, length - bodyStart);
+		output.write(END_IONS);
+		spectraWritten++;
+	}
+
+	private String cleanup(final String line) {
+		return wineCleanup ? line.replace("\0", "") : line;
+	}
+
+	/**
+	 * Read the whole file into {@link #buffer}, growing it if needed.
+	 *
+	 * @return Length of the file.
+	 */
+	private int readFully(final File file) throws IOException {
+		final InputStream input = new FileInputStream(file);
+		try {
+			int total = 0;
+			while (true) {
+				if (total == buffer.length) {
+					final byte[] bigger = new byte[buffer.length * 2];
+					System.arraycopy(buffer, 0, bigger, 0, total);
+					buffer = bigger;
+				}
+				final int read = input.read(buffer, total, buffer.length - total);
+				if (read < 0) {
+					return total;
+				}
+				total += read;
+			}
+		} finally {
+			FileUtilities.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * @return Position of the line terminator (or the end of data) for the line starting at given position.
+	 */
+	private int lineEnd(final int start, final int length) {
+		for (int i = start; i < length; i++) {
+			if (buffer[i] == '\n' || buffer[i] == '\r') {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * @return Start of the next line, skipping \n, \r or \r\n, the same way {@link BufferedReader#readLine()} does.
+	 */
+	private int nextLine(final int lineEnd, final int length) {
+		if (lineEnd < length && buffer[lineEnd] == '\r') {
+			return lineEnd + 1 < length && buffer[lineEnd + 1] == '\n' ? lineEnd + 2 : lineEnd + 1;
+		}
+		return lineEnd < length ? lineEnd + 1 : length;
+	}
+
+	public long getSpectraWritten() {
+		return spectraWritten;
+	}
+
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+}
@@ -41,6 +41,10 @@ public final class RawToMgfCache extends WorkCache<RawToMgfWorkPacket> {
 					.required()
 					.defaultValue(DEFAULT_CACHE)
 
+					.property(CacheConfig.MAX_CACHE_SIZE, "Maximum cache size (MB)", "When the cached files take more space than this, the least recently used ones are deleted. Set to 0 to never delete anything.")
+					.integerValue(0, null)
+					.defaultValue("0")
+
 					.property(CacheConfig.SERVICE, "Raw To MGF Convertor", "The module that will do the conversion. The cache just caches the results.")
 					.reference("raw2mgf", UiBuilder.NONE_TYPE);
 		}
@@ -2,6 +2,7 @@ package edu.mayo.mprc.raw2mgf;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.config.DaemonConfig;
 import edu.mayo.mprc.config.DependencyResolver;
@@ -23,8 +24,12 @@ import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
 import java.util.regex.Pattern;
 
 import static java.util.Arrays.sort;
@@ -47,11 +52,18 @@ public final class RawToMgfWorker extends WorkerBase {
 	private String wrapperScript;
 	private File xvfbWrapperScript;
 	private int spectrumBatchSize = 8000;
+	private int concurrentBatches = DEFAULT_CONCURRENT_BATCHES;
 
 	public static final String TEMP_FOLDER = "tempFolder";
 	public static final String EXTRACT_MSN_EXECUTABLE = "extractMsnExecutable";
 	public static final String WRAPPER_SCRIPT = "wrapperScript";
 	public static final String XVFB_WRAPPER_SCRIPT = "xvfbWrapperScript";
+	public static final String CONCURRENT_BATCHES = "concurrentBatches";
+
+	/**
+	 * Run one extract_msn per processor core.
+	 */
+	public static final int DEFAULT_CONCURRENT_BATCHES = 0;
 
 	private static final int MAX_RAW_PATH_LENGTH = 100;
 
@@ -105,58 +117,160 @@ public final class RawToMgfWorker extends WorkerBase {
 		// will use the temporary folder to get dta files then make mgf file in the
 		// output_dir
 		FileUtilities.ensureFolderExists(tempFolder);
-		final File fulltempfolder = getMirrorFolderonTemp(tempFolder);
-		FileUtilities.ensureFolderExists(fulltempfolder);
 
 		final FilePathShortener shortener = new FilePathShortener(rawFile, MAX_RAW_PATH_LENGTH);
 		rawFile = shortener.getShortenedFile();
 
-		long currentSpectrum = firstSpectrum == null ? 1 : firstSpectrum;
-		long lastSpectrumInBatch = currentSpectrum + spectrumBatchSize - 1;
-
 		try {
-			final File executable = getExtractMsnExecutable();
-
 			FileUtilities.ensureFolderExists(mgfFile.getParentFile());
+			convert(rawFile, params, firstSpectrum == null ? 1 : firstSpectrum, lastSpectrum, mgfFile, progressReporter);
 
-			long totalSpectraExtracted = 0;
-			while (currentSpectrum <= lastSpectrumInBatch) {
-				runExtractMsnJob(executable, fulltempfolder, params, rawFile, currentSpectrum, lastSpectrumInBatch,
-						wrapperScript, xvfbWrapperScript == null ? null : xvfbWrapperScript.getAbsolutePath(),
-						progressReporter);
+			// Publish the resulting file safely
+			publish(mgfFile, outMgfFile);
+		} catch (final Exception we) {
+			throw new DaemonException("Error extracting dta files from " + batchWorkPacket.getInputFile(), we);
+		} finally {
+			shortener.cleanup();
+		}
+		LOGGER.info("Raw2mgf: conversion ended: " + batchWorkPacket.getInputFile() + " -> " + mgfFile + " (params: " + params + ")");
+	}
 
-				// Extract .dta files
-				final File[] dtaFiles = getDtaFiles(fulltempfolder);
+	/**
+	 * Run extract_msn on batches of {@link #spectrumBatchSize} spectra, up to {@link #concurrentBatches} at a time,
+	 * each batch in its own temp folder. The calling thread appends the finished batches to the .mgf in order,
+	 * while the next batches are still being extracted.
+	 * <p/>
+	 * Without a known last spectrum, we keep going until a batch produces no .dta files. The batches that
+	 * were started past that point are discarded.
+	 */
+	private void convert(final File rawFile, final String params, final long firstSpectrum, final Long lastSpectrum,
+	                     final File mgfFile, final UserProgressReporter progressReporter) throws IOException {
+		final File executable = getExtractMsnExecutable();
+		final String xvfbWrapper = xvfbWrapperScript == null ? null : xvfbWrapperScript.getAbsolutePath();
+		final boolean wine = wrapperScript != null && !wrapperScript.isEmpty();
+		final int threads = getConcurrentBatchesToUse();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder()
+						.setNameFormat("extract_msn-%d")
+						.setDaemon(true)
+						.build());
+		final Deque<ExtractMsnBatch> running = new ArrayDeque<ExtractMsnBatch>(threads);
+		final DtaToMgfStream mgf = new DtaToMgfStream(mgfFile, wine && !FileUtilities.isWindowsPlatform());
+		try {
+			long nextSpectrum = firstSpectrum;
+			boolean lastBatchStarted = false;
+			while (true) {
+				// Keep all the threads busy
+				while (!lastBatchStarted && running.size() < threads) {
+					if (lastSpectrum != null && nextSpectrum > lastSpectrum) {
+						lastBatchStarted = true;
+						break;
+					}
+					long lastSpectrumInBatch = nextSpectrum + spectrumBatchSize - 1;
+					if (lastSpectrum != null && lastSpectrumInBatch >= lastSpectrum) {
+						lastSpectrumInBatch = lastSpectrum;
+						lastBatchStarted = true;
+					}
+					final ExtractMsnBatch batch = new ExtractMsnBatch(getMirrorFolderonTemp(tempFolder), nextSpectrum, lastSpectrumInBatch);
+					batch.start(executor, executable, params, rawFile, xvfbWrapper, progressReporter);
+					running.add(batch);
+					nextSpectrum = lastSpectrumInBatch + 1;
+				}
+
+				if (running.isEmpty()) {
+					break;
+				}
+
+				// The batch stays in the queue until merged, so it gets cleaned up on failure
+				final ExtractMsnBatch batch = running.getFirst();
+				final File[] dtaFiles = batch.waitForDtaFiles();
 
 				// Terminate if we could not find any .dta anymore
 				if (dtaFiles.length == 0) {
-					if (totalSpectraExtracted == 0) {
+					if (mgf.getSpectraWritten() == 0) {
 						throw new MprcException("There were no .dta files present in " + rawFile.getAbsolutePath());
 					}
 					break;
 				}
 
 				// Combine .dta to .mgf
-				final boolean wine = wrapperScript != null && !wrapperScript.isEmpty();
-				dtaToMgf(fulltempfolder, dtaFiles, mgfFile, wine && !FileUtilities.isWindowsPlatform());
-
-				// Determine next batch position
-				totalSpectraExtracted += dtaFiles.length;
-				currentSpectrum = lastSpectrumInBatch + 1;
-				lastSpectrumInBatch = currentSpectrum + spectrumBatchSize - 1;
-				if (lastSpectrum != null) {
-					lastSpectrumInBatch = Math.min(lastSpectrumInBatch, lastSpectrum);
+				mgf.append(dtaFiles);
+				deleteDTAFiles(batch.getFolder());
+				// copy remaining files in folder to the output folder
+				copyRemainingFiles(batch.getFolder(), mgfFile.getParentFile());
+				running.removeFirst();
+			}
+		} finally {
+			executor.shutdownNow();
+			for (final ExtractMsnBatch batch : running) {
+				batch.discard();
+			}
+			mgf.close();
+		}
+
+		if (mgfFile.length() == 0) {
+			throw new MprcException(
+					MessageFormat.format("Merging of DTAs resulted in mgf of zero length ({0})", mgfFile.getAbsolutePath()));
+		}
+	}
+
+	/**
+	 * @return How many extract_msn batches to run at once. 0 means one per processor core.
+	 */
+	private int getConcurrentBatchesToUse() {
+		return concurrentBatches > 0 ? concurrentBatches : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * A single extract_msn run, producing .dta files for a range of spectra into its own folder.
+	 */
+	private final class ExtractMsnBatch {
+		private final File folder;
+		private final long firstSpectrum;
+		private final long lastSpectrum;
+		private Future<File[]> dtaFiles;
+
+		private ExtractMsnBatch(final File folder, final long firstSpectrum, final long lastSpectrum) {
+			this.folder = folder;
+			this.firstSpectrum = firstSpectrum;
+			this.lastSpectrum = lastSpectrum;
+		}
+
+		public void start(final ExecutorService executor, final File executable, final String params, final File rawFile,
+		                  final String xvfbWrapper, final UserProgressReporter progressReporter) {
+			dtaFiles = executor.submit(new Callable<File[]>() {
+				@Override
+				public File[] call() {
+					runExtractMsnJob(executable, folder, params, rawFile, firstSpectrum, lastSpectrum,
+							wrapperScript, xvfbWrapper, progressReporter);
+					return getDtaFiles(folder);
 				}
+			});
+		}
+
+		public File[] waitForDtaFiles() {
+			try {
+				return dtaFiles.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MprcException("Extraction of spectra " + firstSpectrum + "-" + lastSpectrum + " was interrupted", e);
+			} catch (final ExecutionException e) {
+				throw new MprcException("Extraction of spectra " + firstSpectrum + "-" + lastSpectrum + " failed", e.getCause());
 			}
+		}
 
-			// Publish the resulting file safely
-			publish(mgfFile, outMgfFile);
-		} catch (final Exception we) {
-			throw new DaemonException("Error extracting dta files from " + batchWorkPacket.getInputFile(), we);
-		} finally {
-			shortener.cleanup();
+		public File getFolder() {
+			return folder;
+		}
+
+		/**
+		 * Stop the batch if still running, remove its files.
+		 */
+		public void discard() {
+			dtaFiles.cancel(true);
+			FileUtilities.cleanupTempFile(folder);
 		}
-		LOGGER.info("Raw2mgf: conversion ended: " + batchWorkPacket.getInputFile() + " -> " + mgfFile + " (params: " + params + ")");
 	}
 
 	static Long getParamValue(final String paramName, final String params) {
@@ -226,7 +340,7 @@ public final class RawToMgfWorker extends WorkerBase {
 	 * @param rawfile         - the raw file
 	 * @return Number of extracted spectra. If there are genuinely no spectra, returns 0. Throws an exception if things go wrong.
 	 */
-	synchronized void runExtractMsnJob(final File fileToExec, final File thermoOutputDir, final String params, final File rawfile, final long firstSpectrum, final long lastSpectrum, final String wrapperScript, final String xvfbWrapperScript,
+	void runExtractMsnJob(final File fileToExec, final File thermoOutputDir, final String params, final File rawfile, final long firstSpectrum, final long lastSpectrum, final String wrapperScript, final String xvfbWrapperScript,
 	                                   final UserProgressReporter reporter) {
 		final String spectrumRangeParams = (params.isEmpty() ? "" : params + " ") + "-F" + firstSpectrum + " -L" + lastSpectrum;
 		final ExtractMsnWrapper extractMsn = new ExtractMsnWrapper(fileToExec, spectrumRangeParams, rawfile, wrapperScript, xvfbWrapperScript);
@@ -239,45 +353,6 @@ public final class RawToMgfWorker extends WorkerBase {
 		}
 	}
 
-	/**
-	 * convert dta files to an mgf file
-	 *
-	 * @param thermoOutputDir - Where .dta files were stored
-	 * @param dtaFiles        - the list of dta files to process
-	 * @param finalOutputFile - token for mgf output file
-	 * @param wine            - if should use wine or not
-	 * @throws edu.mayo.mprc.MprcException
-	 */
-	private void dtaToMgf(final File thermoOutputDir, final File[] dtaFiles, final File finalOutputFile, final boolean wine) {
-		// now do mgf file creation...
-		final File finalOutputDir = finalOutputFile.getParentFile();
-
-		final DTAToMGFConverter pDTAtoMGF =
-				new DTAToMGFConverter(
-						dtaFiles,
-						finalOutputFile);
-		pDTAtoMGF.setWineCleanup(wine);
-		try {
-			// Run the conversion
-			pDTAtoMGF.run();
-			// delete the dta files
-			deleteDTAFiles(thermoOutputDir);
-			// copy remaining files in folder to pBatchInfo.Output_Dir
-			copyRemainingFiles(thermoOutputDir, finalOutputDir);
-		} catch (final Exception t) {
-			throw new MprcException("dta to MGF conversion failed", t);
-		}
-		final File file = pDTAtoMGF.getResultFile();
-		if (!file.exists() || !file.isFile()) {
-			throw new MprcException("The MGF file does not exist " + file.getAbsolutePath());
-		}
-		if (file.length() == 0) {
-			throw new MprcException(
-					MessageFormat.format("Merging of DTAs resulted in mgf of zero length (merge {0} into {1})",
-							thermoOutputDir, file.getAbsolutePath()));
-		}
-	}
-
 	private static void copyRemainingFiles(final File fromfolder, final File tofolder) {
 		final String[] fromfiles = fromfolder.list();
 		for (final String fromfile : fromfiles) {
@@ -374,6 +449,17 @@ public final class RawToMgfWorker extends WorkerBase {
 		return spectrumBatchSize;
 	}
 
+	/**
+	 * @param concurrentBatches How many extract_msn batches to run at the same time. 0 means one per processor core.
+	 */
+	public void setConcurrentBatches(final int concurrentBatches) {
+		this.concurrentBatches = concurrentBatches;
+	}
+
+	public int getConcurrentBatches() {
+		return concurrentBatches;
+	}
+
 	@Override
 	public String check() {
 		LOGGER.info("Checking raw2mgf");
@@ -405,8 +491,21 @@ public final class RawToMgfWorker extends WorkerBase {
 			worker.setWrapperScript(config.get(WRAPPER_SCRIPT));
 			worker.setXvfbWrapperScript(Strings.isNullOrEmpty(config.get(XVFB_WRAPPER_SCRIPT)) ? null : new File(config.get(XVFB_WRAPPER_SCRIPT)));
 			worker.setExtractMsnExecutable(new File(config.get(EXTRACT_MSN_EXECUTABLE)));
+			worker.setConcurrentBatches(getInt(config, CONCURRENT_BATCHES, DEFAULT_CONCURRENT_BATCHES));
 			return worker;
 		}
+
+		private static int getInt(final Config config, final String key, final int defaultValue) {
+			final String value = config.get(key);
+			if (value == null || value.trim().isEmpty()) {
+				return defaultValue;
+			}
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (final NumberFormatException e) {
+				throw new MprcException("Not a valid number for " + key + ": " + value, e);
+			}
+		}
 	}
 
 	/**
@@ -445,6 +544,13 @@ public final class RawToMgfWorker extends WorkerBase {
 					.required()
 					.existingDirectory()
 
+					.property(CONCURRENT_BATCHES, "Concurrent batches",
+							"extract_msn is run on batches of spectra. This many batches of a single .RAW file are extracted at the same time, "
+									+ "each into its own temporary folder. <tt>0</tt> runs one batch per processor core."
+									+ "<p>Set to <tt>1</tt> if your extract_msn installation cannot run several times at once.</p>")
+					.integerValue(0, null)
+					.defaultValue(String.valueOf(DEFAULT_CONCURRENT_BATCHES))
+
 					.property(WRAPPER_SCRIPT, "Wrapper Script",
 							"<p>This is needed only for Linux. On Windows, leave this field blank.</p>" +
 									"<p>A wrapper script takes the extract_msn command line as a parameter and executes extract_msn.</p>"
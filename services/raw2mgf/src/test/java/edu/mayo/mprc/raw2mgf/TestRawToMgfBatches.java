@@ -0,0 +1,125 @@
+package edu.mayo.mprc.raw2mgf;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.utilities.FileUtilities;
+import edu.mayo.mprc.utilities.log.ParentLog;
+import edu.mayo.mprc.utilities.log.SimpleParentLog;
+import edu.mayo.mprc.utilities.progress.ProgressInfo;
+import edu.mayo.mprc.utilities.progress.UserProgressReporter;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs the batched conversion against a stub extract_msn - a shell script producing a .dta file
+ * for every requested spectrum, up to {@link #TOTAL_SPECTRA}.
+ *
+ * @author Roman Zenka
+ */
+public final class TestRawToMgfBatches {
+	private static final int TOTAL_SPECTRA = 95;
+
+	private File tempRootDir;
+	private File extractMsn;
+	private File rawFile;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		if (FileUtilities.isWindowsPlatform()) {
+			throw new SkipException("The stub extract_msn is a shell script");
+		}
+		tempRootDir = FileUtilities.createTempFolder();
+		extractMsn = new File(tempRootDir, "extract_msn.sh");
+		Files.write("#!/bin/sh\n"
+				+ "first=1; last=1\n"
+				+ "for a in \"$@\"; do case \"$a\" in -F*) first=${a#-F};; -L*) last=${a#-L};; esac; done\n"
+				+ "[ $last -gt " + TOTAL_SPECTRA + " ] && last=" + TOTAL_SPECTRA + "\n"
+				+ "echo \"$@\" > lcq_dta.txt\n"
+				+ "i=$first\n"
+				+ "while [ $i -le $last ]; do\n"
+				+ "  printf '%s.5 2\\n100.0 10.0\\n200.0 20.0\\n' $((1000 + i)) > test.$i.$i.2.dta\n"
+				+ "  i=$((i + 1))\n"
+				+ "done\n", extractMsn, Charsets.US_ASCII);
+		Assert.assertTrue(extractMsn.setExecutable(true));
+		rawFile = new File(tempRootDir, "test.RAW");
+		Files.write("raw", rawFile, Charsets.US_ASCII);
+	}
+
+	@AfterClass
+	public void tearDown() {
+		if (tempRootDir != null) {
+			FileUtilities.cleanupTempFile(tempRootDir);
+		}
+	}
+
+	@Test
+	public void shouldConvertAllBatchesInOrder() throws IOException {
+		final List<String> lines = convert("-F1", 7, 4);
+		assertSpectra(lines, 1, TOTAL_SPECTRA);
+	}
+
+	@Test
+	public void shouldHonorSpectrumRange() throws IOException {
+		final List<String> lines = convert("-F11 -L40", 8, 3);
+		assertSpectra(lines, 11, 40);
+	}
+
+	@Test
+	public void shouldConvertSequentially() throws IOException {
+		final List<String> lines = convert("-F1", 10, 1);
+		assertSpectra(lines, 1, TOTAL_SPECTRA);
+	}
+
+	private List<String> convert(final String params, final int batchSize, final int concurrentBatches) throws IOException {
+		final File tempFolder = new File(tempRootDir, "temp");
+		FileUtilities.ensureFolderExists(tempFolder);
+		final File workFolder = new File(tempRootDir, "work");
+		FileUtilities.ensureFolderExists(workFolder);
+		final File mgfFile = new File(tempRootDir, "result.mgf");
+
+		final RawToMgfWorker worker = new RawToMgfWorker();
+		worker.setTempFolder(tempFolder);
+		worker.setExtractMsnExecutable(extractMsn);
+		worker.setSpectrumBatchSize(batchSize);
+		worker.setConcurrentBatches(concurrentBatches);
+
+		worker.process(new RawToMgfWorkPacket(params, mgfFile, false, rawFile, false, false), workFolder, new UserProgressReporter() {
+			@Override
+			public void reportProgress(final ProgressInfo progressInfo) {
+			}
+
+			@Override
+			public ParentLog getLog() {
+				return new SimpleParentLog();
+			}
+		});
+
+		Assert.assertEquals(tempFolder.list().length, 0, "All batch folders must be cleaned up");
+		final List<String> lines = Files.readLines(mgfFile, Charsets.US_ASCII);
+		FileUtilities.cleanupTempFile(mgfFile);
+		return lines;
+	}
+
+	private static void assertSpectra(final List<String> lines, final int first, final int last) {
+		int expected = first;
+		for (int i = 0; i < lines.size(); i++) {
+			final String line = lines.get(i);
+			if (line.startsWith("TITLE=")) {
+				Assert.assertEquals(line, "TITLE=test scan " + expected + " " + expected + " (test." + expected + "." + expected + ".2.dta)");
+				Assert.assertEquals(lines.get(i + 1), "CHARGE=2+");
+				Assert.assertTrue(lines.get(i + 2).startsWith("PEPMASS="));
+				Assert.assertEquals(Double.parseDouble(lines.get(i + 2).substring("PEPMASS=".length())), (1000 + expected + 0.5 + 1.00727646) / 2, 1e-9);
+				Assert.assertEquals(lines.get(i + 3), "100.0 10.0");
+				expected++;
+			}
+		}
+		Assert.assertEquals(expected, last + 1, "All spectra must be present");
+	}
+}
@@ -3,6 +3,7 @@ package edu.mayo.mprc.searchdb.builder;
 import com.google.common.base.Strings;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.fastadb.ProteinSequenceTranslator;
+import edu.mayo.mprc.io.TsvScanner;
 import edu.mayo.mprc.scaffoldparser.spectra.ScaffoldReportReader;
 import edu.mayo.mprc.scaffoldparser.spectra.ScaffoldSpectraVersion;
 import edu.mayo.mprc.utilities.FileUtilities;
@@ -112,23 +113,92 @@ public class ScaffoldSpectraSummarizer extends ScaffoldReportReader {
 	@Override
 	public boolean processRow(final String line) {
 		fillCurrentLine(line);
-		final BiologicalSampleBuilder biologicalSample = analysis.getBiologicalSamples().getBiologicalSample(currentLine[biologicalSampleName], currentLine[biologicalSampleCategory]);
-		final SearchResultBuilder searchResult = biologicalSample.getSearchResults().getTandemMassSpecResult(FileUtilities.stripGzippedExtension(currentLine[msmsSampleName]));
-		String databaseSources = Strings.isNullOrEmpty(currentLine[this.databaseSources]) ? databaseName : currentLine[this.databaseSources];
-		searchResult.getProteinGroups().getProteinGroup(
+		addProteinGroup(
+				currentLine[biologicalSampleName],
+				currentLine[biologicalSampleCategory],
+				currentLine[msmsSampleName],
 				currentLine[proteinAccessionNumbers],
-				databaseSources,
+				currentLine[databaseSources],
 
 				parseInt(currentLine[numberOfTotalSpectra]),
 				parseInt(currentLine[numberOfUniquePeptides]),
 				parseInt(currentLine[numberOfUniqueSpectra]),
-				parseDouble(currentLine[percentageOfTotalSpectra]) / HUNDRED_PERCENT,
-				parseDouble(currentLine[percentageSequenceCoverage]) / HUNDRED_PERCENT,
-				parseDouble(currentLine[proteinIdentificationProbability]) / HUNDRED_PERCENT);
+				parseDouble(currentLine[percentageOfTotalSpectra]),
+				parseDouble(currentLine[percentageSequenceCoverage]),
+				parseDouble(currentLine[proteinIdentificationProbability]));
+		return true;
+	}
 
+	/**
+	 * Spectrum reports have one row per spectrum, with dozens of columns. We copy out only the few text columns
+	 * we need and parse the numbers in place.
+	 */
+	@Override
+	protected boolean processRow(final TsvScanner row) {
+		addProteinGroup(
+				row.getString(biologicalSampleName),
+				row.getString(biologicalSampleCategory),
+				row.getString(msmsSampleName),
+				row.getField(proteinAccessionNumbers),
+				row.getString(databaseSources),
+
+				parseInt(row, numberOfTotalSpectra),
+				parseInt(row, numberOfUniquePeptides),
+				parseInt(row, numberOfUniqueSpectra),
+				parseDouble(row, percentageOfTotalSpectra),
+				parseDouble(row, percentageSequenceCoverage),
+				parseDouble(row, proteinIdentificationProbability));
 		return true;
 	}
 
+	private void addProteinGroup(final String biologicalSampleName, final String biologicalSampleCategory,
+	                             final String msmsSampleName, final CharSequence proteinAccessionNumbers, final String databaseSources,
+	                             final int numberOfTotalSpectra, final int numberOfUniquePeptides, final int numberOfUniqueSpectra,
+	                             final double percentageOfTotalSpectra, final double percentageSequenceCoverage,
+	                             final double proteinIdentificationProbability) {
+		final BiologicalSampleBuilder biologicalSample = analysis.getBiologicalSamples().getBiologicalSample(biologicalSampleName, biologicalSampleCategory);
+		final SearchResultBuilder searchResult = biologicalSample.getSearchResults().getTandemMassSpecResult(FileUtilities.stripGzippedExtension(msmsSampleName));
+		searchResult.getProteinGroups().getProteinGroup(
+				proteinAccessionNumbers,
+				Strings.isNullOrEmpty(databaseSources) ? databaseName : databaseSources,
+
+				numberOfTotalSpectra,
+				numberOfUniquePeptides,
+				numberOfUniqueSpectra,
+				percentageOfTotalSpectra / HUNDRED_PERCENT,
+				percentageSequenceCoverage / HUNDRED_PERCENT,
+				proteinIdentificationProbability / HUNDRED_PERCENT);
+	}
+
+	/**
+	 * Parse an integer in place. Numbers with thousands separated by commas go through {@link #parseInt(String)}.
+	 */
+	private static int parseInt(final TsvScanner row, final int column) {
+		try {
+			return row.getInt(column);
+		} catch (NumberFormatException ignore) {
+			// SWALLOWED: retry the slow way, handling commas
+			return parseInt(row.getString(column));
+		}
+	}
+
+	/**
+	 * Same as {@link #parseDouble(String)}, only parses the number in place.
+	 */
+	private static double parseDouble(final TsvScanner row, final int column) {
+		final CharSequence value = row.getField(column);
+		final int length = value.length();
+		if (length == 0) {
+			return Double.NaN;
+		}
+		try {
+			return TsvScanner.parseDouble(value, 0, value.charAt(length - 1) == '%' ? length - 1 : length);
+		} catch (NumberFormatException ignore) {
+			// SWALLOWED: retry the slow way, handling commas
+			return parseDouble(value.toString());
+		}
+	}
+
 	/**
 	 * Parse a double number. If the number is missing, {@link Double#NaN} is returned
 	 *
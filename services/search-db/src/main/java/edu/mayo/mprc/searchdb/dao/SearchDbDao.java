@@ -68,8 +68,11 @@ public interface SearchDbDao extends Dao, RuntimeInitializer {
 	/**
 	 * @return List of all report ids  that do not have the analysis object attached. Only reports with defined search
 	 * parameters are listed (does not make sense to list them otherwise, as results cannot be loaded in that case).
+	 * Reports that failed to load too many times are skipped.
+	 *
+	 * @param maxLoadAttempts Skip reports whose {@link ReportData#getLoadAttempts()} reached this value.
 	 */
-	List<Long> getReportIdsWithoutAnalysis();
+	List<Long> getReportIdsWithoutAnalysis(int maxLoadAttempts);
 
 	/**
 	 * Go through the list of all mass spectrometry samples, calling the given callback on each.
@@ -43,7 +43,7 @@ public abstract class SearchDbDaoBlank implements SearchDbDao {
 	}
 
 	@Override
-	public List<Long> getReportIdsWithoutAnalysis() {
+	public List<Long> getReportIdsWithoutAnalysis(final int maxLoadAttempts) {
 		throw new UnsupportedOperationException();
 	}
 
@@ -422,11 +422,14 @@ public class SearchDbDaoHibernate extends DaoBase implements SearchDbDao {
 	}
 
 	@Override
-	public List<Long> getReportIdsWithoutAnalysis() {
+	public List<Long> getReportIdsWithoutAnalysis(final int maxLoadAttempts) {
 		return listAndCast(getSession().createQuery("select rd.id from ReportData as rd where " +
 				"rd.searchRun.hidden=0 " +
 				"and rd.searchRun.swiftSearch is not null " +
-				"and rd.analysisId is null order by rd.dateCreated desc"));
+				"and rd.analysisId is null " +
+				"and (rd.loadAttempts is null or rd.loadAttempts < :maxLoadAttempts) " +
+				"order by rd.dateCreated desc")
+				.setParameter("maxLoadAttempts", maxLoadAttempts));
 	}
 
 	@Override
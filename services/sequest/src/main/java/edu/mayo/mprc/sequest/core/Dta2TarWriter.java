@@ -8,6 +8,7 @@ import org.apache.log4j.Logger;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 final class Dta2TarWriter {
 	private static final Logger LOGGER = Logger.getLogger(Dta2TarWriter.class);
@@ -17,21 +18,23 @@ final class Dta2TarWriter {
 	}
 
 
-	/*
-  * find the matching .out files based on same prefix
-  * then insert the dta's and out's into the tar in order
-  * dta, out, dta, out...
-  * @param dtaFileNames - the dta file names
-  * @param outputDir - tar file will be placed here
-  *
-  */
-	public void writeDtaFilesToTar(final List<String> dtaFileNames, final TarWriter tarWriter) {
-		final List<File> allFiles = new ArrayList<File>();
-		for (final String fileName1 : dtaFileNames) {
-			final File dtaFile = new File(fileName1);
-			final String fileName = dtaFile.getAbsolutePath();
-			if (!new File(fileName).isFile()) {
-				throw new MprcException("not a file : " + fileName);
+	/**
+	 * Find the matching .out files based on same prefix,
+	 * then insert the dta's and out's into the tar in order
+	 * dta, out, dta, out...
+	 * The .dta content is taken from memory when available, the .out files are streamed from the disk.
+	 * The tar writer is left open, so more files can be appended.
+	 *
+	 * @param dtaFiles    The dta files.
+	 * @param dtaContents Content of the dta files, keyed by file name. Files missing here are read from the disk.
+	 * @param tarWriter   Tar to append to.
+	 */
+	public void writeDtaFilesToTar(final List<File> dtaFiles, final Map<String, byte[]> dtaContents, final TarWriter tarWriter) {
+		final List<File> allFiles = new ArrayList<File>(dtaFiles.size() * 2);
+		for (final File dtaFile : dtaFiles) {
+			final byte[] content = dtaContents.get(dtaFile.getName());
+			if (content == null && !dtaFile.isFile()) {
+				throw new MprcException("not a file : " + dtaFile.getAbsolutePath());
 			}
 			final File out = getMatchingOutFile(dtaFile);
 
@@ -45,17 +48,20 @@ final class Dta2TarWriter {
 
 			allFiles.add(dtaFile);
 			allFiles.add(out);
-
 		}
 		// now tar these files
-		if (!allFiles.isEmpty()) {
-			tarWriter.addFiles(allFiles);
+		for (final File file : allFiles) {
+			final byte[] content = dtaContents.get(file.getName());
+			if (content == null) {
+				tarWriter.addFile(file);
+			} else {
+				tarWriter.addEntry(file.getName(), content);
+			}
 		}
 		// And since we added them all, we can delete them now
 		for (final File file : allFiles) {
 			FileUtilities.quietDelete(file);
 		}
-
 	}
 
 	/**
@@ -1,11 +1,12 @@
 package edu.mayo.mprc.sequest.core;
 
+import com.google.common.base.Charsets;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.utilities.FileUtilities;
 import org.apache.log4j.Logger;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
@@ -402,14 +403,19 @@ final class MgfIonsModeller implements IonsModellerInterface {
 			final File dta = new File(dtaFileName);
 			FileUtilities.ensureFileExists(dta);
 
-			FileWriter w = null;
+			final byte[] content = new StringBuilder(sIONS.length() + 40)
+					.append(mh)
+					.append(' ')
+					.append(charge)
+					.append('\n')
+					.append(sIONS)
+					.toString()
+					.getBytes(Charsets.US_ASCII);
+
+			FileOutputStream w = null;
 			try {
-				w = new FileWriter(dta);
-				w.append(String.valueOf(mh))
-						.append(" ")
-						.append(charge)
-						.append("\n")
-						.append(sIONS);
+				w = new FileOutputStream(dta);
+				w.write(content);
 			} catch (IOException ioe) {
 				throw new MprcException("could not write to file", ioe);
 			} finally {
@@ -418,7 +424,7 @@ final class MgfIonsModeller implements IonsModellerInterface {
 			//LOGGER.debug("created file="+dta.getAbsolutePath());
 
 
-			sequestSubmitter.addDtaFile(new File(dtaFileName), false);
+			sequestSubmitter.addDtaFile(dta, content, false);
 			ionsSection++;
 		}
 	}
@@ -12,7 +12,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This is reponsible for packaging dtas to send to sequest
@@ -26,6 +28,11 @@ final class SequestSubmit implements SequestSubmitterInterface {
 	 */
 	private List<File> sequestDtaFiles;
 
+	/**
+	 * content of the dta files we got in memory, keyed by file name
+	 */
+	private final Map<String, byte[]> dtaContents = new HashMap<String, byte[]>();
+
 	/**
 	 * the accumulated length of filenames in segment
 	 */
@@ -57,6 +64,10 @@ final class SequestSubmit implements SequestSubmitterInterface {
 	 * The tar file.
 	 */
 	private File tarFile;
+	/**
+	 * Writer appending to the tar file, kept open until {@link #forceSubmit()}.
+	 */
+	private TarWriter tarWriter;
 	/**
 	 * Exception
 	 */
@@ -96,6 +107,11 @@ final class SequestSubmit implements SequestSubmitterInterface {
 	 */
 	@Override
 	public void addDtaFile(final File file, final boolean forced) {
+		addDtaFile(file, null, forced);
+	}
+
+	@Override
+	public void addDtaFile(final File file, final byte[] content, final boolean forced) {
 		if (n == 0) {
 			creationTime = new Date().getTime();
 		}
@@ -109,6 +125,9 @@ final class SequestSubmit implements SequestSubmitterInterface {
 
 		n++;
 		sequestDtaFiles.add(file);
+		if (content != null) {
+			dtaContents.put(file.getName(), content);
+		}
 		accumulatedLength += addedLength;
 
 		if (forced) {
@@ -128,6 +147,7 @@ final class SequestSubmit implements SequestSubmitterInterface {
 		if (haveSequestDtaFiles()) {
 			submitFilesToSequest();
 		}
+		closeTarWriter();
 
 		// do the cleanup
 		// now create the zip file
@@ -179,46 +199,61 @@ final class SequestSubmit implements SequestSubmitterInterface {
 
 		// now the tar
 		LOGGER.info("tar file name=" + tarFile);
-		TarWriter tt = null;
+		if (tarWriter == null) {
+			tarWriter = new TarWriter(tarFile);
+		}
 		try {
-			tt = new TarWriter(tarFile, progressReporter);
 			// .out and .dta files are in the working  dir for sequest
-			final List<String> dtasToTar = new ArrayList<String>();
-			final List<File> sequestDtaSnapshot = new ArrayList<File>(getSequestDtaFiles());
+			final List<File> dtasToTar = new ArrayList<File>();
 			final File workingDir = sequestCaller.getWorkingDir();
-			for (final File sequestDtaSnapshotFile : sequestDtaSnapshot) {
-				dtasToTar.add(new File(workingDir, sequestDtaSnapshotFile.getName()).getAbsolutePath());
+			for (final File sequestDtaFile : getSequestDtaFiles()) {
+				dtasToTar.add(new File(workingDir, sequestDtaFile.getName()));
 			}
 			// need to tar these files and the corresponding .out files
 			final Date startTar = new Date();
 
 			final Dta2TarWriter dtaWriter = new Dta2TarWriter();
-			dtaWriter.writeDtaFilesToTar(dtasToTar, tt);
+			dtaWriter.writeDtaFilesToTar(dtasToTar, dtaContents, tarWriter);
 			final Date endTar = new Date();
 			final long tarTime = endTar.getTime() - startTar.getTime();
 
 			LOGGER.info("Tarring finished, tar time: " + tarTime);
-		} finally {
-			if (tt != null) {
-				try {
-					tt.close();
-				} catch (Exception e) {
-					cleanTarOnFailure(tt.getTarFile(), e);
-				}
+		} catch (RuntimeException e) {
+			try {
+				closeTarWriter();
+			} catch (Exception ignore) {
+				// SWALLOWED: the original failure is what matters
 			}
-
-			// validate the tar file, if it is corrupted then delete it and throw an exception
-			validateTarFile(tarFile);
+			throw e;
 		}
 
-		LOGGER.info("tar file = " + tt.getTarFile() + " has " + TarReader.readNumberHeaders(tt.getTarFile()) + " headers");
-
 		// then remove the files
 		sequestDtaFiles = new ArrayList<File>();
+		dtaContents.clear();
 		accumulatedLength = 0;
 		creationTime = new Date().getTime();
 	}
 
+	/**
+	 * Finish the tar file and make sure it can be read.
+	 */
+	private void closeTarWriter() {
+		if (tarWriter == null) {
+			return;
+		}
+		final TarWriter writer = tarWriter;
+		tarWriter = null;
+		try {
+			writer.close();
+		} catch (Exception e) {
+			cleanTarOnFailure(writer.getTarFile(), e);
+		}
+
+		// validate the tar file, if it is corrupted then delete it and throw an exception
+		validateTarFile(tarFile);
+		LOGGER.info("tar file = " + tarFile + " has " + TarReader.readNumberHeaders(tarFile) + " headers");
+	}
+
 	/**
 	 * A list of dta files that did not get a matching .out file.
 	 */
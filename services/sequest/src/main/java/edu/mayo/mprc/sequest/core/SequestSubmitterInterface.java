@@ -6,6 +6,12 @@ interface SequestSubmitterInterface {
 
 	void addDtaFile(File file, boolean forced);
 
+	/**
+	 * Same as {@link #addDtaFile(File, boolean)}, the content of the already written .dta file is kept in memory,
+	 * so it can be packed into the tar without reading the file back.
+	 */
+	void addDtaFile(File file, byte[] content, boolean forced);
+
 	int getHowManyFiles();
 
 	void setExceptionThrown(Throwable m);
@@ -18,6 +18,11 @@ public final class SequestSubmitStub implements SequestSubmitterInterface {
 		dtas.add(file);
 	}
 
+	@Override
+	public void addDtaFile(final File file, final byte[] content, final boolean forced) {
+		addDtaFile(file, forced);
+	}
+
 	@Override
 	public int getHowManyFiles() {
 		return dtas.size();
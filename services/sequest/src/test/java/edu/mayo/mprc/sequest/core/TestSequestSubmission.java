@@ -1123,7 +1123,7 @@ public final class TestSequestSubmission {
 
 			// mgf file has 150 sections so the tar file should also;
 			// tar name is mytar.tar;
-			final TarWriter t = new TarWriter(new File(outputDir, "mytar.tar"), new TestProgressReporter());
+			final TarWriter t = new TarWriter(new File(outputDir, "mytar.tar"));
 			// now read number of sections;
 			final int numheaders = TarReader.readNumberHeaders(t.getTarFile());
 			//Assert.assertEquals (300, numheaders, "number of headers not correct");
@@ -1160,7 +1160,7 @@ public final class TestSequestSubmission {
 
 			// mgf file has 150 sections so the tar file should also;
 			// tar name is mytar.tar;
-			final TarWriter t = new TarWriter(new File(outputDir, "mytar.tar"), new TestProgressReporter());
+			final TarWriter t = new TarWriter(new File(outputDir, "mytar.tar"));
 			// now read number of sections;
 			final int numheaders = TarReader.readNumberHeaders(t.getTarFile());
 			//Assert.assertEquals (300, numheaders, "number of headers not correct");
@@ -18,6 +18,8 @@ public class ReportData {
 	private DateTime dateCreated;
 	private SearchRun searchRun;
 	private Integer analysisId;
+	private Integer loadAttempts;
+	private String loadError;
 
 	public ReportData() {
 	}
@@ -68,6 +70,28 @@ public class ReportData {
 		this.analysisId = analysisId;
 	}
 
+	/**
+	 * @return How many times the loading of this report into the search database failed. Null if it never failed.
+	 */
+	public Integer getLoadAttempts() {
+		return loadAttempts;
+	}
+
+	public void setLoadAttempts(final Integer loadAttempts) {
+		this.loadAttempts = loadAttempts;
+	}
+
+	/**
+	 * @return Why the last load of this report into the search database failed.
+	 */
+	public String getLoadError() {
+		return loadError;
+	}
+
+	public void setLoadError(final String loadError) {
+		this.loadError = loadError;
+	}
+
 	public String toString() {
 		return MessageFormat.format("{0}: {1} {2}",
 				getId(),
@@ -1,5 +1,6 @@
 package edu.mayo.mprc.swift.search;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.daemon.AssignedTaskData;
 import edu.mayo.mprc.daemon.worker.log.NewLogFiles;
@@ -15,17 +16,73 @@ import edu.mayo.mprc.workflow.engine.TaskBase;
 import edu.mayo.mprc.workflow.persistence.TaskState;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the progress of a search into the database.
+ * <p/>
+ * The task updates are written behind. Updates to the same task are collapsed - only the latest
+ * task state and percent done get stored, while all the assigned task data, log files and warnings are kept in order.
+ * The pending updates are stored in a single transaction {@link #FLUSH_INTERVAL_MILLIS} after the first of them arrived.
+ * <p/>
+ * When a task finishes, everything pending is stored before {@link #taskChange} returns,
+ * so a finished task is never reported to the database later than it used to be.
+ * An update that fails to be stored in the background is queued again, so the caller waiting for it
+ * either gets it stored or learns about the failure.
+ */
 public final class PersistenceMonitor implements SearchMonitor {
 
 	private static final Logger LOGGER = Logger.getLogger(PersistenceMonitor.class);
 
+	/**
+	 * How long to collect task updates before storing them.
+	 */
+	static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * How many times to try storing an update nobody waits for before giving up on it.
+	 */
+	private static final int MAX_STORE_ATTEMPTS = 3;
+
+	/**
+	 * Stores the pending updates of all the searches.
+	 */
+	private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder()
+					.setNameFormat("persistence-monitor-%d")
+					.setDaemon(true)
+					.build());
+
 	private int searchRunId;
 	private SwiftDao swiftDao;
 	private final LogMap logMap = new LogMap();
+	private final long flushIntervalMillis;
+
+	/**
+	 * Tasks with updates that were not stored yet, in order of their first update. Guarded by this.
+	 */
+	private final Map<TaskBase, PendingTask> pendingTasks = new LinkedHashMap<TaskBase, PendingTask>();
+	private boolean flushScheduled;
+
+	/**
+	 * Only one flush at a time can talk to the database.
+	 */
+	private final Object flushLock = new Object();
 
 	public PersistenceMonitor(final int searchRunId, final SwiftDao swiftDao) {
+		this(searchRunId, swiftDao, FLUSH_INTERVAL_MILLIS);
+	}
+
+	PersistenceMonitor(final int searchRunId, final SwiftDao swiftDao, final long flushIntervalMillis) {
 		this.swiftDao = swiftDao;
 		this.searchRunId = searchRunId;
+		this.flushIntervalMillis = flushIntervalMillis;
 	}
 
 	@Override
@@ -47,25 +104,28 @@ public final class PersistenceMonitor implements SearchMonitor {
 			return;
 		}
 
-		swiftDao.begin();
-		try {
-			syncTaskBase(task, task.getState());
-			swiftDao.commit();
-		} catch (final Exception t) {
-			throw new MprcException("Could not store change in task information", t);
+		synchronized (this) {
+			getPendingTask(task, task.getState());
+		}
+		if (task.isDone()) {
+			final Exception failure = flush(task);
+			if (failure != null) {
+				throw new MprcException("Could not store change in task information", failure);
+			}
+		} else {
+			scheduleFlush();
 		}
 	}
 
 	@Override
 	public void error(final TaskBase task, final Throwable t) {
-		swiftDao.begin();
-		try {
-			syncTaskBase(task, TaskState.RUN_FAILED);
-			swiftDao.commit();
-		} catch (final Exception e) {
+		synchronized (this) {
+			getPendingTask(task, TaskState.RUN_FAILED).state = TaskState.RUN_FAILED;
+		}
+		final Exception failure = flush(task);
+		if (failure != null) {
 			// SWALLOWED: just log
-			LOGGER.error("Could not store " + task.getName() + " task exception into the database (" + t.getMessage() + ").", e);
-			swiftDao.rollback();
+			LOGGER.error("Could not store " + task.getName() + " task exception into the database (" + t.getMessage() + ").", failure);
 		}
 	}
 
@@ -77,6 +137,8 @@ public final class PersistenceMonitor implements SearchMonitor {
 		if (message.length() > 496) {
 			message = message.substring(0, 496) + "...";
 		}
+		// Store what the tasks managed to report before the failure
+		flush(null);
 		swiftDao.begin();
 		try {
 			swiftDao.searchRunFailed(searchRunId, message);
@@ -94,62 +156,168 @@ public final class PersistenceMonitor implements SearchMonitor {
 	@Override
 	public void taskProgress(final TaskBase task, final Object progressInfo) {
 		if (task instanceof AsyncTaskBase) {
-			if (progressInfo instanceof AssignedTaskData) {
-				swiftDao.begin();
-				final TaskData data = syncTaskBase(task, task.getState());
-				try {
-					swiftDao.storeAssignedTaskData(data, (AssignedTaskData) progressInfo);
-					swiftDao.commit();
-				} catch (final Exception t) {
-					// SWALLOWED: just log
-					LOGGER.error("Could not store " + task.getName() + " assigned task data into the database (" + t.getMessage() + ").", t);
-					swiftDao.rollback();
+			synchronized (this) {
+				final PendingTask pending = getPendingTask(task, task.getState());
+				if (progressInfo instanceof AssignedTaskData
+						|| progressInfo instanceof NewLogFiles
+						|| progressInfo instanceof TaskWarning) {
+					pending.progress.add(progressInfo);
+				} else if (progressInfo instanceof PercentDone) {
+					// Only the latest percent done matters
+					pending.percentDone = ((PercentDone) progressInfo).getPercentDone();
 				}
-			} else if (progressInfo instanceof NewLogFiles) {
-				swiftDao.begin();
-				final TaskData data = syncTaskBase(task, task.getState());
-				try {
-					final LogData logData = new LogData(
-							data,
-							logMap.getLogData(data, ((NewLogFiles) progressInfo).getParentLogId()),
-							((NewLogFiles) progressInfo).getOutputLogFile(),
-							((NewLogFiles) progressInfo).getErrorLogFile());
-					final LogData savedLogData = swiftDao.storeLogData(logData);
-					logMap.addLogData(((NewLogFiles) progressInfo).getLogId(), savedLogData);
-					swiftDao.commit();
-				} catch (final Exception t) {
-					// SWALLOWED: just log
-					LOGGER.error("Could not store " + task.getName() + " log data into the database (" + t.getMessage() + ").", t);
-					swiftDao.rollback();
+				// No matter what happened, we just update the task
+			}
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * Store all pending updates now. Blocks until the updates are in the database.
+	 *
+	 * @param task The task we care about, can be null.
+	 * @return The reason why the updates of the given task could not be stored, null if they were stored.
+	 */
+	Exception flush(final TaskBase task) {
+		synchronized (flushLock) {
+			final List<PendingTask> tasks;
+			synchronized (this) {
+				tasks = new ArrayList<PendingTask>(pendingTasks.values());
+				pendingTasks.clear();
+			}
+			if (tasks.isEmpty()) {
+				return null;
+			}
+
+			final List<TaskBase> created = new ArrayList<TaskBase>(0);
+			swiftDao.begin();
+			try {
+				for (final PendingTask pending : tasks) {
+					store(pending, created);
 				}
-			} else if (progressInfo instanceof TaskWarning) {
+				swiftDao.commit();
+				return null;
+			} catch (final Exception e) {
+				// SWALLOWED: we retry the tasks one by one, so one bad update does not lose the others
+				LOGGER.warn("Could not store updates of " + tasks.size() + " tasks at once, storing them one by one (" + e.getMessage() + ").");
+				rollback(created);
+			}
+
+			Exception result = null;
+			for (final PendingTask pending : tasks) {
+				created.clear();
 				swiftDao.begin();
-				final TaskData data = syncTaskBase(task, task.getState());
 				try {
-					data.setWarningMessage(((TaskWarning) progressInfo).getWarningMessage());
+					store(pending, created);
 					swiftDao.commit();
-				} catch (final Exception t) {
-					// SWALLOWED: just log
-					LOGGER.error("Could not store " + task.getName() + " assigned task data into the database (" + t.getMessage() + ").", t);
-					swiftDao.rollback();
+				} catch (final Exception e) {
+					rollback(created);
+					pending.attempts++;
+					if (pending.task == task) {
+						result = e;
+					} else if (pending.attempts < MAX_STORE_ATTEMPTS) {
+						// SWALLOWED: try again with the next flush
+						LOGGER.warn("Could not store " + pending.task.getName() + " task progress into the database, will retry (" + e.getMessage() + ").");
+						requeue(pending);
+					} else {
+						// SWALLOWED: just log
+						LOGGER.error("Could not store " + pending.task.getName() + " task progress into the database (" + e.getMessage() + ").", e);
+					}
 				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Put an update that could not be stored back in front of the updates that arrived since.
+	 */
+	private void requeue(final PendingTask failed) {
+		synchronized (this) {
+			final PendingTask newer = pendingTasks.get(failed.task);
+			if (newer == null) {
+				pendingTasks.put(failed.task, failed);
 			} else {
-				// No matter what happened, we just update the task
-				swiftDao.begin();
-				try {
-					final TaskData data = syncTaskBase(task, task.getState());
-					// We got PercentDone message, let's store that
-					if (progressInfo instanceof PercentDone) {
-						final PercentDone done = (PercentDone) progressInfo;
-						data.setPercentDone(done.getPercentDone());
-					}
-					swiftDao.commit();
-				} catch (final Exception t) {
-					// SWALLOWED: just log
-					LOGGER.error("Could not store " + task.getName() + " task progress into the database (" + t.getMessage() + ").", t);
-					swiftDao.rollback();
+				newer.state = failed.state;
+				newer.attempts = failed.attempts;
+				if (newer.percentDone == null) {
+					newer.percentDone = failed.percentDone;
 				}
+				newer.progress.addAll(0, failed.progress);
+			}
+		}
+		scheduleFlush();
+	}
+
+	private void scheduleFlush() {
+		synchronized (this) {
+			if (flushScheduled) {
+				return;
 			}
+			flushScheduled = true;
+		}
+		FLUSHER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (PersistenceMonitor.this) {
+					flushScheduled = false;
+				}
+				flush(null);
+			}
+		}, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private PendingTask getPendingTask(final TaskBase task, final TaskState state) {
+		PendingTask pending = pendingTasks.get(task);
+		if (pending == null) {
+			pending = new PendingTask(task, state);
+			pendingTasks.put(task, pending);
+		}
+		return pending;
+	}
+
+	/**
+	 * Store the updates of a single task within current transaction.
+	 *
+	 * @param created Tasks that got their {@link TaskData} created get added here.
+	 */
+	private void store(final PendingTask pending, final List<TaskBase> created) {
+		final TaskBase task = pending.task;
+		if (task.getTaskDataId() == null) {
+			created.add(task);
+		}
+		final TaskData data = syncTaskBase(task, pending.state);
+		if (pending.percentDone != null) {
+			data.setPercentDone(pending.percentDone);
+		}
+		for (final Object progressInfo : pending.progress) {
+			if (progressInfo instanceof AssignedTaskData) {
+				swiftDao.storeAssignedTaskData(data, (AssignedTaskData) progressInfo);
+			} else if (progressInfo instanceof NewLogFiles) {
+				final NewLogFiles logFiles = (NewLogFiles) progressInfo;
+				final LogData logData = new LogData(
+						data,
+						logMap.getLogData(data, logFiles.getParentLogId()),
+						logFiles.getOutputLogFile(),
+						logFiles.getErrorLogFile());
+				final LogData savedLogData = swiftDao.storeLogData(logData);
+				logMap.addLogData(logFiles.getLogId(), savedLogData);
+			} else if (progressInfo instanceof TaskWarning) {
+				data.setWarningMessage(((TaskWarning) progressInfo).getWarningMessage());
+			}
+		}
+	}
+
+	/**
+	 * Roll back the transaction. The tasks created within it do not exist in the database any more.
+	 */
+	private void rollback(final List<TaskBase> created) {
+		swiftDao.rollback();
+		for (final TaskBase task : created) {
+			task.setTaskDataId(null);
 		}
 	}
 
@@ -192,4 +360,29 @@ public final class PersistenceMonitor implements SearchMonitor {
 	public Integer getSearchRunId() {
 		return searchRunId;
 	}
+
+	/**
+	 * Updates of a single task waiting to be stored.
+	 */
+	private static final class PendingTask {
+		private final TaskBase task;
+		/**
+		 * State to create the task with, if it is not in the database yet.
+		 */
+		private TaskState state;
+		private Double percentDone;
+		/**
+		 * Assigned task data, new log files and warnings in the order they arrived.
+		 */
+		private final List<Object> progress = new ArrayList<Object>(1);
+		/**
+		 * How many times the update failed to be stored.
+		 */
+		private int attempts;
+
+		private PendingTask(final TaskBase task, final TaskState state) {
+			this.task = task;
+			this.state = state;
+		}
+	}
 }
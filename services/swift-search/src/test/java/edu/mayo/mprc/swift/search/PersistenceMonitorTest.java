@@ -0,0 +1,127 @@
+package edu.mayo.mprc.swift.search;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.daemon.TaskWarning;
+import edu.mayo.mprc.swift.db.SwiftDao;
+import edu.mayo.mprc.swift.dbmapping.TaskData;
+import edu.mayo.mprc.swift.search.task.AsyncTaskBase;
+import edu.mayo.mprc.utilities.progress.PercentDone;
+import edu.mayo.mprc.workflow.persistence.TaskState;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Roman Zenka
+ */
+public final class PersistenceMonitorTest {
+	private static final int TASK_DATA_ID = 5;
+
+	private SwiftDao swiftDao;
+	private TaskData taskData;
+	private AsyncTaskBase task;
+	private PersistenceMonitor monitor;
+
+	@BeforeMethod
+	public void setup() {
+		swiftDao = mock(SwiftDao.class);
+		taskData = new TaskData();
+		when(swiftDao.getTaskData(TASK_DATA_ID)).thenReturn(taskData);
+
+		task = mock(AsyncTaskBase.class);
+		when(task.getTaskDataId()).thenReturn(TASK_DATA_ID);
+		when(task.getName()).thenReturn("task");
+		when(task.getState()).thenReturn(TaskState.RUNNING);
+		when(task.isDone()).thenReturn(false);
+
+		// Never flush on our own, the test does it
+		monitor = new PersistenceMonitor(1, swiftDao, Long.MAX_VALUE / 2);
+	}
+
+	@Test
+	public void shouldCollapseProgress() {
+		monitor.taskChange(task);
+		monitor.taskProgress(task, new PercentDone(10.0));
+		monitor.taskProgress(task, new TaskWarning("careful"));
+		monitor.taskProgress(task, new PercentDone(20.0));
+		verify(swiftDao, never()).begin();
+
+		Assert.assertNull(monitor.flush(null));
+
+		verify(swiftDao, times(1)).begin();
+		verify(swiftDao, times(1)).commit();
+		Assert.assertEquals(taskData.getPercentDone(), Double.valueOf(20.0));
+		Assert.assertEquals(taskData.getWarningMessage(), "careful");
+	}
+
+	@Test
+	public void shouldFlushFinishedTask() {
+		monitor.taskProgress(task, new PercentDone(50.0));
+
+		when(task.getState()).thenReturn(TaskState.COMPLETED_SUCCESFULLY);
+		when(task.isDone()).thenReturn(true);
+		monitor.taskChange(task);
+
+		verify(swiftDao, times(1)).begin();
+		verify(swiftDao, times(1)).commit();
+		Assert.assertEquals(taskData.getPercentDone(), Double.valueOf(50.0));
+
+		// Nothing is left to store
+		Assert.assertNull(monitor.flush(null));
+		verify(swiftDao, times(1)).begin();
+	}
+
+	@Test
+	public void shouldStoreOtherTasksWhenOneFails() {
+		final AsyncTaskBase broken = mock(AsyncTaskBase.class);
+		when(broken.getTaskDataId()).thenReturn(TASK_DATA_ID + 1);
+		when(broken.getName()).thenReturn("broken");
+		when(broken.getState()).thenReturn(TaskState.RUNNING);
+		when(swiftDao.getTaskData(TASK_DATA_ID + 1)).thenThrow(new IllegalStateException("no such task"));
+
+		monitor.taskProgress(broken, new PercentDone(10.0));
+		monitor.taskProgress(task, new PercentDone(30.0));
+
+		Assert.assertNotNull(monitor.flush(broken));
+
+		// The batch failed, then each task got its own transaction
+		verify(swiftDao, times(3)).begin();
+		verify(swiftDao, times(1)).commit();
+		verify(swiftDao, times(2)).rollback();
+		Assert.assertEquals(taskData.getPercentDone(), Double.valueOf(30.0));
+	}
+
+	@Test
+	public void shouldRetryUpdateFailedInBackground() {
+		when(swiftDao.getTaskData(TASK_DATA_ID))
+				.thenThrow(new IllegalStateException("database down"))
+				.thenThrow(new IllegalStateException("database down"))
+				.thenReturn(taskData);
+		monitor.taskProgress(task, new PercentDone(50.0));
+		when(task.getState()).thenReturn(TaskState.COMPLETED_SUCCESFULLY);
+		when(task.isDone()).thenReturn(true);
+
+		// The background flush takes the update of the finished task first and fails to store it
+		Assert.assertNull(monitor.flush(null));
+		verify(swiftDao, never()).commit();
+
+		// The caller's own flush stores it again
+		monitor.taskChange(task);
+		verify(swiftDao, times(1)).commit();
+		Assert.assertEquals(taskData.getPercentDone(), Double.valueOf(50.0));
+	}
+
+	@Test(expectedExceptions = MprcException.class)
+	public void shouldReportUpdateFailedInBackground() {
+		when(swiftDao.getTaskData(TASK_DATA_ID)).thenThrow(new IllegalStateException("database down"));
+		monitor.taskProgress(task, new PercentDone(50.0));
+		when(task.getState()).thenReturn(TaskState.COMPLETED_SUCCESFULLY);
+		when(task.isDone()).thenReturn(true);
+
+		Assert.assertNull(monitor.flush(null));
+		// The failure of the finished task reaches the caller
+		monitor.taskChange(task);
+	}
+}
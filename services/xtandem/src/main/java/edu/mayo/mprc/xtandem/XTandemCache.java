@@ -6,9 +6,13 @@ import edu.mayo.mprc.config.ResourceConfig;
 import edu.mayo.mprc.config.ui.ServiceUiFactory;
 import edu.mayo.mprc.config.ui.UiBuilder;
 import edu.mayo.mprc.daemon.WorkCache;
+import edu.mayo.mprc.searchengine.ShardMerger;
+import edu.mayo.mprc.searchengine.ShardedEngineCache;
 import org.springframework.stereotype.Component;
 
-public final class XTandemCache extends WorkCache<XTandemWorkPacket> {
+import java.io.File;
+
+public final class XTandemCache extends ShardedEngineCache<XTandemWorkPacket> {
 	public static final String TYPE = "tandemCache";
 	public static final String NAME = "X!Tandem Cache";
 	public static final String DESC = "Caches previous X!Tandem search results. <p>Speeds up consecutive X!Tandem searches if the same file with same parameters is processed multiple times.</p>";
@@ -16,7 +20,17 @@ public final class XTandemCache extends WorkCache<XTandemWorkPacket> {
 	public XTandemCache() {
 	}
 
-	public static final class Config extends CacheConfig {
+	@Override
+	protected XTandemWorkPacket createShardPacket(final XTandemWorkPacket packet, final File shardInput, final File shardOutput) {
+		return new XTandemWorkPacket(shardInput, packet.getSearchParams(), shardOutput, packet.getDatabaseFile(), false, packet.isFromScratch());
+	}
+
+	@Override
+	protected ShardMerger getMerger(final XTandemWorkPacket packet) {
+		return new XTandemMerger(packet.getInputFile());
+	}
+
+	public static final class Config extends ShardedCacheConfig {
 		public Config() {
 		}
 	}
@@ -25,7 +39,9 @@ public final class XTandemCache extends WorkCache<XTandemWorkPacket> {
 	public static final class Factory extends WorkCache.Factory<Config> {
 		@Override
 		public WorkCache createCache(final Config config, final DependencyResolver dependencies) {
-			return new XTandemCache();
+			final XTandemCache cache = new XTandemCache();
+			cache.setShards(config.getShards());
+			return cache;
 		}
 	}
 
@@ -38,8 +54,11 @@ public final class XTandemCache extends WorkCache<XTandemWorkPacket> {
 					.property(CacheConfig.CACHE_FOLDER, "X!Tandem cache folder", "When a file gets searched by X!Tandem, the result is stored in this folder. Subsequent searches of the same file with same parameters use the cached value."
 							+ "<p>Ideally, this folder would be on a fast, potentially less reliable storage.</p>")
 					.required()
-					.defaultValue(DEFAULT_CACHE)
+					.defaultValue(DEFAULT_CACHE);
+
+			ShardedCacheConfig.addShardsProperty(builder);
 
+			builder
 					.property(CacheConfig.SERVICE, "X!Tandem Search Engine", "The X!Tandem engine that will do the search. The cache just caches the results.")
 					.reference("tandem", UiBuilder.NONE_TYPE);
 		}
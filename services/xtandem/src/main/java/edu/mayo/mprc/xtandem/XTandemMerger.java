@@ -0,0 +1,152 @@
+package edu.mayo.mprc.xtandem;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.searchengine.MgfSplitter;
+import edu.mayo.mprc.searchengine.ShardMerger;
+import edu.mayo.mprc.utilities.FileUtilities;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Merges X!Tandem output files produced for shards of a single input.
+ * <p/>
+ * The output consists of top-level <tt>group</tt> elements - one <tt>type="model"</tt> group per identified spectrum,
+ * followed by the <tt>type="parameters"</tt> groups. The model groups of all shards are concatenated, the parameter
+ * groups are taken from the first shard.
+ * <p/>
+ * X!Tandem numbers the spectra within the file, so the ids of the later shards are shifted by the number of spectra
+ * in the shards before them. The spectra are counted in the shard inputs, which sit next to the shard outputs.
+ * The ids are hierarchical (<tt>12</tt> for the spectrum, <tt>12.1</tt> for a protein, <tt>12.1.1.1</tt> for
+ * a domain), only the leading number is shifted. The same goes for trace labels like <tt>12.spectrum</tt>.
+ * <p/>
+ * The references to the input file (label of the <tt>bioml</tt> element, <tt>spectrum, path</tt> parameter) are
+ * changed from the first shard to the original input, as the shards get deleted after the merge.
+ *
+ * @author Roman Zenka
+ */
+final class XTandemMerger implements ShardMerger {
+	private static final Pattern ID = Pattern.compile("(\\sid=\")(\\d+)(?=[.\"])");
+	private static final Pattern TRACE_LABEL = Pattern.compile("(<GAML:trace\\s[^>]*?\\blabel=\")(\\d+)(?=\\.)");
+	private static final Pattern GROUP_START = Pattern.compile("<group[\\s>]");
+	private static final Pattern GROUP_END = Pattern.compile("</group>");
+	private static final Pattern BIOML_LABEL = Pattern.compile("(<bioml\\s[^>]*?\\blabel=\"models from ')[^']*(')");
+	private static final Pattern SPECTRUM_PATH = Pattern.compile("(<note\\s[^>]*?\\blabel=\"spectrum, path\"[^>]*>)[^<]*(</note>)");
+	private static final String BIOML_END = "</bioml>";
+
+	private final File input;
+	/**
+	 * Number of spectra in the shards before the current one.
+	 */
+	private long offset;
+
+	/**
+	 * @param input The original input file that got split into shards.
+	 */
+	XTandemMerger(final File input) {
+		this.input = input;
+	}
+
+	@Override
+	public void merge(final List<File> shardOutputs, final File output) {
+		BufferedWriter writer = null;
+		try {
+			writer = Files.newWriter(output, Charsets.ISO_8859_1);
+			final List<String> parameters = new ArrayList<String>();
+			offset = 0;
+			for (int i = 0; i < shardOutputs.size(); i++) {
+				final File shardOutput = shardOutputs.get(i);
+				copyModels(shardOutput, writer, i == 0 ? parameters : null);
+				offset += MgfSplitter.countSpectra(new File(shardOutput.getParentFile(), input.getName()));
+			}
+			for (final String line : parameters) {
+				writeLine(writer, replace(SPECTRUM_PATH, line, input.getAbsolutePath()));
+			}
+			writeLine(writer, BIOML_END);
+		} catch (IOException e) {
+			throw new MprcException("Could not merge X!Tandem shards into " + output.getAbsolutePath(), e);
+		} finally {
+			FileUtilities.closeQuietly(writer);
+		}
+	}
+
+	/**
+	 * @param parameters When not null, the lines before the first group are copied as well and the parameter groups
+	 *                   are collected.
+	 */
+	private void copyModels(final File shard, final BufferedWriter writer, final List<String> parameters) throws IOException {
+		final BufferedReader reader = Files.newReader(shard, Charsets.ISO_8859_1);
+		try {
+			int depth = 0;
+			boolean model = false;
+			boolean seenGroup = false;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.contains(BIOML_END)) {
+					continue;
+				}
+				final int opened = count(GROUP_START, line);
+				if (depth == 0 && opened > 0) {
+					seenGroup = true;
+					model = line.contains("type=\"model\"");
+				}
+				depth += opened - count(GROUP_END, line);
+
+				if (!seenGroup) {
+					if (parameters != null) {
+						writeLine(writer, replace(BIOML_LABEL, line, input.getAbsolutePath()));
+					}
+				} else if (model) {
+					writeLine(writer, offset == 0 ? line : shiftIds(line));
+				} else if (parameters != null) {
+					parameters.add(line);
+				}
+			}
+		} finally {
+			FileUtilities.closeQuietly(reader);
+		}
+	}
+
+	private static String replace(final Pattern pattern, final String line, final String value) {
+		return pattern.matcher(line).replaceFirst("$1" + Matcher.quoteReplacement(value) + "$2");
+	}
+
+	private String shiftIds(final String line) {
+		return shift(TRACE_LABEL, shift(ID, line));
+	}
+
+	private String shift(final Pattern pattern, final String line) {
+		final Matcher matcher = pattern.matcher(line);
+		if (!matcher.find()) {
+			return line;
+		}
+		final StringBuffer result = new StringBuffer(line.length() + 10);
+		do {
+			matcher.appendReplacement(result, "$1" + (offset + Long.parseLong(matcher.group(2))));
+		} while (matcher.find());
+		matcher.appendTail(result);
+		return result.toString();
+	}
+
+	private static int count(final Pattern pattern, final String line) {
+		final Matcher matcher = pattern.matcher(line);
+		int count = 0;
+		while (matcher.find()) {
+			count++;
+		}
+		return count;
+	}
+
+	private static void writeLine(final BufferedWriter writer, final String line) throws IOException {
+		writer.write(line);
+		writer.write('\n');
+	}
+}
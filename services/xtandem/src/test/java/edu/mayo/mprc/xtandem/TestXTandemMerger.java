@@ -0,0 +1,127 @@
+package edu.mayo.mprc.xtandem;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import edu.mayo.mprc.utilities.FileUtilities;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Roman Zenka
+ */
+public final class TestXTandemMerger {
+	private File folder;
+	private File input;
+	/**
+	 * Spectra in the shards created so far.
+	 */
+	private int spectraBefore;
+
+	@BeforeMethod
+	public void setup() {
+		folder = FileUtilities.createTempFolder();
+		input = new File(folder, "test.mgf");
+		spectraBefore = 0;
+	}
+
+	@AfterMethod
+	public void teardown() {
+		FileUtilities.cleanupTempFile(folder);
+	}
+
+	@Test
+	public void shouldMergeModels() throws IOException {
+		// Only the identified spectra are listed, the last spectrum of the first shard was identified
+		final File shard1 = shard(1, 3, 1, 3);
+		final File shard2 = shard(2, 2, 2);
+		final File merged = new File(folder, "test.xml");
+
+		new XTandemMerger(input).merge(Arrays.asList(shard1, shard2), merged);
+
+		final String expected = header(input)
+				+ model(1, "spectrum 1")
+				+ model(3, "spectrum 3")
+				+ model(5, "spectrum 5")
+				+ parameters(input)
+				+ "</bioml>\n";
+		Assert.assertEquals(Files.toString(merged, Charsets.ISO_8859_1), expected);
+	}
+
+	@Test
+	public void shouldShiftBySpectrumCount() throws IOException {
+		// The last spectrum of the first shard was not identified, the ids still follow the original input
+		final File shard1 = shard(1, 4, 1, 3);
+		final File shard2 = shard(2, 2, 2);
+		final File merged = new File(folder, "test.xml");
+
+		new XTandemMerger(input).merge(Arrays.asList(shard1, shard2), merged);
+
+		final String expected = header(input)
+				+ model(1, "spectrum 1")
+				+ model(3, "spectrum 3")
+				+ model(6, "spectrum 6")
+				+ parameters(input)
+				+ "</bioml>\n";
+		Assert.assertEquals(Files.toString(merged, Charsets.ISO_8859_1), expected);
+	}
+
+	/**
+	 * Creates the input and output of a shard the way the sharded cache lays them out.
+	 *
+	 * @param spectra How many spectra the shard input has.
+	 * @param ids     Ids of the identified spectra within the shard.
+	 * @return The shard output.
+	 */
+	private File shard(final int shard, final int spectra, final int... ids) throws IOException {
+		final File shardFolder = new File(new File(folder, "shards"), String.valueOf(shard));
+		FileUtilities.ensureFolderExists(shardFolder);
+		final File shardInput = new File(shardFolder, input.getName());
+		final StringBuilder mgf = new StringBuilder("CHARGE=2+\n");
+		for (int i = 1; i <= spectra; i++) {
+			mgf.append("BEGIN IONS\nTITLE=spectrum ").append(spectraBefore + i).append("\nPEPMASS=500.0\n100.0 1.0\nEND IONS\n");
+		}
+		Files.write(mgf.toString(), shardInput, Charsets.ISO_8859_1);
+
+		final StringBuilder content = new StringBuilder(header(shardInput));
+		for (final int id : ids) {
+			content.append(model(id, "spectrum " + (spectraBefore + id)));
+		}
+		content.append(parameters(shardInput));
+		content.append("</bioml>\n");
+		final File file = new File(shardFolder, "test.xml");
+		Files.write(content.toString(), file, Charsets.ISO_8859_1);
+		spectraBefore += spectra;
+		return file;
+	}
+
+	private static String header(final File mgf) {
+		return "<?xml version=\"1.0\"?>\n" +
+				"<bioml xmlns:GAML=\"http://www.bioml.com/gaml/\" label=\"models from '" + mgf.getAbsolutePath() + "'\">\n";
+	}
+
+	private static String model(final int id, final String title) {
+		return "<group id=\"" + id + "\" mh=\"1000.0\" z=\"2\" expect=\"0.01\" label=\"PROT\" type=\"model\">\n" +
+				"<protein expect=\"-2.0\" id=\"" + id + ".1\" uid=\"77\" label=\"PROT\">\n" +
+				"<domain id=\"" + id + ".1.1.1\" start=\"1\" end=\"8\" seq=\"PEPTIDEK\">\n" +
+				"</domain>\n" +
+				"</protein>\n" +
+				"<group label=\"fragment ion mass spectrum\" type=\"support\">\n" +
+				"<note label=\"Description\">" + title + "</note>\n" +
+				"<GAML:trace id=\"" + id + "\" label=\"" + id + ".spectrum\" type=\"tandem mass spectrum\">\n" +
+				"</GAML:trace>\n" +
+				"</group>\n" +
+				"</group>\n";
+	}
+
+	private static String parameters(final File mgf) {
+		return "<group label=\"input parameters\" type=\"parameters\">\n" +
+				"\t<note type=\"input\" label=\"spectrum, path\">" + mgf.getAbsolutePath() + "</note>\n" +
+				"</group>\n";
+	}
+}
@@ -1,6 +1,5 @@
 package edu.mayo.mprc.swift.commands;
 
-import com.google.common.base.Objects;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.config.DaemonConfig;
 import edu.mayo.mprc.config.ServiceConfig;
@@ -25,15 +24,12 @@ import edu.mayo.mprc.utilities.progress.ProgressReport;
 import edu.mayo.mprc.workflow.engine.SearchMonitor;
 import edu.mayo.mprc.workflow.engine.TaskBase;
 import edu.mayo.mprc.workflow.engine.WorkflowEngine;
-import edu.mayo.mprc.workflow.persistence.TaskState;
 import org.apache.log4j.Logger;
 import org.joda.time.Interval;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.io.File;
-import java.text.MessageFormat;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -43,8 +39,20 @@ import java.util.List;
 @Component("load-to-search-db-command")
 public final class LoadToSearchDb implements SwiftCommand {
 	private static final Logger LOGGER = Logger.getLogger(LoadToSearchDb.class);
-	public static final int BATCH_SIZE = 3;
+	/**
+	 * How many reports to load at the same time.
+	 */
+	public static final int MAX_RUNNING_LOADS = 3;
 	public static final int MAX_INPUT_FILE_SIZE = 6;
+	/**
+	 * How many times to try loading a report within a single run.
+	 */
+	public static final int MAX_ATTEMPTS = 2;
+	/**
+	 * After failing this many runs, the report is not loaded any more.
+	 */
+	public static final int MAX_LOAD_ATTEMPTS = 3;
+	private static final int MAX_LOAD_ERROR_LENGTH = 500;
 
 	private DaemonConnection rawDump;
 	private DaemonConnection scaffold;
@@ -53,8 +61,6 @@ public final class LoadToSearchDb implements SwiftCommand {
 	private SwiftDao dao;
 	private SearchDbDao searchDbDao;
 	private DatabaseFileTokenFactory fileTokenFactory;
-	private int totalToLoad;
-	private int loaded;
 
 	@Override
 	public String getDescription() {
@@ -125,63 +131,58 @@ public final class LoadToSearchDb implements SwiftCommand {
 		LOGGER.info("Database initialized");
 	}
 
+	/**
+	 * Load all reports that are not in the search database yet.
+	 * <p/>
+	 * The reports that got loaded have their analysis set, so running this again continues where the previous run
+	 * stopped. The reports that failed have their failure recorded, after {@link #MAX_LOAD_ATTEMPTS} failed runs
+	 * they are no longer attempted.
+	 */
 	private void loadAllData() {
 		final List<Long> reportsWithoutAnalysis;
 		getSearchDbDao().begin();
 		try {
-			reportsWithoutAnalysis = getSearchDbDao().getReportIdsWithoutAnalysis();
+			reportsWithoutAnalysis = getSearchDbDao().getReportIdsWithoutAnalysis(MAX_LOAD_ATTEMPTS);
 			getSearchDbDao().commit();
 		} catch (Exception e) {
 			getSearchDbDao().rollback();
 			throw new MprcException("Could not obtain the list of reports to load", e);
 		}
 
-		totalToLoad = reportsWithoutAnalysis.size();
-		LOGGER.info("Total reports with analysis missing: " + totalToLoad);
-		int count = 0;
-		final List<WorkflowEngine> engines = new ArrayList<WorkflowEngine>(100);
-		for (final Long reportId : reportsWithoutAnalysis) {
-			count++;
-			LOGGER.info(MessageFormat.format("Loading report #{0} ({1} of {2})", reportId, count, totalToLoad));
-			try {
-				final WorkflowEngine engine = loadData(reportId, MAX_INPUT_FILE_SIZE);
-				if (engine != null) {
-					engines.add(engine);
-				}
-			} catch (Exception e) {
-				// SWALLOWED: We keep going
-				LOGGER.error("Could not load " + reportId + "\n - " + MprcException.getDetailedMessage(e));
-			}
-			if (engines.size() == BATCH_SIZE) {
-				runTillDone(engines);
+		LOGGER.info("Total reports with analysis missing: " + reportsWithoutAnalysis.size());
+		final SearchDbBackfill backfill = new SearchDbBackfill(new SearchDbBackfill.ReportLoader() {
+			@Override
+			public WorkflowEngine createEngine(final long reportId) {
+				return loadData(reportId, MAX_INPUT_FILE_SIZE);
 			}
-		}
-		runTillDone(engines);
-	}
 
-	private void runTillDone(final List<WorkflowEngine> engines) {
-		while (true) {
-			if (runEngines(engines) == true) {
-				break;
+			@Override
+			public void loadFailed(final long reportId, final Exception failure) {
+				recordLoadFailure(reportId, failure);
 			}
-		}
-		engines.clear();
+		}, MAX_RUNNING_LOADS, MAX_ATTEMPTS);
+		backfill.run(reportsWithoutAnalysis);
 	}
 
-	private boolean runEngines(final List<WorkflowEngine> engines) {
-		boolean allDone = true;
-		for (final WorkflowEngine engine : engines) {
-			if (!engine.isDone()) {
-				allDone = false;
-				try {
-					engine.run();
-				} catch (MprcException e) {
-					// SWALLOWED: We are okay with the engine failing, we log it and go on
-					LOGGER.error("The load failed\n" + MprcException.getDetailedMessage(e));
-				}
-			}
+	/**
+	 * Remember that the report failed to load, so we do not try it forever.
+	 */
+	private void recordLoadFailure(final long reportId, final Exception failure) {
+		String message = MprcException.getDetailedMessage(failure);
+		if (message.length() > MAX_LOAD_ERROR_LENGTH) {
+			message = message.substring(0, MAX_LOAD_ERROR_LENGTH - 3) + "...";
+		}
+		getDao().begin();
+		try {
+			final ReportData reportData = getReportData(reportId);
+			final Integer attempts = reportData.getLoadAttempts();
+			reportData.setLoadAttempts(attempts == null ? 1 : attempts + 1);
+			reportData.setLoadError(message);
+			getDao().commit();
+		} catch (Exception e) {
+			getDao().rollback();
+			throw new MprcException("Could not record load failure for report #" + reportId, e);
 		}
-		return allDone;
 	}
 
 	private WorkflowEngine loadData(final long reportDataId, final int maxInputFileSize) {
@@ -226,10 +227,6 @@ public final class LoadToSearchDb implements SwiftCommand {
 			searchDbTask.addDependency(fastaDbTask);
 			workflowEngine.addTask(searchDbTask);
 
-			final SuccessfulLoadCounter counter = new SuccessfulLoadCounter(workflowEngine, reportData.getReportFile().getName());
-			counter.addDependency(searchDbTask);
-			workflowEngine.addTask(counter);
-
 			// Only load files when Scaffold was enabled
 			if (swiftSearchDefinition.isSearch("SCAFFOLD")) {
 				for (final FileSearch fileSearch : swiftSearchDefinition.getInputFiles()) {
@@ -395,40 +392,4 @@ public final class LoadToSearchDb implements SwiftCommand {
 	public void setFileTokenFactory(final DatabaseFileTokenFactory fileTokenFactory) {
 		this.fileTokenFactory = fileTokenFactory;
 	}
-
-	/**
-	 * Counts all the successful DB loads.
-	 */
-	private class SuccessfulLoadCounter extends TaskBase {
-		private final String scaffoldName;
-
-		private SuccessfulLoadCounter(final WorkflowEngine workflowEngine, final String scaffoldName) {
-			super(workflowEngine);
-			this.scaffoldName = scaffoldName;
-		}
-
-		@Override
-		public void run() {
-			loaded++;
-			LOGGER.info("Loaded " + scaffoldName + " (" + loaded + " out of " + totalToLoad + ")");
-			setState(TaskState.COMPLETED_SUCCESFULLY);
-		}
-
-		@Override
-		public int hashCode() {
-			return Objects.hashCode(scaffoldName);
-		}
-
-		@Override
-		public boolean equals(final Object obj) {
-			if (this == obj) {
-				return true;
-			}
-			if (obj == null || getClass() != obj.getClass()) {
-				return false;
-			}
-			final SuccessfulLoadCounter other = (SuccessfulLoadCounter) obj;
-			return Objects.equal(scaffoldName, other.scaffoldName);
-		}
-	}
 }
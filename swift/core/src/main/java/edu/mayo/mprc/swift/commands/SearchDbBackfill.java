@@ -0,0 +1,217 @@
+package edu.mayo.mprc.swift.commands;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.workflow.engine.Resumer;
+import edu.mayo.mprc.workflow.engine.WorkflowEngine;
+import org.apache.log4j.Logger;
+import org.joda.time.Period;
+import org.joda.time.format.PeriodFormat;
+
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a list of reports into the search database, see {@link LoadToSearchDb}.
+ * <p/>
+ * At most {@code maxRunning} reports are loaded at the same time, each by its own {@link WorkflowEngine}.
+ * As soon as one report is done, the next one starts.
+ * The engines run on a shared thread pool only when they have work to do, so a report that waits for a daemon
+ * does not hold a thread.
+ * <p/>
+ * A report that fails is retried up to {@code maxAttempts} times. A failure never affects the other reports.
+ * The throughput and the estimated time to finish are logged every {@link #PROGRESS_INTERVAL_MILLIS}.
+ *
+ * @author Roman Zenka
+ */
+final class SearchDbBackfill {
+	private static final Logger LOGGER = Logger.getLogger(SearchDbBackfill.class);
+
+	/**
+	 * How often to log the progress.
+	 */
+	static final long PROGRESS_INTERVAL_MILLIS = 60 * 1000;
+
+	private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+
+	/**
+	 * Creates the workflows and records the reports that could not be loaded.
+	 */
+	interface ReportLoader {
+		/**
+		 * @param reportId Report to load.
+		 * @return Engine that loads the report. Null if the report should be skipped.
+		 */
+		WorkflowEngine createEngine(long reportId);
+
+		/**
+		 * The report could not be loaded even after all the attempts.
+		 *
+		 * @param reportId Report that failed.
+		 * @param failure  Why did the last attempt fail.
+		 */
+		void loadFailed(long reportId, Exception failure);
+	}
+
+	private final ReportLoader loader;
+	private final int maxRunning;
+	private final int maxAttempts;
+
+	private final Semaphore running;
+	private ExecutorService executor;
+
+	private int total;
+	private long startTime;
+	private long lastProgressTime;
+	private final AtomicInteger loaded = new AtomicInteger(0);
+	private final AtomicInteger failed = new AtomicInteger(0);
+	private final AtomicInteger skipped = new AtomicInteger(0);
+
+	/**
+	 * @param loader      Creates the workflows.
+	 * @param maxRunning  How many reports to load at once.
+	 * @param maxAttempts How many times to try loading a report before giving up.
+	 */
+	SearchDbBackfill(final ReportLoader loader, final int maxRunning, final int maxAttempts) {
+		this.loader = loader;
+		this.maxRunning = maxRunning;
+		this.maxAttempts = maxAttempts;
+		running = new Semaphore(maxRunning);
+	}
+
+	/**
+	 * Load all the reports. Returns once every report is either loaded, skipped or failed.
+	 *
+	 * @param reportIds Reports to load.
+	 */
+	public void run(final List<Long> reportIds) {
+		total = reportIds.size();
+		startTime = System.currentTimeMillis();
+		lastProgressTime = startTime;
+		executor = Executors.newFixedThreadPool(maxRunning,
+				new ThreadFactoryBuilder()
+						.setNameFormat("search-db-backfill-%d")
+						.setDaemon(true)
+						.build());
+		try {
+			for (final Long reportId : reportIds) {
+				running.acquire();
+				executor.execute(new Load(reportId, 1));
+			}
+			// Wait for the last loads to finish
+			running.acquire(maxRunning);
+			running.release(maxRunning);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MprcException("Loading into search database was interrupted", e);
+		} finally {
+			executor.shutdownNow();
+		}
+		logProgress(true);
+	}
+
+	public int getLoaded() {
+		return loaded.get();
+	}
+
+	public int getFailed() {
+		return failed.get();
+	}
+
+	public int getSkipped() {
+		return skipped.get();
+	}
+
+	private void finished(final AtomicInteger outcome) {
+		outcome.incrementAndGet();
+		running.release();
+		logProgress(false);
+	}
+
+	private void logProgress(final boolean force) {
+		final long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (!force && now - lastProgressTime < PROGRESS_INTERVAL_MILLIS) {
+				return;
+			}
+			lastProgressTime = now;
+		}
+		final int done = loaded.get() + failed.get() + skipped.get();
+		final long elapsed = Math.max(1, now - startTime);
+		final double perHour = (double) done * MILLIS_PER_HOUR / elapsed;
+		final String eta = done == 0 ? "unknown" : formatDuration(elapsed * (total - done) / done);
+		LOGGER.info(MessageFormat.format("Search database load: {0} of {1} reports done ({2} loaded, {3} failed, {4} skipped), {5,number,0.0} reports/hour, {6} remaining",
+				done, total, loaded.get(), failed.get(), skipped.get(), perHour, eta));
+	}
+
+	private static String formatDuration(final long millis) {
+		// Second precision is enough
+		return PeriodFormat.getDefault().print(new Period(millis / 1000 * 1000).normalizedStandard());
+	}
+
+	/**
+	 * Loads a single report. Runs whenever its engine has work to do.
+	 */
+	private final class Load implements Runnable, Resumer {
+		private final long reportId;
+		private final int attempt;
+		private WorkflowEngine engine;
+
+		private Load(final long reportId, final int attempt) {
+			this.reportId = reportId;
+			this.attempt = attempt;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (engine == null) {
+					engine = loader.createEngine(reportId);
+					if (engine == null) {
+						finished(skipped);
+						return;
+					}
+				}
+				engine.run();
+				if (engine.isDone()) {
+					LOGGER.info("Loaded report #" + reportId);
+					finished(loaded);
+				} else {
+					engine.resumeOnWork(this);
+				}
+			} catch (Exception e) {
+				failed(e);
+			}
+		}
+
+		@Override
+		public void resume() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException ignore) {
+				// SWALLOWED: we are shutting down, the load is abandoned
+			}
+		}
+
+		private void failed(final Exception e) {
+			if (attempt < maxAttempts) {
+				LOGGER.warn("Loading report #" + reportId + " failed, attempt " + attempt + " of " + maxAttempts + ", retrying\n - " + MprcException.getDetailedMessage(e));
+				executor.execute(new Load(reportId, attempt + 1));
+				return;
+			}
+			LOGGER.error("Could not load report #" + reportId + "\n - " + MprcException.getDetailedMessage(e));
+			try {
+				loader.loadFailed(reportId, e);
+			} catch (Exception e2) {
+				// SWALLOWED: We keep going
+				LOGGER.error("Could not record failure of report #" + reportId, e2);
+			}
+			finished(failed);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package edu.mayo.mprc.swift.commands;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.workflow.engine.TaskBase;
+import edu.mayo.mprc.workflow.engine.WorkflowEngine;
+import edu.mayo.mprc.workflow.persistence.TaskState;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Roman Zenka
+ */
+public final class SearchDbBackfillTest {
+	private static final long SKIPPED_REPORT = 4;
+	private static final long FAILING_REPORT = 5;
+	private static final long FLAKY_REPORT = 6;
+
+	@Test
+	public void shouldLoadAllReports() {
+		final TestLoader loader = new TestLoader();
+		final SearchDbBackfill backfill = new SearchDbBackfill(loader, 3, 1);
+		final List<Long> reports = new ArrayList<Long>();
+		for (long i = 10; i < 30; i++) {
+			reports.add(i);
+		}
+
+		backfill.run(reports);
+
+		Assert.assertEquals(backfill.getLoaded(), 20);
+		Assert.assertEquals(backfill.getFailed(), 0);
+		Assert.assertEquals(backfill.getSkipped(), 0);
+		Assert.assertTrue(loader.maxRunning.get() <= 3, "At most 3 reports can be loaded at once, was " + loader.maxRunning.get());
+	}
+
+	@Test
+	public void shouldIsolateFailures() {
+		final TestLoader loader = new TestLoader();
+		final SearchDbBackfill backfill = new SearchDbBackfill(loader, 2, 2);
+
+		backfill.run(Arrays.asList(1L, 2L, 3L, SKIPPED_REPORT, FAILING_REPORT, FLAKY_REPORT, 7L));
+
+		Assert.assertEquals(backfill.getLoaded(), 5);
+		Assert.assertEquals(backfill.getFailed(), 1);
+		Assert.assertEquals(backfill.getSkipped(), 1);
+		Assert.assertEquals(loader.failedReports, Collections.singletonList(FAILING_REPORT));
+	}
+
+	private static final class TestLoader implements SearchDbBackfill.ReportLoader {
+		private final AtomicInteger running = new AtomicInteger(0);
+		private final AtomicInteger maxRunning = new AtomicInteger(0);
+		private final AtomicInteger flakyAttempts = new AtomicInteger(0);
+		private final List<Long> failedReports = Collections.synchronizedList(new ArrayList<Long>());
+
+		@Override
+		public WorkflowEngine createEngine(final long reportId) {
+			if (reportId == SKIPPED_REPORT) {
+				return null;
+			}
+			final boolean fail = reportId == FAILING_REPORT
+					|| (reportId == FLAKY_REPORT && flakyAttempts.incrementAndGet() == 1);
+			final WorkflowEngine engine = new WorkflowEngine("load " + reportId);
+			engine.addTask(new LoadTask(engine, "load " + reportId, fail, this));
+			return engine;
+		}
+
+		@Override
+		public void loadFailed(final long reportId, final Exception failure) {
+			failedReports.add(reportId);
+		}
+	}
+
+	/**
+	 * Completes a while after it is started, on a different thread, like a task waiting for a daemon.
+	 */
+	private static final class LoadTask extends TaskBase {
+		private final boolean fail;
+		private final TestLoader loader;
+
+		private LoadTask(final WorkflowEngine engine, final String name, final boolean fail, final TestLoader loader) {
+			super(engine);
+			setName(name);
+			this.fail = fail;
+			this.loader = loader;
+		}
+
+		@Override
+		public void run() {
+			if (fail) {
+				throw new MprcException("Failed " + getName());
+			}
+			final int running = loader.running.incrementAndGet();
+			synchronized (loader.maxRunning) {
+				loader.maxRunning.set(Math.max(running, loader.maxRunning.get()));
+			}
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException ignore) {
+						// SWALLOWED: finish right away
+					}
+					loader.running.decrementAndGet();
+					setState(TaskState.COMPLETED_SUCCESFULLY);
+				}
+			}).start();
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return this == o;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+CREATE TABLE temp_protein_accnum
+(
+  data_order       INT NOT NULL,
+  job              INT NOT NULL,
+  new_id           INT,
+  accession_number VARCHAR(80),
+  PRIMARY KEY (job, data_order)
+);
+
+CREATE TABLE temp_protein_description
+(
+  data_order  INT NOT NULL,
+  job         INT NOT NULL,
+  new_id      INT,
+  description VARCHAR(200),
+  PRIMARY KEY (job, data_order)
+);
+
+CREATE TABLE temp_protein_entry
+(
+  data_order             INT NOT NULL,
+  job                    INT NOT NULL,
+  new_id                 INT,
+  curation_id            INT,
+  protein_accnum_id      INT,
+  protein_description_id INT,
+  protein_sequence_id    INT,
+  PRIMARY KEY (job, data_order)
+);
+
+-- @UNDO
+
+DROP TABLE temp_protein_accnum;
+DROP TABLE temp_protein_description;
+DROP TABLE temp_protein_entry;
@@ -0,0 +1,9 @@
+ALTER TABLE report
+ADD COLUMN load_attempts INT,
+ADD COLUMN load_error VARCHAR(500);
+
+-- @UNDO
+
+ALTER TABLE report
+DROP COLUMN load_attempts,
+DROP COLUMN load_error;
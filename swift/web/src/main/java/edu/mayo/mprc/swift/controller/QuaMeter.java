@@ -3,6 +3,7 @@ package edu.mayo.mprc.swift.controller;
 import com.google.common.collect.Lists;
 import edu.mayo.mprc.MprcException;
 import edu.mayo.mprc.config.ResourceConfig;
+import edu.mayo.mprc.quameterdb.QuameterDataTable;
 import edu.mayo.mprc.quameterdb.QuameterUi;
 import edu.mayo.mprc.quameterdb.dao.QuameterResult;
 import edu.mayo.mprc.quameterdb.dao.QuameterTag;
@@ -14,7 +15,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.IOException;
 import java.io.StringWriter;
 import java.util.Collection;
 import java.util.List;
@@ -41,22 +45,56 @@ public final class QuaMeter {
 			model.addAttribute("metricsJson", "null");
 		}
 
-		if (quameterUi != null) {
-			quameterUi.begin();
-			try {
-				final StringWriter writer = new StringWriter(10000);
-				quameterUi.dataTableJson(writer);
-				quameterUi.commit();
-				model.addAttribute("dataJson", writer.toString());
-			} catch (final Exception e) {
-				quameterUi.rollback();
-				throw new MprcException(e);
-			}
-		} else {
-			model.addAttribute("dataJson", "null");
+		return "quameter/index";
+	}
+
+	/**
+	 * The dashboard data. The data are cached and tagged, a browser that already has the current version
+	 * gets an empty 304 response.
+	 */
+	@RequestMapping(value = "/quameter/data", method = RequestMethod.GET)
+	public final void data(final HttpServletRequest request, final HttpServletResponse response) {
+		final QuameterUi quameterUi = getQuameterUi();
+		if (quameterUi == null) {
+			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+			return;
 		}
 
-		return "quameter/index";
+		final QuameterDataTable dataTable;
+		quameterUi.begin();
+		try {
+			dataTable = quameterUi.getDataTable();
+			quameterUi.commit();
+		} catch (final Exception e) {
+			quameterUi.rollback();
+			throw new MprcException(e);
+		}
+
+		response.setHeader("ETag", dataTable.getETag());
+		// The browser may keep the data, but has to check with us whether they are still current
+		response.setHeader("Cache-Control", "no-cache");
+		if (dataTable.matches(request.getHeader("If-None-Match"))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Vary", "Accept-Encoding");
+		final String acceptEncoding = request.getHeader("Accept-Encoding");
+		final byte[] data;
+		if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+			response.setHeader("Content-Encoding", "gzip");
+			data = dataTable.getGzipped();
+		} else {
+			data = dataTable.getBytes();
+		}
+		response.setContentLength(data.length);
+		try {
+			response.getOutputStream().write(data);
+		} catch (final IOException e) {
+			throw new MprcException("Could not send QuaMeter data", e);
+		}
 	}
 
 	@RequestMapping(value = "/quameter/tags", method = RequestMethod.GET)
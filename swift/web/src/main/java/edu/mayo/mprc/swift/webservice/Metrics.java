@@ -0,0 +1,77 @@
+package edu.mayo.mprc.swift.webservice;
+
+import edu.mayo.mprc.MprcException;
+import edu.mayo.mprc.daemon.monitor.DaemonMetrics;
+import edu.mayo.mprc.daemon.monitor.DaemonStatus;
+import edu.mayo.mprc.daemon.monitor.ServiceMetricsSnapshot;
+import edu.mayo.mprc.swift.resources.SwiftMonitor;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lists the request statistics of all services and the message queue depths, as reported by the last ping
+ * of each daemon.
+ *
+ * @author Roman Zenka
+ */
+@Controller
+public final class Metrics {
+	private SwiftMonitor swiftMonitor;
+
+	public Metrics() {
+	}
+
+	@RequestMapping(value = "/service/metrics", method = RequestMethod.GET)
+	public ModelAndView listMetrics() {
+		try {
+			final List<DaemonMetrics> daemons = new ArrayList<DaemonMetrics>();
+			for (final DaemonStatus status : getSwiftMonitor().getMonitoredConnections().values()) {
+				if (status.getMetrics() != null) {
+					daemons.add(status.getMetrics());
+				}
+			}
+			Collections.sort(daemons, new Comparator<DaemonMetrics>() {
+				@Override
+				public int compare(final DaemonMetrics o1, final DaemonMetrics o2) {
+					return o1.getDaemonName().compareTo(o2.getDaemonName());
+				}
+			});
+
+			final List<ServiceLoad> services = new ArrayList<ServiceLoad>();
+			final List<QueueDepth> queues = new ArrayList<QueueDepth>();
+			for (final DaemonMetrics daemon : daemons) {
+				for (final ServiceMetricsSnapshot service : daemon.getServices()) {
+					services.add(new ServiceLoad(daemon.getDaemonName(), service));
+				}
+				for (final Map.Entry<String, Long> entry : daemon.getQueueDepths().entrySet()) {
+					queues.add(new QueueDepth(daemon.getDaemonName(), entry.getKey(), entry.getValue()));
+				}
+			}
+
+			final ModelAndView modelAndView = new ModelAndView();
+			modelAndView.addObject("services", services);
+			modelAndView.addObject("queues", queues);
+			return modelAndView;
+		} catch (Exception t) {
+			throw new MprcException("Could not list service metrics", t);
+		}
+	}
+
+	public SwiftMonitor getSwiftMonitor() {
+		return swiftMonitor;
+	}
+
+	@Resource(name = "swiftMonitor")
+	public void setSwiftMonitor(final SwiftMonitor swiftMonitor) {
+		this.swiftMonitor = swiftMonitor;
+	}
+}
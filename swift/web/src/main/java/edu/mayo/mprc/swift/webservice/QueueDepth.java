@@ -0,0 +1,33 @@
+package edu.mayo.mprc.swift.webservice;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+
+/**
+ * Number of messages waiting in a message broker queue.
+ *
+ * @author Roman Zenka
+ */
+@XStreamAlias("queue")
+public final class QueueDepth {
+	private final String daemon;
+	private final String name;
+	private final long depth;
+
+	public QueueDepth(final String daemon, final String name, final long depth) {
+		this.daemon = daemon;
+		this.name = name;
+		this.depth = depth;
+	}
+
+	public String getDaemon() {
+		return daemon;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getDepth() {
+		return depth;
+	}
+}
@@ -0,0 +1,108 @@
+package edu.mayo.mprc.swift.webservice;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import edu.mayo.mprc.daemon.CacheStatistics;
+import edu.mayo.mprc.daemon.monitor.LatencyHistogram;
+import edu.mayo.mprc.daemon.monitor.ServiceMetricsSnapshot;
+
+/**
+ * Request statistics of a single service. Durations are in milliseconds.
+ *
+ * @author Roman Zenka
+ */
+@XStreamAlias("service")
+public final class ServiceLoad {
+	private final String daemon;
+	private final String name;
+	private final int queued;
+	private final int running;
+	private final long succeeded;
+	private final long failed;
+	private final double throughputPerHour;
+	private final long queueWaitMedian;
+	private final long queueWait95;
+	private final long queueWaitMax;
+	private final long processingMedian;
+	private final long processing95;
+	private final long processingMax;
+	private final Double cacheHitRatio;
+
+	public ServiceLoad(final String daemon, final ServiceMetricsSnapshot metrics) {
+		this.daemon = daemon;
+		name = metrics.getName();
+		queued = metrics.getQueued();
+		running = metrics.getRunning();
+		succeeded = metrics.getSucceeded();
+		failed = metrics.getFailed();
+		throughputPerHour = metrics.getThroughputPerHour();
+		final LatencyHistogram.Snapshot queueWait = metrics.getQueueWait();
+		queueWaitMedian = queueWait.getPercentile(50);
+		queueWait95 = queueWait.getPercentile(95);
+		queueWaitMax = queueWait.getMax();
+		final LatencyHistogram.Snapshot processing = metrics.getProcessing();
+		processingMedian = processing.getPercentile(50);
+		processing95 = processing.getPercentile(95);
+		processingMax = processing.getMax();
+		final CacheStatistics cacheStatistics = metrics.getCacheStatistics();
+		cacheHitRatio = cacheStatistics == null ? null : cacheStatistics.getHitRatio();
+	}
+
+	public String getDaemon() {
+		return daemon;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getQueued() {
+		return queued;
+	}
+
+	public int getRunning() {
+		return running;
+	}
+
+	public long getSucceeded() {
+		return succeeded;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	public double getThroughputPerHour() {
+		return throughputPerHour;
+	}
+
+	public long getQueueWaitMedian() {
+		return queueWaitMedian;
+	}
+
+	public long getQueueWait95() {
+		return queueWait95;
+	}
+
+	public long getQueueWaitMax() {
+		return queueWaitMax;
+	}
+
+	public long getProcessingMedian() {
+		return processingMedian;
+	}
+
+	public long getProcessing95() {
+		return processing95;
+	}
+
+	public long getProcessingMax() {
+		return processingMax;
+	}
+
+	/**
+	 * @return Cache hit ratio (0-1), null if the service is not a cache.
+	 */
+	public Double getCacheHitRatio() {
+		return cacheHitRatio;
+	}
+}
@@ -126,9 +126,13 @@
 <script type="text/javascript" src="../../../quameter/js/quameter-definitions.js"></script>
 <script type="text/javascript" src="../../../quameter/js/quameter.js"></script>
 <script type="text/javascript">
-    var graphDataSrvr = ${dataJson};
-    // Set a callback to run when the Google Visualization API is loaded.
-    google.setOnLoadCallback(initSimpleCharts(graphDataSrvr));
+    var graphDataSrvr = null;
+    // The data are served separately, so the browser can revalidate its cached copy using the ETag
+    $.getJSON("/quameter/data", function (data) {
+        graphDataSrvr = data;
+        // Set a callback to run when the Google Visualization API is loaded.
+        google.setOnLoadCallback(initSimpleCharts(graphDataSrvr));
+    });
 
 </script>
 <!--  Help Docs come from: http://massqc.proteomesoftware.com/help/metrics.php  -->